@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.backup;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Backup of a database in the write-ahead logging mode, while other threads write to it
+ * @author yvolk@yurivolkov.com
+ */
+public class DatabaseBackupTest {
+    private static final String KEY = "database_test";
+    private static final String TABLE = "test_rows";
+    private static final int BACKUPS = 3;
+
+    private File rootFolder;
+    private SQLiteDatabase db;
+    private final AtomicBoolean writing = new AtomicBoolean(true);
+    private final AtomicLong committedRows = new AtomicLong();
+    private final AtomicReference<Exception> writerError = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        rootFolder = new File(MyContextHolder.get().context().getCacheDir(), "DatabaseBackupTest");
+        FileUtils.deleteFilesRecursively(rootFolder);
+        assertTrue("Created " + rootFolder, rootFolder.exists() || rootFolder.mkdirs());
+        db = SQLiteDatabase.openOrCreateDatabase(new File(rootFolder, "source.sqlite"), null);
+        db.enableWriteAheadLogging();
+        // So the changes stay in the log, until the log is checkpointed by the backup.
+        // Inside a transaction the pragma is executed by the primary (writing) connection
+        db.beginTransaction();
+        try (Cursor cursor = db.rawQuery("PRAGMA wal_autocheckpoint=0", null)) {
+            cursor.moveToFirst();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.execSQL("CREATE TABLE " + TABLE + " (_id INTEGER PRIMARY KEY AUTOINCREMENT, row_value TEXT NOT NULL)");
+        insertRows(200);
+    }
+
+    @After
+    public void tearDown() {
+        writing.set(false);
+        if (db != null) {
+            db.close();
+        }
+        FileUtils.deleteFilesRecursively(rootFolder);
+    }
+
+    @Test
+    public void testBackupDuringConcurrentWrites() throws Exception {
+        File dataFile = new File(db.getPath());
+        File walFile = new File(dataFile.getPath() + "-wal");
+        assertTrue("Changes are in the write-ahead log " + walFile, walFile.length() > 0);
+
+        Thread writer = new Thread(() -> {
+            try {
+                while (writing.get()) {
+                    insertRows(20);
+                }
+            } catch (Exception e) {
+                writerError.set(e);
+            }
+        }, "DatabaseBackupTest-writer");
+        writer.start();
+        try {
+            MyBackupAgent agent = new MyBackupAgent();
+            agent.setContext(MyContextHolder.get().context());
+            agent.setBackupDescriptor(MyBackupDescriptor.getEmpty());
+            for (int ind = 0; ind < BACKUPS; ind++) {
+                long rowsBefore = committedRows.get();
+                File folder = new File(rootFolder, "backup" + ind);
+                assertTrue("Created " + folder, folder.exists() || folder.mkdirs());
+                assertEquals("Backed up " + folder, 1,
+                        agent.backupDatabase(new MyBackupDataOutput(folder), KEY, db, dataFile));
+
+                File restored = restore(folder, new File(rootFolder, "restored" + ind + ".sqlite"));
+                SQLiteDatabase restoredDb = SQLiteDatabase.openDatabase(restored.getPath(), null,
+                        SQLiteDatabase.OPEN_READONLY);
+                try {
+                    assertEquals("Integrity of " + restored, "ok",
+                            DatabaseUtils.stringForQuery(restoredDb, "PRAGMA integrity_check", null));
+                    long rows = DatabaseUtils.queryNumEntries(restoredDb, TABLE);
+                    assertTrue("Rows committed before the backup " + rowsBefore + ", restored " + rows,
+                            rows >= rowsBefore);
+                    assertEquals("Whole transactions are backed up, restored " + rows, 0, rows % 20);
+                } finally {
+                    restoredDb.close();
+                }
+            }
+            assertTrue("Writes continued during backups: " + committedRows.get(), writer.isAlive());
+        } finally {
+            writing.set(false);
+            writer.join(20000);
+        }
+        assertNull("Writer failed", writerError.get());
+        File snapshot = new File(new File(MyContextHolder.get().context().getCacheDir(), "backup_snapshot"),
+                dataFile.getName());
+        assertFalse("Snapshot is deleted " + snapshot, snapshot.exists());
+    }
+
+    private void insertRows(int count) {
+        db.beginTransactionNonExclusive();
+        try {
+            for (int ind = 0; ind < count; ind++) {
+                db.execSQL("INSERT INTO " + TABLE + " (row_value) VALUES ('row of a test, which should be long"
+                        + " enough to fill pages of the database " + ind + "')");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        committedRows.addAndGet(count);
+    }
+
+    private static File restore(File folder, File restored) throws IOException {
+        MyBackupDataInput input = new MyBackupDataInput(folder);
+        assertTrue("Header of " + folder, input.readNextHeader());
+        assertEquals(KEY, input.getKey());
+        try (FileOutputStream out = new FileOutputStream(restored, false)) {
+            byte[] chunk = new byte[MyBackupDataInput.FILE_CHUNK_SIZE];
+            long restoredSize = 0;
+            while (restoredSize < input.getDataSize()) {
+                int read = input.readEntityData(chunk, 0, chunk.length);
+                assertTrue("Read at " + restoredSize + " of " + input.getDataSize(), read > 0);
+                out.write(chunk, 0, read);
+                restoredSize += read;
+            }
+        }
+        return restored;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.backup;
+
+import android.support.annotation.Nullable;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.util.FileUtils;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips of compressed and incremental backups to a folder
+ * @author yvolk@yurivolkov.com
+ */
+public class IncrementalBackupTest {
+    private static final String KEY = "incremental_test";
+    private static final String FILE_EXTENSION = ".dat";
+    private static final int BLOCK_SIZE = BlockHashes.BLOCK_SIZE;
+    /** Parts of a file, written at once, as {@link MyBackupAgent} does */
+    private static final int TRANSFER_SIZE = 4 * BLOCK_SIZE;
+
+    private final Random random = new Random(20181018);
+    private File rootFolder;
+    private File sourceFile;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        rootFolder = new File(MyContextHolder.get().context().getCacheDir(), "IncrementalBackupTest");
+        deleteFolder(rootFolder);
+        assertTrue("Created " + rootFolder, rootFolder.mkdirs());
+        sourceFile = new File(rootFolder, "source" + FILE_EXTENSION);
+    }
+
+    @After
+    public void tearDown() {
+        deleteFolder(rootFolder);
+    }
+
+    @Test
+    public void testCompressedBackup() throws IOException {
+        byte[] data = newData(5 * BLOCK_SIZE + 123);
+        // Compressible data
+        Arrays.fill(data, BLOCK_SIZE, 3 * BLOCK_SIZE, (byte) 7);
+        File folder = backup("compressed", data, true, false, null);
+        File dataFile = getDataFile(folder, true);
+        assertTrue("Compressed " + dataFile.length() + " bytes", dataFile.length() < data.length);
+        assertArrayEquals("Restored from " + folder, data, restore(folder));
+    }
+
+    @Test
+    public void testIncrementalBackups() throws IOException {
+        byte[] data = newData(5 * BLOCK_SIZE + 123);
+        File full = backup("full", data, false, true, null);
+        assertEquals("Full backup", "", readHeader(full).optString(MyBackupDataOutput.KEY_BASE_BACKUP));
+        assertArrayEquals("Restored from " + full, data, restore(full));
+
+        byte[] data1 = data.clone();
+        changeBytes(data1, BLOCK_SIZE + 10, 100);
+        changeBytes(data1, data1.length - 20, 20);
+        File incremental1 = backup("incremental1", data1, false, true, full);
+        assertEquals("Base of the first incremental backup", full.getName(),
+                readHeader(incremental1).optString(MyBackupDataOutput.KEY_BASE_BACKUP));
+        assertEquals("Only changed blocks are written", BLOCK_SIZE + data1.length % BLOCK_SIZE,
+                getDataFile(incremental1, false).length());
+        assertArrayEquals("Restored from " + incremental1, data1, restore(incremental1));
+
+        byte[] data2 = Arrays.copyOf(data1, data1.length + BLOCK_SIZE);
+        changeBytes(data2, 3 * BLOCK_SIZE, 1);
+        changeBytes(data2, data1.length, BLOCK_SIZE);
+        File incremental2 = backup("incremental2", data2, true, true, incremental1);
+        assertEquals("Base of the second incremental backup", incremental1.getName(),
+                readHeader(incremental2).optString(MyBackupDataOutput.KEY_BASE_BACKUP));
+        assertArrayEquals("Restored from " + incremental2, data2, restore(incremental2));
+        assertArrayEquals("Base backup is not changed " + incremental1, data1, restore(incremental1));
+    }
+
+    @Test
+    public void testMissingBaseBackup() throws IOException {
+        byte[] data = newData(3 * BLOCK_SIZE);
+        File full = backup("full", data, false, true, null);
+        changeBytes(data, 0, 10);
+        File incremental = backup("incremental", data, false, true, full);
+        deleteFolder(full);
+        assertFalse("Deleted " + full, full.exists());
+        try {
+            restore(incremental);
+            fail("Restored without the base backup " + full);
+        } catch (FileNotFoundException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Base backup"));
+        }
+    }
+
+    private byte[] newData(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private void changeBytes(byte[] data, int offset, int length) {
+        for (int ind = offset; ind < offset + length; ind++) {
+            data[ind] = (byte) (data[ind] + 1 + random.nextInt(250));
+        }
+    }
+
+    private File backup(String folderName, byte[] data, boolean compressed, boolean incremental,
+                        @Nullable File baseFolder) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(sourceFile, false)) {
+            out.write(data);
+        }
+        File folder = new File(rootFolder, folderName);
+        assertTrue("Created " + folder, folder.mkdirs());
+        MyBackupDataOutput output = new MyBackupDataOutput(folder);
+        output.setCompressed(compressed);
+        if (incremental) {
+            output.setIncremental(baseFolder);
+        }
+        output.writeEntityHeader(KEY, data.length, FILE_EXTENSION);
+        assertFalse("Header is written after data", getHeaderFile(folder).exists());
+        try (FileInputStream inputStream = new FileInputStream(sourceFile);
+             FileChannel in = inputStream.getChannel()) {
+            long position = 0;
+            while (position < data.length) {
+                long written = output.writeEntityData(in, position, Math.min(TRANSFER_SIZE, data.length - position));
+                assertTrue("Written at " + position, written > 0);
+                position += written;
+            }
+        }
+        assertTrue("Header is written " + folder, getHeaderFile(folder).exists());
+        return folder;
+    }
+
+    private static byte[] restore(File folder) throws IOException {
+        MyBackupDataInput input = new MyBackupDataInput(folder);
+        assertTrue("Header of " + folder, input.readNextHeader());
+        assertEquals(KEY, input.getKey());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[MyBackupDataInput.FILE_CHUNK_SIZE];
+        while (out.size() < input.getDataSize()) {
+            int read = input.readEntityData(chunk, 0, chunk.length);
+            assertTrue("Read at " + out.size() + " of " + input.getDataSize(), read > 0);
+            out.write(chunk, 0, read);
+        }
+        assertFalse("One entity in " + folder, input.readNextHeader());
+        return out.toByteArray();
+    }
+
+    private static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteFolder(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        folder.delete();
+    }
+
+    private static File getHeaderFile(File folder) {
+        return new File(folder, KEY + MyBackupDataOutput.HEADER_FILE_SUFFIX);
+    }
+
+    private static JSONObject readHeader(File folder) throws IOException {
+        return FileUtils.getJSONObject(getHeaderFile(folder));
+    }
+
+    private static File getDataFile(File folder, boolean compressed) {
+        return new File(folder, MyBackupDataOutput.getDataFileName(KEY, FILE_EXTENSION, compressed));
+    }
+}
@@ -18,6 +18,7 @@ package org.andstatus.app.context;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.NonNull;
 
 import org.andstatus.app.data.AssertionData;
@@ -41,6 +42,7 @@ public class MyContextTestImpl extends MyContextImpl {
     private volatile Class<? extends HttpConnection> httpConnectionMockClass = null;
     private volatile HttpConnection httpConnectionMockInstance = null;
     private volatile ConnectionState mockedConnectionState = ConnectionState.UNKNOWN;
+    private volatile SQLiteDatabase mockedDatabase = null;
     private final Map<NotificationEventType, NotificationData> androidNotifications = new ConcurrentHashMap<>();
 
     MyContextTestImpl(MyContextTestImpl parent, Context context, Object initializer) {
@@ -125,6 +127,16 @@ public class MyContextTestImpl extends MyContextImpl {
         this.mockedConnectionState = connectionState;
     }
 
+    @Override
+    public SQLiteDatabase getDatabase() {
+        return mockedDatabase == null ? super.getDatabase() : mockedDatabase;
+    }
+
+    /** Allows to test failures of database operations */
+    public void setMockedDatabase(SQLiteDatabase database) {
+        this.mockedDatabase = database;
+    }
+
     @Override
 	public void notify(NotificationData data) {
 		super.notify(data);
@@ -51,6 +51,7 @@ import org.andstatus.app.util.TriState;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.andstatus.app.context.DemoData.demoData;
@@ -622,6 +623,75 @@ public class DataUpdaterTest {
         assertEquals("Notified actor", myAuthor1, activity2.getNotifiedActor());
     }
 
+    @Test
+    public void storeActivitiesInBatch() {
+        MyAccount ma = demoData.getMyAccount(demoData.gnusocialTestAccountName);
+        Actor accountActor = ma.getActor();
+        final int size = 40;
+
+        List<AActivity> oneByOne = newPageOfNotes(accountActor, "oneByOne", size);
+        DataUpdater di = new DataUpdater(ma);
+        for (AActivity activity : oneByOne) {
+            di.onActivity(activity);
+        }
+        assertRowsOfPage(oneByOne, size);
+
+        List<AActivity> batch = newPageOfNotes(accountActor, "batch", size);
+        new DataUpdater(ma).onActivities(batch);
+        assertRowsOfPage(batch, size);
+        AActivity last = batch.get(size - 1);
+        assertEquals("Latest activity of " + last.getAuthor(), last.getId(),
+                MyQuery.actorIdToLongColumnValue(ActorTable.ACTOR_ACTIVITY_ID, last.getAuthor().actorId));
+
+        List<AActivity> updated = new ArrayList<>();
+        for (AActivity activity : batch) {
+            AActivity activity2 = AActivity.newPartialNote(accountActor, activity.getAuthor(),
+                    activity.getNote().oid, activity.getUpdatedDate() + 1000, DownloadStatus.LOADED);
+            activity2.getNote().setContent("Updated " + activity.getNote().getContent());
+            activity2.getNote().via = "AndStatus";
+            updated.add(activity2);
+        }
+        new DataUpdater(ma).onActivities(updated);
+        assertRowsOfPage(updated, size);
+        for (int ind = 0; ind < size; ind++) {
+            assertEquals("The same note is updated", batch.get(ind).getNote().noteId,
+                    updated.get(ind).getNote().noteId);
+            assertEquals("The same activity is updated", batch.get(ind).getId(), updated.get(ind).getId());
+        }
+    }
+
+    private void assertRowsOfPage(List<AActivity> activities, int size) {
+        Actor author = activities.get(0).getAuthor();
+        assertEquals("Notes of " + author, size, MyQuery.getLongs("SELECT " + NoteTable._ID
+                + " FROM " + NoteTable.TABLE_NAME
+                + " WHERE " + NoteTable.AUTHOR_ID + "=" + author.actorId).size());
+        assertEquals("Activities of " + author, size, MyQuery.getLongs("SELECT " + ActivityTable._ID
+                + " FROM " + ActivityTable.TABLE_NAME
+                + " WHERE " + ActivityTable.ACTOR_ID + "=" + author.actorId).size());
+        for (AActivity activity : activities) {
+            Note note = activity.getNote();
+            assertTrue("Activity should be added " + activity, activity.getId() != 0);
+            assertTrue("Note should be added " + activity, note.noteId != 0);
+            assertEquals("Note of the activity " + activity, note.noteId,
+                    MyQuery.activityIdToLongColumnValue(ActivityTable.NOTE_ID, activity.getId()));
+            assertEquals("Content of " + note, note.getContent(),
+                    MyQuery.noteIdToStringColumnValue(NoteTable.CONTENT, note.noteId));
+            assertEquals("Conversation of " + note, note.noteId,
+                    MyQuery.noteIdToLongColumnValue(NoteTable.CONVERSATION_ID, note.noteId));
+            assertTrue("Inserted date of " + note, MyQuery.noteIdToLongColumnValue(NoteTable.INS_DATE, note.noteId) > 0);
+        }
+    }
+
+    private List<AActivity> newPageOfNotes(Actor accountActor, String name, int size) {
+        Actor author = Actor.fromOriginAndActorOid(accountActor.origin, name + demoData.testRunUid);
+        author.setUsername(name + demoData.testRunUid + "@example.com");
+        List<AActivity> activities = new ArrayList<>();
+        for (int ind = 1; ind <= size; ind++) {
+            activities.add(newLoadedNote(accountActor, author, "Note " + ind + " of a page " + demoData.testRunUid));
+        }
+        return activities;
+    }
+
     private AActivity newLoadedNote(Actor accountActor, Actor author, String content) {
         AActivity activity1 = AActivity.newPartialNote(accountActor, author, String.valueOf(System.nanoTime()),
                 System.currentTimeMillis(), DownloadStatus.LOADED);
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.andstatus.app.account.MyAccount;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.database.table.NoteSearchTable;
+import org.andstatus.app.database.table.NoteTable;
+import org.andstatus.app.net.social.AActivity;
+import org.andstatus.app.net.social.Actor;
+import org.andstatus.app.util.MyLog;
+import org.andstatus.app.util.SelectionAndArgs;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.andstatus.app.context.DemoData.demoData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Full text search index of notes
+ * @author yvolk@yurivolkov.com
+ */
+public class NoteSearchTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+        db = MyContextHolder.get().getDatabase();
+        assertTrue("Full text search index exists", NoteSearchTable.isAvailable(db));
+    }
+
+    @Test
+    public void testSearchSelectionUsesFtsMatch() {
+        SelectionAndArgs search = MyProvider.getSearchSelection(db, "Word, contains:andstatus.org");
+        assertTrue(search.toString(), search.selection.contains(NoteSearchTable.TABLE_NAME));
+        assertTrue(search.toString(), search.selection.contains(" MATCH ?"));
+        assertEquals(search.toString(), "\"word\"", search.selectionArgs[0]);
+        assertEquals("FTS query and two LIKE arguments " + search, 3, search.selectionArgs.length);
+
+        search = MyProvider.getSearchSelection(db, "contains:andstatus.org");
+        assertFalse("Cannot be matched by the index " + search, search.selection.contains(" MATCH "));
+        assertEquals(search.toString(), 1, search.selectionArgs.length);
+    }
+
+    @Test
+    public void testIndexIsInSyncWithNotes() {
+        MyAccount ma = demoData.getMyAccount(demoData.gnusocialTestAccountName);
+        Actor accountActor = ma.getActor();
+        Actor author = Actor.fromOriginAndActorOid(accountActor.origin, "ftsAuthor" + demoData.testRunUid);
+        author.setUsername("ftsAuthor" + demoData.testRunUid + "@example.com");
+        String noteOid = "fts" + MyLog.uniqueCurrentTimeMS();
+        String word1 = "ftsfirst" + MyLog.uniqueCurrentTimeMS();
+        String word2 = "ftssecond" + MyLog.uniqueCurrentTimeMS();
+        String word3 = "ftsthird" + MyLog.uniqueCurrentTimeMS();
+        long updatedDate = System.currentTimeMillis();
+
+        AActivity activity = newNote(accountActor, author, noteOid, updatedDate, "The first " + word1);
+        new DataUpdater(ma).onActivity(activity);
+        long noteId = activity.getNote().noteId;
+        assertTrue("Note added", noteId != 0);
+        assertEquals(Collections.singleton(noteId), search(word1));
+
+        AActivity updated = newNote(accountActor, author, noteOid, updatedDate + 1000, "The second " + word2);
+        new DataUpdater(ma).onActivity(updated);
+        assertEquals("The same note", noteId, updated.getNote().noteId);
+        assertTrue("Old content is removed from the index", search(word1).isEmpty());
+        assertEquals(Collections.singleton(noteId), search(word2));
+
+        AActivity updatedInBatch = newNote(accountActor, author, noteOid, updatedDate + 2000, "The third " + word3);
+        new DataUpdater(ma).onActivities(Collections.singletonList(updatedInBatch));
+        assertEquals("The same note", noteId, updatedInBatch.getNote().noteId);
+        assertTrue("Old content is removed from the index", search(word2).isEmpty());
+        assertEquals(Collections.singleton(noteId), search(word3));
+
+        MyProvider.deleteNote(MyContextHolder.get().context(), noteId);
+        assertEquals("Note deleted", 0, MyQuery.noteIdToLongColumnValue(NoteTable._ID, noteId));
+        assertTrue("Deleted note is removed from the index", search(word3).isEmpty());
+    }
+
+    private static AActivity newNote(Actor accountActor, Actor author, String noteOid, long updatedDate,
+                                     String content) {
+        AActivity activity = AActivity.newPartialNote(accountActor, author, noteOid, updatedDate,
+                DownloadStatus.LOADED);
+        activity.getNote().setContent(content);
+        return activity;
+    }
+
+    private Set<Long> search(String word) {
+        return MyQuery.getLongs("SELECT " + NoteSearchTable.DOCID + " FROM " + NoteSearchTable.TABLE_NAME
+                + " WHERE " + NoteSearchTable.CONTENT_TO_SEARCH + " MATCH '" + word + "'");
+    }
+}
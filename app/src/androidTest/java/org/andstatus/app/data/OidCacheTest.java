@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import org.andstatus.app.context.MyContext;
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.andstatus.app.context.DemoData.demoData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class OidCacheTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        OidCache cache = new OidCache();
+        cache.put(OidEnum.NOTE_OID, 1, "note1", 11);
+        cache.put(OidEnum.ACTOR_OID, 1, "note1", 21);
+        assertEquals(11, cache.get(OidEnum.NOTE_OID, 1, "note1"));
+        assertEquals("Other origin", 0, cache.get(OidEnum.NOTE_OID, 2, "note1"));
+        assertEquals(21, cache.get(OidEnum.ACTOR_OID, 1, "note1"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.put(OidEnum.NOTE_OID, 1, "note1changed", 11);
+        assertEquals("Old oid of the row", 0, cache.get(OidEnum.NOTE_OID, 1, "note1"));
+        assertEquals(11, cache.get(OidEnum.NOTE_OID, 1, "note1changed"));
+
+        cache.remove(OidEnum.NOTE_OID, 11);
+        assertEquals(0, cache.get(OidEnum.NOTE_OID, 1, "note1changed"));
+        assertEquals(21, cache.get(OidEnum.ACTOR_OID, 1, "note1"));
+        cache.clear(OidEnum.ACTOR_OID);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        OidCache cache = new OidCache();
+        for (int id = 1; id <= OidCache.MAX_SIZE_PER_ORIGIN; id++) {
+            cache.put(OidEnum.ACTIVITY_OID, 1, "oid" + id, id);
+        }
+        assertEquals(1, cache.get(OidEnum.ACTIVITY_OID, 1, "oid1"));
+        cache.put(OidEnum.ACTIVITY_OID, 1, "oidNew", OidCache.MAX_SIZE_PER_ORIGIN + 1);
+        assertEquals(OidCache.MAX_SIZE_PER_ORIGIN, cache.size());
+        assertEquals("Recently used", 1, cache.get(OidEnum.ACTIVITY_OID, 1, "oid1"));
+        assertEquals("Least recently used", 0, cache.get(OidEnum.ACTIVITY_OID, 1, "oid2"));
+    }
+
+    @Test
+    public void testOidToIdIsCached() {
+        MyContext myContext = TestSuite.getMyContextForTest();
+        long originId = demoData.getConversationMyAccount().getOriginId();
+        String actorOid = demoData.getConversationMyAccount().getActorOid();
+        long actorId = MyQuery.oidToId(myContext, OidEnum.ACTOR_OID, originId, actorOid);
+        assertNotEquals(0, actorId);
+        long hits = myContext.oidCache().getHits();
+        assertEquals(actorId, MyQuery.oidToId(myContext, OidEnum.ACTOR_OID, originId, actorOid));
+        assertEquals(hits + 1, myContext.oidCache().getHits());
+    }
+
+    @Test
+    public void testOidIsUnquoted() {
+        MyContext myContext = TestSuite.getMyContextForTest();
+        long originId = demoData.getConversationMyAccount().getOriginId();
+        String actorOid = demoData.getConversationMyAccount().getActorOid();
+        long actorId = MyQuery.oidToId(myContext, OidEnum.ACTOR_OID, originId, actorOid);
+        assertNotEquals(0, actorId);
+        for (String oid : new String[]{" " + actorOid + " ", "'" + actorOid + "'", " '" + actorOid + "' "}) {
+            myContext.oidCache().clear(OidEnum.ACTOR_OID);
+            assertEquals("Oid:<" + oid + ">", actorId, MyQuery.oidToId(myContext, OidEnum.ACTOR_OID, originId, oid));
+        }
+        assertEquals("'it''s'", MyQuery.quoteIfNotQuoted(" 'it's' "));
+        assertEquals("it's", MyQuery.unquote(" 'it's' "));
+        assertEquals("''", MyQuery.quoteIfNotQuoted(null));
+        assertEquals("''''", MyQuery.quoteIfNotQuoted("'"));
+    }
+}
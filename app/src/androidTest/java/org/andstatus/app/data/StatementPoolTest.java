@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reuse of compiled statements by one and by several threads, and their cleanup
+ * @author yvolk@yurivolkov.com
+ */
+public class StatementPoolTest {
+    private static final String SQL_NAME = "SELECT name FROM test_names WHERE _id=?";
+    private static final String SQL_COUNT = "SELECT COUNT(*) FROM test_names WHERE _id>?";
+    private static final int ROWS = 10;
+
+    private SQLiteDatabase db1;
+    private SQLiteDatabase db2;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        db1 = newDatabase("first");
+        db2 = newDatabase("second");
+    }
+
+    @After
+    public void tearDown() {
+        // Closes statements of the test databases
+        StatementPool.of(MyContextHolder.get().getDatabase());
+        db1.close();
+        db2.close();
+    }
+
+    private static SQLiteDatabase newDatabase(String prefix) {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE test_names (_id INTEGER PRIMARY KEY, name TEXT)");
+        for (int id = 1; id <= ROWS; id++) {
+            db.execSQL("INSERT INTO test_names (_id, name) VALUES (" + id + ", '" + prefix + id + "')");
+        }
+        return db;
+    }
+
+    @Test
+    public void testStatementsAreReused() {
+        StatementPool pool = StatementPool.of(db1);
+        assertSame("The same pool for the same database", pool, StatementPool.of(db1));
+
+        assertEquals("first3", pool.simpleQueryForString(SQL_NAME, 3L));
+        assertEquals("first4", pool.simpleQueryForString(SQL_NAME, 4));
+        assertEquals(ROWS - 2, pool.simpleQueryForLong(SQL_COUNT, 2L));
+        assertEquals(pool.toString(), 2, pool.getCompiled());
+        assertEquals(pool.toString(), 1, pool.getReused());
+        assertEquals("Idle statements of " + SQL_NAME, 1, pool.idleCount(SQL_NAME));
+
+        try {
+            pool.simpleQueryForString(SQL_NAME, ROWS + 1L);
+            fail("No rows expected");
+        } catch (SQLiteDoneException e) {
+            assertEquals("A statement is returned after a failed query", 1, pool.idleCount(SQL_NAME));
+        }
+        assertEquals("Null is bound to a reused statement", 0, pool.simpleQueryForLong(SQL_COUNT, (Object) null));
+    }
+
+    @Test
+    public void testPoolOfEachDatabase() {
+        StatementPool pool1 = StatementPool.of(db1);
+        assertEquals("first1", pool1.simpleQueryForString(SQL_NAME, 1L));
+        assertEquals(1, pool1.idleCount(SQL_NAME));
+
+        StatementPool pool2 = StatementPool.of(db2);
+        assertNotSame("A pool of another database", pool1, pool2);
+        assertEquals("Statements of the previous database are closed", 0, pool1.idleCount(SQL_NAME));
+        assertEquals("Queries of the database", "second1", pool2.simpleQueryForString(SQL_NAME, 1L));
+        assertEquals(pool2.toString(), 1, pool2.getCompiled());
+
+        long compiled = pool1.getCompiled();
+        assertEquals("A closed pool still answers", "first2", pool1.simpleQueryForString(SQL_NAME, 2L));
+        assertEquals(pool1.toString(), compiled + 1, pool1.getCompiled());
+        assertEquals("A closed pool doesn't keep statements", 0, pool1.idleCount(SQL_NAME));
+
+        StatementPool pool1again = StatementPool.of(db1);
+        assertNotSame("A new pool after the database was replaced", pool1, pool1again);
+        assertEquals("Statements of the replaced database are closed", 0, pool2.idleCount(SQL_NAME));
+        assertEquals("first1", pool1again.simpleQueryForString(SQL_NAME, 1L));
+    }
+
+    @Test
+    public void testStatementIsUsedByOneThread() throws Exception {
+        final int threads = 8;
+        final int queriesPerThread = 200;
+        StatementPool pool = StatementPool.of(db1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int ind = 0; ind < threads; ind++) {
+                final long id = ind % ROWS + 1;
+                futures.add(executor.submit(() -> {
+                    start.await(20, TimeUnit.SECONDS);
+                    int mismatches = 0;
+                    for (int query = 0; query < queriesPerThread; query++) {
+                        if (!("first" + id).equals(pool.simpleQueryForString(SQL_NAME, id))) {
+                            mismatches++;
+                        }
+                    }
+                    return mismatches;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                assertEquals("Arguments of other threads were bound " + pool, 0,
+                        (int) future.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(pool.toString(), threads * queriesPerThread, pool.getCompiled() + pool.getReused());
+        assertTrue(pool.toString(), pool.getCompiled() <= threads);
+        int idle = pool.idleCount(SQL_NAME);
+        assertTrue("Idle statements: " + idle + ", " + pool,
+                idle > 0 && idle <= StatementPool.IDLE_STATEMENTS_PER_SQL_MAX);
+    }
+}
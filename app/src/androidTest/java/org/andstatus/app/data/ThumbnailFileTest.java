@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import android.graphics.Bitmap;
+
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.util.MyLog;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author yvolk@yurivolkov.com
+ */
+public class ThumbnailFileTest {
+    private static final String ORIGINAL_NAME = "thumbnail_test_original.png";
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testDeletedWithOriginal() throws IOException {
+        File original = newOriginal();
+        ThumbnailFile thumbnail = newThumbnail(original);
+        long thumbnailSize = thumbnail.getFile().length();
+        assertTrue("Thumbnail size " + thumbnailSize, thumbnailSize > 0);
+        assertEquals("Size of thumbnails of " + original, Long.valueOf(thumbnailSize),
+                ThumbnailFile.getSizesByOriginalName().get(ORIGINAL_NAME));
+        assertTrue("Thumbnails are counted in size of media", DownloadFile.getDirSize() >= thumbnailSize);
+
+        assertTrue("Original deleted", new DownloadFile(ORIGINAL_NAME).delete());
+        assertFalse("Thumbnail deleted with original " + thumbnail, thumbnail.getFile().exists());
+        assertFalse("No thumbnails of " + original, ThumbnailFile.getSizesByOriginalName().containsKey(ORIGINAL_NAME));
+    }
+
+    @Test
+    public void testPruneOrphans() throws IOException {
+        ThumbnailFile.pruneOrphans();
+        File original = newOriginal();
+        ThumbnailFile thumbnail = newThumbnail(original);
+        File tmpFile = new File(thumbnail.getFile().getParentFile(), thumbnail.getFile().getName() + ".tmp");
+        writeBytes(tmpFile, 10);
+        assertTrue("Original deleted", original.delete());
+
+        assertEquals("Young files are skipped", 0, ThumbnailFile.pruneOrphans());
+        assertTrue("Young thumbnail kept " + thumbnail, thumbnail.getFile().exists());
+        assertTrue("Young temporary file kept " + tmpFile, tmpFile.exists());
+
+        long lastModifiedOld = ((System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)) / 1000) * 1000;
+        if (!thumbnail.getFile().setLastModified(lastModifiedOld) || !tmpFile.setLastModified(lastModifiedOld)) {
+            MyLog.e(this, "Couldn't set modification date of " + thumbnail + " and " + tmpFile);
+            thumbnail.getFile().delete();
+            tmpFile.delete();
+            return;
+        }
+        assertEquals("Old orphans pruned", 2, ThumbnailFile.pruneOrphans());
+        assertFalse("Orphan thumbnail deleted " + thumbnail, thumbnail.getFile().exists());
+        assertFalse("Temporary file deleted " + tmpFile, tmpFile.exists());
+    }
+
+    private static File newOriginal() throws IOException {
+        File original = new File(DownloadFile.getFilesDir(), ORIGINAL_NAME);
+        writeBytes(original, 1000);
+        return original;
+    }
+
+    private static ThumbnailFile newThumbnail(File original) {
+        ThumbnailFile thumbnail = new ThumbnailFile(original, 16, 16);
+        thumbnail.save(Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888));
+        assertNotNull("Thumbnail loaded " + thumbnail, thumbnail.load());
+        return thumbnail;
+    }
+
+    private static void writeBytes(File file, int count) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[count]);
+        }
+    }
+}
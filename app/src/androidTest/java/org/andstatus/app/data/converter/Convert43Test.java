@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data.converter;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.andstatus.app.backup.ProgressLogger;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.database.table.DownloadTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Validators of downloads, added to a database of the previous version
+ * @author yvolk@yurivolkov.com
+ */
+public class Convert43Test {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testValidatorColumnsAdded() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE download (_id INTEGER PRIMARY KEY AUTOINCREMENT, file_name TEXT)");
+            db.execSQL("INSERT INTO download (file_name) VALUES ('avatar1.png')");
+
+            assertEquals("Upgraded", 44, new Convert43().execute(db, 43, ProgressLogger.getEmpty()));
+
+            try (Cursor cursor = db.rawQuery("SELECT " + DownloadTable.FILE_NAME + ", " + DownloadTable.ETAG
+                    + ", " + DownloadTable.LAST_MODIFIED + " FROM " + DownloadTable.TABLE_NAME, null)) {
+                assertTrue("The row is kept", cursor.moveToFirst());
+                assertEquals("avatar1.png", cursor.getString(0));
+                assertTrue("No ETag of an old download, so it is not revalidated", cursor.isNull(1));
+                assertTrue("No Last-Modified of an old download", cursor.isNull(2));
+            }
+        } finally {
+            db.close();
+        }
+    }
+}
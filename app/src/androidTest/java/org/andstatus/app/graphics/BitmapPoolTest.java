@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import android.graphics.Bitmap;
+import android.util.DisplayMetrics;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author yvolk@yurivolkov.com
+ */
+public class BitmapPoolTest {
+    private static final int MAX_SIZE = 400;
+    /** Size of a bitmap of the 1x4 size class */
+    private static final long NARROW_BYTES = (long) MAX_SIZE / 4 * MAX_SIZE * ImageCache.BYTES_PER_PIXEL;
+    private DisplayMetrics displayMetrics;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        displayMetrics = MyContextHolder.get().context().getResources().getDisplayMetrics();
+    }
+
+    @Test
+    public void testSmallestAreaIsDroppedFirst() {
+        BitmapPool pool = new BitmapPool(displayMetrics, MAX_SIZE, MAX_SIZE, 4 * NARROW_BYTES);
+        Bitmap narrow = pool.acquire(80, 390);
+        assertNotNull(pool.getInfo(), narrow);
+        assertEquals(MAX_SIZE / 4, narrow.getWidth());
+        assertEquals(MAX_SIZE, narrow.getHeight());
+        Bitmap low = pool.acquire(180, 90);
+        assertNotNull(pool.getInfo(), low);
+        assertEquals(MAX_SIZE / 2, low.getWidth());
+        assertEquals(MAX_SIZE / 4, low.getHeight());
+        pool.release(narrow);
+        pool.release(low);
+
+        // The 2x1 bitmap has a smaller area than the 1x4 one, though its key in the map is larger
+        pool.setBytesBudget(NARROW_BYTES);
+        assertSame("The larger bitmap should be kept. " + pool.getInfo(), narrow, pool.acquire(80, 390));
+        assertNull("Budget is exhausted. " + pool.getInfo(), pool.acquire(180, 90));
+    }
+
+    @Test
+    public void testReuseOfLargerSizeClass() {
+        BitmapPool pool = new BitmapPool(displayMetrics, MAX_SIZE, MAX_SIZE, 4 * NARROW_BYTES);
+        Bitmap large = pool.acquire(MAX_SIZE, MAX_SIZE);
+        assertNotNull(pool.getInfo(), large);
+        pool.release(large);
+        assertSame("A free bitmap of a larger size class is reused. " + pool.getInfo(), large,
+                pool.acquire(10, 10));
+    }
+}
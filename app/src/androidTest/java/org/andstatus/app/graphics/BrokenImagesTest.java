@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.data.AttachedImageFile;
+import org.andstatus.app.data.DownloadFile;
+import org.andstatus.app.data.DownloadStatus;
+import org.andstatus.app.util.MyLog;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Paths of images, which couldn't be decoded
+ * @author yvolk@yurivolkov.com
+ */
+public class BrokenImagesTest {
+    private final AtomicLong now = new AtomicLong(1000000);
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        ImageCaches.initialize(MyContextHolder.get().context());
+    }
+
+    @Test
+    public void testExpiry() {
+        BrokenImages brokenImages = new BrokenImages(now::get);
+        brokenImages.add("path1");
+        now.addAndGet(BrokenImages.EXPIRE_AFTER_MILLIS / 2);
+        brokenImages.add("path2");
+        assertTrue(brokenImages.contains("path1"));
+
+        now.addAndGet(BrokenImages.EXPIRE_AFTER_MILLIS / 2 + 1);
+        assertFalse("Expired", brokenImages.contains("path1"));
+        assertTrue("Not expired yet", brokenImages.contains("path2"));
+        assertEquals("Expired path is removed", 1, brokenImages.size());
+
+        brokenImages.add("path2");
+        now.addAndGet(BrokenImages.EXPIRE_AFTER_MILLIS / 2 + 1);
+        assertTrue("Expiration starts anew, when the path is added again", brokenImages.contains("path2"));
+    }
+
+    @Test
+    public void testSizeBoundAndEvictionOrder() {
+        BrokenImages brokenImages = new BrokenImages(now::get);
+        for (int ind = 0; ind < BrokenImages.MAX_SIZE; ind++) {
+            brokenImages.add("path" + ind);
+        }
+        assertEquals(BrokenImages.MAX_SIZE, brokenImages.size());
+
+        brokenImages.add("path0");
+        brokenImages.add("pathNew1");
+        assertEquals("Size is bounded", BrokenImages.MAX_SIZE, brokenImages.size());
+        assertTrue("Added again, so it is not the oldest", brokenImages.contains("path0"));
+        assertFalse("The oldest is evicted", brokenImages.contains("path1"));
+        assertTrue(brokenImages.contains("pathNew1"));
+
+        brokenImages.add("pathNew2");
+        assertFalse("The oldest is evicted", brokenImages.contains("path2"));
+        assertTrue(brokenImages.contains("path3"));
+        assertEquals(BrokenImages.MAX_SIZE, brokenImages.size());
+
+        brokenImages.remove("path3");
+        assertFalse(brokenImages.contains("path3"));
+        assertEquals(BrokenImages.MAX_SIZE - 1, brokenImages.size());
+    }
+
+    /** The same steps, as when a broken image is downloaded again, see DownloadData#onDownloaded */
+    @Test
+    public void testBrokenImageIsClearedAfterDownload() throws IOException {
+        DownloadFile downloadFile = new DownloadFile("broken_image_test_" + MyLog.uniqueCurrentTimeMS() + ".png");
+        File file = downloadFile.getFile();
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write("Not an image".getBytes(StandardCharsets.UTF_8));
+            }
+            ImageCache cache = ImageCaches.getCache(CacheName.ATTACHED_IMAGE);
+            assertNull("Couldn't be decoded", cache.loadAndGetImage(newImageFile(downloadFile)));
+            assertTrue("Remembered as broken", cache.brokenBitmaps.contains(downloadFile.getFilePath()));
+            assertSame("Not decoded again", CachedImage.BROKEN, cache.loadAndGetImage(newImageFile(downloadFile)));
+
+            Bitmap bitmap = Bitmap.createBitmap(20, 10, Bitmap.Config.ARGB_8888);
+            bitmap.eraseColor(Color.GREEN);
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            ImageCaches.onFileChanged(downloadFile.getFilePath());
+            assertFalse("Cleared after the download", cache.brokenBitmaps.contains(downloadFile.getFilePath()));
+
+            CachedImage image = cache.loadAndGetImage(newImageFile(downloadFile));
+            assertNotNull("Decoded after the download", image);
+            assertTrue("Not broken " + image, image != CachedImage.BROKEN);
+            assertEquals(20, image.getImageSize().x);
+        } finally {
+            ImageCaches.onFileChanged(downloadFile.getFilePath());
+            file.delete();
+        }
+    }
+
+    private static AttachedImageFile newImageFile(DownloadFile downloadFile) {
+        return new AttachedImageFile(0, downloadFile.getFilename(),
+                MediaMetadata.fromFilePath(downloadFile.getFilePath()), DownloadStatus.LOADED,
+                System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import android.content.ComponentCallbacks2;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sizes of the image caches on memory trims and after the application returns to foreground
+ * @author yvolk@yurivolkov.com
+ */
+public class ImageCachesTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        ImageCaches.initialize(MyContextHolder.get().context());
+    }
+
+    @Test
+    public void testTrimMemory() {
+        ImageCache cache = ImageCaches.getCache(CacheName.AVATAR);
+        int requestedSize = cache.getRequestedCacheSize();
+        try {
+            ImageCaches.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+            assertEquals(ImageCaches.getCacheInfo(), requestedSize, cache.getCurrentCacheSize());
+
+            ImageCaches.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+            assertEquals(ImageCaches.getCacheInfo(), Math.max(1, requestedSize / 2), cache.getCurrentCacheSize());
+            assertTrue(ImageCaches.getCacheInfo(), ImageCaches.getCacheInfo().contains("memory trim level"));
+
+            ImageCaches.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            assertEquals(ImageCaches.getCacheInfo(), 1, cache.getCurrentCacheSize());
+            assertEquals(ImageCaches.getCacheInfo(), 0, cache.size());
+        } finally {
+            cache.setCurrentCacheSize(requestedSize);
+            ImageCaches.getCache(CacheName.ATTACHED_IMAGE).setCurrentCacheSize(
+                    ImageCaches.getCache(CacheName.ATTACHED_IMAGE).getRequestedCacheSize());
+        }
+    }
+
+    @Test
+    public void testGrowBackInForeground() {
+        ImageCache avatars = ImageCaches.getCache(CacheName.AVATAR);
+        ImageCache attachedImages = ImageCaches.getCache(CacheName.ATTACHED_IMAGE);
+        int avatarsSize = avatars.getRequestedCacheSize();
+        int attachedImagesSize = attachedImages.getRequestedCacheSize();
+        try {
+            ImageCaches.onForeground();
+            ImageCaches.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+            assertEquals(ImageCaches.getCacheInfo(), avatarsSize * 75 / 100, avatars.getCurrentCacheSize());
+            ImageCaches.onForeground();
+            assertEquals("Trimmed in foreground " + ImageCaches.getCacheInfo(), avatarsSize * 75 / 100,
+                    avatars.getCurrentCacheSize());
+
+            ImageCaches.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+            ImageCaches.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+            assertEquals(ImageCaches.getCacheInfo(), avatarsSize / 2, avatars.getCurrentCacheSize());
+            assertEquals(ImageCaches.getCacheInfo(), attachedImagesSize / 2, attachedImages.getCurrentCacheSize());
+
+            ImageCaches.onForeground();
+            assertEquals("Grown back " + ImageCaches.getCacheInfo(), avatarsSize, avatars.getCurrentCacheSize());
+            assertEquals("Grown back " + ImageCaches.getCacheInfo(), attachedImagesSize,
+                    attachedImages.getCurrentCacheSize());
+            assertTrue(ImageCaches.getCacheInfo(), ImageCaches.getCacheInfo().contains("foreground"));
+
+            ImageCaches.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+            ImageCaches.onForeground();
+            assertEquals("Trimmed in foreground again " + ImageCaches.getCacheInfo(), avatarsSize / 2,
+                    avatars.getCurrentCacheSize());
+        } finally {
+            avatars.setCurrentCacheSize(avatarsSize);
+            attachedImages.setCurrentCacheSize(attachedImagesSize);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author yvolk@yurivolkov.com
+ */
+public class ImageDecodePipelineTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testSharedDecoding() throws Exception {
+        String key = "testSharedDecoding";
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger loaded = new AtomicInteger();
+        Supplier<CachedImage> loader = () -> {
+            loaded.incrementAndGet();
+            try {
+                latch.await(20, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        };
+        CompletableFuture<CachedImage> preload = ImageDecodePipeline.load(key, false, loader);
+        CompletableFuture<CachedImage> visible = ImageDecodePipeline.load(key, true, loader);
+        assertSame("Requests of the same image share a decoding", preload, visible);
+        latch.countDown();
+        assertNull(visible.get(20, TimeUnit.SECONDS));
+        assertEquals("Decoded once", 1, loaded.get());
+
+        CompletableFuture<CachedImage> next = ImageDecodePipeline.load(key, true, loader);
+        assertNotSame("A completed decoding is not shared", preload, next);
+        assertNull(next.get(20, TimeUnit.SECONDS));
+        assertEquals("Decoded again", 2, loaded.get());
+        assertTrue(ImageDecodePipeline.getInfo(), ImageDecodePipeline.getInfo().contains("shared:"));
+    }
+
+    @Test
+    public void testFailedDecoding() throws Exception {
+        String key = "testFailedDecoding";
+        AtomicInteger loaded = new AtomicInteger();
+        Supplier<CachedImage> loader = () -> {
+            loaded.incrementAndGet();
+            throw new IllegalStateException("Test failure");
+        };
+        for (int attempt = 1; attempt < 3; attempt++) {
+            try {
+                ImageDecodePipeline.load(key, true, loader).get(20, TimeUnit.SECONDS);
+                fail("Failure expected");
+            } catch (ExecutionException e) {
+                assertTrue("Cause: " + e.getCause(), e.getCause() instanceof IllegalStateException);
+            }
+            assertEquals("A failed decoding is retried on the next request", attempt, loaded.get());
+        }
+    }
+
+    @Test
+    public void testBusyPipelineRejectsToRetryLater() throws Exception {
+        String keyPrefix = "testBusyPipeline-";
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch decodersBusy = new CountDownLatch(ImageDecodePipeline.DECODER_THREADS);
+        List<String> threadNames = new ArrayList<>();
+        Supplier<CachedImage> blockingLoader = () -> {
+            synchronized (threadNames) {
+                threadNames.add(Thread.currentThread().getName());
+            }
+            decodersBusy.countDown();
+            try {
+                released.await(20, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        };
+        List<CompletableFuture<CachedImage>> accepted = new ArrayList<>();
+        try {
+            for (int ind = 0; ind < ImageDecodePipeline.DECODER_THREADS; ind++) {
+                accepted.add(ImageDecodePipeline.load(keyPrefix + "running-" + ind, true, blockingLoader));
+            }
+            assertTrue("All decoders are busy " + ImageDecodePipeline.getInfo(),
+                    decodersBusy.await(20, TimeUnit.SECONDS));
+            for (int ind = 0; ind < ImageDecodePipeline.MAX_QUEUED; ind++) {
+                accepted.add(ImageDecodePipeline.load(keyPrefix + "queued-" + ind, false, () -> null));
+            }
+            CompletableFuture<CachedImage> rejected = ImageDecodePipeline.load(keyPrefix + "rejected", true,
+                    () -> null);
+            assertTrue("Rejected at once " + ImageDecodePipeline.getInfo(), rejected.isCompletedExceptionally());
+            try {
+                rejected.get();
+                fail("Rejection expected");
+            } catch (ExecutionException e) {
+                assertTrue("Retry later: " + e, ImageDecodePipeline.isRetryLater(e));
+            }
+            assertTrue(ImageDecodePipeline.getInfo(), ImageDecodePipeline.getInfo().contains("rejected:"));
+        } finally {
+            released.countDown();
+        }
+        for (CompletableFuture<CachedImage> future : accepted) {
+            assertNull("Accepted requests are decoded", future.get(20, TimeUnit.SECONDS));
+        }
+        for (String threadName : threadNames) {
+            assertTrue("Decoded on a dedicated thread: " + threadName, threadName.startsWith("ImageDecoder-"));
+        }
+        assertNull("Retried request is decoded",
+                ImageDecodePipeline.load(keyPrefix + "rejected", true, () -> null).get(20, TimeUnit.SECONDS));
+        assertFalse("Not a rejection", ImageDecodePipeline.isRetryLater(new IllegalStateException("Test")));
+    }
+
+    @Test
+    public void testVisibleFirst() {
+        Supplier<CachedImage> loader = () -> null;
+        ImageDecodePipeline.Request preload1 = new ImageDecodePipeline.Request("preload1", loader, false);
+        ImageDecodePipeline.Request visible1 = new ImageDecodePipeline.Request("visible1", loader, true);
+        ImageDecodePipeline.Request preload2 = new ImageDecodePipeline.Request("preload2", loader, false);
+        ImageDecodePipeline.Request visible2 = new ImageDecodePipeline.Request("visible2", loader, true);
+
+        PriorityQueue<ImageDecodePipeline.Request> queue = new PriorityQueue<>();
+        queue.add(preload1);
+        queue.add(visible1);
+        queue.add(preload2);
+        queue.add(visible2);
+        assertSame(visible1, queue.poll());
+        assertSame(visible2, queue.poll());
+        assertSame(preload1, queue.poll());
+        assertSame(preload2, queue.poll());
+    }
+}
@@ -31,7 +31,9 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class HttpConnectionMock extends HttpConnection {
@@ -41,8 +43,12 @@ public class HttpConnectionMock extends HttpConnection {
     public volatile int responsesCounter = 0;
     private boolean sameResponse = false;
     private volatile InputStream responseFileStream = null;
+    private volatile int responseStatusCode = 0;
+    private volatile String responseETag = "";
+    private volatile String responseLastModified = "";
 
     private volatile RuntimeException runtimeException = null;
+    private volatile Error error = null;
     private volatile ConnectionException exception = null;
 
     private volatile String password = "password";
@@ -77,10 +83,22 @@ public class HttpConnectionMock extends HttpConnection {
         this.responseFileStream = inputStream;
     }
 
+    /** Status code and validators of next responses, see {@link HttpReadResult#isNotModified()}
+     * @param statusCode 0 - don't set */
+    public void setResponseStatus(int statusCode, String eTag, String lastModified) {
+        responseStatusCode = statusCode;
+        responseETag = eTag;
+        responseLastModified = lastModified;
+    }
+
     public void setRuntimeException(RuntimeException exception) {
         runtimeException = exception;
     }
 
+    public void setError(Error error) {
+        this.error = error;
+    }
+
     public void setException(ConnectionException exception) {
         this.exception = exception;
     }
@@ -100,6 +118,9 @@ public class HttpConnectionMock extends HttpConnection {
     }
 
     private void throwExceptionIfSet() throws ConnectionException {
+        if (error != null) {
+            throw error;
+        }
         if (runtimeException != null) {
             throw  runtimeException;
         }
@@ -126,7 +147,11 @@ public class HttpConnectionMock extends HttpConnection {
 
     private void onRequest(String method, HttpReadResult result) {
         result.strResponse = getNextResponse();
-        if (result.fileResult != null && responseFileStream != null) {
+        if (responseStatusCode != 0) {
+            result.setStatusCode(responseStatusCode);
+            result.onResponseValidators(responseETag, responseLastModified);
+        }
+        if (result.fileResult != null && responseFileStream != null && !result.isNotModified()) {
             try {
                 FileUtils.readStreamToFile(responseFileStream, result.fileResult);
             } catch (IOException e) {
@@ -192,6 +217,13 @@ public class HttpConnectionMock extends HttpConnection {
         return found;
     }
     
+    /** Headers of a conditional request, see {@link HttpReadResult#setValidators(String, String)} */
+    public static Map<String, String> getConditionalHeaders(HttpReadResult result) {
+        Map<String, String> headers = new HashMap<>();
+        result.forEachConditionalHeader(headers::put);
+        return headers;
+    }
+
     public int getRequestsCounter() {
         return results.size();
     }
@@ -21,9 +21,13 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class HttpReadResultTest {
 
@@ -49,4 +53,65 @@ public class HttpReadResultTest {
         assertEquals(true, result.hasFormParams());
         assertTrue(result.toString(), result.toString().contains("posted"));
     }
+
+    @Test
+    public void testConsumeArrayItems() throws ConnectionException {
+        final String url = "https://example.com/somepath/timeline.json";
+        final String in = "{\"since_id\":\"123\",\"results\":[{\"text\":\"Text1\",\"id\":12345678901234,"
+                + "\"tags\":[\"one\",\"two\"],\"reply\":null},"
+                + "{\"text\":\"Text2\",\"favorited\":true,\"rate\":1.5}]"
+                + ",\"items\":[{\"text\":\"Text3\"}]"
+                + "}";
+        List<JSONObject> items = new ArrayList<>();
+        HttpReadResult result = new HttpReadResult(url).setItemConsumer("results", items::add);
+        result.strResponse = in;
+        result.consumeItemsIfNotYet();
+        assertEquals(2, items.size());
+        assertEquals("Text1", items.get(0).optString("text"));
+        assertEquals(12345678901234L, items.get(0).optLong("id"));
+        assertEquals(2, items.get(0).optJSONArray("tags").length());
+        assertTrue(items.get(0).isNull("reply"));
+        assertTrue(items.get(1).optBoolean("favorited"));
+        assertEquals(1.5, items.get(1).optDouble("rate"), 0.001);
+
+        items.clear();
+        result = new HttpReadResult(url).setItemConsumer("absent", items::add);
+        result.strResponse = in;
+        result.consumeItemsIfNotYet();
+        assertEquals("The first array is used if there is no array with the key", 2, items.size());
+
+        items.clear();
+        result = new HttpReadResult(url).setItemConsumer("items", items::add);
+        result.strResponse = "[{\"text\":\"Text1\"},{\"text\":\"Text2\"},{\"text\":\"Text3\"}]";
+        result.consumeItemsIfNotYet();
+        assertEquals(3, items.size());
+        assertEquals("Text3", items.get(2).optString("text"));
+    }
+
+    @Test
+    public void testResponseWithoutArrayIsHardError() throws ConnectionException {
+        final String url = "https://example.com/somepath/timeline.json";
+        assertHardErrorOnConsume(url, "{\"error\":\"Rate limit exceeded\",\"request\":\"/timeline.json\"}");
+        assertHardErrorOnConsume(url, "{\"items\":{\"text\":\"Text1\"},\"results\":[{\"text\":\"Text2\"}]}");
+        assertHardErrorOnConsume(url, "\"Some text\"");
+
+        List<JSONObject> items = new ArrayList<>();
+        HttpReadResult result = new HttpReadResult(url).setItemConsumer("items", items::add);
+        result.strResponse = "{\"items\":[]}";
+        result.consumeItemsIfNotYet();
+        assertEquals("Empty array is a valid response", 0, items.size());
+    }
+
+    private static void assertHardErrorOnConsume(String url, String response) throws ConnectionException {
+        List<JSONObject> items = new ArrayList<>();
+        HttpReadResult result = new HttpReadResult(url).setItemConsumer("items", items::add);
+        result.strResponse = response;
+        try {
+            result.consumeItemsIfNotYet();
+            fail("Should fail on '" + response + "', items: " + items);
+        } catch (ConnectionException e) {
+            assertTrue("Should be a hard error: " + e, e.isHardError());
+        }
+        assertEquals(0, items.size());
+    }
 }
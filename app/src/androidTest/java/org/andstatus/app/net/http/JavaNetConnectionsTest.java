@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.net.http;
+
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Connections are opened, but not connected
+ * @author yvolk@yurivolkov.com
+ */
+public class JavaNetConnectionsTest {
+
+    /** Creates unconnected plain sockets */
+    private static class PlainSocketFactory extends SSLSocketFactory {
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return new String[0];
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return new String[0];
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) {
+            return new Socket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) {
+            return new Socket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) {
+            return new Socket();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) {
+            return new Socket();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) {
+            return new Socket();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testSocketFactoryOfOwnConnections() throws IOException {
+        SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        HttpURLConnection conn1 = JavaNetConnections.open(new URL("https://factory.example.com/one"));
+        HttpURLConnection conn2 = JavaNetConnections.open(new URL("https://factory.example.com/two"));
+        try {
+            assertTrue(conn1.toString(), conn1 instanceof HttpsURLConnection);
+            SSLSocketFactory factory = ((HttpsURLConnection) conn1).getSSLSocketFactory();
+            assertTrue("Factory " + factory, factory instanceof JavaNetConnections.CountingSocketFactory);
+            assertSame("The same factory, so idle connections are reused", factory,
+                    ((HttpsURLConnection) conn2).getSSLSocketFactory());
+            assertSame("Default factory of the process is not changed", defaultFactory,
+                    HttpsURLConnection.getDefaultSSLSocketFactory());
+            assertFalse("Default factory " + defaultFactory,
+                    defaultFactory instanceof JavaNetConnections.CountingSocketFactory);
+        } finally {
+            conn1.disconnect();
+            conn2.disconnect();
+        }
+        assertEquals("Limit of idle connections", Integer.toString(JavaNetConnections.MAX_IDLE_CONNECTIONS),
+                System.getProperty("http.maxConnections"));
+    }
+
+    @Test
+    public void testReusedConnectionsAreCounted() throws IOException {
+        final String host = "reuse.example.com";
+        for (int ind = 0; ind < 4; ind++) {
+            JavaNetConnections.open(new URL("https://" + host + "/" + ind)).disconnect();
+        }
+        JavaNetConnections.open(new URL("http://" + host + "/plain")).disconnect();
+        try (Socket socket = new JavaNetConnections.CountingSocketFactory(new PlainSocketFactory())
+                .createSocket(host, 443)) {
+            assertFalse(socket.isConnected());
+        }
+        String info = JavaNetConnections.getInfo();
+        assertTrue(info, info.contains(host + ": requests:4, new connections:1, resumed TLS sessions:0, reused:75%"));
+    }
+}
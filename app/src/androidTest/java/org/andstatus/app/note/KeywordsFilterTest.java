@@ -16,10 +16,20 @@
 
 package org.andstatus.app.note;
 
+import android.database.Cursor;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
 import org.andstatus.app.note.KeywordsFilter.Keyword;
 import org.andstatus.app.util.MyHtml;
+import org.andstatus.app.util.StringUtils;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import static org.andstatus.app.note.KeywordsFilter.CONTAINS_PREFIX;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -74,6 +84,158 @@ public class KeywordsFilterTest {
         assertNotMatchAll(query, body2);
     }
 
+    @Test
+    public void testSqlSelectionNotMatchedAny() throws Exception {
+        TestSuite.initialize(this);
+        final String body = "Looking for the deleted notice with a word, that is interesting. 100% sure";
+        assertSqlSelectionNotMatchedAny("\"deleted notice\"", body);
+        assertSqlSelectionNotMatchedAny("something other", body);
+        assertSqlSelectionNotMatchedAny("those this that", body);
+        assertSqlSelectionNotMatchedAny("contains:%", body);
+        assertSqlSelectionNotMatchedAny("contains:_", body);
+        assertSqlSelectionNotMatchedAny("Word", body);
+    }
+
+    @Test
+    public void testFtsMatchQuery() {
+        assertEquals("", new KeywordsFilter("contains:andstatus.org").getFtsMatchQuery());
+        assertEquals("\"deleted notice\" \"word\"",
+                new KeywordsFilter("\"Deleted notice\", word, contains:andstatus.org").getFtsMatchQuery());
+    }
+
+    @Test
+    public void testWholeWordsAndPhrases() {
+        assertMatchAny("word", "A word.");
+        assertNotMatchAny("word", "A swordfish");
+        assertNotMatchAny("word", "Words");
+        assertMatchAny("contains:word", "A swordfish");
+        assertMatchAll("\"deleted notice\"", "The deleted notice, again");
+        assertNotMatchAny("\"deleted notice\"", "The notice deleted");
+        assertNotMatchAny("\"deleted notice\"", "The undeleted notice");
+        assertMatchAll("notice deleted", "The deleted notice");
+    }
+
+    /** Overlapping keywords, keywords inside other keywords and keywords, found by failure links */
+    @Test
+    public void testOverlappingKeywords() {
+        KeywordsMatcher matcher = new KeywordsMatcher(Arrays.asList("he", "she", "hers"));
+        assertTrue(matcher.matchesAny("ushers"));
+        assertTrue("All three end inside one word", matcher.matchesAll("ushers"));
+        assertTrue(matcher.matchesAny("usher"));
+        assertFalse(matcher.matchesAll("usher"));
+        assertFalse(matcher.matchesAny("hrs, sh"));
+
+        matcher = new KeywordsMatcher(Arrays.asList("bc", "abcd"));
+        assertTrue("Found by a failure link", matcher.matchesAny("abce"));
+        assertFalse(matcher.matchesAll("abce"));
+        assertTrue(matcher.matchesAll("xabcd"));
+
+        matcher = new KeywordsMatcher(Arrays.asList("aa", "a"));
+        assertTrue(matcher.matchesAll("aa"));
+        assertFalse(matcher.matchesAll("aba"));
+
+        matcher = new KeywordsMatcher(new ArrayList<>());
+        assertFalse(matcher.matchesAny("any text"));
+        assertFalse("No keywords, as before", matcher.matchesAll("any text"));
+    }
+
+    /** The matcher gives the same results as checking each keyword by String.contains() */
+    @Test
+    public void testMatcherAgreesWithContains() {
+        Random random = new Random(20181018);
+        for (int iteration = 0; iteration < 300; iteration++) {
+            List<String> patterns = new ArrayList<>();
+            int patternsCount = 1 + random.nextInt(6);
+            for (int ind = 0; ind < patternsCount; ind++) {
+                String pattern = randomString(random, 1 + random.nextInt(4));
+                if (!patterns.contains(pattern)) patterns.add(pattern);
+            }
+            KeywordsMatcher matcher = new KeywordsMatcher(patterns);
+            for (int textInd = 0; textInd < 20; textInd++) {
+                String text = randomString(random, random.nextInt(30));
+                assertEquals("Any of " + patterns + " in '" + text + "'",
+                        patterns.stream().anyMatch(text::contains), matcher.matchesAny(text));
+                assertEquals("All of " + patterns + " in '" + text + "'",
+                        patterns.stream().allMatch(text::contains), matcher.matchesAll(text));
+            }
+        }
+    }
+
+    /** The filter gives the same results as checking each of its keywords by String.contains() */
+    @Test
+    public void testFilterAgreesWithContains() {
+        Random random = new Random(18102018);
+        String[] words = {"muted", "word", "words", "note", "deleted", "notice", "andstatus.org", "@someone",
+                "#hashtag", "he", "she", "hers"};
+        for (int iteration = 0; iteration < 200; iteration++) {
+            StringBuilder query = new StringBuilder();
+            int keywordsCount = 1 + random.nextInt(4);
+            for (int ind = 0; ind < keywordsCount; ind++) {
+                String word = words[random.nextInt(words.length)];
+                switch (random.nextInt(3)) {
+                    case 0:
+                        query.append(CONTAINS_PREFIX).append(word);
+                        break;
+                    case 1:
+                        query.append("\"").append(word).append(" ").append(words[random.nextInt(words.length)])
+                                .append("\"");
+                        break;
+                    default:
+                        query.append(word);
+                        break;
+                }
+                query.append(", ");
+            }
+            KeywordsFilter filter = new KeywordsFilter(query.toString());
+            for (int noteInd = 0; noteInd < 10; noteInd++) {
+                StringBuilder body = new StringBuilder();
+                int wordsCount = random.nextInt(12);
+                for (int ind = 0; ind < wordsCount; ind++) {
+                    body.append(words[random.nextInt(words.length)]).append(random.nextInt(4) == 0 ? ", " : " ");
+                }
+                String bodyToSearch = MyHtml.getContentToSearch(body.toString());
+                assertEquals("Any of '" + query + "' in '" + bodyToSearch + "'",
+                        containsAny(filter, bodyToSearch), filter.matchedAny(bodyToSearch));
+                assertEquals("All of '" + query + "' in '" + bodyToSearch + "'",
+                        containsAll(filter, bodyToSearch), filter.matchedAll(bodyToSearch));
+            }
+        }
+    }
+
+    /** Matching by String.contains(), as it was done before {@link KeywordsMatcher} */
+    private static boolean containsAny(KeywordsFilter filter, String s) {
+        if (filter.keywordsToFilter.isEmpty() || StringUtils.isEmpty(s)) return false;
+        return filter.keywordsToFilter.stream().anyMatch(keyword -> s.contains(keyword.value));
+    }
+
+    private static boolean containsAll(KeywordsFilter filter, String s) {
+        if (filter.keywordsToFilter.isEmpty() || StringUtils.isEmpty(s)) return false;
+        return filter.keywordsToFilter.stream().allMatch(keyword -> s.contains(keyword.value));
+    }
+
+    /** Small alphabet, so patterns often overlap */
+    private static String randomString(Random random, int length) {
+        final String alphabet = "abc,";
+        StringBuilder builder = new StringBuilder();
+        for (int ind = 0; ind < length; ind++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    private void assertSqlSelectionNotMatchedAny(String query, String body) {
+        final String bodyToSearch = MyHtml.getContentToSearch(body);
+        KeywordsFilter filter = new KeywordsFilter(query);
+        String sql = "SELECT COUNT(*) FROM (SELECT ? AS content) WHERE "
+                + filter.getSqlSelectionNotMatchedAny("content");
+        String[] args = StringUtils.addBeforeArray(filter.getSqlSelectionArgs(), bodyToSearch);
+        try (Cursor cursor = MyContextHolder.get().getDatabase().rawQuery(sql, args)) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Query '" + query + "', body: '" + body + "'",
+                    filter.matchedAny(bodyToSearch) ? 0 : 1, cursor.getLong(0));
+        }
+    }
+
     private void assertOneQueryToKeywords(String query, Keyword... keywords) {
         int size = keywords.length;
         KeywordsFilter filter1 = new KeywordsFilter(query);
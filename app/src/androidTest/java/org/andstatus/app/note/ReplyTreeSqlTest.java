@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.note;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.database.table.NoteTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The recursive query of {@link RecursiveConversationLoader} finds the same notes, as walking
+ * "in reply to" links up and down in memory, the way the loader did it before.
+ * Notes are in a table with the columns of the {@link NoteTable}, which are used by the query
+ * @author yvolk@yurivolkov.com
+ */
+public class ReplyTreeSqlTest {
+    private static final long MISSING_NOTE_ID = 999;
+    private SQLiteDatabase db;
+    /** Note id to {in reply to note id, conversation id} */
+    private final Map<Long, long[]> notes = new TreeMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE " + NoteTable.TABLE_NAME + " (" + BaseColumns._ID + " INTEGER PRIMARY KEY,"
+                + NoteTable.IN_REPLY_TO_NOTE_ID + " INTEGER NOT NULL DEFAULT 0,"
+                + NoteTable.CONVERSATION_ID + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testBranchedTree() {
+        addNote(1, 0, 100);
+        addNote(2, 1, 100);
+        addNote(3, 1, 100);
+        addNote(4, 2, 0);
+        addNote(5, 2, 200);
+        addNote(6, 3, 100);
+        addNote(7, 5, 200);
+        addNote(8, MISSING_NOTE_ID, 100);
+        addNote(9, 8, 0);
+        addNote(15, 0, 200);
+
+        assertTree("Note, linked to no conversation", 4, 0, 1, 2, 3, 4, 5, 6, 7);
+        assertTree("Conversation with a missing parent", 2, 100, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertTree("Another conversation", 7, 200, 1, 2, 3, 4, 5, 6, 7, 15);
+        assertTree("Reply to a missing note", 9, 0, 8, 9);
+    }
+
+    @Test
+    public void testCycle() {
+        addNote(10, 11, 0);
+        addNote(11, 10, 0);
+        addNote(12, 10, 0);
+        addNote(13, 12, 300);
+        addNote(14, 0, 300);
+
+        assertTree("Cycle", 11, 0, 10, 11, 12, 13);
+        assertTree("Cycle and a conversation", 13, 300, 10, 11, 12, 13, 14);
+    }
+
+    @Test
+    public void testRandomForests() {
+        Random random = new Random(20181018);
+        for (int iteration = 0; iteration < 30; iteration++) {
+            db.execSQL("DELETE FROM " + NoteTable.TABLE_NAME);
+            notes.clear();
+            int size = 5 + random.nextInt(40);
+            for (long id = 1; id <= size; id++) {
+                int kind = random.nextInt(10);
+                long inReplyTo = kind < 2 ? 0 : (kind == 2 ? MISSING_NOTE_ID : 1 + random.nextInt(size));
+                addNote(id, inReplyTo, random.nextInt(3) == 0 ? 0 : 100 + random.nextInt(3));
+            }
+            for (long id = 1; id <= size; id++) {
+                long conversationId = notes.get(id)[1];
+                assertEquals("Iteration " + iteration + ", note " + id + ", notes " + notesToString(),
+                        expectedTree(id, conversationId), queryTree(id, conversationId));
+            }
+        }
+    }
+
+    private void addNote(long id, long inReplyTo, long conversationId) {
+        db.execSQL("INSERT INTO " + NoteTable.TABLE_NAME + " (" + BaseColumns._ID + ","
+                + NoteTable.IN_REPLY_TO_NOTE_ID + "," + NoteTable.CONVERSATION_ID + ") VALUES ("
+                + id + "," + inReplyTo + "," + conversationId + ")");
+        notes.put(id, new long[]{inReplyTo, conversationId});
+    }
+
+    private void assertTree(String message, long noteId, long conversationId, long... expected) {
+        Set<Long> expectedSet = new TreeSet<>();
+        Arrays.stream(expected).forEach(expectedSet::add);
+        assertEquals(message + " (in memory)", expectedSet, expectedTree(noteId, conversationId));
+        assertEquals(message, expectedSet, queryTree(noteId, conversationId));
+    }
+
+    /** Existing notes, selected by the query, as the loader selects them */
+    private Set<Long> queryTree(long noteId, long conversationId) {
+        Set<Long> ids = new TreeSet<>();
+        try (Cursor cursor = db.rawQuery("SELECT " + BaseColumns._ID + " FROM " + NoteTable.TABLE_NAME
+                + " WHERE " + BaseColumns._ID + " IN ("
+                + RecursiveConversationLoader.replyTreeSql(noteId, conversationId) + ")", null)) {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        }
+        return ids;
+    }
+
+    /** The note and the conversation, their ancestors and then all replies to them.
+     * Replies to the same missing note are siblings, as they were for the loader, which found replies in its cache */
+    private Set<Long> expectedTree(long noteId, long conversationId) {
+        Set<Long> found = new HashSet<>();
+        Deque<Long> toVisit = new ArrayDeque<>();
+        toVisit.add(noteId);
+        if (conversationId != 0) {
+            notes.forEach((id, note) -> {
+                if (note[1] == conversationId) toVisit.add(id);
+            });
+        }
+        while (!toVisit.isEmpty()) {
+            long id = toVisit.poll();
+            if (!found.add(id)) continue;
+            long[] note = notes.get(id);
+            if (note != null && note[0] != 0) toVisit.add(note[0]);
+        }
+        toVisit.addAll(found);
+        found.clear();
+        while (!toVisit.isEmpty()) {
+            long id = toVisit.poll();
+            if (!found.add(id)) continue;
+            notes.forEach((replyId, note) -> {
+                if (note[0] == id) toVisit.add(replyId);
+            });
+        }
+        // Replies to a missing note are in the tree, the missing note itself is not
+        found.retainAll(notes.keySet());
+        return new TreeSet<>(found);
+    }
+
+    private String notesToString() {
+        StringBuilder builder = new StringBuilder();
+        notes.forEach((id, note) -> builder.append(id).append("->").append(note[0])
+                .append(" c").append(note[1]).append("; "));
+        return builder.toString();
+    }
+}
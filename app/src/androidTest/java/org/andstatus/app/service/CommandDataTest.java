@@ -16,9 +16,12 @@
 
 package org.andstatus.app.service;
 
+import android.database.sqlite.SQLiteDatabase;
+
 import org.andstatus.app.SearchObjects;
 import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.MyContextTestImpl;
 import org.andstatus.app.context.TestSuite;
 import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.data.MyQuery;
@@ -36,6 +39,7 @@ import static org.andstatus.app.context.DemoData.demoData;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class CommandDataTest {
 
@@ -142,6 +146,83 @@ public class CommandDataTest {
         assertCommand(queue, CommandEnum.GET_TIMELINE, TimelineType.INTERACTIONS);
     }
 
+    @Test
+    public void testOneCommandPerShardInExecution() {
+        final MyAccount gnuSocialAccount = demoData.getMyAccount(demoData.gnusocialTestAccountName);
+        final MyAccount mastodonAccount = demoData.getMyAccount(demoData.mastodonTestAccountName);
+        assertTrue(gnuSocialAccount.getOrigin().getId() != mastodonAccount.getOrigin().getId());
+
+        CommandQueue queues = new CommandQueue();
+        queues.clear();
+        CommandData gnuSocialHome = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, gnuSocialAccount,
+                TimelineType.HOME).setInForeground(true);
+        CommandData gnuSocialInteractions = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, gnuSocialAccount,
+                TimelineType.INTERACTIONS);
+        CommandData mastodonHome = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, mastodonAccount,
+                TimelineType.HOME);
+        queues.addToQueue(QueueType.CURRENT, gnuSocialHome);
+        queues.addToQueue(QueueType.CURRENT, gnuSocialInteractions);
+        queues.addToQueue(QueueType.CURRENT, mastodonHome);
+        assertEquals(2, queues.countIdleShardsToExecute());
+
+        assertEquals(gnuSocialHome, queues.pollQueue());
+        assertEquals(1, queues.countIdleShardsToExecute());
+        assertEquals("Commands of the busy Origin should be skipped", mastodonHome, queues.pollQueue());
+        assertEquals(0, queues.countIdleShardsToExecute());
+        assertEquals(null, queues.pollQueue());
+        assertEquals(1, queues.get(QueueType.CURRENT).size());
+
+        queues.onExecuted(gnuSocialHome);
+        assertEquals(gnuSocialInteractions, queues.pollQueue());
+        queues.onExecuted(gnuSocialInteractions);
+        queues.onExecuted(mastodonHome);
+        queues.clear();
+    }
+
+    @Test
+    public void testFailedSaveKeepsCommands() {
+        final MyAccount ma = demoData.getMyAccount(demoData.gnusocialTestAccountName);
+        CommandQueue queues = new CommandQueue();
+        queues.clear();
+        CommandData home = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, ma, TimelineType.HOME);
+        CommandData interactions = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, ma,
+                TimelineType.INTERACTIONS);
+        CommandData search = CommandData.newSearch(SearchObjects.NOTES, MyContextHolder.get(), ma.getOrigin(),
+                "q" + System.currentTimeMillis());
+        queues.addToQueue(QueueType.CURRENT, home);
+        queues.addToQueue(QueueType.CURRENT, interactions);
+        queues.addToQueue(QueueType.RETRY, search);
+
+        MyContextTestImpl readOnlyContext = (MyContextTestImpl) TestSuite.getMyContextForTest()
+                .newCreator(MyContextHolder.get().context(), this);
+        SQLiteDatabase readOnlyDatabase = SQLiteDatabase.openDatabase(
+                MyContextHolder.get().getDatabase().getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            readOnlyContext.setMockedDatabase(readOnlyDatabase);
+            queues.setMyContext(readOnlyContext);
+            queues.save();
+            fail("Saving to a read only database should fail");
+        } catch (RuntimeException e) {
+            MyLog.v(this, "Expected failure", e);
+        } finally {
+            queues.setMyContext(MyContextHolder.get());
+            readOnlyDatabase.close();
+        }
+        assertEquals("Commands should stay in the queue after the failed save",
+                2, queues.get(QueueType.CURRENT).size());
+        assertEquals(1, queues.get(QueueType.RETRY).size());
+
+        queues.save();
+        assertEquals(0, queues.get(QueueType.CURRENT).size());
+        assertEquals(0, queues.get(QueueType.RETRY).size());
+        queues.load();
+        assertEquals(2, queues.get(QueueType.CURRENT).size());
+        assertTrue(queues.get(QueueType.CURRENT).contains(home));
+        assertTrue(queues.get(QueueType.CURRENT).contains(interactions));
+        assertEquals(search, MyServiceTest2.getFromQueue(queues, QueueType.RETRY, search));
+        queues.clear();
+    }
+
     private void assertCommand(Queue<CommandData> queue, CommandEnum commandEnum) {
         assertCommand(queue, commandEnum, TimelineType.UNKNOWN);
     }
@@ -87,6 +87,22 @@ public class CommandExecutorStrategyTest {
                 httpConnectionMock.getResults().get(0).getUrl().contains(demoData.globalPublicNoteText) );
     }
 
+    @Test(timeout = 120000)
+    public void testTimelinePageFetcherFailure() {
+        String errorMessage = "Page fetcher error";
+        httpConnectionMock.setError(new Error(errorMessage));
+        try {
+            CommandData commandData = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, ma, TimelineType.HOME);
+            CommandExecutorStrategy.executeCommand(commandData, null);
+            assertEquals(1, commandData.getResult().getExecutionCount());
+            assertTrue(commandData.toString(), commandData.getResult().hasHardError());
+            assertTrue("Error message: '" + commandData.getResult().getMessage() + "' should contain '"
+                    + errorMessage + "'", commandData.getResult().getMessage().contains(errorMessage));
+        } finally {
+            httpConnectionMock.setError(null);
+        }
+    }
+
     @Test
     public void testUpdateDestroyStatus() throws IOException {
         CommandData commandData = getCommandDataForUnsentNote("1");
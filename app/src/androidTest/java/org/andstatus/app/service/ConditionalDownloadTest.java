@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.service;
+
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.andstatus.app.account.MyAccount;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.data.AvatarData;
+import org.andstatus.app.data.DownloadData;
+import org.andstatus.app.data.DownloadStatus;
+import org.andstatus.app.database.table.DownloadTable;
+import org.andstatus.app.net.http.HttpConnectionMock;
+import org.andstatus.app.net.http.HttpReadResult;
+import org.andstatus.app.net.social.Actor;
+import org.andstatus.app.net.social.ConnectionTwitterGnuSocialMock;
+import org.andstatus.app.util.FileUtils;
+import org.andstatus.app.util.MyLog;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.andstatus.app.context.DemoData.demoData;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Revalidation of a loaded avatar with If-None-Match and If-Modified-Since requests
+ * @author yvolk@yurivolkov.com
+ */
+public class ConditionalDownloadTest {
+    private static final String ETAG1 = "\"v1\"";
+    private static final String LAST_MODIFIED1 = "Mon, 01 Jan 2018 10:00:00 GMT";
+    private static final String ETAG2 = "\"v2\"";
+    private static final String LAST_MODIFIED2 = "Tue, 02 Jan 2018 10:00:00 GMT";
+    private Actor actor = Actor.EMPTY;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+        MyAccount ma = demoData.getMyAccount(demoData.gnusocialTestAccountName);
+        assertTrue(demoData.gnusocialTestAccountName + " exists", ma.isValid());
+        actor = ma.getActor();
+        AvatarDownloaderTest.changeAvatarUrl(actor,
+                "http://example.com/conditional_avatar_" + MyLog.uniqueCurrentTimeMS() + ".png");
+        AvatarData.deleteAllOfThisActor(actor.actorId);
+    }
+
+    @Test
+    public void testRevalidation() throws IOException {
+        byte[] image1 = newImage(Color.RED);
+        HttpReadResult result = load(HttpURLConnection.HTTP_OK, ETAG1, LAST_MODIFIED1, image1);
+        assertTrue("Not conditional " + result, HttpConnectionMock.getConditionalHeaders(result).isEmpty());
+        DownloadData data = assertLoaded(image1, ETAG1, LAST_MODIFIED1);
+        assertFalse("Recently loaded " + data, loadActor().avatarFile.isTimeToRevalidate());
+
+        setDownloadedDateDaysAgo(15);
+        assertTrue("Old enough " + data, loadActor().avatarFile.isTimeToRevalidate());
+        result = load(HttpURLConnection.HTTP_NOT_MODIFIED, "", "", newImage(Color.GREEN));
+        Map<String, String> headers = HttpConnectionMock.getConditionalHeaders(result);
+        assertEquals("If-None-Match of " + result, ETAG1, headers.get("If-None-Match"));
+        assertEquals("If-Modified-Since of " + result, LAST_MODIFIED1, headers.get("If-Modified-Since"));
+        DownloadData notModified = assertLoaded(image1, ETAG1, LAST_MODIFIED1);
+        assertEquals("The same file is kept", data.getFilename(), notModified.getFilename());
+        assertFalse("Revalidated " + notModified, loadActor().avatarFile.isTimeToRevalidate());
+
+        setDownloadedDateDaysAgo(15);
+        byte[] image2 = newImage(Color.BLUE);
+        result = load(HttpURLConnection.HTTP_OK, ETAG2, LAST_MODIFIED2, image2);
+        assertEquals("If-None-Match of " + result, ETAG1, HttpConnectionMock.getConditionalHeaders(result).get("If-None-Match"));
+        assertLoaded(image2, ETAG2, LAST_MODIFIED2);
+    }
+
+    @Test
+    public void testNoValidators() throws IOException {
+        byte[] image1 = newImage(Color.RED);
+        load(HttpURLConnection.HTTP_OK, "", "", image1);
+        assertLoaded(image1, "", "");
+
+        setDownloadedDateDaysAgo(15);
+        assertFalse("An avatar without validators is not revalidated",
+                loadActor().avatarFile.isTimeToRevalidate());
+        ConnectionTwitterGnuSocialMock connection = new ConnectionTwitterGnuSocialMock();
+        FileDownloader loader = new AvatarDownloader(loadActor());
+        loader.connectionMock = connection;
+        loader.load(newCommand());
+        assertEquals("No requests " + connection.getHttpMock(), 0, connection.getHttpMock().getRequestsCounter());
+    }
+
+    private HttpReadResult load(int statusCode, String eTag, String lastModified, byte[] image) {
+        ConnectionTwitterGnuSocialMock connection = new ConnectionTwitterGnuSocialMock();
+        HttpConnectionMock httpMock = connection.getHttpMock();
+        httpMock.setResponseStatus(statusCode, eTag, lastModified);
+        httpMock.setResponseFileStream(new ByteArrayInputStream(image));
+        FileDownloader loader = new AvatarDownloader(loadActor());
+        loader.connectionMock = connection;
+        CommandData commandData = newCommand();
+        loader.load(commandData);
+        assertFalse("Loaded " + commandData.getResult(), commandData.getResult().hasError());
+        List<HttpReadResult> results = httpMock.getResults();
+        assertEquals("Requests " + httpMock, 1, results.size());
+        return results.get(0);
+    }
+
+    private CommandData newCommand() {
+        return CommandData.newActorCommand(CommandEnum.GET_AVATAR, actor.actorId, actor.getUsername());
+    }
+
+    private DownloadData assertLoaded(byte[] image, String eTag, String lastModified) throws IOException {
+        DownloadData data = AvatarData.getCurrentForActor(actor);
+        assertEquals("Status " + data, DownloadStatus.LOADED, data.getStatus());
+        assertEquals("ETag " + data, eTag, data.getETag());
+        assertEquals("Last-Modified " + data, lastModified, data.getLastModified());
+        assertArrayEquals("Content of " + data, image, FileUtils.getBytes(data.getFile().getFile()));
+        return data;
+    }
+
+    private void setDownloadedDateDaysAgo(int days) {
+        ContentValues values = new ContentValues();
+        values.put(DownloadTable.DOWNLOADED_DATE, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+        MyContextHolder.get().getDatabase().update(DownloadTable.TABLE_NAME, values,
+                DownloadTable.ACTOR_ID + "=" + actor.actorId, null);
+    }
+
+    private Actor loadActor() {
+        return Actor.load(MyContextHolder.get(), actor.actorId);
+    }
+
+    private static byte[] newImage(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.service;
+
+import android.net.Uri;
+
+import org.andstatus.app.account.MyAccount;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.data.DownloadData;
+import org.andstatus.app.net.social.Attachment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scheduling of downloads with downloaders, which wait for a signal instead of downloading
+ * @author yvolk@yurivolkov.com
+ */
+public class FileDownloadSchedulerTest {
+    private static final String HOST1 = "host1.example.com";
+    private static final String HOST2 = "host2.example.com";
+    private static final long ID_BASE = -7000;
+
+    private final CountDownLatch released = new CountDownLatch(1);
+    /** Started downloads by id of a download */
+    private final Map<Long, AtomicInteger> started = new ConcurrentHashMap<>();
+    private final AtomicInteger finished = new AtomicInteger();
+    private final Map<String, AtomicInteger> runningByHost = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxRunningByHost = new ConcurrentHashMap<>();
+
+    private class WaitingDownloader extends FileDownloader {
+        private final long itemId;
+        private final String host;
+
+        WaitingDownloader(long itemId, String host) {
+            super(DownloadData.getThisForAttachment(0, Attachment.fromUriAndMimeType(
+                    Uri.parse("http://" + host + "/" + itemId + ".png"), "")));
+            this.itemId = itemId;
+            this.host = host;
+        }
+
+        @Override
+        void load(CommandData commandData) {
+            counter(started, itemId).incrementAndGet();
+            int running = counter(runningByHost, host).incrementAndGet();
+            counter(maxRunningByHost, host).accumulateAndGet(running, Math::max);
+            try {
+                released.await(20, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                counter(runningByHost, host).decrementAndGet();
+                finished.incrementAndGet();
+            }
+        }
+
+        @Override
+        protected void onSuccessfulLoad() {
+            // Empty
+        }
+
+        @Override
+        protected MyAccount findBestAccountForDownload() {
+            return MyAccount.EMPTY;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        TestSuite.getMyContextForTest().setConnectionState(ConnectionState.WIFI);
+        FileDownloadScheduler.downloaderFactory = commandData -> new WaitingDownloader(commandData.itemId,
+                commandData.itemId % 2 == 0 ? HOST1 : HOST2);
+    }
+
+    @After
+    public void tearDown() {
+        released.countDown();
+        FileDownloadScheduler.downloaderFactory = FileDownloadScheduler::newDownloader;
+        TestSuite.getMyContextForTest().setConnectionState(ConnectionState.UNKNOWN);
+    }
+
+    @Test
+    public void testSharedDownload() {
+        long itemId = ID_BASE - 2;
+        download(itemId, 101);
+        download(itemId, 102);
+        download(itemId, 0);
+        waitFor("Download started", () -> started(itemId) > 0);
+        released.countDown();
+        waitFor("Download finished", () -> finished.get() > 0);
+        assertEquals("Downloads of the same file are shared", 1, started(itemId));
+    }
+
+    @Test
+    public void testCancellation() {
+        long busy1 = ID_BASE - 12;
+        long busy2 = ID_BASE - 14;
+        download(busy1, 111);
+        download(busy2, 112);
+        waitFor("The host is busy", () -> runningOn(HOST1) == FileDownloadScheduler.MAX_DOWNLOADS_PER_HOST);
+
+        long scrolledAway = ID_BASE - 16;
+        long shown = ID_BASE - 18;
+        download(scrolledAway, 113);
+        download(shown, 114);
+        FileDownloadScheduler.releaseView(113);
+
+        released.countDown();
+        waitFor("Downloads finished", () -> finished.get() >= 3 && runningOn(HOST1) == 0);
+        assertEquals("Download for a shown view", 1, started(shown));
+        assertEquals("Cancelled download for a view, which was scrolled away", 0, started(scrolledAway));
+    }
+
+    @Test
+    public void testPerHostLimit() {
+        int countOnHost1 = 5;
+        for (int ind = 0; ind < countOnHost1; ind++) {
+            download(ID_BASE - 20 - 2 * ind, 121 + ind);
+        }
+        long otherHostItem = ID_BASE - 21;
+        download(otherHostItem, 131);
+        waitFor("A download from another host started", () -> started(otherHostItem) > 0);
+        waitFor("The host is busy", () -> runningOn(HOST1) == FileDownloadScheduler.MAX_DOWNLOADS_PER_HOST);
+        DbUtils.waitMs(this, 500);
+        assertEquals("Running downloads from " + HOST1, FileDownloadScheduler.MAX_DOWNLOADS_PER_HOST,
+                runningOn(HOST1));
+
+        released.countDown();
+        waitFor("All downloads finished", () -> finished.get() == countOnHost1 + 1);
+        assertEquals("Max running downloads from " + HOST1, FileDownloadScheduler.MAX_DOWNLOADS_PER_HOST,
+                counter(maxRunningByHost, HOST1).get());
+    }
+
+    private static void download(long itemId, long viewId) {
+        FileDownloadScheduler.download(CommandData.newFetchAttachment(0, itemId), viewId);
+    }
+
+    private int started(long itemId) {
+        return counter(started, itemId).get();
+    }
+
+    private int runningOn(String host) {
+        return counter(runningByHost, host).get();
+    }
+
+    private static <K> AtomicInteger counter(Map<K, AtomicInteger> counters, K key) {
+        return counters.computeIfAbsent(key, k -> new AtomicInteger());
+    }
+
+    private void waitFor(String message, BooleanSupplier condition) {
+        for (int attempt = 0; attempt < 400; attempt++) {
+            if (condition.getAsBoolean()) return;
+            DbUtils.waitMs(this, 50);
+        }
+        assertTrue(message + "; " + FileDownloadScheduler.getInfo(), condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.service;
+
+import org.andstatus.app.account.MyAccount;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.timeline.meta.TimelineType;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.andstatus.app.context.DemoData.demoData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedCommandQueueTest {
+    private MyAccount ma;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+        ma = demoData.getMyAccount(demoData.gnusocialTestAccountName);
+    }
+
+    @Test
+    public void testNoDuplicates() {
+        IndexedCommandQueue queue = new IndexedCommandQueue(10);
+        CommandData home = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, ma, TimelineType.HOME);
+        assertTrue(queue.offer(home));
+        CommandData home2 = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, ma, TimelineType.HOME);
+        assertTrue(queue.contains(home2));
+        assertFalse("Duplicate added", queue.offer(home2));
+        assertEquals(1, queue.size());
+        assertTrue(home == queue.get(home2));
+
+        assertTrue(queue.remove(home2));
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.contains(home));
+        assertTrue(queue.offer(home2));
+        assertTrue(home2 == queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testPriorityAndForeground() {
+        IndexedCommandQueue queue = new IndexedCommandQueue(10);
+        CommandData interactions = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, ma,
+                TimelineType.INTERACTIONS);
+        CommandData updateNote = CommandData.newUpdateStatus(MyAccount.EMPTY, 2, 5);
+        CommandData home = CommandData.newTimelineCommand(CommandEnum.GET_TIMELINE, ma, TimelineType.HOME)
+                .setInForeground(true);
+        queue.add(interactions);
+        queue.add(updateNote);
+        assertFalse(queue.hasForegroundTasks());
+        queue.add(home);
+        assertTrue(queue.hasForegroundTasks());
+
+        int count = 0;
+        for (CommandData cd : queue) {
+            count++;
+            if (cd.equals(updateNote)) queue.remove(cd);
+        }
+        assertEquals("Iterated over a snapshot", 3, count);
+        assertEquals(2, queue.size());
+
+        assertEquals(home, queue.peek());
+        assertEquals(home, queue.poll());
+        assertFalse(queue.hasForegroundTasks());
+        assertEquals(interactions, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testManyRemovals() {
+        IndexedCommandQueue queue = new IndexedCommandQueue(10);
+        for (int ind = 1; ind <= 100; ind++) {
+            queue.add(CommandData.newItemCommand(CommandEnum.GET_NOTE, ma, ind));
+        }
+        for (int ind = 1; ind <= 100; ind += 2) {
+            assertTrue(queue.remove(CommandData.newItemCommand(CommandEnum.GET_NOTE, ma, ind)));
+        }
+        assertEquals(50, queue.size());
+        assertEquals(50, queue.toArray().length);
+        CommandData cd;
+        int count = 0;
+        while ((cd = queue.poll()) != null) {
+            count++;
+            assertEquals(cd.toString(), 0, cd.itemId % 2);
+        }
+        assertEquals(50, count);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.timeline;
+
+import android.support.annotation.NonNull;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.MyPreferences;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.origin.Origin;
+import org.andstatus.app.timeline.meta.Timeline;
+import org.andstatus.app.timeline.meta.TimelineType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares results of {@link DuplicatesCollapser} with results of the simple algorithm,
+ * which compares each item with every group of duplicates
+ * @author yvolk@yurivolkov.com
+ */
+public class DuplicatesCollapserTest {
+    private static final String[] CONTENTS = {"one", "one two", "one two three", "two", "two three", "four", "five six"};
+    private static final int PAGES_COUNT = 3;
+    private static final int ITEMS_PER_PAGE = 60;
+
+    private static class TestItem extends ViewItem<TestItem> {
+        final long id;
+        final long date;
+        final long key;
+        final String content;
+
+        TestItem(long id, long date, long key, String content) {
+            super(false);
+            this.id = id;
+            this.date = date;
+            this.key = key;
+            this.content = content;
+        }
+
+        TestItem copy() {
+            return new TestItem(id, date, key, content);
+        }
+
+        @Override
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public long getDate() {
+            return date;
+        }
+
+        @Override
+        public long getDuplicationKey() {
+            return key;
+        }
+
+        @NonNull
+        @Override
+        public DuplicationLink duplicates(Timeline timeline, @NonNull TestItem other) {
+            if (key != 0 && key == other.key || content.equals(other.content)) {
+                return date > other.date ? DuplicationLink.IS_DUPLICATED : DuplicationLink.DUPLICATES;
+            } else if (content.contains(other.content)) {
+                return DuplicationLink.DUPLICATES;
+            } else if (other.content.contains(content)) {
+                return DuplicationLink.IS_DUPLICATED;
+            }
+            return DuplicationLink.NONE;
+        }
+
+        @Override
+        public String toString() {
+            return id + (getChildren().isEmpty() ? ""
+                    : getChildren().stream().map(TestItem::getId).sorted().collect(Collectors.toList()).toString());
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testCollapseAll() {
+        for (long seed = 1; seed < 6; seed++) {
+            assertSameResults(seed, 0);
+        }
+    }
+
+    @Test
+    public void testCollapseOneItem() {
+        for (long seed = 1; seed < 4; seed++) {
+            for (long itemId = 1; itemId <= PAGES_COUNT * ITEMS_PER_PAGE; itemId += 7) {
+                assertSameResults(seed, itemId);
+            }
+        }
+    }
+
+    private void assertSameResults(long seed, long itemId) {
+        List<List<TestItem>> expected = newPages(seed);
+        collapseAsExpected(expected, itemId);
+
+        List<List<TestItem>> actualPages = newPages(seed);
+        TimelineParameters params = new TimelineParameters(MyContextHolder.get())
+                .setTimeline(Timeline.getTimeline(TimelineType.EVERYTHING, 0, Origin.EMPTY));
+        TimelineData<TestItem> data = new TimelineData<>(null, new TimelinePage<>(params, new ArrayList<>()));
+        data.pages.clear();
+        actualPages.forEach(items -> data.pages.add(new TimelinePage<>(params, items)));
+        data.collapseDuplicates(true, itemId);
+
+        String message = "seed:" + seed + ", itemId:" + itemId;
+        assertEquals(message, expected.toString(), actualPages.toString());
+        if (itemId == 0) {
+            assertTrue(message + " nothing collapsed",
+                    actualPages.stream().mapToInt(List::size).sum() < PAGES_COUNT * ITEMS_PER_PAGE);
+        }
+    }
+
+    private static List<List<TestItem>> newPages(long seed) {
+        Random random = new Random(seed);
+        List<List<TestItem>> pages = new ArrayList<>();
+        long id = 1;
+        long date = 1000000;
+        for (int pageInd = 0; pageInd < PAGES_COUNT; pageInd++) {
+            List<TestItem> items = new ArrayList<>();
+            for (int ind = 0; ind < ITEMS_PER_PAGE; ind++) {
+                long key = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(20);
+                String content = CONTENTS[random.nextInt(CONTENTS.length)] + (key == 0 ? "" : " " + key);
+                date -= random.nextInt(3);
+                items.add(new TestItem(id++, date, key, content));
+            }
+            pages.add(items);
+        }
+        return pages;
+    }
+
+    /** Previous implementation of {@link DuplicatesCollapser} for a collapser without individual states */
+    private static void collapseAsExpected(List<List<TestItem>> pages, long itemId) {
+        int maxDistance = MyPreferences.getMaxDistanceBetweenDuplicates();
+        if (maxDistance < 1) return;
+
+        List<List<TestItem>> groups = new ArrayList<>();
+        List<TestItem> toCollapse = new ArrayList<>();
+        boolean done = false;
+        for (List<TestItem> page : pages) {
+            for (TestItem item : page) {
+                boolean found = false;
+                for (List<TestItem> group : groups) {
+                    switch (item.duplicates(null, group.get(0))) {
+                        case DUPLICATES:
+                            found = true;
+                            group.add(item);
+                            break;
+                        case IS_DUPLICATED:
+                            found = true;
+                            group.add(0, item);
+                            break;
+                        default:
+                            break;
+                    }
+                    if (found) break;
+                }
+                if (!found) {
+                    if (itemId != 0) {
+                        List<TestItem> selected = groups.stream().filter(group -> contains(group, itemId))
+                                .findAny().orElse(null);
+                        if (selected != null) {
+                            collapseGroup(selected, toCollapse);
+                            done = true;
+                            break;
+                        }
+                    }
+                    if (groups.size() > maxDistance) {
+                        List<TestItem> group = groups.remove(0);
+                        if (itemId == 0 || contains(group, itemId)) {
+                            collapseGroup(group, toCollapse);
+                            if (itemId != 0) {
+                                done = true;
+                                break;
+                            }
+                        }
+                    }
+                    List<TestItem> group = new ArrayList<>();
+                    group.add(item);
+                    groups.add(group);
+                }
+            }
+            if (done) break;
+        }
+        if (!done) {
+            groups.stream().filter(group -> itemId == 0 || contains(group, itemId))
+                    .forEach(group -> collapseGroup(group, toCollapse));
+        }
+        for (TestItem item : toCollapse) {
+            for (List<TestItem> page : pages) {
+                if (page.remove(item)) break;
+            }
+        }
+    }
+
+    private static boolean contains(List<TestItem> group, long itemId) {
+        return group.stream().anyMatch(item -> item.getId() == itemId);
+    }
+
+    private static void collapseGroup(List<TestItem> group, List<TestItem> toCollapse) {
+        TestItem parent = group.get(0);
+        Set<TestItem> children = new HashSet<>(group.subList(1, group.size()));
+        for (TestItem child : children) {
+            parent.collapse(child);
+            toCollapse.add(child);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.timeline;
+
+import android.database.Cursor;
+
+import org.andstatus.app.context.MyContext;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.database.table.ActivityTable;
+import org.andstatus.app.origin.Origin;
+import org.andstatus.app.timeline.meta.Timeline;
+import org.andstatus.app.timeline.meta.TimelineType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Keyset pagination of a timeline by (updated date, activity id) of rows
+ * @author yvolk@yurivolkov.com
+ */
+public class TimelineParametersTest {
+    private MyContext myContext;
+    private Timeline timeline;
+
+    private static class Key {
+        final long date;
+        final long activityId;
+
+        Key(long date, long activityId) {
+            this.date = date;
+            this.activityId = activityId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return date == key.date && activityId == key.activityId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(date) + Long.hashCode(activityId);
+        }
+
+        @Override
+        public String toString() {
+            return date + ":" + activityId;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+        myContext = MyContextHolder.get();
+        timeline = Timeline.getTimeline(TimelineType.EVERYTHING, 0, Origin.EMPTY);
+    }
+
+    @Test
+    public void testPageEdgeAtEqualDates() {
+        List<Key> keys = loadKeys(newParams(WhichPage.YOUNGEST));
+        assertTrue("Too few activities: " + keys, keys.size() > 3);
+        Key younger = keys.get(1);
+        Key older = keys.get(2);
+        setActivityDate(older.activityId, younger.date);
+        try {
+            keys = loadKeys(newParams(WhichPage.YOUNGEST));
+            int ind = indexOfEqualDates(keys);
+            assertTrue("No rows with equal dates: " + keys, ind >= 0);
+
+            List<Key> olderKeys = loadKeys(olderThan(keys.get(ind)));
+            assertEquals("Older page after " + keys.get(ind),
+                    keys.subList(ind + 1, keys.size()), olderKeys.subList(0, keys.size() - ind - 1));
+
+            List<Key> youngerKeys = loadKeys(youngerThan(keys.get(ind + 1)));
+            List<Key> expected = new ArrayList<>(keys.subList(0, ind + 1));
+            Collections.reverse(expected);
+            assertEquals("Younger page before " + keys.get(ind + 1), expected, youngerKeys);
+        } finally {
+            setActivityDate(older.activityId, older.date);
+        }
+    }
+
+    @Test
+    public void testFirstAndLastPages() {
+        List<Key> keys = loadKeys(newParams(WhichPage.YOUNGEST));
+        assertTrue("Too few activities: " + keys, keys.size() > 1);
+        assertTrue("Demo data should fit one page: " + keys.size(), keys.size() < TimelineParameters.PAGE_SIZE);
+        Key youngest = keys.get(0);
+        Key oldest = keys.get(keys.size() - 1);
+
+        TimelineParameters params = youngerThan(youngest);
+        assertEquals("Younger than the youngest", 0, loadKeys(params).size());
+        assertFalse("Younger than the youngest " + params, params.mayHaveYoungerPage());
+
+        params = olderThan(oldest);
+        assertEquals("Older than the oldest", 0, loadKeys(params).size());
+        assertFalse("Older than the oldest " + params, params.mayHaveOlderPage());
+
+        params = olderThan(youngest);
+        assertEquals("Older than the youngest", keys.size() - 1, loadKeys(params).size());
+        assertFalse("The last page " + params, params.mayHaveOlderPage());
+        assertTrue("The last page " + params, params.mayHaveYoungerPage());
+
+        params = youngerThan(oldest);
+        assertEquals("Younger than the oldest", keys.size() - 1, loadKeys(params).size());
+        assertFalse("The first page " + params, params.mayHaveYoungerPage());
+        assertTrue("The first page " + params, params.mayHaveOlderPage());
+    }
+
+    private TimelineParameters newParams(WhichPage whichPage) {
+        return TimelineParameters.clone(new TimelineParameters(myContext).setTimeline(timeline), whichPage);
+    }
+
+    private TimelineParameters olderThan(Key key) {
+        TimelineParameters params = newParams(WhichPage.OLDER);
+        params.maxDate = key.date;
+        params.maxActivityId = key.activityId;
+        return params;
+    }
+
+    private TimelineParameters youngerThan(Key key) {
+        TimelineParameters params = newParams(WhichPage.YOUNGER);
+        params.minDate = key.date;
+        params.minActivityId = key.activityId;
+        return params;
+    }
+
+    private static int indexOfEqualDates(List<Key> keys) {
+        for (int ind = 0; ind < keys.size() - 1; ind++) {
+            if (keys.get(ind).date == keys.get(ind + 1).date) return ind;
+        }
+        return -1;
+    }
+
+    /** Loads keys of rows in the order of the query, as {@link TimelineLoader} does */
+    private static List<Key> loadKeys(TimelineParameters params) {
+        List<Key> keys = new ArrayList<>();
+        try (Cursor cursor = params.queryDatabase()) {
+            while (cursor.moveToNext()) {
+                Key key = new Key(DbUtils.getLong(cursor, ActivityTable.UPDATED_DATE),
+                        DbUtils.getLong(cursor, ActivityTable.ACTIVITY_ID));
+                params.rememberItemLoaded(key.date, key.activityId);
+                keys.add(key);
+            }
+        }
+        params.rowsLoaded = keys.size();
+        params.isLoaded = true;
+        return keys;
+    }
+
+    private void setActivityDate(long activityId, long date) {
+        myContext.getDatabase().execSQL("UPDATE " + ActivityTable.TABLE_NAME
+                + " SET " + ActivityTable.UPDATED_DATE + "=" + date
+                + " WHERE " + ActivityTable._ID + "=" + activityId);
+    }
+}
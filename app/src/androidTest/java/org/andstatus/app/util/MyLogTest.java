@@ -23,9 +23,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 public class MyLogTest {
@@ -70,6 +73,79 @@ public class MyLogTest {
         }
     }
 
+    @Test
+    public void testErrorIsWrittenWithoutWaiting() throws IOException {
+        final String method = "testErrorIsWrittenWithoutWaiting";
+        boolean isLogEnabled = MyLog.isLogToFileEnabled();
+        MyLog.setLogToFile(true);
+        File file = MyLog.getFileInLogDir(MyLog.getLogFilename(), true);
+        try {
+            String error = method + " error " + MyLog.uniqueCurrentTimeMS();
+            MyLog.i(this, method + " info before the error");
+            MyLog.e(this, error);
+            String content = readFile(file);
+            assertTrue("Error line should be written before return, though the file is open: " + file,
+                    content.contains(error));
+            assertTrue("Lines before the error should be written first: " + file,
+                    content.indexOf(method + " info before the error") < content.indexOf(error));
+        } finally {
+            MyLog.setLogToFile(false);
+            file.delete();
+            if (isLogEnabled) {
+                MyLog.setLogToFile(true);
+            }
+        }
+    }
+
+    @Test
+    public void testNoLinesLostOnDisabling() throws IOException {
+        final String method = "testNoLinesLostOnDisabling";
+        boolean isLogEnabled = MyLog.isLogToFileEnabled();
+        MyLog.setLogToFile(true);
+        File file = MyLog.getFileInLogDir(MyLog.getLogFilename(), true);
+        try {
+            final int count = 100;
+            for (int ind = 0; ind < count; ind++) {
+                MyLog.i(this, method + " line " + ind + ";");
+            }
+            MyLog.setLogToFile(false);
+            String content = readFile(file);
+            for (int ind = 0; ind < count; ind++) {
+                assertTrue("Line " + ind + " is lost in " + file, content.contains(method + " line " + ind + ";"));
+            }
+        } finally {
+            MyLog.setLogToFile(false);
+            file.delete();
+            if (isLogEnabled) {
+                MyLog.setLogToFile(true);
+            }
+        }
+    }
+
+    @Test
+    public void testNextLogFileNameIsUnique() {
+        boolean isLogEnabled = MyLog.isLogToFileEnabled();
+        MyLog.setLogToFile(true);
+        try {
+            String filename1 = MyLog.getLogFilename();
+            MyLog.setNextLogFileName();
+            String filename2 = MyLog.getLogFilename();
+            MyLog.setNextLogFileName();
+            String filename3 = MyLog.getLogFilename();
+            assertNotEquals("Rotated within one second", filename1, filename2);
+            assertNotEquals("Rotated within one second", filename2, filename3);
+        } finally {
+            MyLog.setLogToFile(false);
+            if (isLogEnabled) {
+                MyLog.setLogToFile(true);
+            }
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        return new String(FileUtils.getBytes(file), StandardCharsets.UTF_8);
+    }
+
     @Test
     public void testUniqueDateTimeFormatted() {
         String string1 = "";
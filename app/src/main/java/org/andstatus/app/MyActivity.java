@@ -29,6 +29,7 @@ import android.view.View;
 
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.MyTheme;
+import org.andstatus.app.graphics.ImageCaches;
 import org.andstatus.app.timeline.TimelineActivity;
 import org.andstatus.app.util.IdentifiableInstance;
 import org.andstatus.app.util.InstanceId;
@@ -131,6 +132,7 @@ public class MyActivity extends AppCompatActivity implements IdentifiableInstanc
     protected void onResume() {
         myResumed = true;
         super.onResume();
+        ImageCaches.onForeground();
     }
 
     @Override
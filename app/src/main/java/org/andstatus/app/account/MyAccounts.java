@@ -458,7 +458,7 @@ public class MyAccounts implements IsEmpty {
         long restoredCount = 0;
         final String method = "onRestore";
         MyLog.i(this, method + "; started, " + I18n.formatBytes(data.getDataSize()));
-        byte[] bytes = new byte[data.getDataSize()];
+        byte[] bytes = new byte[(int) data.getDataSize()];
         int bytesRead = data.readEntityData(bytes, 0, bytes.length);
         try {
             JSONArray jsa = new JSONArray(new String(bytes, 0, bytesRead, "UTF-8"));
@@ -142,6 +142,11 @@ public class ActivityViewItem extends ViewItem<ActivityViewItem> implements Comp
                     : link;
     }
 
+    @Override
+    public long getDuplicationKey() {
+        return isEmpty() || noteId == 0 ? 0 : noteViewItem.getDuplicationKey();
+    }
+
     @NonNull
     protected DuplicationLink duplicatesByChildren(Timeline timeline, @NonNull ActivityViewItem other) {
         if (noteId !=0) {
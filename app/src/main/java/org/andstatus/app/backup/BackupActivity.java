@@ -19,6 +19,7 @@ package org.andstatus.app.backup;
 import android.os.Bundle;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.widget.CheckBox;
 import android.widget.TextView;
 
 import org.andstatus.app.MyActivity;
@@ -51,7 +52,8 @@ public class BackupActivity extends MyActivity {
             public void onClick(View v) {
                 if (asyncTask == null || asyncTask.completedBackgroundWork()) {
                     resetProgress();
-                    asyncTask = new BackupTask();
+                    asyncTask = new BackupTask(((CheckBox) findViewById(R.id.backup_compressed)).isChecked(),
+                            ((CheckBox) findViewById(R.id.backup_incremental)).isChecked());
                     new AsyncTaskLauncher<File>().execute(this, true, asyncTask, backupFolder);
                 }
             }
@@ -91,14 +93,19 @@ public class BackupActivity extends MyActivity {
     
     private class BackupTask extends MyAsyncTask<File, CharSequence, Boolean> {
         Boolean success = false;
+        private final boolean compressed;
+        private final boolean incremental;
 
-        public BackupTask() {
+        public BackupTask(boolean compressed, boolean incremental) {
             super(PoolEnum.LONG_UI);
+            this.compressed = compressed;
+            this.incremental = incremental;
         }
 
         @Override
         protected Boolean doInBackground2(File... params) {
-            MyBackupManager.backupInteractively(params[0], BackupActivity.this, new ProgressLogger.ProgressCallback() {
+            MyBackupManager.backupInteractively(params[0], BackupActivity.this, compressed, incremental,
+                    new ProgressLogger.ProgressCallback() {
                 
                 @Override
                 public void onProgressMessage(CharSequence message) {
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.backup;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hashes of fixed size blocks of a backed up file. They are stored together with the data of a backup,
+ * so an incremental backup, based on it, contains only blocks (database pages), which were changed since then
+ * @author yvolk@yurivolkov.com
+ */
+class BlockHashes {
+    static final String FILE_SUFFIX = "_blocks.dat";
+    /** A multiple of SQLite page sizes */
+    static final int BLOCK_SIZE = 64 * 1024;
+    private static final String ALGORITHM = "SHA-1";
+
+    final int blockSize;
+    private final List<byte[]> hashes;
+    private final MessageDigest digest;
+
+    BlockHashes() {
+        this(BLOCK_SIZE, new ArrayList<>());
+    }
+
+    private BlockHashes(int blockSize, List<byte[]> hashes) {
+        this.blockSize = blockSize;
+        this.hashes = hashes;
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    static File getFile(File dataFolder, String key) {
+        return new File(dataFolder, key + FILE_SUFFIX);
+    }
+
+    /** @return null if the backup has no hashes for this key */
+    @Nullable
+    static BlockHashes load(File dataFolder, String key) throws IOException {
+        File file = getFile(dataFolder, key);
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int blockSize = in.readInt();
+            int count = in.readInt();
+            int hashLength = in.readInt();
+            if (blockSize <= 0 || count < 0 || hashLength <= 0) {
+                throw new FileNotFoundException("Invalid block hashes file " + file.getAbsolutePath());
+            }
+            List<byte[]> hashes = new ArrayList<>(count);
+            for (int ind = 0; ind < count; ind++) {
+                byte[] hash = new byte[hashLength];
+                in.readFully(hash);
+                hashes.add(hash);
+            }
+            return new BlockHashes(blockSize, hashes);
+        }
+    }
+
+    void save(File dataFolder, String key) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(getFile(dataFolder, key))))) {
+            out.writeInt(blockSize);
+            out.writeInt(hashes.size());
+            out.writeInt(hashes.isEmpty() ? digest.getDigestLength() : hashes.get(0).length);
+            for (byte[] hash : hashes) {
+                out.write(hash);
+            }
+        }
+    }
+
+    /** Adds hash of the next block */
+    void add(byte[] block, int length) {
+        digest.reset();
+        digest.update(block, 0, length);
+        hashes.add(digest.digest());
+    }
+
+    int size() {
+        return hashes.size();
+    }
+
+    /** @return true if the block is absent in the base or it is different */
+    boolean isChanged(int index, @Nullable BlockHashes base) {
+        return base == null || base.blockSize != blockSize || index >= base.hashes.size()
+                || index >= hashes.size() || !Arrays.equals(hashes.get(index), base.hashes.get(index));
+    }
+}
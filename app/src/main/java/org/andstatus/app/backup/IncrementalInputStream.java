@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.backup;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.andstatus.app.data.DbUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Full data of an entity of an incremental backup: changed blocks are read from the data of this backup,
+ * and other blocks - from the data of the base backup, which may be incremental also.
+ * Both streams are read sequentially
+ * @author yvolk@yurivolkov.com
+ */
+class IncrementalInputStream extends InputStream {
+    private final InputStream changes;
+    private final InputStream base;
+    private final BlockHashes hashes;
+    @Nullable
+    private final BlockHashes baseHashes;
+    private long position = 0;
+    private long basePosition = 0;
+
+    IncrementalInputStream(@NonNull InputStream changes, @NonNull InputStream base,
+                           @NonNull BlockHashes hashes, @Nullable BlockHashes baseHashes) {
+        this.changes = changes;
+        this.base = base;
+        this.hashes = hashes;
+        this.baseHashes = baseHashes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] bytes = new byte[1];
+        return read(bytes, 0, 1) <= 0 ? -1 : bytes[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NonNull byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+
+        int blockIndex = (int) (position / hashes.blockSize);
+        if (blockIndex >= hashes.size()) return -1;
+
+        int toRead = (int) Math.min(length, hashes.blockSize - position % hashes.blockSize);
+        int read;
+        if (hashes.isChanged(blockIndex, baseHashes)) {
+            read = changes.read(bytes, offset, toRead);
+        } else {
+            skipBaseTo(position);
+            read = base.read(bytes, offset, toRead);
+            if (read > 0) basePosition += read;
+        }
+        if (read > 0) position += read;
+        return read;
+    }
+
+    private void skipBaseTo(long target) throws IOException {
+        while (basePosition < target) {
+            long skipped = base.skip(target - basePosition);
+            if (skipped <= 0) {
+                if (base.read() < 0) {
+                    throw new EOFException("Base data ended at " + basePosition + ", expected " + target + " bytes");
+                }
+                skipped = 1;
+            }
+            basePosition += skipped;
+        }
+    }
+
+    @Override
+    public void close() {
+        DbUtils.closeSilently(changes);
+        DbUtils.closeSilently(base);
+    }
+}
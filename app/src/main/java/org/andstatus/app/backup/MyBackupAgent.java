@@ -21,6 +21,8 @@ import android.app.backup.BackupAgent;
 import android.app.backup.BackupDataInput;
 import android.app.backup.BackupDataOutput;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.ParcelFileDescriptor;
 
 import org.andstatus.app.R;
@@ -35,19 +37,24 @@ import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.database.DatabaseHolder;
 import org.andstatus.app.service.MyServiceManager;
 import org.andstatus.app.service.MyServiceState;
-import org.andstatus.app.util.FileUtils;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.SharedPreferencesUtil;
 import org.andstatus.app.util.TriState;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 public class MyBackupAgent extends BackupAgent {
     public static final String DATABASE_KEY = "database";
     public static final String SHARED_PREFERENCES_KEY = "shared_preferences";
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final long PROGRESS_REPORT_PERIOD_SECONDS = 5;
+    private static final String WAL_SUFFIX = "-wal";
+    private static final String DATABASE_SNAPSHOT_DIR = "backup_snapshot";
 
     private Activity activity;
     private MyBackupDescriptor backupDescriptor = null;
@@ -68,6 +75,10 @@ public class MyBackupAgent extends BackupAgent {
     void setContext(Context baseContext) {
         attachBaseContext(baseContext);
     }
+
+    void setBackupDescriptor(MyBackupDescriptor backupDescriptor) {
+        this.backupDescriptor = backupDescriptor;
+    }
     
     @Override
     public void onBackup(ParcelFileDescriptor oldState, BackupDataOutput data,
@@ -141,49 +152,166 @@ public class MyBackupAgent extends BackupAgent {
         sharedPreferencesBackedUp = backupFile(data,
                 SHARED_PREFERENCES_KEY,
                 SharedPreferencesUtil.defaultSharedPreferencesPath(MyContextHolder.get().context()));
-        databasesBackedUp = backupFile(data,
+        databasesBackedUp = backupDatabase(data,
                 DATABASE_KEY + "_" + DatabaseHolder.DATABASE_NAME,
                 MyStorage.getDatabasePath(DatabaseHolder.DATABASE_NAME));
         accountsBackedUp = MyContextHolder.get().accounts().onBackup(data, backupDescriptor);
     }
     
+    private long backupDatabase(MyBackupDataOutput data, String key, File dataFile) throws IOException {
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        if (db == null) {
+            throw new FileNotFoundException("Database is not available");
+        }
+        return backupDatabase(data, key, db, dataFile);
+    }
+
+    /**
+     * Backs up a consistent snapshot of the database: the database file and its write-ahead log (if any)
+     * are copied to a local snapshot inside a transaction. The transaction (BEGIN IMMEDIATE) blocks other writers,
+     * but not readers, so the log doesn't grow and is not reset during the copy.
+     * The transaction is held only for the local copy: the log is merged into the snapshot,
+     * and the snapshot is written to the backup after the transaction ends.
+     * If the snapshot couldn't be made, e.g. there is not enough space, and the log is empty,
+     * the database is written to the backup inside the transaction, blocking writers for the whole backup
+     * of the database
+     */
+    long backupDatabase(MyBackupDataOutput data, String key, SQLiteDatabase db, File dataFile) throws IOException {
+        File walFile = new File(dataFile.getPath() + WAL_SUFFIX);
+        File snapshotDir = new File(MyContextHolder.get().context().getCacheDir(), DATABASE_SNAPSHOT_DIR);
+        File snapshot = new File(snapshotDir, dataFile.getName());
+        try {
+            boolean snapshotMade;
+            db.beginTransactionNonExclusive();
+            try {
+                if (!dataFile.exists()) {
+                    return backupFile(data, key, dataFile);
+                }
+                boolean walIsEmpty = walFile.length() == 0;
+                snapshotMade = copySnapshot(dataFile, snapshot)
+                        && (walIsEmpty || copySnapshot(walFile, new File(snapshot.getPath() + WAL_SUFFIX)));
+                if (!snapshotMade && walIsEmpty) {
+                    return backupFile(data, key, dataFile);
+                }
+            } finally {
+                db.endTransaction();
+            }
+            if (!snapshotMade) {
+                throw new FileNotFoundException("Couldn't make a snapshot of the database with its write-ahead log");
+            }
+            mergeLogIntoSnapshot(snapshot);
+            return backupFile(data, key, snapshot);
+        } finally {
+            deleteSnapshot(snapshot);
+        }
+    }
+
+    /** Changes from the copied write-ahead log are checkpointed into the snapshot file */
+    private void mergeLogIntoSnapshot(File snapshot) {
+        if (!new File(snapshot.getPath() + WAL_SUFFIX).exists()) return;
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(snapshot.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try (Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+            while (cursor.moveToNext()) {
+                // Checkpoint is done, while its result is being read
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    /** @return false, if the snapshot couldn't be made */
+    private boolean copySnapshot(File dataFile, File snapshot) {
+        long startedAt = System.currentTimeMillis();
+        File snapshotDir = snapshot.getParentFile();
+        if (!snapshotDir.exists() && !snapshotDir.mkdirs()) {
+            MyLog.i(this, "Couldn't create folder for a snapshot of the database: '" + snapshotDir + "'");
+            return false;
+        }
+        long bytesToWrite = dataFile.length();
+        if (snapshotDir.getUsableSpace() < bytesToWrite) {
+            MyLog.i(this, "Not enough space for a snapshot of the database of " + bytesToWrite + " bytes");
+            return false;
+        }
+        long bytesWritten = 0;
+        try (FileInputStream inputStream = new FileInputStream(dataFile);
+             FileChannel in = inputStream.getChannel();
+             FileOutputStream outputStream = new FileOutputStream(snapshot, false);
+             FileChannel out = outputStream.getChannel()) {
+            while (bytesWritten < bytesToWrite) {
+                long written = in.transferTo(bytesWritten, Math.min(TRANSFER_CHUNK_SIZE, bytesToWrite - bytesWritten),
+                        out);
+                if (written <= 0) {
+                    break;
+                }
+                bytesWritten += written;
+            }
+        } catch (IOException e) {
+            MyLog.i(this, "Failed to make a snapshot of the database", e);
+            deleteSnapshot(snapshot);
+            return false;
+        }
+        if (bytesWritten != bytesToWrite) {
+            MyLog.i(this, "Snapshot of the database is incomplete, wrote " + bytesWritten + " of "
+                    + bytesToWrite + " bytes");
+            deleteSnapshot(snapshot);
+            return false;
+        }
+        MyLog.v(this, () -> "Snapshot of the database made, "
+                + ProgressLogger.formatThroughput(bytesToWrite, startedAt));
+        return true;
+    }
+
+    private void deleteSnapshot(File snapshot) {
+        for (String suffix : new String[]{"", WAL_SUFFIX, "-shm", "-journal"}) {
+            File file = new File(snapshot.getPath() + suffix);
+            if (file.exists() && !file.delete()) {
+                MyLog.i(this, "Couldn't delete snapshot of the database: '" + file + "'");
+            }
+        }
+    }
+
     private long backupFile(MyBackupDataOutput data, String key, File dataFile) throws IOException {
         long backedUpCount = 0;
         if (dataFile.exists()) {
-            long fileLength = dataFile.length();
-            if ( fileLength > Integer.MAX_VALUE) {
-                throw new FileNotFoundException("File '" 
-                        + dataFile.getName() + "' is too large for backup: " + fileLength + " bytes" );
-            } 
-            int bytesToWrite = (int) fileLength;
+            long bytesToWrite = dataFile.length();
             data.writeEntityHeader(key, bytesToWrite, MyBackupDataOutput.getDataFileExtension(dataFile));
-            int bytesWritten = 0;
-            while (bytesWritten < bytesToWrite) {
-                byte[] bytes = FileUtils.getBytes(dataFile, bytesWritten, MyBackupDataInput.FILE_CHUNK_SIZE);
-                if (bytes.length <= 0) {
-                    break;
+            long bytesWritten = 0;
+            long startedAt = System.currentTimeMillis();
+            ProgressLogger logger = backupDescriptor.getLogger();
+            try (FileInputStream inputStream = new FileInputStream(dataFile);
+                 FileChannel in = inputStream.getChannel()) {
+                while (bytesWritten < bytesToWrite) {
+                    long written = data.writeEntityData(in, bytesWritten,
+                            Math.min(TRANSFER_CHUNK_SIZE, bytesToWrite - bytesWritten));
+                    if (written <= 0) {
+                        break;
+                    }
+                    bytesWritten += written;
+                    if (bytesWritten < bytesToWrite && logger.loggedMoreSecondsAgoThan(PROGRESS_REPORT_PERIOD_SECONDS)) {
+                        logger.logBytesProgress("Backing up '" + dataFile.getName() + "'",
+                                bytesWritten, bytesToWrite, startedAt);
+                    }
                 }
-                bytesWritten += bytes.length;
-                data.writeEntityData(bytes, bytes.length);
             }
             if (bytesWritten != bytesToWrite) {
                 throw new FileNotFoundException("Couldn't backup "
                         + filePartiallyWritten(key, dataFile, bytesToWrite, bytesWritten));
             }
             backedUpCount++;
-            backupDescriptor.getLogger().logProgress(
-                    "Backed up " + fileWritten(key, dataFile, bytesWritten));
+            logger.logProgress("Backed up " + fileWritten(key, dataFile, bytesWritten)
+                    + ", " + ProgressLogger.formatThroughput(bytesWritten, startedAt));
         } else {
             MyLog.v(this, () -> "File doesn't exist key='" + key + "', path='" + dataFile.getAbsolutePath());
         }
         return backedUpCount;
     }
 
-    private String fileWritten(String key, File dataFile, int bytesWritten) {
+    private String fileWritten(String key, File dataFile, long bytesWritten) {
         return filePartiallyWritten(key, dataFile, bytesWritten, bytesWritten);
     }
     
-    private String filePartiallyWritten(String key, File dataFile, int bytesToWrite, int bytesWritten) {
+    private String filePartiallyWritten(String key, File dataFile, long bytesToWrite, long bytesWritten) {
         if ( bytesWritten == bytesToWrite) {
             return "file:'" + dataFile.getName()
                     + "', key:'" + key + "', length:"
@@ -328,11 +456,12 @@ public class MyBackupAgent extends BackupAgent {
         }
         final String method = "restoreFile";
         MyLog.i(this, method + " started, " + fileWritten(data.getKey(), dataFile, data.getDataSize()));
-        int bytesToWrite = data.getDataSize();
-        int bytesWritten = 0;
+        long bytesToWrite = data.getDataSize();
+        long bytesWritten = 0;
+        long startedAt = System.currentTimeMillis();
         try (FileOutputStream output = new FileOutputStream(dataFile, false)) {
+            byte[] bytes = new byte[MyBackupDataInput.FILE_CHUNK_SIZE];
             while (bytesToWrite > bytesWritten) {
-                byte[] bytes = new byte[MyBackupDataInput.FILE_CHUNK_SIZE];
                 int bytesRead = data.readEntityData(bytes, 0, bytes.length);
                 if (bytesRead == 0) {
                     break;
@@ -346,7 +475,8 @@ public class MyBackupAgent extends BackupAgent {
             }
         }
         backupDescriptor.getLogger().logProgress("Restored "
-                + filePartiallyWritten(data.getKey(), dataFile, bytesToWrite, bytesWritten));
+                + filePartiallyWritten(data.getKey(), dataFile, bytesToWrite, bytesWritten)
+                + ", " + ProgressLogger.formatThroughput(bytesWritten, startedAt));
         return 1;
     }
 
@@ -19,16 +19,22 @@ package org.andstatus.app.backup;
 import android.app.backup.BackupDataInput;
 
 import org.andstatus.app.context.MyContext;
+import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.util.FileUtils;
 import org.andstatus.app.util.MyLog;
+import org.andstatus.app.util.StringUtils;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
 
 public class MyBackupDataInput {
     final static int FILE_CHUNK_SIZE = 250000;
@@ -40,16 +46,21 @@ public class MyBackupDataInput {
     private Set<BackupHeader> headers = new TreeSet<BackupHeader>();
     private Iterator<BackupHeader> keysIterator;
     private boolean mHeaderReady = false;
-    private int dataOffset = 0;
+    private long dataOffset = 0;
     private BackupHeader header = BackupHeader.getEmpty();
+    private InputStream entityIn = null;
     
     static class BackupHeader implements Comparable<BackupHeader> {
         String key;
         long ordinalNumber;
-        int dataSize;
+        long dataSize;
         String fileExtension;
+        /** Empty for uncompressed data */
+        String compression = "";
+        /** Name of the folder of the backup, changed blocks of the data are relative to. Empty for a full backup */
+        String baseBackup = "";
 
-        BackupHeader(String key, long ordinalNumber, int dataSize, String fileExtension) {
+        BackupHeader(String key, long ordinalNumber, long dataSize, String fileExtension) {
             this.key = key;
             this.ordinalNumber = ordinalNumber;
             this.dataSize = dataSize;
@@ -61,11 +72,18 @@ public class MyBackupDataInput {
         }
         
         static BackupHeader fromJson(JSONObject jso) {
-            return new BackupHeader(
+            BackupHeader header = new BackupHeader(
             jso.optString(MyBackupDataOutput.KEY_KEYNAME, ""),
             jso.optLong(MyBackupDataOutput.KEY_ORDINAL_NUMBER, 0),
-            jso.optInt(MyBackupDataOutput.KEY_DATA_SIZE, 0),
+            jso.optLong(MyBackupDataOutput.KEY_DATA_SIZE, 0),
             jso.optString(MyBackupDataOutput.KEY_FILE_EXTENSION, MyBackupDataOutput.DATA_FILE_EXTENSION_DEFAULT));
+            header.compression = jso.optString(MyBackupDataOutput.KEY_COMPRESSION, "");
+            header.baseBackup = jso.optString(MyBackupDataOutput.KEY_BASE_BACKUP, "");
+            return header;
+        }
+
+        boolean isCompressed() {
+            return MyBackupDataOutput.COMPRESSION_GZIP.equals(compression);
         }
 
         @Override
@@ -78,7 +96,7 @@ public class MyBackupDataInput {
         public int hashCode() {
             final int prime = 31;
             int result = 1;
-            result = prime * result + dataSize;
+            result = prime * result + (int) (dataSize ^ (dataSize >>> 32));
             result = prime * result + ((fileExtension == null) ? 0 : fileExtension.hashCode());
             result = prime * result + ((key == null) ? 0 : key.hashCode());
             result = prime * result + (int) (ordinalNumber ^ (ordinalNumber >>> 32));
@@ -120,7 +138,10 @@ public class MyBackupDataInput {
         @Override
         public String toString() {
             return "BackupHeader [key=" + key + ", ordinalNumber=" + ordinalNumber + ", dataSize="
-                    + dataSize + "]";
+                    + dataSize
+                    + (StringUtils.isEmpty(compression) ? "" : ", compression=" + compression)
+                    + (StringUtils.isEmpty(baseBackup) ? "" : ", base=" + baseBackup)
+                    + "]";
         }
     }
     
@@ -153,6 +174,7 @@ public class MyBackupDataInput {
     }
 
     private boolean readNextHeader2() throws IOException {
+        closeEntity();
         mHeaderReady = false;
         dataOffset = 0;
         if (keysIterator.hasNext()) {
@@ -184,7 +206,7 @@ public class MyBackupDataInput {
     }
 
     /** {@link BackupDataInput#getDataSize()}  */
-    public int getDataSize() {
+    public long getDataSize() {
         if (backupDataInput != null) {
             return backupDataInput.getDataSize();
         } else {
@@ -192,7 +214,7 @@ public class MyBackupDataInput {
         }
     }
 
-    private int getDataSize2() {
+    private long getDataSize2() {
         if (mHeaderReady) {
             return header.dataSize;
         } else {
@@ -216,18 +238,68 @@ public class MyBackupDataInput {
         } else if (size < 1 || dataOffset >= header.dataSize) {
             // skip
         } else if (mHeaderReady) {
-            File dataFile = new File(dataFolder, header.key + MyBackupDataOutput.DATA_FILE_SUFFIX + header.fileExtension);
-            byte[] readData = FileUtils.getBytes(dataFile, dataOffset, size);
-            bytesRead = readData.length;
-            System.arraycopy(readData, 0, data, offset, bytesRead);
+            if (entityIn == null) {
+                entityIn = openEntity(dataFolder, header);
+            }
+            bytesRead = readFully(entityIn, data, offset, (int) Math.min(size, header.dataSize - dataOffset));
         } else {
             throw new IllegalStateException("Entity header not read");
         }
         MyLog.v(this, "key=" + header.key + ", offset=" + dataOffset + ", bytes read=" + bytesRead);
         dataOffset += bytesRead;
+        if (dataOffset >= header.dataSize) {
+            closeEntity();
+        }
+        return bytesRead;
+    }
+
+    /** Full data of the entity. Data of an incremental backup is merged with the data of its base backups */
+    private static InputStream openEntity(File dataFolder, BackupHeader header) throws IOException {
+        File dataFile = new File(dataFolder, MyBackupDataOutput.getDataFileName(header.key, header.fileExtension,
+                header.isCompressed()));
+        InputStream in = new BufferedInputStream(new FileInputStream(dataFile));
+        try {
+            if (header.isCompressed()) {
+                in = new GZIPInputStream(in);
+            }
+            if (StringUtils.isEmpty(header.baseBackup)) return in;
+
+            File baseFolder = new File(dataFolder.getParentFile(), header.baseBackup);
+            File baseHeaderFile = new File(baseFolder, header.key + MyBackupDataOutput.HEADER_FILE_SUFFIX);
+            if (!baseHeaderFile.exists()) {
+                throw new FileNotFoundException("Base backup of '" + header.key + "' not found: "
+                        + baseHeaderFile.getAbsolutePath());
+            }
+            BackupHeader baseHeader = BackupHeader.fromJson(FileUtils.getJSONObject(baseHeaderFile));
+            BlockHashes hashes = BlockHashes.load(dataFolder, header.key);
+            if (hashes == null) {
+                throw new FileNotFoundException("Block hashes of '" + header.key + "' not found in "
+                        + dataFolder.getAbsolutePath());
+            }
+            return new IncrementalInputStream(in, openEntity(baseFolder, baseHeader), hashes,
+                    BlockHashes.load(baseFolder, header.key));
+        } catch (IOException e) {
+            DbUtils.closeSilently(in);
+            throw e;
+        }
+    }
+
+    /** Reads "size" bytes or less, if the stream ended */
+    private static int readFully(InputStream in, byte[] data, int offset, int size) throws IOException {
+        int bytesRead = 0;
+        while (bytesRead < size) {
+            int read = in.read(data, offset + bytesRead, size - bytesRead);
+            if (read < 0) break;
+            bytesRead += read;
+        }
         return bytesRead;
     }
 
+    private void closeEntity() {
+        DbUtils.closeSilently(entityIn);
+        entityIn = null;
+    }
+
     /** {@link BackupDataInput#skipEntityData()}  */
     public void skipEntityData() throws IOException {
         if (backupDataInput != null) {
@@ -238,6 +310,7 @@ public class MyBackupDataInput {
     }
 
     private void skipEntityData2() {
+        closeEntity();
         if (mHeaderReady) {
             mHeaderReady = false;
         } else {
@@ -17,6 +17,7 @@
 package org.andstatus.app.backup;
 
 import android.app.backup.BackupDataOutput;
+import android.support.annotation.Nullable;
 
 import org.andstatus.app.util.MyLog;
 import org.json.JSONException;
@@ -28,22 +29,45 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPOutputStream;
 
-/** Allowing to instantiate and to mock BackupDataOutput class */
+/** Allowing to instantiate and to mock BackupDataOutput class.
+ * Data, written to a folder, may be compressed, and data of files may be incremental:
+ * only blocks of a file, changed since a base backup, are written, see {@link BlockHashes} */
 public class MyBackupDataOutput {
     static final String HEADER_FILE_SUFFIX = "_header.json";
     static final String DATA_FILE_SUFFIX = "_data";
     static final String DATA_FILE_EXTENSION_DEFAULT = ".dat";
+    static final String COMPRESSED_FILE_EXTENSION = ".gz";
     static final String KEY_KEYNAME = "key";
     static final String KEY_DATA_SIZE = "data_size";
     static final String KEY_ORDINAL_NUMBER = "ordinal_number";
     static final String KEY_FILE_EXTENSION = "file_extension";
+    static final String KEY_COMPRESSION = "compression";
+    static final String COMPRESSION_GZIP = "gzip";
+    static final String KEY_BASE_BACKUP = "base_backup";
     private File dataFolder;
     private BackupDataOutput backupDataOutput;
-    private int sizeToWrite = 0;
-    private int sizeWritten = 0;
+    private long sizeToWrite = 0;
+    private long sizeWritten = 0;
     private File dataFile = null;
     private int headerOrdinalNumber = 0;
+    private byte[] chunk = null;
+    private byte[] block = null;
+
+    private boolean compressed = false;
+    private boolean incremental = false;
+    @Nullable
+    private File baseFolder = null;
+
+    private String key = "";
+    private String fileExtension = "";
+    private FileOutputStream dataFileOut = null;
+    private OutputStream entityOut = null;
+    private BlockHashes blockHashes = null;
+    private BlockHashes baseBlockHashes = null;
 
     public MyBackupDataOutput(BackupDataOutput backupDataOutput) {
         this.backupDataOutput = backupDataOutput;
@@ -53,34 +77,66 @@ public class MyBackupDataOutput {
         this.dataFolder = dataFolder;
     }
 
+    void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /** Hashes of blocks of files are written, so later backups may be based on this one
+     * @param baseFolder Blocks of files, which didn't change since that backup, are not written. May be null */
+    void setIncremental(@Nullable File baseFolder) {
+        incremental = true;
+        this.baseFolder = baseFolder;
+    }
+
     /** {@link BackupDataOutput#writeEntityHeader(String, int)} */
-    public int writeEntityHeader(String key, int dataSize, String fileExtension) throws IOException {
+    public int writeEntityHeader(String key, long dataSize, String fileExtension) throws IOException {
         headerOrdinalNumber++;
         if (backupDataOutput != null) {
-            return backupDataOutput.writeEntityHeader(key, dataSize);
+            if (dataSize > Integer.MAX_VALUE) {
+                throw new FileNotFoundException("Data of '" + key + "' is too large for Android backup: "
+                        + dataSize + " bytes");
+            }
+            return backupDataOutput.writeEntityHeader(key, (int) dataSize);
         } else {
             return writeEntityHeader2(key, dataSize, fileExtension);
         }
     }
 
-    private int writeEntityHeader2(String key, int dataSize, String fileExtension) throws IOException {
+    private int writeEntityHeader2(String key, long dataSize, String fileExtension) throws IOException {
         MyLog.v(this, "Writing header for '" + key + "', size=" + dataSize);
+        closeEntity();
+        this.key = key;
+        this.fileExtension = fileExtension;
         sizeToWrite = dataSize;
         sizeWritten = 0;
-        writeHeaderFile(key, dataSize, fileExtension);
-        createDataFile(key, dataSize, fileExtension);
+        blockHashes = null;
+        baseBlockHashes = null;
+        createFileIfNeeded(-1, getHeaderFile());
+        createDataFile();
         return key.length();
     }
 
-    private void writeHeaderFile(String key, int dataSize, String fileExtension) throws IOException {
-        File headerFile = new File(dataFolder, key + HEADER_FILE_SUFFIX);
-        createFileIfNeeded(dataSize, headerFile);
+    private File getHeaderFile() {
+        return new File(dataFolder, key + HEADER_FILE_SUFFIX);
+    }
+
+    /** The header is written, when all data of the entity is written,
+     * because only then we know, whether the data is relative to a base backup */
+    private void writeHeaderFile() throws IOException {
+        File headerFile = getHeaderFile();
+        createFileIfNeeded(sizeToWrite, headerFile);
         JSONObject jso = new JSONObject();
         try {
             jso.put(KEY_KEYNAME, key);
             jso.put(KEY_ORDINAL_NUMBER, headerOrdinalNumber);
-            jso.put(KEY_DATA_SIZE, dataSize);
+            jso.put(KEY_DATA_SIZE, sizeToWrite);
             jso.put(KEY_FILE_EXTENSION, fileExtension);
+            if (compressed) {
+                jso.put(KEY_COMPRESSION, COMPRESSION_GZIP);
+            }
+            if (baseFolder != null && baseBlockHashes != null) {
+                jso.put(KEY_BASE_BACKUP, baseFolder.getName());
+            }
             byte[] bytes = jso.toString(2).getBytes("UTF-8");
             appendBytesToFile(headerFile, bytes, bytes.length);
         } catch (JSONException e) {
@@ -88,7 +144,7 @@ public class MyBackupDataOutput {
         }
     }
 
-    private void createFileIfNeeded(int dataSize, File file) throws IOException {
+    private void createFileIfNeeded(long dataSize, File file) throws IOException {
         if (file.exists() && !file.delete()) {
             throw new FileNotFoundException("Couldn't delete " + file.getAbsolutePath());
         }
@@ -97,9 +153,24 @@ public class MyBackupDataOutput {
         }
     }
     
-    private void createDataFile(String key, int dataSize, String fileExtension) throws IOException {
-        dataFile = new File(dataFolder, key + DATA_FILE_SUFFIX + fileExtension);
-        createFileIfNeeded(dataSize, dataFile);
+    private void createDataFile() throws IOException {
+        dataFile = new File(dataFolder, getDataFileName(key, fileExtension, compressed));
+        createFileIfNeeded(sizeToWrite, dataFile);
+        if (sizeToWrite < 0) {
+            finishEntity();
+            return;
+        }
+
+        dataFileOut = new FileOutputStream(dataFile);
+        OutputStream out = new BufferedOutputStream(dataFileOut);
+        entityOut = compressed ? new GZIPOutputStream(out) : out;
+        if (sizeToWrite == 0) {
+            finishEntity();
+        }
+    }
+
+    static String getDataFileName(String key, String fileExtension, boolean compressed) {
+        return key + DATA_FILE_SUFFIX + fileExtension + (compressed ? COMPRESSED_FILE_EXTENSION : "");
     }
 
     /** {@link BackupDataOutput#writeEntityData(byte[], int)} */
@@ -112,13 +183,108 @@ public class MyBackupDataOutput {
     }
 
     private int writeEntityData2(byte[] data, int size) throws IOException {
-        if (!dataFile.exists()) {
-            throw new FileNotFoundException("Output file doesn't exist " + dataFile.getAbsolutePath());
-        }
+        assertEntityIsOpen();
         if (size < 0) {
             throw new FileNotFoundException("Wrong number of bytes to write: " + size);
         }
-        appendBytesToFile(dataFile, data, size);
+        MyLog.v(this, "Appending data to file='" + dataFile.getName() + "', size=" + size);
+        entityOut.write(data, 0, size);
+        onDataWritten(size);
+        return size;
+    }
+
+    private void assertEntityIsOpen() throws FileNotFoundException {
+        if (entityOut == null || !dataFile.exists()) {
+            throw new FileNotFoundException("Output file doesn't exist "
+                    + (dataFile == null ? "for '" + key + "'" : dataFile.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Writes a part of entity data from the channel, without changing the position of the channel.
+     * Uncompressed full data is transferred by the file system directly to the data file of a backup folder,
+     * without copying it to the Java heap
+     * @return Number of bytes written, 0 if the end of the channel was reached
+     */
+    public long writeEntityData(FileChannel in, long position, long size) throws IOException {
+        if (backupDataOutput != null) {
+            return writeEntityDataInChunks(in, position, size);
+        }
+        assertEntityIsOpen();
+        long written = compressed || incremental
+                ? writeEntityDataInBlocks(in, position, size)
+                : transferEntityData(in, position, size);
+        onDataWritten(written);
+        return written;
+    }
+
+    private long transferEntityData(FileChannel in, long position, long size) throws IOException {
+        entityOut.flush();
+        FileChannel out = dataFileOut.getChannel();
+        long written = 0;
+        while (written < size) {
+            long transferred = in.transferTo(position + written, size - written, out);
+            if (transferred <= 0) break;
+            written += transferred;
+        }
+        return written;
+    }
+
+    private long writeEntityDataInChunks(FileChannel in, long position, long size) throws IOException {
+        if (chunk == null) {
+            chunk = new byte[MyBackupDataInput.FILE_CHUNK_SIZE];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        long written = 0;
+        while (written < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(chunk.length, size - written));
+            int read = in.read(buffer, position + written);
+            if (read <= 0) break;
+            backupDataOutput.writeEntityData(chunk, read);
+            written += read;
+        }
+        return written;
+    }
+
+    /** Hashes of blocks are counted; in an incremental backup, only changed blocks are written */
+    private long writeEntityDataInBlocks(FileChannel in, long position, long size) throws IOException {
+        if (position % BlockHashes.BLOCK_SIZE != 0) {
+            throw new FileNotFoundException("Position " + position + " is not at a start of a block of "
+                    + BlockHashes.BLOCK_SIZE + " bytes");
+        }
+        if (incremental && blockHashes == null) {
+            blockHashes = new BlockHashes();
+            baseBlockHashes = baseFolder == null ? null : BlockHashes.load(baseFolder, key);
+        }
+        if (block == null) {
+            block = new byte[BlockHashes.BLOCK_SIZE];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        long written = 0;
+        while (written < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(block.length, size - written));
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer, position + written + buffer.position()) <= 0) break;
+            }
+            int read = buffer.position();
+            if (read == 0) break;
+            if (blockHashes == null) {
+                entityOut.write(block, 0, read);
+            } else {
+                blockHashes.add(block, read);
+                if (blockHashes.isChanged(blockHashes.size() - 1, baseBlockHashes)) {
+                    entityOut.write(block, 0, read);
+                }
+            }
+            written += read;
+            if (read < buffer.limit()) break;
+        }
+        return written;
+    }
+
+    private void onDataWritten(long size) throws IOException {
         sizeWritten += size;
         if (sizeWritten >= sizeToWrite) {
             try {
@@ -126,12 +292,32 @@ public class MyBackupDataOutput {
                     throw new FileNotFoundException("Data is longer than expected: written=" + sizeWritten 
                             + ", expected=" + sizeToWrite );
                 }
+                finishEntity();
             } finally {
-                dataFile = null;
-                sizeWritten = 0;
+                closeEntity();
             }
         }
-        return size;
+    }
+
+    private void finishEntity() throws IOException {
+        closeEntity();
+        if (blockHashes != null) {
+            blockHashes.save(dataFolder, key);
+        }
+        writeHeaderFile();
+    }
+
+    private void closeEntity() throws IOException {
+        try {
+            if (entityOut != null) {
+                entityOut.close();
+            }
+        } finally {
+            entityOut = null;
+            dataFileOut = null;
+            dataFile = null;
+            sizeWritten = 0;
+        }
     }
 
     private void appendBytesToFile(File file, byte[] data, int size) throws IOException {
@@ -25,6 +25,7 @@ import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.database.DatabaseCreator;
 import org.andstatus.app.util.FileDescriptorUtils;
 import org.andstatus.app.util.MyLog;
+import org.andstatus.app.util.StringUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -52,6 +53,7 @@ public class MyBackupDescriptor {
     static final String KEY_CREATED_DATE = "created_date";
     static final String KEY_BACKUP_SCHEMA_VERSION = "backup_schema_version";
     static final String KEY_APPLICATION_VERSION_CODE = "app_version_code";
+    static final String KEY_BASE_BACKUP = "base_backup";
     
     private int backupSchemaVersion = BACKUP_SCHEMA_VERSION_UNKNOWN;
     private int applicationVersionCode = 0;
@@ -60,6 +62,8 @@ public class MyBackupDescriptor {
     private FileDescriptor fileDescriptor = null;
 
     private long accountsCount = 0;
+    /** Name of the data folder of the previous backup, if this backup contains only changes since that backup */
+    private String baseBackup = "";
 
     private final ProgressLogger progressLogger;
     
@@ -80,6 +84,7 @@ public class MyBackupDescriptor {
             myBackupDescriptor.createdDate = jso.optLong(KEY_CREATED_DATE, myBackupDescriptor.createdDate);
             myBackupDescriptor.applicationVersionCode = jso.optInt(KEY_APPLICATION_VERSION_CODE, myBackupDescriptor.applicationVersionCode);
             myBackupDescriptor.accountsCount = jso.optLong(KEY_ACCOUNTS_COUNT, myBackupDescriptor.accountsCount);
+            myBackupDescriptor.baseBackup = jso.optString(KEY_BASE_BACKUP, myBackupDescriptor.baseBackup);
             if (myBackupDescriptor.backupSchemaVersion != BACKUP_SCHEMA_VERSION) {
                 try {
                     MyLog.w(TAG, "Bad backup descriptor: " + jso.toString(2) );
@@ -137,6 +142,9 @@ public class MyBackupDescriptor {
             jso.put(KEY_CREATED_DATE, createdDateNew);
             jso.put(KEY_APPLICATION_VERSION_CODE, applicationVersionCode);
             jso.put(KEY_ACCOUNTS_COUNT, accountsCount);
+            if (!StringUtils.isEmpty(baseBackup)) {
+                jso.put(KEY_BASE_BACKUP, baseBackup);
+            }
             
             writeStringToFileDescriptor(jso.toString(), fileDescriptor, true);
             createdDate = createdDateNew;
@@ -164,6 +172,7 @@ public class MyBackupDescriptor {
                 + (fileDescriptor == null ? ", fileDescriptor:null" : "")
                 + ", versionCode:" + applicationVersionCode
                 + ", accountsCount:" + accountsCount
+                + (StringUtils.isEmpty(baseBackup) ? "" : ", baseBackup:" + baseBackup)
                 + "}";
      }
 
@@ -180,6 +189,14 @@ public class MyBackupDescriptor {
         progressLogger.logProgress("Accounts backed up:" + accountsCount);
     }
 
+    String getBaseBackup() {
+        return baseBackup;
+    }
+
+    void setBaseBackup(String baseBackup) {
+        this.baseBackup = baseBackup;
+    }
+
     public ProgressLogger getLogger() {
         return progressLogger;
     }
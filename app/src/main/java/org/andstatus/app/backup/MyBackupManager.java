@@ -24,7 +24,9 @@ import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
 
 import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.util.FileUtils;
 import org.andstatus.app.util.MyLog;
+import org.andstatus.app.util.StringUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -39,7 +41,9 @@ import java.util.Arrays;
  * One backup consists of:
  * 1. Backup descriptor file
  * 2. Folder with: 
- *      For each backup "key": header file and data file  
+ *      For each backup "key": header file and data file, which may be compressed.
+ *      In an incremental backup, data files contain only blocks, changed since the previous backup,
+ *      and hashes of all blocks, see {@link BlockHashes}
  * @author yvolk (Yuri Volkov), http://yurivolkov.com
  */
 class MyBackupManager {
@@ -50,14 +54,19 @@ class MyBackupManager {
     private MyBackupAgent backupAgent;
     private final Activity activity;
     private final ProgressLogger progressLogger;
+    private boolean compressed = false;
+    private boolean incremental = false;
 
     MyBackupManager(Activity activity, ProgressLogger.ProgressCallback progressCallback) {
         this.activity = activity;
         this.progressLogger = new ProgressLogger(progressCallback);
     }
 
-    static void backupInteractively(File backupFolder, Activity activity, ProgressLogger.ProgressCallback progressCallback) {
+    static void backupInteractively(File backupFolder, Activity activity, boolean compressed, boolean incremental,
+                                    ProgressLogger.ProgressCallback progressCallback) {
         MyBackupManager backupManager = new MyBackupManager(activity, progressCallback);
+        backupManager.setCompressed(compressed);
+        backupManager.setIncremental(incremental);
         try {
             backupManager.prepareForBackup(backupFolder);
             backupManager.backup();
@@ -92,6 +101,15 @@ class MyBackupManager {
         }
     }
 
+    void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /** Only changes since the latest backup in the same parent folder will be backed up */
+    void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
     File getDataFolder() {
         return dataFolder;
     }
@@ -118,10 +136,21 @@ class MyBackupManager {
         backupAgent.setContext(MyContextHolder.get().context());
         
         MyBackupDataOutput dataOutput = new MyBackupDataOutput(dataFolder);
+        dataOutput.setCompressed(compressed);
+        File baseFolder = incremental ? findLatestBackup(dataFolder.getParentFile(), dataFolder) : null;
+        if (incremental) {
+            progressLogger.logProgress(baseFolder == null
+                    ? "No previous backup found, all data will be backed up"
+                    : "Only changes since the backup '" + baseFolder.getName() + "' will be backed up");
+            dataOutput.setIncremental(baseFolder);
+        }
         ParcelFileDescriptor newState = ParcelFileDescriptor.open(getDescriptorFile(),
                 ParcelFileDescriptor.MODE_READ_WRITE);
         try {
             newDescriptor = MyBackupDescriptor.fromEmptyParcelFileDescriptor(newState, progressLogger);
+            if (baseFolder != null) {
+                newDescriptor.setBaseBackup(baseFolder.getName());
+            }
             backupAgent.onBackup(MyBackupDescriptor.getEmpty(), dataOutput, newDescriptor);
             progressLogger.logSuccess();
         } finally {
@@ -129,6 +158,28 @@ class MyBackupManager {
         }
     }
 
+    /** @return The latest successfully created backup in the folder, except the excluded one, or null */
+    static File findLatestBackup(File backupFolder, File excluded) {
+        File latest = null;
+        File[] files = backupFolder == null ? null : backupFolder.listFiles();
+        if (files == null) return null;
+
+        for (File file : files) {
+            if (file.equals(excluded) || !isBackupFolder(file)) continue;
+            try {
+                if (FileUtils.getJSONObject(dataFolderToDescriptorFile(file))
+                        .optLong(MyBackupDescriptor.KEY_CREATED_DATE, 0) == 0) continue;
+            } catch (IOException e) {
+                MyLog.d(MyBackupManager.class, "Failed to read descriptor in " + file.getAbsolutePath(), e);
+                continue;
+            }
+            if (latest == null || file.getName().compareTo(latest.getName()) > 0) {
+                latest = file;
+            }
+        }
+        return latest;
+    }
+
     static void restoreInteractively(File backupFile, Activity activity, ProgressLogger.ProgressCallback progressCallback) {
         MyBackupManager backupManager = new MyBackupManager(activity, progressCallback);
         try {
@@ -178,7 +229,9 @@ class MyBackupManager {
         }
         
         progressLogger.logProgress("Starting restore from data folder:'" + dataFolder.getAbsolutePath() 
-                + "', created with app version code:" + newDescriptor.getApplicationVersionCode());
+                + "', created with app version code:" + newDescriptor.getApplicationVersionCode()
+                + (StringUtils.isEmpty(newDescriptor.getBaseBackup()) ? ""
+                    : ", changes since the backup '" + newDescriptor.getBaseBackup() + "'"));
         backupAgent = new MyBackupAgent();
         backupAgent.setContext(MyContextHolder.get().context());
         backupAgent.setActivity(activity);
@@ -17,6 +17,7 @@
 package org.andstatus.app.backup;
 
 import org.andstatus.app.service.MyServiceManager;
+import org.andstatus.app.util.I18n;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.RelativeTime;
 
@@ -68,6 +69,17 @@ public class ProgressLogger {
         if (callback != null) callback.onProgressMessage(message);
     }
 
+    /** Logs progress of copying of data together with its throughput */
+    public void logBytesProgress(CharSequence message, long bytesDone, long bytesTotal, long startedAt) {
+        logProgress(message + ": " + I18n.formatBytes(bytesDone) + " of " + I18n.formatBytes(bytesTotal)
+                + ", " + formatThroughput(bytesDone, startedAt));
+    }
+
+    public static String formatThroughput(long bytes, long startedAt) {
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - startedAt);
+        return I18n.formatBytes(bytes * 1000 / elapsedMillis) + "/s";
+    }
+
     public void updateLastLoggedTime() {
         lastLoggedAt = System.currentTimeMillis();
     }
@@ -29,6 +29,7 @@ import org.acra.ACRA;
 import org.acra.ReportingInteractionMode;
 import org.acra.annotation.ReportsCrashes;
 import org.andstatus.app.R;
+import org.andstatus.app.graphics.ImageCaches;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.StringUtils;
 import org.andstatus.app.util.TamperingDetector;
@@ -64,6 +65,23 @@ public class MyApplication extends Application {
                 MyLocale.onConfigurationChanged(this, newConfig));
     }
     
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MyLog.v(this, () -> "onTrimMemory level:" + level);
+        if (!isAcraProcess) {
+            ImageCaches.onTrimMemory(level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        if (!isAcraProcess) {
+            ImageCaches.onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+    }
+
     @Override
     public File getDatabasePath(String name) {
         return isAcraProcess ? super.getDatabasePath(name) : MyStorage.getDatabasePath(name);
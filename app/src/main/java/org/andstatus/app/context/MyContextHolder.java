@@ -30,7 +30,9 @@ import net.jcip.annotations.ThreadSafe;
 import org.andstatus.app.FirstActivity;
 import org.andstatus.app.data.converter.DatabaseConverterController;
 import org.andstatus.app.graphics.ImageCaches;
+import org.andstatus.app.net.http.JavaNetConnections;
 import org.andstatus.app.os.AsyncTaskLauncher;
+import org.andstatus.app.service.FileDownloadScheduler;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.MyStringBuilder;
 import org.andstatus.app.util.RelativeTime;
@@ -207,7 +209,12 @@ public final class MyContextHolder {
         builder.append("\n");
         builder.append(ImageCaches.getCacheInfo());
         builder.append("\n");
+        builder.append(get().oidCache());
+        builder.append("\n");
         builder.append(AsyncTaskLauncher.threadPoolInfo());
+        builder.append("\n");
+        builder.append(JavaNetConnections.getInfo());
+        builder.append(FileDownloadScheduler.getInfo());
         return builder.toString();
     }
 
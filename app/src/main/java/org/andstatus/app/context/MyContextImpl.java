@@ -27,6 +27,7 @@ import net.jcip.annotations.ThreadSafe;
 
 import org.andstatus.app.ClassInApplicationPackage;
 import org.andstatus.app.account.MyAccounts;
+import org.andstatus.app.data.OidCache;
 import org.andstatus.app.data.converter.DatabaseConverterController;
 import org.andstatus.app.database.DatabaseHolder;
 import org.andstatus.app.graphics.ImageCaches;
@@ -73,6 +74,7 @@ public class MyContextImpl implements MyContext {
     private final MyAccounts accounts = MyAccounts.newEmpty(this);
     private final PersistentOrigins origins = PersistentOrigins.newEmpty(this);
     private final PersistentTimelines timelines = PersistentTimelines.newEmpty(this);
+    private final OidCache oidCache = new OidCache();
 
     private volatile boolean expired = false;
     private final Notifier notifier = new Notifier(this);
@@ -297,6 +299,12 @@ public class MyContextImpl implements MyContext {
         return timelines;
     }
 
+    @NonNull
+    @Override
+    public OidCache oidCache() {
+        return oidCache;
+    }
+
     @Override
     public ConnectionState getConnectionState() {
         return UriUtils.getConnectionState(context);
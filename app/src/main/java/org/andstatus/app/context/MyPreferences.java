@@ -84,6 +84,9 @@ public class MyPreferences {
     public static final String KEY_DONT_SYNCHRONIZE_OLD_NOTES = "dont_synchronize_old_messages";
     public static final String KEY_CONNECTION_TIMEOUT_SECONDS = "connection_timeout";
     private static final long CONNECTION_TIMEOUT_DEFAULT_SECONDS = 30;
+    /** Maximum number of Origins, commands of which are executed in parallel */
+    public static final String KEY_SYNC_PARALLEL_ORIGINS = "sync_parallel_origins";
+    public static final int SYNC_PARALLEL_ORIGINS_MAX = 4;
 
     // ----------------------------------------------------------
     // Filters
@@ -154,6 +157,12 @@ public class MyPreferences {
                 SYNC_FREQUENCY_DEFAULT_SECONDS);
     }
 
+    /** @return 1 for sequential execution of all commands */
+    public static int getSyncParallelOrigins() {
+        long count = SharedPreferencesUtil.getLongStoredAsString(KEY_SYNC_PARALLEL_ORIGINS, 1);
+        return (int) Math.max(1, Math.min(count, SYNC_PARALLEL_ORIGINS_MAX));
+    }
+
     public static boolean isSyncOverWiFiOnly() {
         return SharedPreferencesUtil.getBoolean(KEY_SYNC_OVER_WIFI_ONLY, false);
     }
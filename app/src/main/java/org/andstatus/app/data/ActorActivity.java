@@ -16,10 +16,8 @@
 
 package org.andstatus.app.data;
 
-import android.database.sqlite.SQLiteDatabase;
-import android.provider.BaseColumns;
+import android.database.sqlite.SQLiteStatement;
 
-import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.database.table.ActivityTable;
 import org.andstatus.app.database.table.ActorTable;
 import org.andstatus.app.util.MyLog;
@@ -111,9 +109,10 @@ public final class ActorActivity {
     
     /**
      * Persist the info into the Database
+     * @param statement compiled {@link LatestActorActivities#SQL_UPDATE}
      * @return true if succeeded
      */
-    public boolean save() {
+    boolean save(SQLiteStatement statement) {
         MyLog.v(this, () -> "actorId " + actorId + ": " + MyQuery.actorIdToWebfingerId(actorId)
                 + " Latest activity update at " + (new Date(getLastActivityDate()).toString())
                 + (changed ? "" : " not changed")
@@ -134,24 +133,16 @@ public final class ActorActivity {
             return true;
         }
 
-        String sql = "";
         try {
-            sql += ActorTable.ACTOR_ACTIVITY_ID + "=" + lastActivityId;
-            sql += ", " + ActorTable.ACTOR_ACTIVITY_DATE + "=" + lastActivityDate;
-
-            sql = "UPDATE " + ActorTable.TABLE_NAME + " SET " + sql
-                    + " WHERE " + BaseColumns._ID + "=" + actorId;
-
-            SQLiteDatabase db = MyContextHolder.get().getDatabase();
-            if (db == null) {
-                MyLog.v(this, "Database is null");
-                return false;
-            }
-            db.execSQL(sql);
-            
+            statement.clearBindings();
+            statement.bindLong(1, lastActivityId);
+            statement.bindLong(2, lastActivityDate);
+            statement.bindLong(3, actorId);
+            statement.executeUpdateDelete();
             changed = false;
         } catch (Exception e) {
-            MyLog.e(this, "save: sql='" + sql + "'", e);
+            MyLog.e(this, "save: actorId=" + actorId + ", lastActivityId=" + lastActivityId
+                    + ", lastActivityDate=" + lastActivityDate, e);
             return false;
         }
         return true;
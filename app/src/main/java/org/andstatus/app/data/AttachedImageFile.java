@@ -23,7 +23,6 @@ import org.andstatus.app.graphics.CacheName;
 import org.andstatus.app.graphics.CachedImage;
 import org.andstatus.app.graphics.MediaMetadata;
 import org.andstatus.app.service.CommandData;
-import org.andstatus.app.service.MyServiceManager;
 
 import static org.andstatus.app.util.RelativeTime.DATETIME_MILLIS_NEVER;
 
@@ -56,9 +55,9 @@ public class AttachedImageFile extends ImageFile {
     }
 
     @Override
-    protected void requestDownload() {
-        if (downloadId == 0) return;
+    protected CommandData newDownloadCommand() {
+        if (downloadId == 0) return CommandData.EMPTY;
 
-        MyServiceManager.sendCommand(CommandData.newFetchAttachment(0, downloadId));
+        return CommandData.newFetchAttachment(0, downloadId);
     }
 }
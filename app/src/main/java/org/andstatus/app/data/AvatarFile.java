@@ -30,7 +30,9 @@ import org.andstatus.app.graphics.MediaMetadata;
 import org.andstatus.app.net.social.Actor;
 import org.andstatus.app.service.CommandData;
 import org.andstatus.app.service.CommandEnum;
-import org.andstatus.app.service.MyServiceManager;
+import org.andstatus.app.util.RelativeTime;
+
+import java.util.concurrent.TimeUnit;
 
 import static org.andstatus.app.util.RelativeTime.DATETIME_MILLIS_NEVER;
 
@@ -39,6 +41,8 @@ public class AvatarFile extends ImageFile {
             DownloadStatus.ABSENT, DATETIME_MILLIS_NEVER);
     private final Actor actor;
     public static final int AVATAR_SIZE_DIP = 48;
+    /** A loaded avatar is checked for changes on the server, when its actor is updated after this period */
+    public static final long REVALIDATE_AFTER_SECONDS = TimeUnit.DAYS.toSeconds(14);
     
     @NonNull
     public static AvatarFile fromCursor(Actor actor, Cursor cursor) {
@@ -83,11 +87,10 @@ public class AvatarFile extends ImageFile {
     }
 
     @Override
-    protected void requestDownload() {
-        if (getActor().actorId == 0) return;
+    protected CommandData newDownloadCommand() {
+        if (getActor().actorId == 0) return CommandData.EMPTY;
 
-        MyServiceManager.sendCommand(
-                CommandData.newActorCommand(CommandEnum.GET_AVATAR, getActor().actorId, getActor().getUsername()));
+        return CommandData.newActorCommand(CommandEnum.GET_AVATAR, getActor().actorId, getActor().getUsername());
     }
 
     @Override
@@ -95,6 +98,13 @@ public class AvatarFile extends ImageFile {
         return true;
     }
 
+    /** Cheap, while the avatar was downloaded recently, see {@link DownloadData#isTimeToRevalidate()} */
+    public boolean isTimeToRevalidate() {
+        return downloadStatus == DownloadStatus.LOADED
+                && RelativeTime.moreSecondsAgoThan(downloadedDate, REVALIDATE_AFTER_SECONDS)
+                && AvatarData.getCurrentForActor(getActor()).isTimeToRevalidate();
+    }
+
     public void resetAvatarErrors(MyContext myContext) {
         SQLiteDatabase db = myContext.getDatabase();
         if (getActor().actorId == 0 || db == null) return;
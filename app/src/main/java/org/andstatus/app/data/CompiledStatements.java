@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Compiled INSERT and UPDATE statements of one database transaction, e.g. of a batch of activities
+ * (see {@link DataUpdater#onActivities(java.util.List)}).
+ * A statement is compiled once for a table and a set of columns and is reused for the next rows.
+ * Not thread safe: the statements are used by the thread, which holds the transaction, and are closed
+ * before the transaction ends
+ * @author yvolk@yurivolkov.com
+ */
+public class CompiledStatements implements Closeable {
+    /** No transaction, so rows are written through usual (non-reused) statements */
+    public static final CompiledStatements EMPTY = new CompiledStatements(null);
+
+    private final SQLiteDatabase db;
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+    private long compiled = 0;
+    private long executed = 0;
+
+    CompiledStatements(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    public boolean isEmpty() {
+        return db == null;
+    }
+
+    /** @return id of the new row */
+    public long insert(@NonNull String tableName, @NonNull ContentValues values) {
+        TreeSet<String> columns = new TreeSet<>(values.keySet());
+        StringBuilder sql = new StringBuilder("INSERT INTO " + tableName + " (");
+        StringBuilder placeholders = new StringBuilder();
+        for (String column : columns) {
+            if (placeholders.length() > 0) {
+                sql.append(",");
+                placeholders.append(",");
+            }
+            sql.append(column);
+            placeholders.append("?");
+        }
+        sql.append(") VALUES (").append(placeholders).append(")");
+        SQLiteStatement statement = bind(sql.toString(), columns, values);
+        long rowId = statement.executeInsert();
+        if (rowId == -1) {
+            throw new SQLiteException("Failed to insert row into " + tableName + "; values=" + values);
+        }
+        return rowId;
+    }
+
+    /** @return Number of rows updated */
+    public int update(@NonNull String tableName, long rowId, @NonNull ContentValues values) {
+        if (values.size() == 0) return 0;
+
+        TreeSet<String> columns = new TreeSet<>(values.keySet());
+        StringBuilder sql = new StringBuilder("UPDATE " + tableName + " SET ");
+        boolean first = true;
+        for (String column : columns) {
+            sql.append(first ? "" : ",").append(column).append("=?");
+            first = false;
+        }
+        sql.append(" WHERE " + BaseColumns._ID + "=?");
+        SQLiteStatement statement = bind(sql.toString(), columns, values);
+        statement.bindLong(columns.size() + 1, rowId);
+        return statement.executeUpdateDelete();
+    }
+
+    private SQLiteStatement bind(String sql, TreeSet<String> columns, ContentValues values) {
+        SQLiteStatement statement = getStatement(sql);
+        int index = 1;
+        for (String column : columns) {
+            DatabaseUtils.bindObjectToProgram(statement, index++, values.get(column));
+        }
+        return statement;
+    }
+
+    /** @return the statement, compiled once for this transaction, without bound arguments */
+    @NonNull
+    public SQLiteStatement getStatement(@NonNull String sql) {
+        if (db == null) throw new IllegalStateException("No transaction of compiled statements");
+
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+            compiled++;
+        } else {
+            statement.clearBindings();
+        }
+        executed++;
+        return statement;
+    }
+
+    @Override
+    public void close() {
+        statements.values().forEach(DbUtils::closeSilently);
+        statements.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledStatements{compiled:" + compiled + ", executed:" + executed + "}";
+    }
+}
@@ -164,6 +164,14 @@ public class DataPruner {
     }
 
     long pruneMedia() {
+        final long thumbnailsPruned = ThumbnailFile.pruneOrphans();
+        if (thumbnailsPruned > 0) {
+            MyLog.i(this, "Pruned " + thumbnailsPruned + " thumbnails of deleted media files");
+        }
+        final long tempFilesPruned = DownloadFile.pruneTempFiles(getLatestTimestamp(PRUNE_MIN_PERIOD_DAYS));
+        if (tempFilesPruned > 0) {
+            MyLog.i(this, "Pruned " + tempFilesPruned + " temporary files of interrupted downloads");
+        }
         long dirSize = DownloadFile.getDirSize();
         long maxSize = MyPreferences.getMaximumSizeOfCachedMediaBytes();
         final long bytesToPrune = dirSize - maxSize;
@@ -17,6 +17,7 @@
 package org.andstatus.app.data;
 
 import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 
@@ -24,6 +25,7 @@ import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.database.table.ActorTable;
+import org.andstatus.app.database.table.NoteSearchTable;
 import org.andstatus.app.database.table.NoteTable;
 import org.andstatus.app.net.http.ConnectionException;
 import org.andstatus.app.net.social.AActivity;
@@ -60,14 +62,13 @@ public class DataUpdater {
     static final String MSG_ASSERTION_KEY = "updateNote";
     private final CommandExecutionContext execContext;
     private LatestActorActivities lum = new LatestActorActivities();
+    /** Reused inside a transaction of {@link #onActivities(List)} */
+    private CompiledStatements statements = CompiledStatements.EMPTY;
     private KeywordsFilter keywordsFilter = new KeywordsFilter(
             SharedPreferencesUtil.getString(MyPreferences.KEY_FILTER_HIDE_NOTES_BASED_ON_KEYWORDS, ""));
 
     public static void onActivities(CommandExecutionContext execContext, List<AActivity> activities) {
-        DataUpdater dataUpdater = new DataUpdater(execContext);
-        for (AActivity mbActivity : activities) {
-            dataUpdater.onActivity(mbActivity);
-        }
+        new DataUpdater(execContext).onActivities(activities);
     }
 
     public DataUpdater(MyAccount ma) {
@@ -78,10 +79,54 @@ public class DataUpdater {
         this.execContext = execContext;
     }
 
+    private DataUpdater(CommandExecutionContext execContext, CompiledStatements statements) {
+        this.execContext = execContext;
+        this.statements = statements;
+    }
+
     public AActivity onActivity(AActivity mbActivity) {
         return onActivity(mbActivity, true);
     }
 
+    /**
+     * Stores the activities (e.g. a downloaded page of a timeline) in one database transaction,
+     * so the database is not synced to storage after each row.
+     * New activities and notes are inserted by reused compiled statements.
+     * Latest actors' activities are saved once, at the end of the batch
+     */
+    public void onActivities(@NonNull List<AActivity> activities) {
+        if (activities.isEmpty()) return;
+
+        SQLiteDatabase db = execContext.getMyContext().getDatabase();
+        if (db == null) {
+            MyLog.v(this, "onActivities; Database is null");
+            return;
+        }
+        final long startTime = System.currentTimeMillis();
+        boolean success = false;
+        db.beginTransaction();
+        statements = new CompiledStatements(db);
+        try {
+            for (AActivity activity : activities) {
+                onActivity(activity, false);
+            }
+            saveLum();
+            db.setTransactionSuccessful();
+            success = true;
+        } finally {
+            MyLog.v(this, statements::toString);
+            statements.close();
+            statements = CompiledStatements.EMPTY;
+            db.endTransaction();
+            if (!success) {
+                // Ids of the rolled back rows could be cached
+                execContext.getMyContext().oidCache().clear();
+            }
+        }
+        MyLog.v(this, () -> "onActivities; " + activities.size() + " activities stored in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
     public AActivity onActivity(AActivity activity, boolean saveLum) {
         return onActivityInternal(activity, saveLum, 0);
     }
@@ -118,7 +163,7 @@ public class DataUpdater {
                 || activity.getNote().audience().containsMe(execContext.myContext))) {
             activity.setSubscribedByMe(TriState.TRUE);
         }
-        activity.save(execContext.getMyContext());
+        activity.save(execContext.getMyContext(), statements);
         lum.onNewActorActivity(new ActorActivity(activity.getActor().actorId, activity.getId(), activity.getUpdatedDate()));
         if ( !activity.isAuthorActor()) {
             lum.onNewActorActivity(new ActorActivity(activity.getAuthor().actorId, activity.getId(), activity.getUpdatedDate()));
@@ -134,7 +179,9 @@ public class DataUpdater {
         if (recursing > MAX_RECURSING) return;
 
         updateNote1(activity, recursing);
-        DataUpdater.onActivities(execContext, activity.getNote().replies);
+        for (AActivity reply : activity.getNote().replies) {
+            onActivityInternal(reply, false, 0);
+        }
     }
 
     private void updateNote1(@NonNull AActivity activity, int recursing) {
@@ -235,21 +282,20 @@ public class DataUpdater {
                 MyContextHolder.get().putAssertionData(MSG_ASSERTION_KEY, values);
             }
             if (note.noteId == 0) {
-                Uri msgUri = execContext.getContext().getContentResolver().insert(
-                        MatchedUri.getMsgUri(me.getActorId(), 0), values);
-                note.noteId = ParsedUri.fromUri(msgUri).getNoteId();
-
+                note.noteId = insertNoteRow(me, values);
                 if (note.getConversationId() == 0) {
                     ContentValues values2 = new ContentValues();
                     values2.put(NoteTable.CONVERSATION_ID, note.setConversationIdFromMsgId());
-                    execContext.getContext().getContentResolver().update(msgUri, values2, null, null);
+                    updateNoteRow(me, note.noteId, values2);
                 }
                 MyLog.v("Note", () -> "Added " + note);
             } else {
-                Uri msgUri = MatchedUri.getMsgUri(me.getActorId(), note.noteId);
-                execContext.getContext().getContentResolver().update(msgUri, values, null, null);
+                updateNoteRow(me, note.noteId, values);
                 MyLog.v("Note", () -> "Updated " + note);
             }
+            execContext.getMyContext().oidCache().put(OidEnum.NOTE_OID, note.origin.getId(), note.oid, note.noteId);
+            NoteSearchTable.update(execContext.getMyContext().getDatabase(), statements, note.noteId,
+                    note.getContentToSearch());
             note.audience().save(execContext.getMyContext(), note.origin, note.noteId);
 
             if (shouldSaveAttachments(isFirstTimeLoaded, isDraftUpdated)) {
@@ -269,6 +315,26 @@ public class DataUpdater {
         }
     }
 
+    private long insertNoteRow(MyAccount me, ContentValues values) {
+        if (statements.isEmpty()) {
+            Uri msgUri = execContext.getContext().getContentResolver().insert(
+                    MatchedUri.getMsgUri(me.getActorId(), 0), values);
+            return ParsedUri.fromUri(msgUri).getNoteId();
+        }
+        ContentValues values2 = new ContentValues(values);
+        MyProvider.putNoteInsertValues(values2);
+        return statements.insert(NoteTable.TABLE_NAME, values2);
+    }
+
+    private void updateNoteRow(MyAccount me, long noteId, ContentValues values) {
+        if (statements.isEmpty()) {
+            execContext.getContext().getContentResolver().update(
+                    MatchedUri.getMsgUri(me.getActorId(), noteId), values, null, null);
+        } else {
+            statements.update(NoteTable.TABLE_NAME, noteId, values);
+        }
+    }
+
     private boolean shouldSaveAttachments(boolean isFirstTimeLoaded, boolean isDraftUpdated) {
         return isFirstTimeLoaded || isDraftUpdated;
     }
@@ -279,7 +345,7 @@ public class DataUpdater {
             if (nonRealOid(inReply.getNote().conversationOid)) {
                 inReply.getNote().setConversationOid(activity.getNote().conversationOid);
             }
-            new DataUpdater(execContext).onActivity(inReply);
+            new DataUpdater(execContext, statements).onActivity(inReply);
             if (inReply.getNote().noteId != 0) {
                 activity.getNote().addRecipient(inReply.getAuthor());
                 values.put(NoteTable.IN_REPLY_TO_NOTE_ID, inReply.getNote().noteId);
@@ -417,6 +483,10 @@ public class DataUpdater {
             } else if (values.size() > 0) {
                 execContext.getContext().getContentResolver().update(actorUri, values, null, null);
             }
+            if (values.containsKey(ActorTable.ACTOR_OID)) {
+                execContext.getMyContext().oidCache().put(OidEnum.ACTOR_OID, objActor.origin.getId(),
+                        actorOid, objActor.actorId);
+            }
 
             updateFriendship(activity, me);
 
@@ -424,7 +494,8 @@ public class DataUpdater {
             execContext.myContext.users().reload(objActor);
 
             if (MyPreferences.getShowAvatars() && objActor.hasAvatar() &&
-                    objActor.avatarFile.downloadStatus != DownloadStatus.LOADED) {
+                    (objActor.avatarFile.downloadStatus != DownloadStatus.LOADED
+                    || objActor.avatarFile.isTimeToRevalidate())) {
                 objActor.avatarFile.requestDownload();
             }
             if (objActor.hasLatestNote()) {
@@ -11,6 +11,7 @@ import android.webkit.MimeTypeMap;
 import org.andstatus.app.context.MyContext;
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.database.table.DownloadTable;
+import org.andstatus.app.graphics.ImageCaches;
 import org.andstatus.app.graphics.MediaMetadata;
 import org.andstatus.app.net.social.Attachment;
 import org.andstatus.app.service.CommandData;
@@ -24,6 +25,7 @@ import org.andstatus.app.util.StringUtils;
 import org.andstatus.app.util.UriUtils;
 
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public class DownloadData implements IsEmpty {
@@ -49,6 +51,9 @@ public class DownloadData implements IsEmpty {
     private String errorMessage = "";
 
     private long downloadedDate = RelativeTime.DATETIME_MILLIS_NEVER;
+    /** Validators of the stored file, see {@link DownloadTable#ETAG} */
+    private String eTag = "";
+    private String lastModified = "";
 
     @NonNull
     private DownloadFile fileNew = DownloadFile.EMPTY;
@@ -147,6 +152,8 @@ public class DownloadData implements IsEmpty {
         mediaMetadata = MediaMetadata.fromCursor(cursor);
         fileSize = DbUtils.getLong(cursor, DownloadTable.FILE_SIZE);
         downloadedDate = DbUtils.getLong(cursor, DownloadTable.DOWNLOADED_DATE);
+        eTag = DbUtils.getString(cursor, DownloadTable.ETAG);
+        lastModified = DbUtils.getString(cursor, DownloadTable.LAST_MODIFIED);
     }
 
     private boolean checkHardErrorBeforeLoad() {
@@ -220,6 +227,37 @@ public class DownloadData implements IsEmpty {
         fileSize = fileNew.getSize();
         mediaMetadata = MediaMetadata.fromFilePath(fileNew.getFilePath());
         downloadedDate = System.currentTimeMillis();
+        ImageCaches.onFileChanged(fileNew.getFilePath());
+    }
+
+    /** The stored file may be downloaded again with a conditional request */
+    public boolean mayBeRevalidated() {
+        return (StringUtils.nonEmpty(eTag) || StringUtils.nonEmpty(lastModified)) && fileStored.existsNow();
+    }
+
+    /** A loaded avatar is downloaded again, if it was changed, after some time */
+    public boolean isTimeToRevalidate() {
+        return downloadType == DownloadType.AVATAR && DownloadStatus.LOADED == status && mayBeRevalidated()
+                && RelativeTime.moreSecondsAgoThan(downloadedDate, AvatarFile.REVALIDATE_AFTER_SECONDS);
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setValidators(String eTag, String lastModified) {
+        this.eTag = StringUtils.notNull(eTag);
+        this.lastModified = StringUtils.notNull(lastModified);
+    }
+
+    /** The stored file is the same as on the server */
+    public void onNotModified() {
+        fileNew = fileStored;
+        downloadedDate = System.currentTimeMillis();
     }
 
     private void onNoFile() {
@@ -315,6 +353,8 @@ public class DownloadData implements IsEmpty {
         values.put(DownloadTable.FILE_SIZE, fileSize);
         mediaMetadata.toContentValues(values);
         values.put(DownloadTable.DOWNLOADED_DATE, downloadedDate);
+        values.put(DownloadTable.ETAG, eTag);
+        values.put(DownloadTable.LAST_MODIFIED, lastModified);
         return values;
     }
 
@@ -533,16 +573,18 @@ public class DownloadData implements IsEmpty {
                 + " WHERE " + DownloadTable.DOWNLOAD_TYPE + "='" + downloadType.save() + "'"
                 + " AND " + DownloadTable.DOWNLOAD_STATUS + "=" + DownloadStatus.LOADED.save()
                 + " ORDER BY " + DownloadTable.DOWNLOADED_DATE + " DESC";
+        final Map<String, Long> thumbnailSizes = ThumbnailFile.getSizesByOriginalName();
         return MyQuery.foldLeft(myContext, sql,
                 new ConsumedSummary(),
                 summary -> cursor -> {
                         DownloadData data = DownloadData.fromCursor(cursor);
                         if (data.fileStored.existed) {
+                            final long size = data.fileSize + thumbnailSizes.getOrDefault(data.getFilename(), 0L);
                             if (summary.skippedSize < totalSizeToSkip) {
-                                summary.skippedSize += data.fileSize;
+                                summary.skippedSize += size;
                             } else {
                                 summary.consumedCount += 1;
-                                summary.consumedSize += data.fileSize;
+                                summary.consumedSize += size;
                                 consumer.accept(data);
                             }
                         }
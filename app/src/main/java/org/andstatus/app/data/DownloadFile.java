@@ -30,6 +30,7 @@ import java.util.stream.Stream;
 
 public class DownloadFile implements IsEmpty {
     public static final DownloadFile EMPTY = new DownloadFile("");
+    private static final String TEMP_FILENAME_PREFIX = "temp_";
 
     private final String filename;
     private final File file;
@@ -48,15 +49,30 @@ public class DownloadFile implements IsEmpty {
         }
     }
 
+    /** A unique name, so concurrent downloads of the same file don't write to the same temporary file */
+    public static DownloadFile newTempFile(String filename) {
+        return new DownloadFile(TEMP_FILENAME_PREFIX + MyLog.uniqueCurrentTimeMS() + "_" + filename);
+    }
+
+    /** Deletes temporary files of interrupted downloads
+     * @return number of deleted files */
+    static long pruneTempFiles(long modifiedBefore) {
+        return getMediaFiles()
+                .filter(file -> file.getName().startsWith(TEMP_FILENAME_PREFIX) && file.lastModified() < modifiedBefore)
+                .filter(File::delete)
+                .count();
+    }
+
+    /** @return Size of media files together with their thumbnails */
     public static long getDirSize() {
-        return getMediaFiles().mapToLong(File::length).sum();
+        return getMediaFiles().mapToLong(File::length).sum() + ThumbnailFile.getDirSize();
     }
 
     public static Stream<File> getMediaFiles() {
         return Arrays.stream(getFilesDir().listFiles()).filter(File::isFile);
     }
 
-    private static File getFilesDir() {
+    static File getFilesDir() {
         return MyStorage.getDataFilesDir(MyStorage.DIRECTORY_DOWNLOADS);
     }
 
@@ -85,8 +101,10 @@ public class DownloadFile implements IsEmpty {
         return filename;
     }
 
-    /** returns true if the file existed and was deleted */
+    /** returns true if the file existed and was deleted. Its thumbnails are deleted also */
     public boolean delete() {
+        if (isEmpty()) return false;
+        ThumbnailFile.deleteAllOf(file);
         return deleteFileLogged(file);
     }
     
@@ -26,14 +26,18 @@ import org.andstatus.app.graphics.AttachedImageView;
 import org.andstatus.app.graphics.CacheName;
 import org.andstatus.app.graphics.CachedImage;
 import org.andstatus.app.graphics.IdentifiableImageView;
+import org.andstatus.app.graphics.ImageDecodePipeline;
 import org.andstatus.app.graphics.ImageCaches;
 import org.andstatus.app.graphics.MediaMetadata;
-import org.andstatus.app.os.AsyncTaskLauncher;
-import org.andstatus.app.os.MyAsyncTask;
+import org.andstatus.app.service.CommandData;
+import org.andstatus.app.service.FileDownloadScheduler;
+import org.andstatus.app.service.MyServiceManager;
 import org.andstatus.app.util.IsEmpty;
 import org.andstatus.app.util.MyLog;
 
 public abstract class ImageFile implements IsEmpty {
+    /** Delay before the next attempt to show an image, which decoding was rejected by a busy pipeline */
+    private static final long RETRY_LOADING_AFTER_MS = 300;
     private final DownloadFile downloadFile;
     private volatile MediaMetadata mediaMetadata;
     public final long downloadId;
@@ -57,14 +61,16 @@ public abstract class ImageFile implements IsEmpty {
         if (imageView == null) return;
         imageView.setImageId(getId());
         if (cannotBeShown()) {
+            FileDownloadScheduler.releaseView(imageView.myViewId);
             onNoImage(imageView);
             return;
         }
         if (downloadStatus != DownloadStatus.LOADED) {
             showDefaultImage(imageView);
-            requestDownload();
+            requestDownload(imageView);
             return;
         }
+        FileDownloadScheduler.releaseView(imageView.myViewId);
         if (AttachedImageView.class.isAssignableFrom(imageView.getClass())) {
             ((AttachedImageView) imageView).setMeasuresLocked(false);
         }
@@ -88,7 +94,7 @@ public abstract class ImageFile implements IsEmpty {
         } else {
             logResult("No image file", taskSuffix);
             onNoImage(imageView);
-            requestDownload();
+            requestDownload(imageView);
         }
     }
 
@@ -144,71 +150,55 @@ public abstract class ImageFile implements IsEmpty {
 
     private void showImageAsync(final MyActivity myActivity, @NonNull final IdentifiableImageView imageView) {
         final String taskSuffix = "-asyn-" + imageView.myViewId;
-        AsyncTaskLauncher.execute(this, false,
-                new MyAsyncTask<Void, Void, CachedImage>(getTaskId(taskSuffix), MyAsyncTask.PoolEnum.QUICK_UI) {
-                    private boolean logged = false;
-
-                    @Override
-                    protected CachedImage doInBackground2(Void... params) {
-                        if (skip()) {
-                            return null;
-                        }
-                        return ImageCaches.loadAndGetImage(getCacheName(), ImageFile.this);
-                    }
-
-                    @Override
-                    protected void onFinish(CachedImage image, boolean success) {
-                        if (!success) {
-                            logResult("No success onFinish");
-                            return;
-                        }
-                        if (image == null) {
-                            logResult("Failed to load");
-                            return;
-                        }
-                        if (skip()) {
-                            return;
-                        }
-                        if (image.id != getId()) {
-                            logResult("Loaded wrong image.id:" + image.id);
-                            return;
-                        }
-                        try {
-                            if (AttachedImageView.class.isAssignableFrom(imageView.getClass())) {
-                                ((AttachedImageView) imageView).setMeasuresLocked(true);
-                            }
-                            imageView.setImageDrawable(image.getDrawable());
-                            imageView.setLoaded();
-                            logResult("Loaded");
-                        } catch (Exception e) {
-                            MyLog.d(ImageFile.this, getMsgLog("Error on setting image", taskSuffix), e);
-                        }
-                    }
-
-                    private boolean skip() {
-                        if (!myActivity.isMyResumed()) {
-                            logResult("Skipped not resumed activity");
-                            return true;
-                        }
-                        if (imageView.isLoaded()) {
-                            logResult("Skipped already loaded");
-                            return true;
-                        }
-                        if (imageView.getImageId() != getId()) {
-                            logResult("Skipped view.imageId:" + imageView.getImageId());
-                            return true;
-                        }
-                        return false;
-                    }
-
-                    private void logResult(String msgLog) {
-                        if (!logged) {
-                            logged = true;
-                            MyLog.v(ImageFile.this, () -> getMsgLog(msgLog, taskSuffix));
-                        }
-                    }
-
-                });
+        ImageDecodePipeline.load(getCacheName(), this, true).whenComplete((image, throwable) -> {
+            if (throwable == null) {
+                imageView.post(() -> onImageLoaded(myActivity, imageView, image, taskSuffix));
+            } else if (ImageDecodePipeline.isRetryLater(throwable)) {
+                logResult("Retry later: " + throwable.getMessage(), taskSuffix);
+                imageView.postDelayed(() -> {
+                    if (isStillShownIn(myActivity, imageView, taskSuffix)) showImageAsync(myActivity, imageView);
+                }, RETRY_LOADING_AFTER_MS);
+            } else {
+                MyLog.d(ImageFile.this, getMsgLog("Failed to load", taskSuffix), throwable);
+            }
+        });
+    }
+
+    private void onImageLoaded(MyActivity myActivity, IdentifiableImageView imageView, CachedImage image,
+                               String taskSuffix) {
+        if (image == null) {
+            logResult("Failed to load", taskSuffix);
+            return;
+        }
+        if (!isStillShownIn(myActivity, imageView, taskSuffix)) return;
+
+        if (image.id != getId()) {
+            logResult("Loaded wrong image.id:" + image.id, taskSuffix);
+            return;
+        }
+        try {
+            imageView.onImageLoaded(image);
+            logResult("Loaded", taskSuffix);
+        } catch (Exception e) {
+            MyLog.d(ImageFile.this, getMsgLog("Error on setting image", taskSuffix), e);
+        }
+    }
+
+    /** The view still waits for this image */
+    private boolean isStillShownIn(MyActivity myActivity, IdentifiableImageView imageView, String taskSuffix) {
+        if (!myActivity.isMyResumed()) {
+            logResult("Skipped not resumed activity", taskSuffix);
+            return false;
+        }
+        if (imageView.isLoaded()) {
+            logResult("Skipped already loaded", taskSuffix);
+            return false;
+        }
+        if (imageView.getImageId() != getId()) {
+            logResult("Skipped view.imageId:" + imageView.getImageId(), taskSuffix);
+            return false;
+        }
+        return true;
     }
 
     @NonNull
@@ -219,22 +209,17 @@ public abstract class ImageFile implements IsEmpty {
 
     private void preloadAsync() {
         final String taskSuffix = "-prel";
-        AsyncTaskLauncher.execute(this, false,
-                new MyAsyncTask<Void, Void, Void>(getTaskId(taskSuffix), MyAsyncTask.PoolEnum.QUICK_UI) {
-
-                    @Override
-                    protected Void doInBackground2(Void... params) {
-                        CachedImage image = ImageCaches.loadAndGetImage(getCacheName(), ImageFile.this);
-                        if (image == null) {
-                            logResult("Failed to preload", taskSuffix);
-                        } else if (image.id != getId()) {
-                            logResult("Loaded wrong image.id:" + image.id, taskSuffix);
-                        } else {
-                            logResult("Preloaded", taskSuffix);
-                        }
-                        return null;
-                    }
-                });
+        ImageDecodePipeline.load(getCacheName(), this, false).whenComplete((image, throwable) -> {
+            if (throwable != null) {
+                logResult("Failed to preload: " + throwable.getMessage(), taskSuffix);
+            } else if (image == null) {
+                logResult("Failed to preload", taskSuffix);
+            } else if (image.id != getId()) {
+                logResult("Loaded wrong image.id:" + image.id, taskSuffix);
+            } else {
+                logResult("Preloaded", taskSuffix);
+            }
+        });
     }
 
     private void logResult(String msgLog, String taskSuffix) {
@@ -270,7 +255,23 @@ public abstract class ImageFile implements IsEmpty {
 
     protected abstract CachedImage getDefaultImage();
 
-    protected abstract void requestDownload();
+    /** @return {@link CommandData#EMPTY} if the file cannot be downloaded */
+    protected abstract CommandData newDownloadCommand();
+
+    protected void requestDownload() {
+        CommandData commandData = newDownloadCommand();
+        if (commandData != CommandData.EMPTY) {
+            MyServiceManager.sendCommand(commandData);
+        }
+    }
+
+    /** The file is downloaded without waiting for other commands of {@link org.andstatus.app.service.MyService} */
+    private void requestDownload(IdentifiableImageView imageView) {
+        CommandData commandData = newDownloadCommand();
+        if (commandData != CommandData.EMPTY) {
+            FileDownloadScheduler.download(commandData, imageView.myViewId);
+        }
+    }
 
     protected boolean isDefaultImageRequired() {
         return false;
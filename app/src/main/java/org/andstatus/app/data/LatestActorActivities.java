@@ -16,6 +16,14 @@
 
 package org.andstatus.app.data;
 
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.database.table.ActorTable;
+import org.andstatus.app.util.MyLog;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,6 +32,9 @@ import java.util.Map;
  * @author yvolk@yurivolkov.com
  */
 public class LatestActorActivities {
+    static final String SQL_UPDATE = "UPDATE " + ActorTable.TABLE_NAME
+            + " SET " + ActorTable.ACTOR_ACTIVITY_ID + "=?, " + ActorTable.ACTOR_ACTIVITY_DATE + "=?"
+            + " WHERE " + BaseColumns._ID + "=?";
     private final Map<Long, ActorActivity> actorActivities = new HashMap<>();
 
     /**
@@ -42,15 +53,31 @@ public class LatestActorActivities {
     }
     
     /**
-     * Persist all information into the database
+     * Persist all information into the database in one transaction, using one compiled statement
      * @return true if succeeded for all entries
      */
     public boolean save() {
+        if (actorActivities.isEmpty()) return true;
+
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        if (db == null) {
+            MyLog.v(this, "Database is null");
+            return false;
+        }
         boolean ok = true;
-        for (ActorActivity um : actorActivities.values()) {
-            if (!um.save()) {
-                ok = false;
+        SQLiteStatement statement = null;
+        db.beginTransaction();
+        try {
+            statement = db.compileStatement(SQL_UPDATE);
+            for (ActorActivity um : actorActivities.values()) {
+                if (!um.save(statement)) {
+                    ok = false;
+                }
             }
+            db.setTransactionSuccessful();
+        } finally {
+            DbUtils.closeSilently(statement);
+            db.endTransaction();
         }
         return ok;
     }
@@ -32,6 +32,7 @@ import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.database.table.ActivityTable;
 import org.andstatus.app.database.table.ActorTable;
 import org.andstatus.app.database.table.AudienceTable;
+import org.andstatus.app.database.table.NoteSearchTable;
 import org.andstatus.app.database.table.NoteTable;
 import org.andstatus.app.database.table.OriginTable;
 import org.andstatus.app.note.KeywordsFilter;
@@ -39,6 +40,7 @@ import org.andstatus.app.notification.NotificationEventType;
 import org.andstatus.app.origin.Origin;
 import org.andstatus.app.timeline.meta.Timeline;
 import org.andstatus.app.util.MyLog;
+import org.andstatus.app.util.SelectionAndArgs;
 import org.andstatus.app.util.StringUtils;
 import org.andstatus.app.util.TriState;
 
@@ -160,6 +162,8 @@ public class MyProvider extends ContentProvider {
                     "=" + NoteTable.TABLE_NAME + "." + NoteTable._ID + "))";
             sqlDesc = selectionG + descSuffix;
             count += db.delete(NoteTable.TABLE_NAME, selectionG, new String[]{});
+            NoteSearchTable.delete(db, noteIds);
+            onNotesDeleted(noteIds);
 
             if (!inTransaction) {
                 db.setTransactionSuccessful();
@@ -174,10 +178,19 @@ public class MyProvider extends ContentProvider {
         return count;
     }
 
+    private static void onNotesDeleted(Set<Long> noteIds) {
+        OidCache oidCache = MyContextHolder.get().oidCache();
+        oidCache.clear(OidEnum.ACTIVITY_OID);
+        noteIds.forEach(noteId -> oidCache.remove(OidEnum.NOTE_OID, noteId));
+    }
+
     private int deleteActors(SQLiteDatabase db, String selection, String[] selectionArgs) {
         int count;
         // TODO: Delete related records also... 
         count = db.delete(ActorTable.TABLE_NAME, selection, selectionArgs);
+        if (count > 0) {
+            MyContextHolder.get().oidCache().clear(OidEnum.ACTOR_OID);
+        }
         return count;
     }
 
@@ -221,6 +234,7 @@ public class MyProvider extends ContentProvider {
         } else {
             // Delete this activity only
             count = db.delete(ActivityTable.TABLE_NAME, BaseColumns._ID + "=" + activityId, null);
+            myContext.oidCache().remove(OidEnum.ACTIVITY_OID, activityId);
             updateNoteFavorited(myContext, origin, noteId);
             updateNoteReblogged(myContext, origin, noteId);
         }
@@ -310,14 +324,7 @@ public class MyProvider extends ContentProvider {
                     accountActorId = uriParser.getAccountActorId();
                     
                     table = NoteTable.TABLE_NAME;
-                    if (!values.containsKey(NoteTable.CONTENT)) {
-                        values.put(NoteTable.CONTENT, "");
-                    }
-                    if (!values.containsKey(NoteTable.VIA)) {
-                        values.put(NoteTable.VIA, "");
-                    }
-                    values.put(NoteTable.INS_DATE, MyLog.uniqueCurrentTimeMS());
-                    
+                    putNoteInsertValues(values);
                     break;
                     
                 case ORIGIN_ITEM:
@@ -358,6 +365,33 @@ public class MyProvider extends ContentProvider {
         return newUri;
     }
 
+    /** Selection of notes, which content matches the search query.
+     * The full text search index (if available) selects candidates, LIKE keeps exact semantics of the keywords */
+    @NonNull
+    static SelectionAndArgs getSearchSelection(SQLiteDatabase db, String rawQuery) {
+        KeywordsFilter searchQuery = new KeywordsFilter(rawQuery);
+        SelectionAndArgs search = new SelectionAndArgs();
+        String ftsQuery = searchQuery.getFtsMatchQuery();
+        if (StringUtils.nonEmpty(ftsQuery) && NoteSearchTable.isAvailable(db)) {
+            search.addSelection(NoteSearchTable.getSqlSelection(ProjectionMap.NOTE_TABLE_ALIAS + "."
+                    + BaseColumns._ID), ftsQuery);
+        }
+        search.addSelection(searchQuery.getSqlSelection(NoteTable.CONTENT_TO_SEARCH),
+                searchQuery.prependSqlSelectionArgs(new String[]{}));
+        return search;
+    }
+
+    /** Values of a new note, which are not set by a caller */
+    static void putNoteInsertValues(ContentValues values) {
+        if (!values.containsKey(NoteTable.CONTENT)) {
+            values.put(NoteTable.CONTENT, "");
+        }
+        if (!values.containsKey(NoteTable.VIA)) {
+            values.put(NoteTable.VIA, "");
+        }
+        values.put(NoteTable.INS_DATE, MyLog.uniqueCurrentTimeMS());
+    }
+
     /**
      * Get a cursor to the database
      * 
@@ -396,14 +430,10 @@ public class MyProvider extends ContentProvider {
                 qb.setProjectionMap(ProjectionMap.TIMELINE);
                 String rawQuery = uriParser.getSearchQuery();
                 if (StringUtils.nonEmpty(rawQuery)) {
-                    if (StringUtils.nonEmpty(selection)) {
-                        selection = " AND (" + selection + ")";
-                    } else {
-                        selection = "";
-                    }
-                    KeywordsFilter searchQuery  = new KeywordsFilter(rawQuery);
-                    selection = "(" + searchQuery.getSqlSelection(NoteTable.CONTENT_TO_SEARCH) + ")" + selection;
-                    selectionArgs = searchQuery.prependSqlSelectionArgs(selectionArgs);
+                    SelectionAndArgs search = getSearchSelection(MyContextHolder.get().getDatabase(), rawQuery);
+                    search.addSelection(selection, selectionArgs);
+                    selection = search.selection;
+                    selectionArgs = search.selectionArgs;
                 }
                 break;
 
@@ -43,6 +43,7 @@ import org.andstatus.app.util.StringUtils;
 import org.andstatus.app.util.TriState;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -88,28 +89,30 @@ public class MyQuery {
         if (StringUtils.isEmpty(oid)) {
             return 0;
         }
+        long cachedId = myContext.oidCache().get(oidEnum, originId, oid);
+        if (cachedId != 0) return cachedId;
+
         String msgLog = "oidToId; " + oidEnum + ", origin=" + originId + ", oid=" + oid;
         String sql;
         switch (oidEnum) {
             case NOTE_OID:
                 sql = "SELECT " + BaseColumns._ID + " FROM " + NoteTable.TABLE_NAME
-                        + " WHERE " + NoteTable.ORIGIN_ID + "=" + originId + " AND " + NoteTable.NOTE_OID
-                        + "=" + quoteIfNotQuoted(oid);
+                        + " WHERE " + NoteTable.ORIGIN_ID + "=? AND " + NoteTable.NOTE_OID + "=?";
                 break;
             case ACTOR_OID:
                 sql = "SELECT " + BaseColumns._ID + " FROM " + ActorTable.TABLE_NAME
-                        + " WHERE " + ActorTable.ORIGIN_ID + "=" + originId + " AND " + ActorTable.ACTOR_OID
-                        + "=" + quoteIfNotQuoted(oid);
+                        + " WHERE " + ActorTable.ORIGIN_ID + "=? AND " + ActorTable.ACTOR_OID + "=?";
                 break;
             case ACTIVITY_OID:
                 sql = "SELECT " + BaseColumns._ID + " FROM " + ActivityTable.TABLE_NAME
-                        + " WHERE " + ActivityTable.ORIGIN_ID + "=" + originId + " AND " + ActivityTable.ACTIVITY_OID
-                        + "=" + quoteIfNotQuoted(oid);
+                        + " WHERE " + ActivityTable.ORIGIN_ID + "=? AND " + ActivityTable.ACTIVITY_OID + "=?";
                 break;
             default:
                 throw new IllegalArgumentException(msgLog + "; Unknown oidEnum");
         }
-        return sqlToLong(myContext.getDatabase(), msgLog, sql);
+        long id = pooledSqlToLong(myContext.getDatabase(), msgLog, sql, originId, unquote(oid));
+        myContext.oidCache().put(oidEnum, originId, oid, id);
+        return id;
     }
 
     public static long sqlToLong(SQLiteDatabase databaseIn, String msgLogIn, String sql) {
@@ -144,26 +147,78 @@ public class MyQuery {
         return value;
     }
 
+    /**
+     * Executes parameterized query, reusing its compiled statement from the {@link StatementPool}
+     * @return 0 in case not found or error
+     */
+    private static long pooledSqlToLong(SQLiteDatabase databaseIn, String msgLog, String sql, Object... args) {
+        SQLiteDatabase db = databaseIn == null ? MyContextHolder.get().getDatabase() : databaseIn;
+        if (db == null) {
+            MyLog.v(TAG, () -> msgLog + "; database is null");
+            return 0;
+        }
+        long value = 0;
+        try {
+            value = StatementPool.of(db).simpleQueryForLong(sql, args);
+        } catch (SQLiteDoneException e) {
+            MyLog.ignored(TAG, e);
+        } catch (Exception e) {
+            MyLog.e(TAG, msgLog + "; sql='" + sql + "', args=" + Arrays.toString(args), e);
+            value = 0;
+        }
+        if (MyLog.isVerboseEnabled()) {
+            MyLog.v(TAG, msgLog + "; sql='" + sql + "', args=" + Arrays.toString(args) + " -> " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Executes parameterized query, reusing its compiled statement from the {@link StatementPool}
+     * @return not null; "" in case not found or error
+     */
+    @NonNull
+    private static String pooledSqlToString(SQLiteDatabase databaseIn, String msgLog, String sql, Object... args) {
+        SQLiteDatabase db = databaseIn == null ? MyContextHolder.get().getDatabase() : databaseIn;
+        if (db == null) {
+            MyLog.v(TAG, () -> msgLog + "; database is null");
+            return "";
+        }
+        String value = "";
+        try {
+            value = StatementPool.of(db).simpleQueryForString(sql, args);
+        } catch (SQLiteDoneException e) {
+            MyLog.ignored(TAG, e);
+        } catch (Exception e) {
+            MyLog.e(TAG, msgLog + "; sql='" + sql + "', args=" + Arrays.toString(args), e);
+            value = "";
+        }
+        if (MyLog.isVerboseEnabled()) {
+            MyLog.v(TAG, msgLog + "; sql='" + sql + "', args=" + Arrays.toString(args) + " -> " + value);
+        }
+        return StringUtils.isEmpty(value) ? "" : value;
+    }
+
     /**
      * @return two single quotes for empty/null strings (Use single quotes!)
      */
     public static String quoteIfNotQuoted(String original) {
+        return '\'' + unquote(original).replace("'", "''") + '\'';
+    }
+
+    /**
+     * The value, which {@link #quoteIfNotQuoted(String)} quotes, to be bound as an argument:
+     * trimmed and without enclosing quotes (if any)
+     */
+    @NonNull
+    static String unquote(String original) {
         if (StringUtils.isEmpty(original)) {
-            return "\'\'";
-        }
-        String quoted = original.trim();
-        int firstQuoteIndex = quoted.indexOf('\'');
-        if (firstQuoteIndex < 0) {
-            return '\'' + quoted + '\'';
+            return "";
         }
-        int lastQuoteIndex = quoted.lastIndexOf('\'');
-        if (firstQuoteIndex == 0 && lastQuoteIndex == quoted.length()-1) {
-            // Already quoted, search quotes inside
-            quoted = quoted.substring(1, lastQuoteIndex);
+        String value = original.trim();
+        if (value.length() > 1 && value.charAt(0) == '\'' && value.charAt(value.length() - 1) == '\'') {
+            return value.substring(1, value.length() - 1);
         }
-        quoted = quoted.replace("'", "''");
-        quoted = '\'' + quoted + '\'';
-        return quoted;
+        return value;
     }
 
     /**
@@ -198,58 +253,36 @@ public class MyQuery {
     @NonNull
     public static String idToOid(SQLiteDatabase db, OidEnum oe, long entityId, long rebloggerActorId) {
         String method = "idToOid";
-        String oid = "";
-        SQLiteStatement prog = null;
-        String sql = "";
-    
-        if (entityId > 0) {
-            try {
-                switch (oe) {
-                    case NOTE_OID:
-                        sql = "SELECT " + NoteTable.NOTE_OID + " FROM "
-                                + NoteTable.TABLE_NAME + " WHERE " + BaseColumns._ID + "=" + entityId;
-                        break;
-    
-                    case ACTOR_OID:
-                        sql = "SELECT " + ActorTable.ACTOR_OID + " FROM "
-                                + ActorTable.TABLE_NAME + " WHERE " + BaseColumns._ID + "="
-                                + entityId;
-                        break;
-    
-                    case REBLOG_OID:
-                        if (rebloggerActorId == 0) {
-                            MyLog.e(TAG, method + ": actorId was not defined");
-                        }
-                        sql = "SELECT " + ActivityTable.ACTIVITY_OID + " FROM "
-                                + ActivityTable.TABLE_NAME + " WHERE "
-                                + ActivityTable.NOTE_ID + "=" + entityId + " AND "
-                                + ActivityTable.ACTIVITY_TYPE + "=" + ActivityType.ANNOUNCE.id + " AND "
-                                + ActivityTable.ACTOR_ID + "=" + rebloggerActorId;
-                        break;
-    
-                    default:
-                        throw new IllegalArgumentException(method + "; Unknown parameter: " + oe);
-                }
-                prog = db.compileStatement(sql);
-                oid = prog.simpleQueryForString();
-                
-                if (StringUtils.isEmpty(oid) && oe == OidEnum.REBLOG_OID) {
-                    // This not reblogged note
-                    oid = idToOid(db, OidEnum.NOTE_OID, entityId, 0);
+        if (entityId <= 0) return "";
+
+        final String oid;
+        switch (oe) {
+            case NOTE_OID:
+                oid = pooledSqlToString(db, method, "SELECT " + NoteTable.NOTE_OID + " FROM "
+                        + NoteTable.TABLE_NAME + " WHERE " + BaseColumns._ID + "=?", entityId);
+                break;
+
+            case ACTOR_OID:
+                oid = pooledSqlToString(db, method, "SELECT " + ActorTable.ACTOR_OID + " FROM "
+                        + ActorTable.TABLE_NAME + " WHERE " + BaseColumns._ID + "=?", entityId);
+                break;
+
+            case REBLOG_OID:
+                if (rebloggerActorId == 0) {
+                    MyLog.e(TAG, method + ": actorId was not defined");
                 }
-                
-            } catch (SQLiteDoneException e) {
-                MyLog.ignored(TAG, e);
-                oid = "";
-            } catch (Exception e) {
-                MyLog.e(TAG, method, e);
-                oid = "";
-            } finally {
-                DbUtils.closeSilently(prog);
-            }
-            if (MyLog.isVerboseEnabled()) {
-                MyLog.v(TAG, method + ": " + oe + " + " + entityId + " -> " + oid);
-            }
+                String reblogOid = pooledSqlToString(db, method, "SELECT " + ActivityTable.ACTIVITY_OID + " FROM "
+                        + ActivityTable.TABLE_NAME + " WHERE "
+                        + ActivityTable.NOTE_ID + "=? AND "
+                        + ActivityTable.ACTIVITY_TYPE + "=" + ActivityType.ANNOUNCE.id + " AND "
+                        + ActivityTable.ACTOR_ID + "=?", entityId, rebloggerActorId);
+                // If empty, this is not reblogged note
+                oid = StringUtils.isEmpty(reblogOid) ? idToOid(db, OidEnum.NOTE_OID, entityId, 0) : reblogOid;
+                break;
+
+            default:
+                MyLog.e(TAG, method, new IllegalArgumentException(method + "; Unknown parameter: " + oe));
+                return "";
         }
         return oid;
     }
@@ -385,44 +418,23 @@ public class MyQuery {
 
     public static String noteIdToUsername(String actorIdColumnName, long noteId, ActorInTimeline actorInTimeline) {
         final String method = "noteIdToUsername";
-        String username = "";
-        if (noteId != 0) {
-            SQLiteStatement prog = null;
-            String sql = "";
-            try {
-                if (actorIdColumnName.contentEquals(ActivityTable.ACTOR_ID)) {
-                    // TODO:
-                    throw new IllegalArgumentException( method + "; Not implemented \"" + actorIdColumnName + "\"");
-                } else if(actorIdColumnName.contentEquals(NoteTable.AUTHOR_ID) ||
-                        actorIdColumnName.contentEquals(NoteTable.IN_REPLY_TO_ACTOR_ID)) {
-                    sql = "SELECT " + usernameField(actorInTimeline) + " FROM " + ActorTable.TABLE_NAME
-                            + " INNER JOIN " + NoteTable.TABLE_NAME + " ON "
-                            + NoteTable.TABLE_NAME + "." + actorIdColumnName + "=" + ActorTable.TABLE_NAME + "." + BaseColumns._ID
-                            + " WHERE " + NoteTable.TABLE_NAME + "." + BaseColumns._ID + "=" + noteId;
-                } else {
-                    throw new IllegalArgumentException( method + "; Unknown name \"" + actorIdColumnName + "\"");
-                }
-                SQLiteDatabase db = MyContextHolder.get().getDatabase();
-                if (db == null) {
-                    MyLog.v(TAG, () -> method + "; Database is null");
-                    return "";
-                }
-                prog = db.compileStatement(sql);
-                username = prog.simpleQueryForString();
-            } catch (SQLiteDoneException e) {
-                MyLog.ignored(TAG, e);
-                username = "";
-            } catch (Exception e) {
-                MyLog.e(TAG, method, e);
-                username = "";
-            } finally {
-                DbUtils.closeSilently(prog);
-            }
-            if (MyLog.isVerboseEnabled()) {
-                MyLog.v(TAG, method + "; " + actorIdColumnName + ": " + noteId + " -> " + username );
-            }
+        if (noteId == 0) return "";
+
+        if (actorIdColumnName.contentEquals(ActivityTable.ACTOR_ID)) {
+            // TODO:
+            MyLog.e(TAG, method, new IllegalArgumentException( method + "; Not implemented \"" + actorIdColumnName + "\""));
+            return "";
+        } else if(actorIdColumnName.contentEquals(NoteTable.AUTHOR_ID) ||
+                actorIdColumnName.contentEquals(NoteTable.IN_REPLY_TO_ACTOR_ID)) {
+            return pooledSqlToString(null, method, "SELECT " + usernameField(actorInTimeline)
+                    + " FROM " + ActorTable.TABLE_NAME
+                    + " INNER JOIN " + NoteTable.TABLE_NAME + " ON "
+                    + NoteTable.TABLE_NAME + "." + actorIdColumnName + "=" + ActorTable.TABLE_NAME + "." + BaseColumns._ID
+                    + " WHERE " + NoteTable.TABLE_NAME + "." + BaseColumns._ID + "=?", noteId);
+        } else {
+            MyLog.e(TAG, method, new IllegalArgumentException( method + "; Unknown name \"" + actorIdColumnName + "\""));
+            return "";
         }
-        return username;
     }
 
     @NonNull
@@ -448,8 +460,11 @@ public class MyQuery {
     public static long idToLongColumnValue(SQLiteDatabase databaseIn, String tableName, String columnName, long systemId) {
         if (systemId == 0) {
             return 0;
+        } else if (StringUtils.isEmpty(tableName) || StringUtils.isEmpty(columnName)) {
+            throw new IllegalArgumentException("idToLong; tableName or columnName are empty");
         } else {
-            return conditionToLongColumnValue(databaseIn, null, tableName, columnName, "t._id=" + systemId);
+            return pooledSqlToLong(databaseIn, "idToLong",
+                    "SELECT t." + columnName + " FROM " + tableName + " AS t WHERE t._id=?", systemId);
         }
     }
 
@@ -501,7 +516,14 @@ public class MyQuery {
      */
     @NonNull
     public static String idToStringColumnValue(SQLiteDatabase db, String tableName, String columnName, long systemId) {
-        return (systemId == 0) ? "" : conditionToStringColumnValue(db, tableName, columnName, "_id=" + systemId);
+        if (systemId == 0) {
+            return "";
+        } else if (StringUtils.isEmpty(tableName) || StringUtils.isEmpty(columnName)) {
+            throw new IllegalArgumentException("idToString; tableName or columnName are empty");
+        } else {
+            return pooledSqlToString(db, "idToString",
+                    "SELECT " + columnName + " FROM " + tableName + " WHERE _id=?", systemId);
+        }
     }
 
     @NonNull
@@ -623,9 +645,10 @@ public class MyQuery {
             default:
                 throw new IllegalArgumentException( method + "; Illegal column '" + columnNameIn + "'");
         }
-        return MyQuery.conditionToLongColumnValue(databaseIn, method, ActivityTable.TABLE_NAME, columnName,
-                ActivityTable.NOTE_ID + "=" + noteId +  " AND " + condition
-                        + " ORDER BY " + ActivityTable.UPDATED_DATE + " DESC LIMIT 1");
+        if (noteId == 0) return 0;
+        return pooledSqlToLong(databaseIn, method, "SELECT t." + columnName + " FROM " + ActivityTable.TABLE_NAME
+                + " AS t WHERE " + ActivityTable.NOTE_ID + "=? AND " + condition
+                + " ORDER BY " + ActivityTable.UPDATED_DATE + " DESC LIMIT 1", noteId);
     }
 
     public static long webFingerIdToId(long originId, String webFingerId) {
@@ -646,34 +669,11 @@ public class MyQuery {
 
     private static long actorColumnValueToId(long originId, String columnName, String columnValue) {
         final String method = "actor" + columnName + "ToId";
-        SQLiteDatabase db = MyContextHolder.get().getDatabase();
-        if (db == null) {
-            MyLog.v(TAG, () -> method + "; Database is null");
-            return 0;
-        }
-        long id = 0;
-        SQLiteStatement prog = null;
-        String sql = "";
-        try {
-            sql = "SELECT " + BaseColumns._ID + " FROM " + ActorTable.TABLE_NAME
-                    + " WHERE "
-                    + (originId == 0 ? "" : ActorTable.ORIGIN_ID + "=" + originId + " AND ")
-                    + columnName + "='" + columnValue + "'";
-            prog = db.compileStatement(sql);
-            id = prog.simpleQueryForLong();
-        } catch (SQLiteDoneException e) {
-            MyLog.ignored(MyQuery.TAG, e);
-            id = 0;
-        } catch (Exception e) {
-            MyLog.e(MyQuery.TAG, method + ": SQL:'" + sql + "'", e);
-            id = 0;
-        } finally {
-            DbUtils.closeSilently(prog);
-        }
-        if (MyLog.isVerboseEnabled()) {
-            MyLog.v(MyQuery.TAG, method + ":" + originId + "+" + columnValue + " -> " + id);
-        }
-        return id;
+        final String sql = "SELECT " + BaseColumns._ID + " FROM " + ActorTable.TABLE_NAME
+                + " WHERE " + (originId == 0 ? "" : ActorTable.ORIGIN_ID + "=? AND ") + columnName + "=?";
+        return originId == 0
+                ? pooledSqlToLong(null, method, sql, columnValue)
+                : pooledSqlToLong(null, method, sql, originId, columnValue);
     }
 
     @NonNull
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.andstatus.app.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes results of {@link MyQuery#oidToId(OidEnum, long, String)}:
+ * a bounded LRU map of oids to ids for each {@link OidEnum} and Origin.
+ * Only ids of existing rows are cached: absent oids are looked up in the database every time.
+ * Entries are evicted on deletion of the rows and replaced, when an oid of the row changes
+ * @author yvolk@yurivolkov.com
+ */
+@ThreadSafe
+public class OidCache {
+    static final int MAX_SIZE_PER_ORIGIN = 2000;
+
+    @GuardedBy("this")
+    private final Map<Key, Segment> segments = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static class Key {
+        final OidEnum oidEnum;
+        final long originId;
+
+        Key(OidEnum oidEnum, long originId) {
+            this.oidEnum = oidEnum;
+            this.originId = originId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return originId == key.originId && oidEnum == key.oidEnum;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * oidEnum.hashCode() + (int) (originId ^ (originId >>> 32));
+        }
+    }
+
+    /** Entries of one OidEnum and one Origin */
+    private static class Segment {
+        final Map<Long, String> idToOid = new HashMap<>();
+        final LinkedHashMap<String, Long> oidToId = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > MAX_SIZE_PER_ORIGIN) {
+                    idToOid.remove(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        void put(String oid, long id) {
+            String oldOid = idToOid.put(id, oid);
+            if (oldOid != null && !oldOid.equals(oid)) {
+                oidToId.remove(oldOid);
+            }
+            Long oldId = oidToId.put(oid, id);
+            if (oldId != null && oldId != id) {
+                idToOid.remove(oldId);
+            }
+        }
+
+        void removeId(long id) {
+            String oid = idToOid.remove(id);
+            if (oid != null) {
+                oidToId.remove(oid);
+            }
+        }
+    }
+
+    /** @return 0 if not cached */
+    long get(@NonNull OidEnum oidEnum, long originId, String oid) {
+        Long id = null;
+        synchronized (this) {
+            Segment segment = segments.get(new Key(oidEnum, originId));
+            if (segment != null) {
+                id = segment.oidToId.get(oid);
+            }
+        }
+        if (id == null) {
+            misses.incrementAndGet();
+            return 0;
+        }
+        hits.incrementAndGet();
+        return id;
+    }
+
+    /** Remembers the oid of the row with this id */
+    public void put(@NonNull OidEnum oidEnum, long originId, String oid, long id) {
+        if (StringUtils.isEmpty(oid) || id <= 0) return;
+
+        synchronized (this) {
+            Key key = new Key(oidEnum, originId);
+            Segment segment = segments.get(key);
+            if (segment == null) {
+                segment = new Segment();
+                segments.put(key, segment);
+            }
+            segment.put(oid, id);
+        }
+    }
+
+    /** Should be called after deletion of the row with this id */
+    public synchronized void remove(@NonNull OidEnum oidEnum, long id) {
+        for (Map.Entry<Key, Segment> entry : segments.entrySet()) {
+            if (entry.getKey().oidEnum == oidEnum) {
+                entry.getValue().removeId(id);
+            }
+        }
+    }
+
+    /** Should be called after bulk deletion of rows */
+    public synchronized void clear(@NonNull OidEnum oidEnum) {
+        segments.keySet().removeIf(key -> key.oidEnum == oidEnum);
+    }
+
+    public synchronized void clear() {
+        segments.clear();
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.oidToId.size();
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        long hitsCount = hits.get();
+        long missesCount = misses.get();
+        long total = hitsCount + missesCount;
+        return "OidCache{size:" + size() + ", hits:" + hitsCount + ", misses:" + missesCount
+                + (total > 0 ? ", hit rate:" + (hitsCount * 100 / total) + "%" : "") + "}";
+    }
+}
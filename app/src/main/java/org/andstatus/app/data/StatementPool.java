@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable compiled statements of parameterized single value queries (see {@link MyQuery}) of one database.
+ * A statement is taken from the pool for exclusive use by one thread and is returned after the query,
+ * so the same SQL may be executed concurrently by several threads.
+ * The SQL should have "?" placeholders instead of literal values, otherwise the pool grows with each new value.
+ * @author yvolk@yurivolkov.com
+ */
+@ThreadSafe
+class StatementPool {
+    static final int IDLE_STATEMENTS_PER_SQL_MAX = 4;
+    @GuardedBy("StatementPool.class")
+    private static volatile StatementPool current = null;
+
+    private final SQLiteDatabase db;
+    @GuardedBy("this")
+    private final Map<String, Deque<SQLiteStatement>> idle = new HashMap<>();
+    @GuardedBy("this")
+    private boolean closed = false;
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong compiled = new AtomicLong();
+
+    private StatementPool(@NonNull SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /** The pool of the database. Statements of a previously used database are closed */
+    @NonNull
+    static StatementPool of(@NonNull SQLiteDatabase db) {
+        StatementPool pool = current;
+        if (pool != null && pool.db == db) return pool;
+
+        StatementPool previous = null;
+        synchronized (StatementPool.class) {
+            if (current == null || current.db != db) {
+                previous = current;
+                current = new StatementPool(db);
+            }
+            pool = current;
+        }
+        if (previous != null) previous.close();
+        return pool;
+    }
+
+    /** @throws android.database.sqlite.SQLiteDoneException if the query returned no rows */
+    long simpleQueryForLong(@NonNull String sql, Object... args) {
+        SQLiteStatement statement = acquire(sql, args);
+        try {
+            return statement.simpleQueryForLong();
+        } finally {
+            release(sql, statement);
+        }
+    }
+
+    /** @throws android.database.sqlite.SQLiteDoneException if the query returned no rows */
+    String simpleQueryForString(@NonNull String sql, Object... args) {
+        SQLiteStatement statement = acquire(sql, args);
+        try {
+            return statement.simpleQueryForString();
+        } finally {
+            release(sql, statement);
+        }
+    }
+
+    private SQLiteStatement acquire(String sql, Object[] args) {
+        SQLiteStatement statement = null;
+        synchronized (this) {
+            Deque<SQLiteStatement> statements = idle.get(sql);
+            if (statements != null) {
+                statement = statements.pollFirst();
+            }
+        }
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            compiled.incrementAndGet();
+        } else {
+            reused.incrementAndGet();
+        }
+        try {
+            bind(statement, args);
+        } catch (RuntimeException e) {
+            DbUtils.closeSilently(statement);
+            throw e;
+        }
+        return statement;
+    }
+
+    private static void bind(SQLiteStatement statement, Object[] args) {
+        for (int index = 0; index < args.length; index++) {
+            Object arg = args[index];
+            if (arg == null) {
+                statement.bindNull(index + 1);
+            } else if (arg instanceof Long || arg instanceof Integer) {
+                statement.bindLong(index + 1, ((Number) arg).longValue());
+            } else {
+                statement.bindString(index + 1, arg.toString());
+            }
+        }
+    }
+
+    private void release(String sql, SQLiteStatement statement) {
+        statement.clearBindings();
+        synchronized (this) {
+            if (!closed) {
+                Deque<SQLiteStatement> statements = idle.get(sql);
+                if (statements == null) {
+                    statements = new ArrayDeque<>();
+                    idle.put(sql, statements);
+                }
+                if (statements.size() < IDLE_STATEMENTS_PER_SQL_MAX) {
+                    statements.addFirst(statement);
+                    return;
+                }
+            }
+        }
+        DbUtils.closeSilently(statement);
+    }
+
+    private void close() {
+        synchronized (this) {
+            closed = true;
+            for (Deque<SQLiteStatement> statements : idle.values()) {
+                statements.forEach(DbUtils::closeSilently);
+            }
+            idle.clear();
+        }
+    }
+
+    /** @return Number of idle statements of the SQL */
+    synchronized int idleCount(@NonNull String sql) {
+        Deque<SQLiteStatement> statements = idle.get(sql);
+        return statements == null ? 0 : statements.size();
+    }
+
+    long getCompiled() {
+        return compiled.get();
+    }
+
+    long getReused() {
+        return reused.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StatementPool{compiled:" + compiled.get() + ", reused:" + reused.get() + "}";
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.andstatus.app.util.MyLog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Scaled down copy of an image or of a video frame, stored in a subdirectory of {@link DownloadFile}s,
+ * so it is not decoded from the original file every time it is loaded into an image cache.
+ * A thumbnail is identified by the original file name (it contains the download id) and by the thumbnail size.
+ * Thumbnails are deleted together with their original files
+ * @author yvolk@yurivolkov.com
+ */
+public class ThumbnailFile {
+    private static final String DIRECTORY = "thumbnails";
+    private static final String SUFFIX = ".webp";
+    private static final int QUALITY = 90;
+    /** Younger files may be being saved or their originals may be being replaced right now */
+    private static final long ORPHAN_MIN_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final File original;
+    private final File file;
+
+    public ThumbnailFile(@NonNull File original, int width, int height) {
+        this.original = original;
+        file = new File(getDir(original.getParentFile()),
+                original.getName() + "." + width + "x" + height + SUFFIX);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    private static File getDir(File downloadsDir) {
+        return new File(downloadsDir, DIRECTORY);
+    }
+
+    /** @return null if there is no thumbnail or it is older than the original */
+    @Nullable
+    public Bitmap load() {
+        if (!file.exists() || file.lastModified() < original.lastModified()) return null;
+
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
+        if (bitmap == null) {
+            MyLog.d(this, "Failed to decode, deleting " + file);
+            deleteLogged(file);
+        }
+        return bitmap;
+    }
+
+    public void save(@NonNull Bitmap bitmap) {
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdir() && !dir.exists()) {
+            MyLog.d(this, "Couldn't create " + dir);
+            return;
+        }
+        File tmpFile = new File(dir, file.getName() + ".tmp");
+        boolean saved;
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            saved = bitmap.compress(Bitmap.CompressFormat.WEBP, QUALITY, out);
+        } catch (IOException e) {
+            MyLog.d(this, "Failed to save " + file, e);
+            saved = false;
+        }
+        if (!saved || !tmpFile.renameTo(file)) {
+            deleteLogged(tmpFile);
+        }
+    }
+
+    /** Deletes thumbnails of all sizes of the original file */
+    static void deleteAllOf(@NonNull File original) {
+        File[] thumbnails = getDir(original.getParentFile()).listFiles(
+                (dir, name) -> name.startsWith(original.getName() + "."));
+        if (thumbnails != null) {
+            Arrays.stream(thumbnails).forEach(ThumbnailFile::deleteLogged);
+        }
+    }
+
+    /** Deletes thumbnails, which original files don't exist, and unfinished temporary files.
+     * Files, modified less than {@link #ORPHAN_MIN_AGE_MILLIS} ago, are skipped
+     * @return number of deleted files */
+    public static long pruneOrphans() {
+        File downloadsDir = DownloadFile.getFilesDir();
+        long modifiedBefore = System.currentTimeMillis() - ORPHAN_MIN_AGE_MILLIS;
+        return getFiles(downloadsDir)
+                .filter(thumbnail -> thumbnail.lastModified() < modifiedBefore)
+                .filter(thumbnail -> !thumbnail.getName().endsWith(SUFFIX)
+                        || !new File(downloadsDir, originalName(thumbnail.getName())).exists())
+                .filter(ThumbnailFile::deleteLogged)
+                .count();
+    }
+
+    static long getDirSize() {
+        return getFiles(DownloadFile.getFilesDir()).mapToLong(File::length).sum();
+    }
+
+    /** @return Total size of thumbnails of all sizes by names of their original files */
+    static Map<String, Long> getSizesByOriginalName() {
+        Map<String, Long> sizes = new HashMap<>();
+        getFiles(DownloadFile.getFilesDir())
+                .filter(thumbnail -> thumbnail.getName().endsWith(SUFFIX))
+                .forEach(thumbnail -> sizes.merge(originalName(thumbnail.getName()), thumbnail.length(), Long::sum));
+        return sizes;
+    }
+
+    private static Stream<File> getFiles(File downloadsDir) {
+        File[] files = getDir(downloadsDir).listFiles();
+        return files == null ? Stream.empty() : Arrays.stream(files).filter(File::isFile);
+    }
+
+    /** Removes ".<width>x<height>.webp" */
+    private static String originalName(String thumbnailName) {
+        String withSize = thumbnailName.substring(0, thumbnailName.length() - SUFFIX.length());
+        int sizeStart = withSize.lastIndexOf('.');
+        return sizeStart < 0 ? withSize : withSize.substring(0, sizeStart);
+    }
+
+    private static boolean deleteLogged(File file) {
+        boolean deleted = file.delete();
+        if (deleted) {
+            MyLog.v(ThumbnailFile.class, () -> "Deleted file " + file);
+        } else if (file.exists()) {
+            MyLog.e(ThumbnailFile.class, "Couldn't delete file " + file);
+        }
+        return deleted;
+    }
+
+    @Override
+    public String toString() {
+        return MyLog.objToTag(this) + " " + file.getName();
+    }
+}
@@ -31,6 +31,7 @@ import org.andstatus.app.database.table.NoteTable;
 import org.andstatus.app.timeline.meta.Timeline;
 import org.andstatus.app.timeline.meta.TimelineType;
 import org.andstatus.app.util.SharedPreferencesUtil;
+import org.andstatus.app.util.StringUtils;
 import org.andstatus.app.util.TriState;
 
 import java.util.Arrays;
@@ -122,7 +123,8 @@ public class TimelineSql {
         }
         String  tables = "(SELECT * FROM " + ActivityTable.TABLE_NAME + actWhere.getWhere()
                 + ") AS " + ProjectionMap.ACTIVITY_TABLE_ALIAS
-                + (noteWhere.isEmpty() ? " LEFT" : " INNER") + " JOIN "
+                + (noteWhere.isEmpty() && StringUtils.isEmpty(timeline.getSearchQuery()) ? " LEFT" : " INNER")
+                + " JOIN "
                 + NoteTable.TABLE_NAME + " AS " + NOTE_TABLE_ALIAS
                 + " ON (" + NOTE_TABLE_ALIAS + "." + BaseColumns._ID + "="
                     + ProjectionMap.ACTIVITY_TABLE_ALIAS + "." + ActivityTable.NOTE_ID
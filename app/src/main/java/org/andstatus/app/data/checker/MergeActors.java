@@ -20,6 +20,7 @@ import android.database.Cursor;
 import android.support.annotation.NonNull;
 
 import org.andstatus.app.data.MyProvider;
+import org.andstatus.app.data.OidEnum;
 import org.andstatus.app.database.table.ActivityTable;
 import org.andstatus.app.database.table.ActorTable;
 import org.andstatus.app.database.table.AudienceTable;
@@ -138,6 +139,7 @@ class MergeActors extends DataChecker {
         MyProvider.delete(myContext, FriendshipTable.TABLE_NAME, FriendshipTable.FRIEND_ID, actor.actorId);
         MyProvider.delete(myContext, DownloadTable.TABLE_NAME, DownloadTable.ACTOR_ID, actor.actorId);
         MyProvider.delete(myContext, ActorTable.TABLE_NAME, ActorTable._ID, actor.actorId);
+        myContext.oidCache().remove(OidEnum.ACTOR_OID, actor.actorId);
     }
 
     private void updateColumn(String logMsg, AActivity activity, String tableName, String column, boolean ignoreError) {
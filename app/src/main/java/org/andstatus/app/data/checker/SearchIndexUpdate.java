@@ -17,8 +17,11 @@
 package org.andstatus.app.data.checker;
 
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
 
 import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.database.table.NoteSearchTable;
 import org.andstatus.app.database.table.NoteTable;
 import org.andstatus.app.net.social.Note;
 import org.andstatus.app.service.MyServiceManager;
@@ -67,11 +70,48 @@ class SearchIndexUpdate extends DataChecker {
         }
 
         if (!countOnly) notesToFix.forEach(this::fixOneNote);
+        long indexFixed = fixFullTextIndex(countOnly, !notesToFix.isEmpty(), rowsCount);
 
-        logger.logProgress(notesToFix.isEmpty()
+        logger.logProgress(notesToFix.isEmpty() && indexFixed == 0
                 ? "No changes to search index were needed. " + rowsCount + " notes"
-                : "Updated search index for " + notesToFix.size() + " of " + rowsCount + " notes");
-        return notesToFix.size();
+                : "Updated search index for " + notesToFix.size() + " of " + rowsCount + " notes"
+                    + (indexFixed == 0 ? "" : ", full text search index " + (countOnly ? "needs rebuilding" : "rebuilt")));
+        return notesToFix.size() + indexFixed;
+    }
+
+    /** Rebuilds the {@link NoteSearchTable}, if it is missing or is out of sync with the notes
+     * @return 1 if the index was (or needs to be) rebuilt */
+    private long fixFullTextIndex(boolean countOnly, boolean notesFixed, long notesCount) {
+        String sql = "";
+        try {
+            SQLiteDatabase db = myContext.getDatabase();
+            boolean available = NoteSearchTable.isAvailable(db);
+            if (available && !notesFixed) {
+                sql = "SELECT COUNT(*) FROM " + NoteSearchTable.TABLE_NAME;
+                if (DatabaseUtils.longForQuery(db, sql, null) == notesCount) return 0;
+            }
+            if (countOnly) return 1;
+
+            logger.logProgress("Rebuilding full text search index of " + notesCount + " notes");
+            MyServiceManager.setServiceUnavailable();
+            db.beginTransaction();
+            try {
+                sql = "Creating " + NoteSearchTable.TABLE_NAME;
+                if (available || NoteSearchTable.create(db)) {
+                    sql = "Rebuilding " + NoteSearchTable.TABLE_NAME;
+                    NoteSearchTable.rebuild(db);
+                    db.setTransactionSuccessful();
+                    return 1;
+                }
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            String logMsg = "Error: " + e.getMessage() + ", SQL:" + sql;
+            logger.logProgress(logMsg);
+            MyLog.e(this, logMsg, e);
+        }
+        return 0;
     }
 
     private void fixOneNote(Note note) {
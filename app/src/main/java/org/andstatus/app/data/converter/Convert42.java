@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data.converter;
+
+import org.andstatus.app.database.table.NoteSearchTable;
+
+class Convert42 extends ConvertOneStep {
+    Convert42() {
+        versionTo = 43;
+    }
+
+    @Override
+    protected void execute2() {
+        progressLogger.logProgress(stepTitle + ": Creating full text search index");
+
+        // The index is optional, so the upgrade doesn't fail, if it cannot be created
+        dropOldTable(NoteSearchTable.TABLE_NAME);
+        if (NoteSearchTable.create(db)) {
+            sql = "Filling " + NoteSearchTable.TABLE_NAME;
+            NoteSearchTable.rebuild(db);
+        }
+    }
+}
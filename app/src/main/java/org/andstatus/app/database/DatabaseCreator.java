@@ -26,6 +26,7 @@ import org.andstatus.app.database.table.AudienceTable;
 import org.andstatus.app.database.table.CommandTable;
 import org.andstatus.app.database.table.DownloadTable;
 import org.andstatus.app.database.table.FriendshipTable;
+import org.andstatus.app.database.table.NoteSearchTable;
 import org.andstatus.app.database.table.NoteTable;
 import org.andstatus.app.database.table.OriginTable;
 import org.andstatus.app.database.table.TimelineTable;
@@ -40,6 +41,8 @@ public class DatabaseCreator {
      * Current database scheme version, defined by AndStatus developers.
      * This is used to check (and upgrade if necessary) existing database after application update.
      *
+     * v.44 2018-10-22 DownloadTable added "etag" and "last_modified" for conditional downloads
+     * v.43 2018-10-20 NoteSearchTable added: full text search index of notes
      * v.42 2018-09-05 DownloadTable added (returned) "content_type" to filter attachments that can be shown
      * v.40 2018-06-05 DownloadTable added "downloaded_date" to decide, when to prune the download
      * v.38 2018-04-01 app.v.38 DownloadTable update to support Video. NoteTable - added Note's Name
@@ -69,7 +72,7 @@ public class DatabaseCreator {
      *      All messages are in the same table.
      *      Allows to have multiple User Accounts in different Originating systems (twitter.com etc. )
      */
-    public static final int DATABASE_VERSION = 42;
+    public static final int DATABASE_VERSION = 44;
     public static final long ORIGIN_ID_TWITTER =  1L;
 
     private final SQLiteDatabase db;
@@ -86,6 +89,7 @@ public class DatabaseCreator {
         MyLog.i(this, "Creating tables");
         OriginTable.create(db);
         NoteTable.create(db);
+        NoteSearchTable.create(db);
         UserTable.create(db);
         ActorTable.create(db);
         AudienceTable.create(db);
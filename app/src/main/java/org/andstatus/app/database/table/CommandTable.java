@@ -65,6 +65,15 @@ public final class CommandTable implements BaseColumns {
     public static final String DOWNLOADED_COUNT = "downloaded_count";
     public static final String PROGRESS_TEXT = "progress_text";
 
+    /** Columns, which are needed to restore a command of a known queue type */
+    public static final String[] COMMAND_COLUMNS = {
+            _ID, COMMAND_CODE, CREATED_DATE, DESCRIPTION, IN_FOREGROUND, MANUALLY_LAUNCHED,
+            TIMELINE_ID, TIMELINE_TYPE, ACCOUNT_ID, ACTOR_ID, ORIGIN_ID, SEARCH_QUERY,
+            ITEM_ID, USERNAME,
+            LAST_EXECUTED_DATE, EXECUTION_COUNT, RETRIES_LEFT, NUM_AUTH_EXCEPTIONS, NUM_IO_EXCEPTIONS,
+            NUM_PARSE_EXCEPTIONS, ERROR_MESSAGE, DOWNLOADED_COUNT, PROGRESS_TEXT
+    };
+
     public static void create(SQLiteDatabase db) {
         DbUtils.execSQL(db, "CREATE TABLE " + TABLE_NAME + " ("
                 + BaseColumns._ID + " INTEGER PRIMARY KEY NOT NULL,"
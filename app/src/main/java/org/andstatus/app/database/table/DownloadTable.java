@@ -51,6 +51,10 @@ public final class DownloadTable implements BaseColumns {
     public static final String FILE_NAME = "file_name";
     public static final String FILE_SIZE = "file_size";
     public static final String DOWNLOADED_DATE = "downloaded_date";
+    /** Value of the "ETag" header of the HTTP response, in which the file was downloaded */
+    public static final String ETAG = "etag";
+    /** Value of the "Last-Modified" header of the HTTP response, in which the file was downloaded */
+    public static final String LAST_MODIFIED = "last_modified";
 
     /*
      * Derived columns (they are not stored in this table but are result of joins)
@@ -79,7 +83,9 @@ public final class DownloadTable implements BaseColumns {
                 + DURATION + " INTEGER NOT NULL DEFAULT 0,"
                 + FILE_NAME + " TEXT,"
                 + FILE_SIZE + " INTEGER NOT NULL DEFAULT 0,"
-                + DOWNLOADED_DATE + " INTEGER NOT NULL DEFAULT 0"
+                + DOWNLOADED_DATE + " INTEGER NOT NULL DEFAULT 0,"
+                + ETAG + " TEXT,"
+                + LAST_MODIFIED + " TEXT"
                 + ")");
 
         DbUtils.execSQL(db, "CREATE INDEX idx_download_actor ON " + TABLE_NAME + " ("
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.database.table;
+
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+
+import org.andstatus.app.data.CompiledStatements;
+import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.util.MyLog;
+
+import java.util.Collection;
+
+/**
+ * Full text search index of {@link NoteTable#CONTENT_TO_SEARCH}, see <a href="https://www.sqlite.org/fts3.html">SQLite FTS4</a>.
+ * "docid" of a row is {@link NoteTable#_ID} of the indexed note.
+ * The index is optional: if the table couldn't be created, notes are searched without it
+ * @author yvolk@yurivolkov.com
+ */
+public final class NoteSearchTable {
+    public static final String TABLE_NAME = "note_search";
+    public static final String DOCID = "docid";
+    /** The same as {@link NoteTable#CONTENT_TO_SEARCH} of the note */
+    public static final String CONTENT_TO_SEARCH = NoteTable.CONTENT_TO_SEARCH;
+
+    private static final String SQL_INSERT = "INSERT INTO " + TABLE_NAME
+            + "(" + DOCID + ", " + CONTENT_TO_SEARCH + ") VALUES(?, ?)";
+    private static final String SQL_DELETE = "DELETE FROM " + TABLE_NAME + " WHERE " + DOCID + "=?";
+
+    private static volatile SQLiteDatabase checkedDatabase = null;
+    private static volatile boolean available = false;
+
+    private NoteSearchTable() {
+    }
+
+    /** @return true if the index was created */
+    public static boolean create(SQLiteDatabase db) {
+        try {
+            DbUtils.execSQL(db, "CREATE VIRTUAL TABLE " + TABLE_NAME + " USING fts4("
+                    + CONTENT_TO_SEARCH + ", tokenize=unicode61)");
+        } catch (SQLException e) {
+            MyLog.w(NoteSearchTable.class, "Full text search index was not created", e);
+            return false;
+        } finally {
+            checkedDatabase = null;
+        }
+        return true;
+    }
+
+    /** Fills the index from the {@link NoteTable} */
+    public static void rebuild(SQLiteDatabase db) {
+        DbUtils.execSQL(db, "DELETE FROM " + TABLE_NAME);
+        DbUtils.execSQL(db, "INSERT INTO " + TABLE_NAME + "(" + DOCID + ", " + CONTENT_TO_SEARCH + ")"
+                + " SELECT " + BaseColumns._ID + ", " + NoteTable.CONTENT_TO_SEARCH + " FROM " + NoteTable.TABLE_NAME);
+        DbUtils.execSQL(db, "INSERT INTO " + TABLE_NAME + "(" + TABLE_NAME + ") VALUES('optimize')");
+    }
+
+    public static boolean isAvailable(SQLiteDatabase db) {
+        if (db == null) return false;
+        if (checkedDatabase != db) {
+            available = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master"
+                    + " WHERE type='table' AND name='" + TABLE_NAME + "'", null) > 0;
+            checkedDatabase = db;
+        }
+        return available;
+    }
+
+    public static void update(SQLiteDatabase db, long noteId, String contentToSearch) {
+        if (noteId == 0 || !isAvailable(db)) return;
+        try (SQLiteStatement delete = db.compileStatement(SQL_DELETE);
+             SQLiteStatement insert = db.compileStatement(SQL_INSERT)) {
+            update(delete, insert, noteId, contentToSearch);
+        }
+    }
+
+    /** The same as {@link #update(SQLiteDatabase, long, String)}, reusing statements of the transaction */
+    public static void update(SQLiteDatabase db, CompiledStatements statements, long noteId, String contentToSearch) {
+        if (statements.isEmpty()) {
+            update(db, noteId, contentToSearch);
+            return;
+        }
+        if (noteId == 0 || !isAvailable(db)) return;
+        update(statements.getStatement(SQL_DELETE), statements.getStatement(SQL_INSERT), noteId, contentToSearch);
+    }
+
+    private static void update(SQLiteStatement delete, SQLiteStatement insert, long noteId, String contentToSearch) {
+        delete.bindLong(1, noteId);
+        delete.executeUpdateDelete();
+        insert.bindLong(1, noteId);
+        insert.bindString(2, contentToSearch == null ? "" : contentToSearch);
+        insert.executeInsert();
+    }
+
+    public static void delete(SQLiteDatabase db, Collection<Long> noteIds) {
+        if (noteIds.isEmpty() || !isAvailable(db)) return;
+        try (SQLiteStatement statement = db.compileStatement(SQL_DELETE)) {
+            for (long noteId : noteIds) {
+                statement.bindLong(1, noteId);
+                statement.executeUpdateDelete();
+            }
+        }
+    }
+
+    /** Selection of notes, which content matches the FTS query, passed as a selection argument */
+    public static String getSqlSelection(String noteIdField) {
+        return noteIdField + " IN (SELECT " + DOCID + " FROM " + TABLE_NAME
+                + " WHERE " + CONTENT_TO_SEARCH + " MATCH ?)";
+    }
+}
@@ -17,6 +17,7 @@
 package org.andstatus.app.graphics;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
@@ -50,6 +51,12 @@ public class AttachedImageView extends IdentifiableImageView {
         super(context, attrs, defStyle);
     }
 
+    @Override
+    public void onImageLoaded(@NonNull CachedImage image) {
+        setMeasuresLocked(true);
+        super.onImageLoaded(image);
+    }
+
     public void setReferencedView(View referencedViewIn) {
         referencedView = referencedViewIn;
     }
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+import android.util.DisplayMetrics;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.andstatus.app.util.MyLog;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable bitmaps of an {@link ImageCache}. Bitmaps are allocated in size classes:
+ * width and height are rounded up to a multiple of a quarter of the maximum size,
+ * so a bitmap of a smaller image takes less memory, and it may be reused for another image of similar size.
+ * Total size of allocated bitmaps (both used and free) is limited by a byte budget
+ * @author yvolk@yurivolkov.com
+ */
+@ThreadSafe
+class BitmapPool {
+    static final int SIZE_CLASSES_PER_SIDE = 4;
+
+    private final DisplayMetrics displayMetrics;
+    private final int maxWidth;
+    private final int maxHeight;
+    private volatile long bytesBudget;
+
+    /** Free bitmaps by size class, see {@link #key(int, int)} */
+    @GuardedBy("this")
+    private final Map<Integer, Deque<Bitmap>> free = new TreeMap<>();
+    @GuardedBy("this")
+    private long bytesAllocated = 0;
+    @GuardedBy("this")
+    private int freeCount = 0;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    BitmapPool(DisplayMetrics displayMetrics, int maxWidth, int maxHeight, long bytesBudget) {
+        this.displayMetrics = displayMetrics;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.bytesBudget = bytesBudget;
+    }
+
+    /** @return A free bitmap of the size class of the image, or of a larger one.
+     *  null, if the budget is exhausted and there is no suitable free bitmap */
+    @Nullable
+    Bitmap acquire(int width, int height) {
+        requests.incrementAndGet();
+        int widthClass = sizeClass(width, maxWidth);
+        int heightClass = sizeClass(height, maxHeight);
+        synchronized (this) {
+            Bitmap bitmap = pollFree(widthClass, heightClass);
+            if (bitmap != null) {
+                reused.incrementAndGet();
+                return bitmap;
+            }
+            long bytesNeeded = (long) classSize(widthClass, maxWidth) * classSize(heightClass, maxHeight)
+                    * ImageCache.BYTES_PER_PIXEL;
+            while (bytesAllocated + bytesNeeded > bytesBudget && freeCount > 0) {
+                dropSmallestFree();
+            }
+            if (bytesAllocated + bytesNeeded > bytesBudget) {
+                failed.incrementAndGet();
+                return null;
+            }
+            try {
+                bitmap = Bitmap.createBitmap(displayMetrics, classSize(widthClass, maxWidth),
+                        classSize(heightClass, maxHeight), CachedImage.BITMAP_CONFIG);
+            } catch (OutOfMemoryError e) {
+                MyLog.w(this, "Failed to allocate " + bytesNeeded + " bytes. " + getInfo(), e);
+                failed.incrementAndGet();
+                return null;
+            }
+            bytesAllocated += bytesOf(bitmap);
+            allocated.incrementAndGet();
+            return bitmap;
+        }
+    }
+
+    /** Returns the bitmap, received from {@link #acquire(int, int)}, to the pool */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            bytesAllocated -= bytesOf(bitmap);
+            return;
+        }
+        int key = key(sizeClass(bitmap.getWidth(), maxWidth), sizeClass(bitmap.getHeight(), maxHeight));
+        Deque<Bitmap> bitmaps = free.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            free.put(key, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        freeCount++;
+    }
+
+    /** Free bitmaps are dropped, while allocated bitmaps exceed the new budget */
+    synchronized void setBytesBudget(long bytesBudget) {
+        this.bytesBudget = bytesBudget;
+        while (bytesAllocated > bytesBudget && freeCount > 0) {
+            dropSmallestFree();
+        }
+    }
+
+    /** Drops all free bitmaps */
+    synchronized void clear() {
+        while (freeCount > 0) {
+            dropSmallestFree();
+        }
+    }
+
+    @GuardedBy("this")
+    @Nullable
+    private Bitmap pollFree(int widthClass, int heightClass) {
+        Bitmap best = null;
+        int bestKey = 0;
+        int bestArea = Integer.MAX_VALUE;
+        for (Map.Entry<Integer, Deque<Bitmap>> entry : free.entrySet()) {
+            int entryWidthClass = widthClassOf(entry.getKey());
+            int entryHeightClass = heightClassOf(entry.getKey());
+            int area = entryWidthClass * entryHeightClass;
+            if (entryWidthClass >= widthClass && entryHeightClass >= heightClass && area < bestArea
+                    && !entry.getValue().isEmpty()) {
+                best = entry.getValue().peek();
+                bestKey = entry.getKey();
+                bestArea = area;
+            }
+        }
+        if (best != null) {
+            free.get(bestKey).poll();
+            freeCount--;
+        }
+        return best;
+    }
+
+    /** The bitmap is not recycled explicitly, because a view may still draw an expired image,
+     * it is garbage collected after that */
+    @GuardedBy("this")
+    private void dropSmallestFree() {
+        Deque<Bitmap> smallest = null;
+        int smallestArea = Integer.MAX_VALUE;
+        for (Map.Entry<Integer, Deque<Bitmap>> entry : free.entrySet()) {
+            int area = widthClassOf(entry.getKey()) * heightClassOf(entry.getKey());
+            if (area < smallestArea && !entry.getValue().isEmpty()) {
+                smallest = entry.getValue();
+                smallestArea = area;
+            }
+        }
+        Bitmap bitmap = smallest == null ? null : smallest.poll();
+        if (bitmap != null) {
+            freeCount--;
+            bytesAllocated -= bytesOf(bitmap);
+        }
+    }
+
+    /** @return 1..{@link #SIZE_CLASSES_PER_SIDE} */
+    private static int sizeClass(int size, int maxSize) {
+        int sizeClass = (int) Math.ceil((double) size * SIZE_CLASSES_PER_SIDE / maxSize);
+        return Math.max(1, Math.min(SIZE_CLASSES_PER_SIDE, sizeClass));
+    }
+
+    private static int classSize(int sizeClass, int maxSize) {
+        return sizeClass == SIZE_CLASSES_PER_SIDE
+                ? maxSize
+                : Math.max(1, (int) Math.ceil((double) maxSize * sizeClass / SIZE_CLASSES_PER_SIDE));
+    }
+
+    private static long bytesOf(Bitmap bitmap) {
+        return (long) bitmap.getWidth() * bitmap.getHeight() * ImageCache.BYTES_PER_PIXEL;
+    }
+
+    /** The key is not ordered by area of the size class: e.g. 1x4 goes before 2x1 */
+    private static int key(int widthClass, int heightClass) {
+        return widthClass * (SIZE_CLASSES_PER_SIDE + 1) + heightClass;
+    }
+
+    private static int widthClassOf(int key) {
+        return key / (SIZE_CLASSES_PER_SIDE + 1);
+    }
+
+    private static int heightClassOf(int key) {
+        return key % (SIZE_CLASSES_PER_SIDE + 1);
+    }
+
+    String getInfo() {
+        long requestsCount = requests.get();
+        synchronized (this) {
+            return "bitmaps: " + (bytesAllocated * 100 / Math.max(1, bytesBudget)) + "% of budget, free: " + freeCount
+                    + ", reused:" + reused.get() + ", allocated:" + allocated.get()
+                    + (failed.get() > 0 ? ", failed:" + failed.get() : "")
+                    + (requestsCount == 0 ? "" : ", reuseRate:" + reused.get() * 100 / requestsCount + "%");
+        }
+    }
+}
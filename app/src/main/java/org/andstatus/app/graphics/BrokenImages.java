@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Paths of image files, which couldn't be decoded, so they are not decoded again and again.
+ * The number of paths is limited, the oldest ones are forgotten first.
+ * A path expires after some time, or when its file is downloaded again, so the image is retried
+ * @author yvolk@yurivolkov.com
+ */
+@ThreadSafe
+class BrokenImages {
+    static final int MAX_SIZE = 500;
+    static final long EXPIRE_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final LongSupplier clock;
+
+    /** Time, when a path was added, by path, in the order of adding */
+    @GuardedBy("this")
+    private final Map<String, Long> addedAt = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    BrokenImages() {
+        this(System::currentTimeMillis);
+    }
+
+    /** @param clock current time in milliseconds */
+    BrokenImages(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    synchronized void add(String path) {
+        addedAt.remove(path);
+        addedAt.put(path, clock.getAsLong());
+    }
+
+    synchronized boolean contains(String path) {
+        Long added = addedAt.get(path);
+        if (added == null) return false;
+
+        if (clock.getAsLong() - added > EXPIRE_AFTER_MILLIS) {
+            addedAt.remove(path);
+            return false;
+        }
+        return true;
+    }
+
+    synchronized void remove(String path) {
+        addedAt.remove(path);
+    }
+
+    synchronized int size() {
+        return addedAt.size();
+    }
+
+    synchronized boolean isEmpty() {
+        return addedAt.isEmpty();
+    }
+}
@@ -17,6 +17,7 @@
 package org.andstatus.app.graphics;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
 import android.support.v7.widget.AppCompatImageView;
 import android.util.AttributeSet;
 
@@ -58,4 +59,10 @@ public class IdentifiableImageView extends AppCompatImageView {
     public void setLoaded() {
         this.loaded = true;
     }
+
+    /** Called in the UI thread, when the image, requested for this view, was loaded asynchronously */
+    public void onImageLoaded(@NonNull CachedImage image) {
+        setImageDrawable(image.getDrawable());
+        setLoaded();
+    }
 }
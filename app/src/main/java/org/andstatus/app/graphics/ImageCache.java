@@ -31,6 +31,7 @@ import android.graphics.Shader;
 import android.media.MediaMetadataRetriever;
 import android.media.ThumbnailUtils;
 import android.net.Uri;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.DisplayMetrics;
 import android.util.LruCache;
@@ -39,14 +40,11 @@ import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.data.ImageFile;
 import org.andstatus.app.data.MyContentType;
+import org.andstatus.app.data.ThumbnailFile;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.StringUtils;
 
 import java.io.File;
-import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -63,8 +61,13 @@ public class ImageCache extends LruCache<String, CachedImage> {
     private volatile int maxBitmapWidth;
     final AtomicLong hits = new AtomicLong();
     final AtomicLong misses = new AtomicLong();
-    final Set<String> brokenBitmaps = new ConcurrentSkipListSet<>();
-    final Queue<Bitmap> recycledBitmaps;
+    /** Misses, which were loaded from {@link ThumbnailFile}s */
+    final AtomicLong thumbnailHits = new AtomicLong();
+    /** Hits and misses at the previous adaptation of the cache size by {@link ImageCaches} */
+    private volatile long hitsBefore = 0;
+    private volatile long missesBefore = 0;
+    final BrokenImages brokenBitmaps = new BrokenImages();
+    final BitmapPool bitmapPool;
     final DisplayMetrics displayMetrics;
     volatile boolean rounded = false;
 
@@ -81,24 +84,62 @@ public class ImageCache extends LruCache<String, CachedImage> {
         this.setMaxBounds(maxBitmapHeightWidth, maxBitmapHeightWidth);
         this.requestedCacheSize = requestedCacheSizeIn;
         this.currentCacheSize = this.requestedCacheSize;
-        recycledBitmaps = new ConcurrentLinkedQueue<>();
-        try {
-            for (int i = 0; i < currentCacheSize + 2; i++) {
-                recycledBitmaps.add(newBlankBitmap());
-            }
-        } catch (OutOfMemoryError e) {
-            MyLog.w(this, getInfo(), e);
-            currentCacheSize = recycledBitmaps.size() - 2;
-            if (currentCacheSize < 0) {
-                currentCacheSize = 0;
-            }
-            super.resize(currentCacheSize);
-        }
+        // Enough for the full cache of the largest bitmaps and two spare bitmaps
+        bitmapPool = new BitmapPool(displayMetrics, maxBitmapWidth, maxBitmapHeight,
+                getBytesBudget(currentCacheSize));
+    }
+
+    private long getBytesBudget(int cacheSize) {
+        return (cacheSize + 2) * getBitmapBytes();
     }
 
-    private Bitmap newBlankBitmap() {
-        return Bitmap.createBitmap(displayMetrics, maxBitmapWidth,
-                maxBitmapHeight, CachedImage.BITMAP_CONFIG);
+    long getBitmapBytes() {
+        return (long) maxBitmapWidth * maxBitmapHeight * BYTES_PER_PIXEL;
+    }
+
+    int getRequestedCacheSize() {
+        return requestedCacheSize;
+    }
+
+    int getCurrentCacheSize() {
+        return currentCacheSize;
+    }
+
+    /** Adapts the cache to available memory, the least recently used images are evicted, if the cache shrinks */
+    void setCurrentCacheSize(int cacheSize) {
+        int newSize = Math.max(1, cacheSize);
+        if (newSize == currentCacheSize) return;
+
+        currentCacheSize = newSize;
+        super.resize(newSize);
+        bitmapPool.setBytesBudget(getBytesBudget(newSize));
+    }
+
+    /** The file was changed, so its image is loaded again, even if it failed to load before */
+    void onFileChanged(String path) {
+        brokenBitmaps.remove(path);
+        remove(path);
+    }
+
+    /** Evicts all images and frees memory of their bitmaps */
+    void clear() {
+        evictAll();
+        bitmapPool.clear();
+    }
+
+    long getRecentAccesses() {
+        return hits.get() - hitsBefore + misses.get() - missesBefore;
+    }
+
+    /** @return Percent of misses since the previous {@link #resetRecentAccesses()} */
+    int getRecentMissRate() {
+        long accesses = getRecentAccesses();
+        return accesses == 0 ? 0 : (int) ((misses.get() - missesBefore) * 100 / accesses);
+    }
+
+    void resetRecentAccesses() {
+        hitsBefore = hits.get();
+        missesBefore = misses.get();
     }
 
     @Nullable
@@ -115,7 +156,7 @@ public class ImageCache extends LruCache<String, CachedImage> {
     protected void entryRemoved(boolean evicted, String key, CachedImage oldValue, CachedImage newValue) {
         if (oldValue.isBitmapRecyclable()) {
             oldValue.makeExpired();
-            recycledBitmaps.add(oldValue.getBitmap());
+            bitmapPool.release(oldValue.getBitmap());
         }
     }
 
@@ -135,7 +176,7 @@ public class ImageCache extends LruCache<String, CachedImage> {
             if (!fromCacheOnly && (new File(imageFile.getPath())).exists()) {
                 image = loadImage(imageFile);
                 if (image != null) {
-                    if (currentCacheSize > 0) {
+                    if (currentCacheSize > 0 && !image.isExpired()) {
                         put(imageFile.getPath(), image);
                     }
                 } else {
@@ -146,6 +187,8 @@ public class ImageCache extends LruCache<String, CachedImage> {
         return image;
     }
 
+    /** @return null if the image couldn't be decoded. If the pool couldn't provide a bitmap,
+     * the image is not cached: it is returned expired, with its own bitmap */
     @Nullable
     private CachedImage loadImage(ImageFile imageFile) {
         Bitmap bitmap = loadBitmap(imageFile);
@@ -157,7 +200,7 @@ public class ImageCache extends LruCache<String, CachedImage> {
         if (background == null) {
             MyLog.w(imageFile, "No suitable bitmap found to cache "
                     + srcRect.width() + "x" + srcRect.height() + " '" + imageFile.getPath() + "'");
-            return null ;
+            return newUncachedImage(imageFile, bitmap, srcRect);
         }
         Canvas canvas = new Canvas(background);
         canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
@@ -170,6 +213,24 @@ public class ImageCache extends LruCache<String, CachedImage> {
         return new CachedImage(imageFile.getId(), background, srcRect);
     }
 
+    /** If a rounded copy couldn't be allocated, the decoded bitmap is shown as is */
+    @NonNull
+    private CachedImage newUncachedImage(ImageFile imageFile, Bitmap bitmap, Rect srcRect) {
+        Bitmap imageBitmap = bitmap;
+        if (rounded) {
+            try {
+                imageBitmap = Bitmap.createBitmap(displayMetrics, srcRect.width(), srcRect.height(),
+                        CachedImage.BITMAP_CONFIG);
+                drawRoundedBitmap(new Canvas(imageBitmap), bitmap);
+                bitmap.recycle();
+            } catch (OutOfMemoryError e) {
+                MyLog.w(imageFile, getInfo(), e);
+                imageBitmap = bitmap;
+            }
+        }
+        return new CachedImage(imageFile.getId(), imageBitmap, srcRect).makeExpired();
+    }
+
     /**
      * The solution is from http://evel.io/2013/07/21/rounded-avatars-in-android/
      */
@@ -183,32 +244,57 @@ public class ImageCache extends LruCache<String, CachedImage> {
         canvas.drawOval(rectF, paint);
     }
 
+    /** If the pool cannot provide a bitmap, the least recently used images are evicted to free their bitmaps */
+    @Nullable
     private Bitmap getSuitableRecycledBitmap(Rect srcRect) {
-        return recycledBitmaps.poll();
+        Bitmap bitmap = bitmapPool.acquire(srcRect.width(), srcRect.height());
+        while (bitmap == null && size() > 0) {
+            trimToSize(size() - 1);
+            bitmap = bitmapPool.acquire(srcRect.width(), srcRect.height());
+        }
+        return bitmap;
     }
 
+    /** Loads a thumbnail, if it was saved before. Otherwise decodes the original file
+     * and saves a thumbnail, if the original is larger or is a video */
     @Nullable
     private Bitmap loadBitmap(ImageFile imageFile) {
+        ThumbnailFile thumbnailFile = new ThumbnailFile(new File(imageFile.getPath()), maxBitmapWidth, maxBitmapHeight);
+        Bitmap thumbnail = thumbnailFile.load();
+        if (thumbnail != null) {
+            thumbnailHits.incrementAndGet();
+            MyLog.v(imageFile, () -> "Loaded " + name + "'s thumbnail " + thumbnail.getWidth()
+                    + "x" + thumbnail.getHeight() + " '" + imageFile.getPath() + "'");
+            return thumbnail;
+        }
+        final Bitmap bitmap;
         switch (MyContentType.fromPathOfSavedFile(imageFile.getPath())) {
             case IMAGE:
-                return imagePathToBitmap(imageFile);
+                BitmapFactory.Options options = calculateScaling(imageFile, imageFile.getSize());
+                bitmap = imagePathToBitmap(imageFile, options);
+                if (bitmap != null && options.inSampleSize > 1) {
+                    thumbnailFile.save(bitmap);
+                }
+                return bitmap;
             case VIDEO:
-                return videoPathToBitmap(imageFile);
+                bitmap = videoPathToBitmap(imageFile);
+                if (bitmap != null) {
+                    thumbnailFile.save(bitmap);
+                }
+                return bitmap;
             default:
                 return null;
         }
     }
 
     @Nullable
-    private Bitmap imagePathToBitmap(ImageFile imageFile) {
+    private Bitmap imagePathToBitmap(ImageFile imageFile, BitmapFactory.Options options) {
         final Bitmap bitmap;
         if (MyPreferences.isShowDebuggingInfoInUi()) {
-            bitmap = BitmapFactory
-                    .decodeFile(imageFile.getPath(), calculateScaling(imageFile, imageFile.getSize()));
+            bitmap = BitmapFactory.decodeFile(imageFile.getPath(), options);
         } else {
             try {
-                bitmap = BitmapFactory
-                        .decodeFile(imageFile.getPath(), calculateScaling(imageFile, imageFile.getSize()));
+                bitmap = BitmapFactory.decodeFile(imageFile.getPath(), options);
             } catch (OutOfMemoryError e) {
                 MyLog.w(imageFile, getInfo(), e);
                 evictAll();
@@ -263,13 +349,14 @@ public class ImageCache extends LruCache<String, CachedImage> {
         if (requestedCacheSize != currentCacheSize) {
             builder.append(" (initially capacity was " + requestedCacheSize + ")");
         }
-        builder.append(", free: " + recycledBitmaps.size());
+        builder.append(", " + bitmapPool.getInfo());
         if (!brokenBitmaps.isEmpty()) {
             builder.append(", broken: " + brokenBitmaps.size());
         }
         long accesses = hits.get() + misses.get();
         builder.append(", hits:" + hits.get() + ", misses:" + misses.get()
-                + (accesses == 0 ? "" : ", hitRate:" + hits.get() * 100 / accesses + "%"));
+                + (accesses == 0 ? "" : ", hitRate:" + hits.get() * 100 / accesses + "%")
+                + ", thumbnails loaded:" + thumbnailHits.get());
         return builder.toString();
     }
 
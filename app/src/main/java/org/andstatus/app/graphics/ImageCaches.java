@@ -17,6 +17,7 @@
 package org.andstatus.app.graphics;
 
 import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Point;
 import android.support.annotation.NonNull;
@@ -31,9 +32,12 @@ import org.andstatus.app.data.ImageFile;
 import org.andstatus.app.util.I18n;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.SharedPreferencesUtil;
+import org.andstatus.app.util.StringUtils;
 
+import java.util.Deque;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
  * @author yvolk@yurivolkov.com
@@ -46,8 +50,20 @@ public class ImageCaches {
     public static final int AVATARS_CACHE_SIZE_MIN = 200;
     public static final int AVATARS_CACHE_SIZE_MAX = 700;
 
+    /** Sizes of the caches are adapted after this number of accesses to them */
+    private static final int ACCESSES_TO_ADAPT = 200;
+    /** Percent of misses, at which a cache needs to grow */
+    private static final int HIGH_MISS_RATE = 20;
+    /** Caches don't grow after a memory trim during this time */
+    private static final long NO_GROWTH_AFTER_TRIM_MILLIS = 30000;
+    private static final int DECISIONS_TO_SHOW = 5;
+
     private static volatile ImageCache attachedImagesCache;
     private static volatile ImageCache avatarsCache;
+    private static volatile long trimmedAt = 0;
+    /** The caches were shrunk, while the application was in background */
+    private static volatile boolean trimmedInBackground = false;
+    private static final Deque<String> decisions = new ConcurrentLinkedDeque<>();
 
     private ImageCaches() {
         // Empty
@@ -132,7 +148,150 @@ public class ImageCaches {
     }
 
     public static CachedImage loadAndGetImage(CacheName cacheName, ImageFile imageFile) {
-        return getCache(cacheName).loadAndGetImage(imageFile);
+        CachedImage image = getCache(cacheName).loadAndGetImage(imageFile);
+        if (avatarsCache.getRecentAccesses() + attachedImagesCache.getRecentAccesses() >= ACCESSES_TO_ADAPT) {
+            adaptToAccesses();
+        }
+        return image;
+    }
+
+    /** Forgets the previous image of the file in all caches, e.g. after the file was downloaded again */
+    public static void onFileChanged(String path) {
+        if (attachedImagesCache == null || StringUtils.isEmpty(path)) return;
+
+        avatarsCache.onFileChanged(path);
+        attachedImagesCache.onFileChanged(path);
+    }
+
+    /**
+     * Shrinks the caches, when the system asks to free memory, see {@link ComponentCallbacks2#onTrimMemory(int)}.
+     * The caches shrink more, if the application is in background
+     */
+    public static synchronized void onTrimMemory(int level) {
+        if (attachedImagesCache == null) return;
+
+        final int percentToKeep;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            percentToKeep = 0;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            percentToKeep = 25;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            percentToKeep = 50;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            percentToKeep = 75;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            percentToKeep = 50;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            percentToKeep = 75;
+        } else {
+            return;
+        }
+        trimmedAt = System.currentTimeMillis();
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            trimmedInBackground = true;
+        }
+        for (ImageCache cache : new ImageCache[]{avatarsCache, attachedImagesCache}) {
+            int sizeBefore = cache.getCurrentCacheSize();
+            if (percentToKeep == 0) {
+                cache.clear();
+            }
+            int newSize = Math.min(sizeBefore, cache.getRequestedCacheSize() * percentToKeep / 100);
+            cache.setCurrentCacheSize(newSize);
+            addDecision(cache, sizeBefore, "memory trim level " + level);
+        }
+    }
+
+    /**
+     * The application is in foreground again (e.g. an activity is resumed), so the caches,
+     * shrunk while it was in background, grow back to their requested sizes at once.
+     * Caches, shrunk while the application was in foreground, grow back later, if they miss many images
+     */
+    public static void onForeground() {
+        if (!trimmedInBackground) return;
+        synchronized (ImageCaches.class) {
+            if (!trimmedInBackground || attachedImagesCache == null) return;
+
+            trimmedInBackground = false;
+            trimmedAt = 0;
+            for (ImageCache cache : new ImageCache[]{avatarsCache, attachedImagesCache}) {
+                int sizeBefore = cache.getCurrentCacheSize();
+                if (sizeBefore < cache.getRequestedCacheSize()) {
+                    cache.setCurrentCacheSize(cache.getRequestedCacheSize());
+                    addDecision(cache, sizeBefore, "foreground");
+                }
+            }
+        }
+    }
+
+    /**
+     * Grows back the caches, which were shrunk and miss many images.
+     * If the caches are not shrunk, moves memory to the cache, which misses more, from the other one
+     */
+    private static synchronized void adaptToAccesses() {
+        if (avatarsCache.getRecentAccesses() + attachedImagesCache.getRecentAccesses() < ACCESSES_TO_ADAPT) return;
+
+        if (System.currentTimeMillis() - trimmedAt > NO_GROWTH_AFTER_TRIM_MILLIS) {
+            if (getBytes(avatarsCache) + getBytes(attachedImagesCache)
+                    < getRequestedBytes(avatarsCache) + getRequestedBytes(attachedImagesCache)) {
+                growBack(avatarsCache);
+                growBack(attachedImagesCache);
+            } else if (avatarsCache.getRecentMissRate() > attachedImagesCache.getRecentMissRate()) {
+                rebalance(avatarsCache, attachedImagesCache);
+            } else {
+                rebalance(attachedImagesCache, avatarsCache);
+            }
+        }
+        avatarsCache.resetRecentAccesses();
+        attachedImagesCache.resetRecentAccesses();
+    }
+
+    private static void growBack(ImageCache cache) {
+        int sizeBefore = cache.getCurrentCacheSize();
+        if (cache.getRecentMissRate() < HIGH_MISS_RATE || sizeBefore >= cache.getRequestedCacheSize()) return;
+
+        cache.setCurrentCacheSize(Math.min(cache.getRequestedCacheSize(),
+                sizeBefore + Math.max(1, cache.getRequestedCacheSize() / 4)));
+        addDecision(cache, sizeBefore, "grow back");
+    }
+
+    /** The grown cache may become up to two times larger, the shrunk one - up to two times smaller,
+     * than their initial sizes */
+    private static void rebalance(ImageCache growing, ImageCache shrinking) {
+        if (growing.getRecentMissRate() < HIGH_MISS_RATE
+                || growing.getRecentMissRate() < shrinking.getRecentMissRate() + HIGH_MISS_RATE / 2) return;
+
+        int growBy = Math.max(1, growing.getRequestedCacheSize() / 8);
+        int shrinkBy = (int) ((growBy * growing.getBitmapBytes() + shrinking.getBitmapBytes() - 1)
+                / shrinking.getBitmapBytes());
+        if (growing.getCurrentCacheSize() + growBy > growing.getRequestedCacheSize() * 2
+                || shrinking.getCurrentCacheSize() - shrinkBy < shrinking.getRequestedCacheSize() / 2) return;
+
+        int shrinkingSizeBefore = shrinking.getCurrentCacheSize();
+        shrinking.setCurrentCacheSize(shrinkingSizeBefore - shrinkBy);
+        addDecision(shrinking, shrinkingSizeBefore, "rebalance");
+        int growingSizeBefore = growing.getCurrentCacheSize();
+        growing.setCurrentCacheSize(growingSizeBefore + growBy);
+        addDecision(growing, growingSizeBefore, "rebalance");
+    }
+
+    private static long getBytes(ImageCache cache) {
+        return cache.getCurrentCacheSize() * cache.getBitmapBytes();
+    }
+
+    private static long getRequestedBytes(ImageCache cache) {
+        return cache.getRequestedCacheSize() * cache.getBitmapBytes();
+    }
+
+    private static void addDecision(ImageCache cache, int sizeBefore, String reason) {
+        if (sizeBefore == cache.getCurrentCacheSize()) return;
+
+        String decision = cache.name.title + ": " + sizeBefore + " -> " + cache.getCurrentCacheSize()
+                + ", " + reason + ", recent misses: " + cache.getRecentMissRate() + "%";
+        MyLog.v(ImageCaches.class, () -> decision);
+        decisions.addFirst(decision);
+        while (decisions.size() > DECISIONS_TO_SHOW) {
+            decisions.pollLast();
+        }
     }
 
     public static CachedImage getCachedImage(CacheName cacheName, ImageFile imageFile) {
@@ -155,7 +314,14 @@ public class ImageCaches {
         } else {
             builder.append(avatarsCache.getInfo() + "\n");
             builder.append(attachedImagesCache.getInfo() + "\n");
+            builder.append("Recent misses: " + avatarsCache.name.title + " " + avatarsCache.getRecentMissRate()
+                    + "%, " + attachedImagesCache.name.title + " " + attachedImagesCache.getRecentMissRate() + "%\n");
+            if (!decisions.isEmpty()) {
+                builder.append("Cache size decisions:\n");
+                decisions.forEach(decision -> builder.append("  " + decision + "\n"));
+            }
             builder.append("Styled images: " + styledImages.size() + "\n");
+            builder.append(ImageDecodePipeline.getInfo() + "\n");
         }
         Context context = MyContextHolder.get().context();
         if (context != null) {
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.andstatus.app.data.ImageFile;
+import org.andstatus.app.util.MyLog;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Loads images into {@link ImageCaches} by a dedicated pool of {@link #DECODER_THREADS} threads.
+ * Concurrent requests of the same image share one decoding, so an image, requested by several views
+ * (e.g. an avatar of the same actor in several rows), is decoded once.
+ * Images to be shown in visible views are decoded before preloaded ones.
+ * No more than {@link #MAX_QUEUED} requests wait for decoding. Other requests are rejected:
+ * their futures complete with {@link RejectedExecutionException}, which means "retry later"
+ * @author yvolk@yurivolkov.com
+ */
+@ThreadSafe
+public class ImageDecodePipeline {
+    static final int DECODER_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    static final int MAX_QUEUED = 256;
+    private static final Map<String, Request> inFlight = new ConcurrentHashMap<>();
+    /** Requests, waiting for a decoder thread, the most urgent first */
+    private static final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private static final ThreadPoolExecutor executor = newExecutor();
+    private static final AtomicLong sequence = new AtomicLong();
+    private static final AtomicLong requested = new AtomicLong();
+    private static final AtomicLong coalesced = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+
+    private ImageDecodePipeline() {
+        // Empty
+    }
+
+    /** Requests are passed to the executor as is (not wrapped), so its queue orders them by priority */
+    static class Request implements Runnable, Comparable<Request> {
+        final String key;
+        final Supplier<CachedImage> loader;
+        final CompletableFuture<CachedImage> future = new CompletableFuture<>();
+        final long order = sequence.incrementAndGet();
+        volatile boolean visible;
+
+        Request(String key, Supplier<CachedImage> loader, boolean visible) {
+            this.key = key;
+            this.loader = loader;
+            this.visible = visible;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(loader.get());
+            } catch (Throwable e) {
+                MyLog.d(ImageDecodePipeline.class, "Failed to load " + key, e);
+                future.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, this);
+            }
+        }
+
+        void reject(String reason) {
+            rejected.incrementAndGet();
+            inFlight.remove(key, this);
+            future.completeExceptionally(new RejectedExecutionException(reason + "; " + this));
+        }
+
+        /** Visible first, then in the order of requests */
+        @Override
+        public int compareTo(@NonNull Request other) {
+            if (visible != other.visible) return visible ? -1 : 1;
+            return Long.compare(order, other.order);
+        }
+
+        @Override
+        public String toString() {
+            return key + (visible ? ", visible" : "") + ", order:" + order;
+        }
+    }
+
+    private static ThreadPoolExecutor newExecutor() {
+        AtomicLong threadNumber = new AtomicLong();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DECODER_THREADS, DECODER_THREADS,
+                30, TimeUnit.SECONDS, queue, runnable -> {
+                    Thread thread = new Thread(runnable, "ImageDecoder-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** @return true if the request may be retried later, e.g. it was rejected, because the queue was full */
+    public static boolean isRetryLater(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause != null && !(cause instanceof RejectedExecutionException)) {
+            cause = cause.getCause();
+        }
+        return cause != null;
+    }
+
+    /**
+     * @param visible true if the image is requested to be shown now, false - if it is preloaded
+     * @return The future of the loaded image. The image is null, if it couldn't be loaded.
+     * The future completes exceptionally, if the image couldn't be loaded now, see {@link #isRetryLater(Throwable)}
+     */
+    @NonNull
+    public static CompletableFuture<CachedImage> load(@NonNull CacheName cacheName, @NonNull ImageFile imageFile,
+                                                      boolean visible) {
+        return load(cacheName.name() + ":" + imageFile.getPath(), visible,
+                () -> ImageCaches.loadAndGetImage(cacheName, imageFile));
+    }
+
+    @NonNull
+    static CompletableFuture<CachedImage> load(@NonNull String key, boolean visible,
+                                               @NonNull Supplier<CachedImage> loader) {
+        requested.incrementAndGet();
+        Request request = new Request(key, loader, visible);
+        Request existing = inFlight.putIfAbsent(key, request);
+        if (existing == null) {
+            enqueue(request);
+            return request.future;
+        }
+        coalesced.incrementAndGet();
+        if (visible && !existing.visible && queue.remove(existing)) {
+            // Move it ahead of preloaded images
+            existing.visible = true;
+            enqueue(existing);
+        }
+        return existing.future;
+    }
+
+    private static void enqueue(Request request) {
+        if (queue.size() >= MAX_QUEUED) {
+            MyLog.v(ImageDecodePipeline.class, () -> "Queue is full, rejected " + request);
+            request.reject("Queue of " + MAX_QUEUED + " requests is full");
+            return;
+        }
+        try {
+            executor.execute(request);
+        } catch (RejectedExecutionException e) {
+            request.reject(e.getMessage());
+        }
+    }
+
+    public static String getInfo() {
+        return "Image decoding: requested:" + requested.get() + ", shared:" + coalesced.get()
+                + ", rejected:" + rejected.get()
+                + ", in flight:" + inFlight.size() + ", queued:" + queue.size();
+    }
+}
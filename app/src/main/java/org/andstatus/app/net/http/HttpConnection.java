@@ -109,6 +109,10 @@ public abstract class HttpConnection {
         }
         HttpReadResult result = new HttpReadResult(pathToUrlString(path));
         result.authenticate = authenticated;
+        return getRequestCommon(result);
+    }
+
+    private HttpReadResult getRequestCommon(HttpReadResult result) throws ConnectionException {
         getRequest(result);
         MyLog.logNetworkLevelMessage("get_response", data.getLogName(), result.strResponse);
         result.parseAndThrow();
@@ -123,8 +127,27 @@ public abstract class HttpConnection {
         return getRequestCommon(path, true).getJsonArray(parentKey);
     }
 
+    /**
+     * Like {@link #getRequestAsArray(String, String)}, but doesn't build the whole array:
+     * its items are passed to the consumer one by one.
+     * Implementations, which support this, parse the response while reading it from the network
+     */
+    public final void getRequestArrayItems(String path, String parentKey, JsonItemConsumer consumer)
+            throws ConnectionException {
+        if (StringUtils.isEmpty(path)) {
+            throw new IllegalArgumentException("path is empty");
+        }
+        HttpReadResult result = new HttpReadResult(pathToUrlString(path)).setItemConsumer(parentKey, consumer);
+        result.authenticate = true;
+        getRequestCommon(result).consumeItemsIfNotYet();
+    }
+
     public final void downloadFile(String url, File file) throws ConnectionException {
-        HttpReadResult result = new HttpReadResult(url, file);
+        downloadFile(new HttpReadResult(url, file));
+    }
+
+    /** The request is conditional, if the result has validators */
+    public final void downloadFile(HttpReadResult result) throws ConnectionException {
         getRequest(result);
         result.parseAndThrow();
     }
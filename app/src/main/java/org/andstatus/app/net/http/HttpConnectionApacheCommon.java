@@ -151,6 +151,7 @@ public class HttpConnectionApacheCommon {
                 if (result.authenticate) {
                     specific.httpApacheSetAuthorization(httpGet);
                 }
+                result.forEachConditionalHeader(httpGet::addHeader);
                 httpResponse = specific.httpApacheGetResponse(httpGet);
                 StatusLine statusLine = httpResponse.getStatusLine();
                 result.statusLine = statusLine.toString();
@@ -158,12 +159,14 @@ public class HttpConnectionApacheCommon {
                 switch (result.getStatusCode()) {
                     case OK:
                     case UNKNOWN:
+                        result.onResponseValidators(getHeaderValue(httpResponse, "ETag"),
+                                getHeaderValue(httpResponse, "Last-Modified"));
                         HttpEntity entity = httpResponse.getEntity();
-                        if (entity != null) {
+                        if (entity != null && !result.isNotModified()) {
                             if (result.fileResult != null) {
                                 FileUtils.readStreamToFile(entity.getContent(), result.fileResult);
                             } else {
-                                result.strResponse = HttpConnectionUtils.readStreamToString(entity.getContent());
+                                result.readStream(entity.getContent());
                             }
                         }
                         stop = true;
@@ -215,6 +218,11 @@ public class HttpConnectionApacheCommon {
         }
     }
     
+    private static String getHeaderValue(HttpResponse httpResponse, String name) {
+        Header header = httpResponse.getFirstHeader(name);
+        return header == null ? "" : header.getValue();
+    }
+
     private HttpGet newHttpGet(String url) {
         HttpGet httpGet = new HttpGet(url);
         httpGet.setHeader("User-Agent", HttpConnection.USER_AGENT);
@@ -142,14 +142,18 @@ public class HttpConnectionOAuth2JavaNet extends HttpConnectionOAuthJavaNet {
                 if (result.authenticate) {
                     signRequest(request, service, redirected);
                 }
+                result.forEachConditionalHeader(request::addHeader);
                 Response response = service.execute(request);
                 result.setStatusCode(response.getCode());
                 switch(result.getStatusCode()) {
                     case OK:
-                        if (result.fileResult != null) {
+                        result.onResponseValidators(response.getHeader("ETag"), response.getHeader("Last-Modified"));
+                        if (result.isNotModified()) {
+                            HttpConnectionUtils.readStreamToString(response.getStream());
+                        } else if (result.fileResult != null) {
                             FileUtils.readStreamToFile(response.getStream(), result.fileResult);
                         } else {
-                            result.strResponse = HttpConnectionUtils.readStreamToString(response.getStream());
+                            result.readStream(response.getStream());
                         }
                         stop = true;
                         break;
@@ -173,7 +177,8 @@ public class HttpConnectionOAuth2JavaNet extends HttpConnectionOAuthJavaNet {
                                 }
                                 MyLog.v(this, message.toString());
                             }
-                            // TODO: ?! ...disconnect();
+                            // Read to the end, so the connection may be reused for the redirect
+                            HttpConnectionUtils.readStreamToString(response.getStream());
                         }
                         break;
                     default:
@@ -67,7 +67,7 @@ public class HttpConnectionOAuthJavaNet extends HttpConnectionOAuth {
         Writer writer = null;
         try {
 			URL endpoint = new URL(pathToUrlString(path));
-            HttpURLConnection conn = (HttpURLConnection) endpoint.openConnection();
+            HttpURLConnection conn = JavaNetConnections.open(endpoint);
                     
             Map<String, String> params = new HashMap<String, String>();
             params.put("type", "client_associate");
@@ -121,7 +121,7 @@ public class HttpConnectionOAuthJavaNet extends HttpConnectionOAuth {
     @Override
     protected void postRequest(HttpReadResult result) throws ConnectionException {
         try {
-            HttpURLConnection conn = (HttpURLConnection) result.getUrlObj().openConnection();
+            HttpURLConnection conn = JavaNetConnections.open(result.getUrlObj());
             conn.setDoOutput(true);
             conn.setDoInput(true);
             conn.setRequestMethod("POST");
@@ -199,19 +199,23 @@ public class HttpConnectionOAuthJavaNet extends HttpConnectionOAuth {
             boolean redirected = false;
             boolean stop = false;
             do {
-                conn = (HttpURLConnection) result.getUrlObj().openConnection();
+                conn = JavaNetConnections.open(result.getUrlObj());
                 conn.setInstanceFollowRedirects(false);
                 if (result.authenticate) {
                     signConnection(conn, consumer, redirected);
                 }
+                result.forEachConditionalHeader(conn::setRequestProperty);
                 conn.connect();
                 result.setStatusCode(conn.getResponseCode());
                 switch(result.getStatusCode()) {
                     case OK:
-                        if (result.fileResult != null) {
+                        result.onResponseValidators(conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
+                        if (result.isNotModified()) {
+                            JavaNetConnections.discardResponse(conn);
+                        } else if (result.fileResult != null) {
                             FileUtils.readStreamToFile(conn.getInputStream(), result.fileResult);
                         } else {
-                            result.strResponse = HttpConnectionUtils.readStreamToString(conn.getInputStream());
+                            result.readStream(conn.getInputStream());
                         }
                         stop = true;
                         break;
@@ -236,7 +240,8 @@ public class HttpConnectionOAuthJavaNet extends HttpConnectionOAuth {
                                 }
                                 MyLog.v(this, message::toString);
                             }
-                            conn.disconnect();
+                            // Not disconnected, so the connection may be reused for the redirect
+                            JavaNetConnections.discardResponse(conn);
                         }
                         break;
                     default:
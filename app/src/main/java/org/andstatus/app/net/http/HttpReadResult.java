@@ -19,6 +19,7 @@ import android.text.format.Formatter;
 
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.MyPreferences;
+import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.net.http.ConnectionException.StatusCode;
 import org.andstatus.app.util.I18n;
 import org.andstatus.app.util.MyLog;
@@ -29,9 +30,16 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Iterator;
+import java.util.function.BiConsumer;
 
 public class HttpReadResult {
     private final String urlInitial;
@@ -51,6 +59,18 @@ public class HttpReadResult {
 
     boolean redirected = false;
 
+    /** Validators of the previously downloaded file, sent in a conditional request */
+    private String ifNoneMatch = "";
+    private String ifModifiedSince = "";
+    /** Validators of the response */
+    private String eTag = "";
+    private String lastModified = "";
+
+    private String arrayKey = "";
+    /** If set, items of a JSON array are passed to it while reading the response */
+    private JsonItemConsumer itemConsumer = null;
+    private boolean itemsConsumed = false;
+
     public HttpReadResult(String urlIn) throws ConnectionException {
         this (urlIn, null);
     }
@@ -73,6 +93,83 @@ public class HttpReadResult {
         }
     }
     
+    HttpReadResult setItemConsumer(String arrayKey, JsonItemConsumer itemConsumer) {
+        this.arrayKey = arrayKey;
+        this.itemConsumer = itemConsumer;
+        return this;
+    }
+
+    /** Reads successful response. If the items consumer is set, the response is parsed while being read,
+     * and it is not stored as a String */
+    void readStream(InputStream in) throws IOException {
+        if (itemConsumer == null || fileResult != null) {
+            strResponse = HttpConnectionUtils.readStreamToString(in);
+            return;
+        }
+        if (in == null) return;
+        try (Reader reader = new InputStreamReader(in, HttpConnectionUtils.UTF_8)) {
+            consumeItems(reader);
+        } finally {
+            DbUtils.closeSilently(in);
+        }
+    }
+
+    /** For the case the response was read into a String, passes its items to the consumer */
+    void consumeItemsIfNotYet() throws ConnectionException {
+        if (itemConsumer == null || itemsConsumed || StringUtils.isEmpty(strResponse)) return;
+        try {
+            consumeItems(new StringReader(strResponse));
+        } catch (ConnectionException e) {
+            throw e;
+        } catch (IOException e) {
+            throw ConnectionException.loggedJsonException(this, "consumeItems; " + toString(), e, strResponse);
+        }
+    }
+
+    private void consumeItems(Reader reader) throws IOException {
+        itemsConsumed = true;
+        try {
+            int count = new JsonArrayStreamParser(arrayKey, itemConsumer).parse(reader);
+            appendToLog("items:" + count);
+        } catch (JSONException | IllegalStateException e) {
+            throw ConnectionException.loggedHardJsonException(this, "consumeItems; " + toString(), e, null);
+        }
+    }
+
+    /** The file will be downloaded only if it was modified since it was downloaded with these validators */
+    public HttpReadResult setValidators(String eTag, String lastModified) {
+        ifNoneMatch = StringUtils.notNull(eTag);
+        ifModifiedSince = StringUtils.notNull(lastModified);
+        return this;
+    }
+
+    void forEachConditionalHeader(BiConsumer<String, String> headerConsumer) {
+        if (StringUtils.nonEmpty(ifNoneMatch)) {
+            headerConsumer.accept("If-None-Match", ifNoneMatch);
+        }
+        if (StringUtils.nonEmpty(ifModifiedSince)) {
+            headerConsumer.accept("If-Modified-Since", ifModifiedSince);
+        }
+    }
+
+    void onResponseValidators(String eTag, String lastModified) {
+        this.eTag = StringUtils.notNull(eTag);
+        this.lastModified = StringUtils.notNull(lastModified);
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /** The response to a conditional request, so nothing was downloaded */
+    public boolean isNotModified() {
+        return intStatusCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
     void setStatusCode(int intStatusCodeIn) {
         intStatusCode = intStatusCodeIn;
         statusCode = ConnectionException.StatusCode.fromResponseCode(intStatusCodeIn);
@@ -117,7 +214,7 @@ public class HttpReadResult {
                 + ( hasFormParams() ? "; posted:'" + formParams.toString() + "'" : "")
                 + (StringUtils.isEmpty(strResponse) ? "" : "; response:'" + I18n.trimTextAt(strResponse, 40) + "'")
                 + (exception == null ? "" : "; \nexception: " + exception.toString())
-                + (fileResult == null ? "" : "; saved to file");
+                + (fileResult == null ? "" : isNotModified() ? "; not modified" : "; saved to file");
     }
     
     JSONObject getJsonObject() throws ConnectionException {
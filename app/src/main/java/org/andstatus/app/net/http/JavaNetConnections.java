@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.net.http;
+
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.andstatus.app.context.MyPreferences;
+import org.andstatus.app.util.MyLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Connections of {@link java.net.HttpURLConnection}-based {@link HttpConnection}s.
+ * The platform keeps idle connections alive and reuses them for next requests to the same host,
+ * if a response body is read to the end and the connection is not disconnected explicitly.
+ * New TLS connections resume sessions, cached by {@link TlsSniSocketFactory#getSslSessionCache()},
+ * so a full handshake is not repeated. The socket factory is set for connections, opened by {@link #open(URL)},
+ * only; the default factory of the process, used by libraries and other components, is not changed.
+ * Counts HTTPS requests, new connections and resumed TLS sessions by host
+ * @author yvolk@yurivolkov.com
+ */
+@ThreadSafe
+public class JavaNetConnections {
+    /** Maximum number of idle connections, kept alive for all hosts together ("http.maxConnections") */
+    static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final Map<String, HostStats> stats = new ConcurrentHashMap<>();
+    private static volatile boolean initialized = false;
+    private static volatile SSLSocketFactory sslSocketFactory = null;
+
+    private static class HostStats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong newConnections = new AtomicLong();
+        final AtomicLong resumedTlsSessions = new AtomicLong();
+
+        @Override
+        public String toString() {
+            long requestsCount = requests.get();
+            long reused = Math.max(0, requestsCount - newConnections.get());
+            return "requests:" + requestsCount + ", new connections:" + newConnections.get()
+                    + (newConnections.get() == 0 ? "" : ", resumed TLS sessions:" + resumedTlsSessions.get())
+                    + (requestsCount == 0 ? "" : ", reused:" + reused * 100 / requestsCount + "%");
+        }
+    }
+
+    private JavaNetConnections() {
+        // Empty
+    }
+
+    /** Should be called before the first connection is opened. Is cheap after initialization.
+     * While there is no context, TLS sessions cannot be cached, so initialization is repeated on next requests */
+    static void initialize() {
+        if (initialized) return;
+
+        synchronized (JavaNetConnections.class) {
+            if (initialized) return;
+
+            System.setProperty("http.keepAlive", "true");
+            System.setProperty("http.maxConnections", Integer.toString(MAX_IDLE_CONNECTIONS));
+            SSLSessionCache sslSessionCache = TlsSniSocketFactory.getSslSessionCache();
+            // The same factory instance for all connections, otherwise idle connections are not reused
+            sslSocketFactory = new CountingSocketFactory(
+                    SSLCertificateSocketFactory.getDefault(MyPreferences.getConnectionTimeoutMs(), sslSessionCache));
+            initialized = sslSessionCache != null;
+        }
+    }
+
+    /** Only HTTPS requests are counted */
+    @NonNull
+    static HttpURLConnection open(@NonNull URL url) throws IOException {
+        initialize();
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        if (conn instanceof HttpsURLConnection) {
+            getStats(url.getHost()).requests.incrementAndGet();
+            ((HttpsURLConnection) conn).setSSLSocketFactory(sslSocketFactory);
+        }
+        return conn;
+    }
+
+    /** Reads the rest of the response, so the connection may be reused */
+    static void discardResponse(@NonNull HttpURLConnection conn) {
+        try (InputStream in = conn.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST
+                ? conn.getInputStream() : conn.getErrorStream()) {
+            if (in == null) return;
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) != -1) {
+                // Skip
+            }
+        } catch (IOException e) {
+            MyLog.v(JavaNetConnections.class, () -> "Failed to discard response: " + e.getMessage());
+        }
+    }
+
+    private static HostStats getStats(String host) {
+        HostStats hostStats = stats.get(host);
+        if (hostStats == null) {
+            stats.putIfAbsent(host, new HostStats());
+            hostStats = stats.get(host);
+        }
+        return hostStats;
+    }
+
+    public static String getInfo() {
+        StringBuilder builder = new StringBuilder("HTTPS connections:");
+        if (stats.isEmpty()) {
+            builder.append(" none\n");
+        } else {
+            builder.append("\n");
+            new TreeMap<>(stats).forEach((host, hostStats) -> builder.append("  " + host + ": " + hostStats + "\n"));
+        }
+        return builder.toString();
+    }
+
+    /** Counts new TLS connections and resumed TLS sessions */
+    static class CountingSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+
+        CountingSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            return counted(delegate.createSocket(socket, host, port, autoClose), host);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return counted(delegate.createSocket(host, port), host);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return counted(delegate.createSocket(host, port, localHost, localPort), host);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return counted(delegate.createSocket(host, port), host.getHostName());
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            return counted(delegate.createSocket(address, port, localAddress, localPort), address.getHostName());
+        }
+
+        private static Socket counted(Socket socket, String host) {
+            HostStats hostStats = getStats(host);
+            hostStats.newConnections.incrementAndGet();
+            if (socket instanceof SSLSocket) {
+                long createdAt = System.currentTimeMillis();
+                ((SSLSocket) socket).addHandshakeCompletedListener(event -> {
+                    // A resumed session was created during an earlier handshake
+                    if (event.getSession().getCreationTime() < createdAt) {
+                        hostStats.resumedTlsSessions.incrementAndGet();
+                    }
+                });
+            }
+            return socket;
+        }
+    }
+}
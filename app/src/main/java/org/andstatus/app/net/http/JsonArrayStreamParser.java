@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.net.http;
+
+import android.support.annotation.NonNull;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull parser of a JSON array of objects, which is either the root of a response
+ * or is a value of some key of the root object (see {@link HttpReadResult#getJsonArray(String)} for the rules).
+ * Only one item of the array is held in memory at a time: it is passed to the {@link JsonItemConsumer}
+ * before reading the next one.
+ * As in {@link HttpReadResult#getJsonArray(String)}, a response without the array is an error
+ * @author yvolk@yurivolkov.com
+ */
+class JsonArrayStreamParser {
+    private final String arrayKey;
+    private final JsonItemConsumer consumer;
+    private int count = 0;
+
+    JsonArrayStreamParser(String arrayKey, @NonNull JsonItemConsumer consumer) {
+        this.arrayKey = arrayKey;
+        this.consumer = consumer;
+    }
+
+    /** @return Number of items passed to the consumer */
+    int parse(@NonNull Reader in) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true);
+        JsonToken token;
+        try {
+            token = reader.peek();
+        } catch (EOFException e) {
+            // Empty response has no items
+            return 0;
+        }
+        switch (token) {
+            case BEGIN_ARRAY:
+                consumeArray(reader);
+                break;
+            case BEGIN_OBJECT:
+                consumeArrayInObject(reader);
+                break;
+            default:
+                throw new JSONException("Response is not an array or an object: " + token);
+        }
+        return count;
+    }
+
+    private void consumeArrayInObject(JsonReader reader) throws IOException, JSONException {
+        List<JSONArray> otherArrays = new ArrayList<>();
+        boolean found = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!found && name.equals(arrayKey) && reader.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new JSONException("'" + arrayKey + "' is not an array: " + reader.peek());
+            }
+            if (found || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+            } else if (name.equals(arrayKey)) {
+                consumeArray(reader);
+                found = true;
+            } else if (otherArrays.isEmpty()) {
+                // This array will be used only if there is no array with the key
+                otherArrays.add((JSONArray) readValue(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!found && otherArrays.isEmpty()) {
+            throw new JSONException("No array in the response object");
+        }
+        if (!found) {
+            JSONArray jArr = otherArrays.get(0);
+            for (int index = 0; index < jArr.length(); index++) {
+                consume(jArr.get(index));
+            }
+        }
+    }
+
+    private void consumeArray(JsonReader reader) throws IOException, JSONException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            consume(readValue(reader));
+        }
+        reader.endArray();
+    }
+
+    private void consume(Object item) throws ConnectionException, JSONException {
+        if (item instanceof JSONObject) {
+            consumer.accept((JSONObject) item);
+        } else {
+            throw new JSONException("Item #" + count + " is not an object: " + item);
+        }
+        count++;
+    }
+
+    /** Builds the same objects as {@link org.json.JSONTokener#nextValue()} does */
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject jso = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    jso.put(reader.nextName(), readValue(reader));
+                }
+                reader.endObject();
+                return jso;
+            case BEGIN_ARRAY:
+                JSONArray jArr = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    jArr.put(readValue(reader));
+                }
+                reader.endArray();
+                return jArr;
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                return toNumber(reader.nextString());
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static Object toNumber(String value) {
+        if (value.indexOf('.') < 0 && value.indexOf('e') < 0 && value.indexOf('E') < 0) {
+            try {
+                long longValue = Long.parseLong(value);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException e) {
+                // Too large for long
+            }
+        }
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+}
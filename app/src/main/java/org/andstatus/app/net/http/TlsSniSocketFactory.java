@@ -9,8 +9,12 @@
  ******************************************************************************/
 package org.andstatus.app.net.http;
 
+import android.content.Context;
 import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+import android.support.annotation.Nullable;
 
+import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.util.MyLog;
 
@@ -43,6 +47,20 @@ public class TlsSniSocketFactory implements LayeredConnectionSocketFactory {
     public static void forget() {
         instances.clear();
     }
+
+    private static volatile SSLSessionCache sslSessionCache = null;
+    /** Persistent cache of TLS sessions, so new connections to a known host resume a session
+     * instead of a full handshake. Only for factories, which verify certificates */
+    @Nullable
+    static SSLSessionCache getSslSessionCache() {
+        if (sslSessionCache == null) {
+            Context context = MyContextHolder.get().context();
+            if (context != null) {
+                sslSessionCache = new SSLSessionCache(context);
+            }
+        }
+        return sslSessionCache;
+    }
     
     private final boolean secure;
     private final SSLCertificateSocketFactory sslSocketFactory;
@@ -69,8 +87,9 @@ public class TlsSniSocketFactory implements LayeredConnectionSocketFactory {
         secure = sslMode == SslModeEnum.SECURE;
         if (secure) {
             sslSocketFactory = (SSLCertificateSocketFactory) SSLCertificateSocketFactory
-                    .getDefault(MyPreferences.getConnectionTimeoutMs());
+                    .getDefault(MyPreferences.getConnectionTimeoutMs(), getSslSessionCache());
         } else {
+            // Sessions, accepted without verification, shouldn't be resumed by secure connections
             sslSocketFactory = (SSLCertificateSocketFactory) SSLCertificateSocketFactory
                     .getInsecure(MyPreferences.getConnectionTimeoutMs(), null);
             MyLog.i(this, "Insecure SSL allowed");
@@ -24,6 +24,7 @@ import android.text.TextUtils;
 
 import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContext;
+import org.andstatus.app.data.CompiledStatements;
 import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.data.DownloadStatus;
 import org.andstatus.app.data.MyProvider;
@@ -367,15 +368,27 @@ public class AActivity extends AObject {
     }
     
     public long save(MyContext myContext) {
+        return save(myContext, CompiledStatements.EMPTY);
+    }
+
+    /** @param statements non-empty inside a transaction of a batch of activities */
+    public long save(MyContext myContext, @NonNull CompiledStatements statements) {
         if (wontSave(myContext)) return id;
         if (updatedDate > 0) calculateInteraction(myContext);
         if (getId() == 0) {
-            id = DbUtils.addRowWithRetry(myContext, ActivityTable.TABLE_NAME, toContentValues(), 3);
+            id = statements.isEmpty()
+                    ? DbUtils.addRowWithRetry(myContext, ActivityTable.TABLE_NAME, toContentValues(), 3)
+                    : statements.insert(ActivityTable.TABLE_NAME, toContentValues());
             MyLog.v(this, () -> "Added " + this);
         } else {
-            DbUtils.updateRowWithRetry(myContext, ActivityTable.TABLE_NAME, getId(), toContentValues(), 3);
+            if (statements.isEmpty()) {
+                DbUtils.updateRowWithRetry(myContext, ActivityTable.TABLE_NAME, getId(), toContentValues(), 3);
+            } else {
+                statements.update(ActivityTable.TABLE_NAME, getId(), toContentValues());
+            }
             MyLog.v(this, () -> "Updated " + this);
         }
+        myContext.oidCache().put(OidEnum.ACTIVITY_OID, accountActor.origin.getId(), timelinePosition.getPosition(), id);
         afterSave(myContext);
         return id;
     }
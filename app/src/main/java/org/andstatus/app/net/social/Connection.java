@@ -24,6 +24,7 @@ import org.andstatus.app.net.http.ConnectionException;
 import org.andstatus.app.net.http.ConnectionException.StatusCode;
 import org.andstatus.app.net.http.HttpConnection;
 import org.andstatus.app.net.http.HttpConnectionData;
+import org.andstatus.app.net.http.HttpReadResult;
 import org.andstatus.app.net.http.OAuthService;
 import org.andstatus.app.origin.OriginConfig;
 import org.andstatus.app.origin.OriginConnectionData;
@@ -501,6 +502,14 @@ public abstract class Connection {
         return unixDate;
     }
 
+    /**
+     * @return true if timeline responses should be parsed item by item while reading them from the network,
+     * false if the whole response should be read and parsed first
+     */
+    protected boolean isTimelineStreamed() {
+        return true;
+    }
+
     JSONArray getRequestArrayInObject(String path, String arrayName) throws ConnectionException {
         String method = "getRequestArrayInObject";
         JSONArray jArr = null;
@@ -519,6 +528,11 @@ public abstract class Connection {
         http.downloadFile(url, file);
     }
 
+    /** Conditional download, see {@link HttpReadResult#setValidators(String, String)} */
+    public void downloadFile(HttpReadResult result) throws ConnectionException {
+        http.downloadFile(result);
+    }
+
     public HttpConnection getHttp() {
         return http;
     }
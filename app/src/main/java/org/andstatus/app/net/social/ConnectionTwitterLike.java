@@ -31,6 +31,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -218,8 +219,7 @@ public abstract class ConnectionTwitterLike extends Connection {
             throws ConnectionException {
         Uri.Builder builder = getTimelineUriBuilder(apiRoutine, limit, actorOid);
         appendPositionParameters(builder, youngestPosition, oldestPosition);
-        JSONArray jArr = http.getRequestAsArray(builder.build().toString());
-        return jArrToTimeline(jArr, apiRoutine, builder.build().toString());
+        return getTimelineItems(builder.build().toString(), apiRoutine, builder.build().toString());
     }
 
     @NonNull
@@ -434,8 +434,7 @@ public abstract class ConnectionTwitterLike extends Connection {
         }
         appendPositionParameters(builder, youngestPosition, oldestPosition);
         builder.appendQueryParameter("count", strFixedDownloadLimit(limit, apiRoutine));
-        JSONArray jArr = http.getRequestAsArray(builder.build().toString());
-        return jArrToTimeline(jArr, apiRoutine, url);
+        return getTimelineItems(builder.build().toString(), apiRoutine, url);
     }
 
     void appendPositionParameters(Uri.Builder builder, TimelinePosition youngest, TimelinePosition oldest) {
@@ -454,6 +453,18 @@ public abstract class ConnectionTwitterLike extends Connection {
         }
     }
 
+    /** @param url to be used for logging only */
+    List<AActivity> getTimelineItems(String path, ApiRoutineEnum apiRoutine, String url) throws ConnectionException {
+        if (!isTimelineStreamed()) {
+            return jArrToTimeline(http.getRequestAsArray(path), apiRoutine, url);
+        }
+        List<AActivity> timeline = new ArrayList<>();
+        http.getRequestArrayItems(path, "items", jso -> timeline.add(activityFromTwitterLikeJson(jso)));
+        // Return the activities in chronological order
+        Collections.reverse(timeline);
+        return onTimelineParsed(timeline, apiRoutine, url);
+    }
+
     List<AActivity> jArrToTimeline(JSONArray jArr, ApiRoutineEnum apiRoutine, String url) throws ConnectionException {
         List<AActivity> timeline = new ArrayList<>();
         if (jArr != null) {
@@ -467,6 +478,10 @@ public abstract class ConnectionTwitterLike extends Connection {
                 }
             }
         }
+        return onTimelineParsed(timeline, apiRoutine, url);
+    }
+
+    private List<AActivity> onTimelineParsed(List<AActivity> timeline, ApiRoutineEnum apiRoutine, String url) {
         if (apiRoutine.isNotePrivate()) {
             setNotesPrivate(timeline);
         }
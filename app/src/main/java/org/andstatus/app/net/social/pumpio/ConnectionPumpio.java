@@ -49,6 +49,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -338,16 +339,22 @@ public class ConnectionPumpio extends Connection {
         }
         builder.appendQueryParameter("count", strFixedDownloadLimit(limit, apiRoutine));
         String url = builder.build().toString();
-        JSONArray jArr = conu.httpConnection.getRequestAsArray(url);
         List<AActivity> activities = new ArrayList<>();
-        if (jArr != null) {
-            // Read the activities in the chronological order
-            for (int index = jArr.length() - 1; index >= 0; index--) {
-                try {
-                    JSONObject jso = jArr.getJSONObject(index);
-                    activities.add(activityFromJson(jso));
-                } catch (JSONException e) {
-                    throw ConnectionException.loggedJsonException(this, "Parsing timeline", e, null);
+        if (isTimelineStreamed()) {
+            conu.httpConnection.getRequestArrayItems(url, "items", jso -> activities.add(activityFromJson(jso)));
+            // Return the activities in the chronological order
+            Collections.reverse(activities);
+        } else {
+            JSONArray jArr = conu.httpConnection.getRequestAsArray(url);
+            if (jArr != null) {
+                // Read the activities in the chronological order
+                for (int index = jArr.length() - 1; index >= 0; index--) {
+                    try {
+                        JSONObject jso = jArr.getJSONObject(index);
+                        activities.add(activityFromJson(jso));
+                    } catch (JSONException e) {
+                        throw ConnectionException.loggedJsonException(this, "Parsing timeline", e, null);
+                    }
                 }
             }
         }
@@ -139,6 +139,11 @@ public abstract class BaseNoteViewItem<T extends BaseNoteViewItem<T>> extends Vi
                 : duplicatesByOther(timeline, other);
     }
 
+    @Override
+    public long getDuplicationKey() {
+        return isEmpty() ? 0 : getNoteId();
+    }
+
     @NonNull
     private DuplicationLink duplicatesByFavoritedAndReblogged(Timeline timeline, @NonNull T other) {
         if (favorited != other.favorited) {
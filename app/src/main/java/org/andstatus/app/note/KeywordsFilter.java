@@ -25,6 +25,7 @@ import org.andstatus.app.util.StringUtils;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 public class KeywordsFilter implements IsEmpty {
     static final String CONTAINS_PREFIX = "contains:";
@@ -65,11 +66,14 @@ public class KeywordsFilter implements IsEmpty {
 
     final List<Keyword> keywordsToFilter;
     private final List<String> keywordsRaw;
+    private final KeywordsMatcher matcher;
     private static final char DOUBLE_QUOTE = '"';
 
     public KeywordsFilter(String keywordsIn) {
         keywordsRaw = parseFilterString(keywordsIn);
         keywordsToFilter = rawToActual(keywordsRaw);
+        matcher = new KeywordsMatcher(keywordsToFilter.stream().map(keyword -> keyword.value).distinct()
+                .collect(Collectors.toList()));
     }
 
     @NonNull
@@ -134,28 +138,19 @@ public class KeywordsFilter implements IsEmpty {
         return keywords;
     }
 
+    /** The text is scanned once for all keywords */
     public boolean matchedAny(String s) {
         if (keywordsToFilter.isEmpty() || StringUtils.isEmpty(s)) {
             return false;
         }
-        for (Keyword keyword : keywordsToFilter) {
-            if (s.contains(keyword.value)) {
-                return true;
-            }
-        }
-        return false;
+        return matcher.matchesAny(s);
     }
 
     public boolean matchedAll(String s) {
         if (keywordsToFilter.isEmpty() || StringUtils.isEmpty(s)) {
             return false;
         }
-        for (Keyword keyword : keywordsToFilter) {
-            if (!s.contains(keyword.value)) {
-                return false;
-            }
-        }
-        return true;
+        return matcher.matchesAll(s);
     }
 
     @NonNull
@@ -173,6 +168,61 @@ public class KeywordsFilter implements IsEmpty {
         return selection.length() == 0 ? "" : "(" + selection.toString() + ")";
     }
 
+    /**
+     * Query for the full text search index (see {@link org.andstatus.app.database.table.NoteSearchTable}),
+     * which matches at least all rows, matched by {@link #getSqlSelection(String)}: each keyword is a phrase.
+     * "contains:" keywords cannot be matched by the index, so they are not included
+     * @return empty if the index cannot be used for this filter
+     */
+    @NonNull
+    public String getFtsMatchQuery() {
+        StringBuilder query = new StringBuilder();
+        for (Keyword keyword : keywordsToFilter) {
+            if (keyword.contains || !hasLetterOrDigit(keyword.value)) continue;
+
+            String phrase = keyword.value.replace(',', ' ').replace(DOUBLE_QUOTE, ' ').trim();
+            if (query.length() > 0) {
+                query.append(" ");
+            }
+            query.append(DOUBLE_QUOTE).append(phrase).append(DOUBLE_QUOTE);
+        }
+        return query.toString();
+    }
+
+    private static boolean hasLetterOrDigit(String value) {
+        for (int ind = 0; ind < value.length(); ind++) {
+            if (Character.isLetterOrDigit(value.charAt(ind))) return true;
+        }
+        return false;
+    }
+
+    /** Selects rows, for which {@link #matchedAny(String)} of the field value is false.
+     * Arguments are {@link #getSqlSelectionArgs()} */
+    @NonNull
+    public String getSqlSelectionNotMatchedAny(String fieldName) {
+        if (isEmpty()) {
+            return "";
+        }
+        StringBuilder selection = new StringBuilder();
+        for (int ind = 0; ind < keywordsToFilter.size(); ind++) {
+            if (ind > 0) {
+                selection.append(" OR ");
+            }
+            // instr() is case sensitive and has no wildcards, exactly as String.contains()
+            selection.append("instr(" + fieldName + ", ?)>0");
+        }
+        return "(" + fieldName + " IS NULL OR NOT (" + selection.toString() + "))";
+    }
+
+    @NonNull
+    public String[] getSqlSelectionArgs() {
+        String[] selectionArgs = new String[keywordsToFilter.size()];
+        for (int ind = 0; ind < keywordsToFilter.size(); ind++) {
+            selectionArgs[ind] = keywordsToFilter.get(ind).value;
+        }
+        return selectionArgs;
+    }
+
     @NonNull
     public String[] prependSqlSelectionArgs(String[] selectionArgs) {
         String[] selectionArgsOut = selectionArgs;
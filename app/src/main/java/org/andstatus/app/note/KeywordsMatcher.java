@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.note;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds occurrences of several strings in a text in one pass over the text,
+ * independently of the number of the strings (Aho-Corasick automaton).
+ * The automaton is built once and may be used by several threads concurrently
+ * @author yvolk@yurivolkov.com
+ */
+@Immutable
+class KeywordsMatcher {
+    private final Node root;
+    private final int patternsCount;
+
+    private static class Node {
+        /** Sorted characters of transitions to {@link #children} */
+        char[] chars = new char[0];
+        Node[] children = new Node[0];
+        Node fail = null;
+        /** Patterns, ending at this node, including patterns, which are suffixes of this node's string */
+        int[] patterns = new int[0];
+
+        Node child(char c) {
+            int ind = Arrays.binarySearch(chars, c);
+            return ind < 0 ? null : children[ind];
+        }
+    }
+
+    /** Mutable trie, which is compiled into {@link Node}s */
+    private static class Builder {
+        final Map<Character, Builder> children = new TreeMap<>();
+        final List<Integer> patterns = new ArrayList<>();
+        final Node node = new Node();
+    }
+
+    /** @param patterns Non empty strings, the index of a string in the list is its id */
+    KeywordsMatcher(@NonNull List<String> patterns) {
+        patternsCount = patterns.size();
+        Builder rootBuilder = new Builder();
+        for (int id = 0; id < patterns.size(); id++) {
+            Builder builder = rootBuilder;
+            for (char c : patterns.get(id).toCharArray()) {
+                Builder child = builder.children.get(c);
+                if (child == null) {
+                    child = new Builder();
+                    builder.children.put(c, child);
+                }
+                builder = child;
+            }
+            builder.patterns.add(id);
+        }
+        root = compile(rootBuilder);
+    }
+
+    /** Links nodes in breadth-first order, so failure links of shorter strings are ready first */
+    private static Node compile(Builder rootBuilder) {
+        Node root = rootBuilder.node;
+        root.fail = root;
+        Deque<Builder> queue = new ArrayDeque<>();
+        queue.add(rootBuilder);
+        while (!queue.isEmpty()) {
+            Builder builder = queue.poll();
+            Node node = builder.node;
+            node.chars = new char[builder.children.size()];
+            node.children = new Node[builder.children.size()];
+            int ind = 0;
+            for (Map.Entry<Character, Builder> entry : builder.children.entrySet()) {
+                char c = entry.getKey();
+                Node child = entry.getValue().node;
+                node.chars[ind] = c;
+                node.children[ind] = child;
+                ind++;
+                child.fail = node == root ? root : transition(root, node.fail, c);
+                queue.add(entry.getValue());
+            }
+            int[] ownPatterns = builder.patterns.stream().mapToInt(Integer::intValue).toArray();
+            node.patterns = node == root ? ownPatterns : concat(ownPatterns, node.fail.patterns);
+        }
+        return root;
+    }
+
+    private static Node transition(Node root, Node from, char c) {
+        for (Node node = from; ; node = node.fail) {
+            Node child = node.child(c);
+            if (child != null) return child;
+            if (node == root) return root;
+        }
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    boolean matchesAny(@NonNull String text) {
+        if (patternsCount == 0) return false;
+        Node node = root;
+        for (int ind = 0; ind < text.length(); ind++) {
+            node = transition(root, node, text.charAt(ind));
+            if (node.patterns.length > 0) return true;
+        }
+        return false;
+    }
+
+    boolean matchesAll(@NonNull String text) {
+        if (patternsCount == 0) return false;
+        boolean[] found = new boolean[patternsCount];
+        int foundCount = 0;
+        Node node = root;
+        for (int ind = 0; ind < text.length(); ind++) {
+            node = transition(root, node, text.charAt(ind));
+            for (int id : node.patterns) {
+                if (!found[id]) {
+                    found[id] = true;
+                    if (++foundCount == patternsCount) return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -18,6 +18,7 @@ package org.andstatus.app.note;
 
 import android.database.Cursor;
 import android.net.Uri;
+import android.provider.BaseColumns;
 
 import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContext;
@@ -30,6 +31,8 @@ import org.andstatus.app.timeline.meta.TimelineType;
 import org.andstatus.app.util.MyLog;
 
 /**
+ * Loads the whole reply tree of the selected note (including notes, linked to other or to no conversation)
+ * in one query, see {@link #replyTreeSql(long, long)}. Reply levels are then found in memory
  * @author yvolk@yurivolkov.com
  */
 public class RecursiveConversationLoader<T extends ConversationItem<T>> extends ConversationLoader<T> {
@@ -45,9 +48,8 @@ public class RecursiveConversationLoader<T extends ConversationItem<T>> extends
 
     @Override
     void cacheConversation(T oMsg) {
-        String selection = (oMsg.conversationId == 0
-                ? ProjectionMap.ACTIVITY_TABLE_ALIAS + "." + ActivityTable.NOTE_ID + "=" + oMsg.getNoteId()
-                : ProjectionMap.NOTE_TABLE_ALIAS + "." + NoteTable.CONVERSATION_ID + "=" + oMsg.conversationId);
+        String selection = ProjectionMap.NOTE_TABLE_ALIAS + "." + BaseColumns._ID + " IN ("
+                + replyTreeSql(oMsg.getNoteId(), oMsg.conversationId) + ")";
         Uri uri = Timeline.getTimeline(TimelineType.EVERYTHING, 0, ma.getOrigin()).getUri();
 
         try (Cursor cursor = myContext.context().getContentResolver().query(uri,
@@ -58,9 +60,46 @@ public class RecursiveConversationLoader<T extends ConversationItem<T>> extends
                     T oMsg2 = newONote(DbUtils.getLong(cursor, ActivityTable.NOTE_ID));
                     oMsg2.load(cursor);
                     cachedItems.put(oMsg2.getNoteId(), oMsg2);
+                    checkConversationId(oMsg, oMsg2);
                 }
             }
         }
+        MyLog.v(this, () -> "Cached " + cachedItems.size() + " notes of the conversation of noteId=" + oMsg.getNoteId());
+    }
+
+    /** Notes of the tree, which are not in the conversation of the selected note, are not loaded one by one
+     * in {@link #loadItemFromDatabase(ConversationItem)}, so we check them here */
+    private void checkConversationId(T oMsg, T item) {
+        if (item.getNoteId() == oMsg.getNoteId()) return;
+        if (item.conversationId == 0 || item.conversationId != oMsg.conversationId) {
+            fixConversation = true;
+            if (item.conversationId != 0 && conversationIds.add(item.conversationId)) {
+                MyLog.d(this, "Another conversationId:" + item);
+            }
+        }
+    }
+
+    /**
+     * Recursive query of ids of the notes of the conversation and of the notes, linked to them by "in reply to":
+     * first ancestors of the notes are found, and then all replies to them
+     */
+    static String replyTreeSql(long noteId, long conversationId) {
+        final String id = BaseColumns._ID;
+        final String inReplyTo = NoteTable.IN_REPLY_TO_NOTE_ID;
+        final String note = NoteTable.TABLE_NAME;
+        return "WITH RECURSIVE"
+                + " seed(id) AS (SELECT " + noteId
+                + (conversationId == 0 ? ""
+                    : " UNION SELECT " + id + " FROM " + note
+                    + " WHERE " + NoteTable.CONVERSATION_ID + "=" + conversationId) + "),"
+                + " ancestors(id) AS (SELECT id FROM seed"
+                + " UNION SELECT " + note + "." + inReplyTo + " FROM " + note
+                + " INNER JOIN ancestors ON " + note + "." + id + "=ancestors.id"
+                + " WHERE " + note + "." + inReplyTo + "<>0),"
+                + " tree(id) AS (SELECT id FROM ancestors"
+                + " UNION SELECT " + note + "." + id + " FROM " + note
+                + " INNER JOIN tree ON " + note + "." + inReplyTo + "=tree.id)"
+                + " SELECT id FROM tree";
     }
 
     private void findPreviousNotesRecursively(T oMsg) {
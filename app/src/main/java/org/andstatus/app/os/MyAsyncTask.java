@@ -24,6 +24,7 @@ import android.support.annotation.NonNull;
 
 import org.acra.ACRA;
 import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.util.IdentifiableInstance;
 import org.andstatus.app.util.InstanceId;
 import org.andstatus.app.util.MyLog;
@@ -59,8 +60,11 @@ public abstract class MyAsyncTask<Params, Progress, Result> extends AsyncTask<Pa
     volatile boolean hasExecutor = true;
 
     public enum PoolEnum {
-        SYNC(2, MAX_COMMAND_EXECUTION_SECONDS, true),
-        FILE_DOWNLOAD(1, MAX_COMMAND_EXECUTION_SECONDS, true),
+        /** A heartbeat plus up to {@link MyPreferences#SYNC_PARALLEL_ORIGINS_MAX} executors,
+         * each of them may have a page fetcher of a timeline */
+        SYNC(1 + 2 * MyPreferences.SYNC_PARALLEL_ORIGINS_MAX, MAX_COMMAND_EXECUTION_SECONDS, true),
+        /** Downloads of files for views, see {@link org.andstatus.app.service.FileDownloadScheduler} */
+        FILE_DOWNLOAD(4, MAX_COMMAND_EXECUTION_SECONDS, true),
         QUICK_UI(0, 20, false),
         LONG_UI(1, MAX_COMMAND_EXECUTION_SECONDS, true);
 
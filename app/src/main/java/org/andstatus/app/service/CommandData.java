@@ -243,7 +243,7 @@ public class CommandData implements Comparable<CommandData> {
         values.put(CommandTable.IN_FOREGROUND, mInForeground);
         values.put(CommandTable.MANUALLY_LAUNCHED, mManuallyLaunched);
         timeline.toCommandContentValues(values);
-        ContentValuesUtils.putNotZero(values, CommandTable.ITEM_ID, itemId);
+        values.put(CommandTable.ITEM_ID, itemId);
         values.put(CommandTable.USERNAME, username);
         commandResult.toContentValues(values);
     }
@@ -517,6 +517,14 @@ public class CommandData implements Comparable<CommandData> {
         return timeline;
     }
 
+    /** Commands with the same shard id are never executed in parallel, see {@link CommandQueue#pollQueue()}
+     * @return id of the Origin of this command or 0 for commands not bound to any Origin */
+    long getShardId() {
+        return myAccount.isValid()
+                ? myAccount.getOrigin().getId()
+                : timeline.getOrigin().getId();
+    }
+
     public String getUsername() {
         return username;
     }
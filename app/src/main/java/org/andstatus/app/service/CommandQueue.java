@@ -21,8 +21,11 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDiskIOException;
+import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
 
+import net.jcip.annotations.GuardedBy;
+
 import org.andstatus.app.context.MyContext;
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.MyPreferences;
@@ -33,12 +36,15 @@ import org.andstatus.app.util.RelativeTime;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author yvolk@yurivolkov.com
@@ -48,12 +54,20 @@ public class CommandQueue {
     private static final long RETRY_QUEUE_PROCESSING_PERIOD_SECONDS = 900;
     private static final long MIN_RETRY_PERIOD_SECONDS = 900;
     private static final long MAX_DAYS_IN_ERROR_QUEUE = 10;
-    private final static Queue<CommandData> preQueue = new PriorityBlockingQueue<>(INITIAL_CAPACITY);
+    private static final String SQL_INSERT_OR_REPLACE = "INSERT OR REPLACE INTO " + CommandTable.TABLE_NAME
+            + " (" + CommandTable.QUEUE_TYPE + "," + String.join(",", CommandTable.COMMAND_COLUMNS) + ")"
+            + " VALUES (?" + Stream.of(CommandTable.COMMAND_COLUMNS).map(c -> ",?").collect(Collectors.joining()) + ")";
+    private final static IndexedCommandQueue preQueue = new IndexedCommandQueue(INITIAL_CAPACITY);
 
     private volatile MyContext myContext = MyContextHolder.get();
     private final Context context;
     private final AtomicLong mRetryQueueProcessedAt = new AtomicLong();
     private final Map<QueueType, OneQueue> queues = new HashMap<>();
+    /** Commands being executed now, one per shard, see {@link CommandData#getShardId()} */
+    @GuardedBy("this")
+    private final Map<Long, CommandData> inExecution = new HashMap<>();
+    /** Values of commands, as they are in the database now, by command id. Allows to save changed commands only */
+    private final Map<Long, ContentValues> persisted = new HashMap<>();
     private volatile boolean loaded = false;
     private volatile boolean saved = false;
 
@@ -65,20 +79,15 @@ public class CommandQueue {
             default:
                 break;
         }
-        if (preQueue.contains(commandData)) {
+        if (preQueue.offer(commandData)) {
+            MyLog.v(CommandQueue.class, () -> "Added to preQueue " + commandData);
+        } else {
             MyLog.v(CommandQueue.class, () -> "Didn't add to preQueue. Already found " + commandData);
-            return;
         }
-        MyLog.v(CommandQueue.class, () -> "Adding to preQueue " + commandData);
-        if (preQueue.offer(commandData)) return;
-
-        // TODO: Remove less prioritized item to free space for this one?!
-
-        MyLog.e(CommandQueue.class, "Couldn't add to the preQueue, size=" + preQueue.size());
     }
 
     private static class OneQueue {
-        Queue<CommandData> queue = new PriorityBlockingQueue<>(INITIAL_CAPACITY);
+        final IndexedCommandQueue queue = new IndexedCommandQueue(INITIAL_CAPACITY);
         volatile int savedCount = 0;
         volatile boolean savedForegroundTasks = false;
 
@@ -93,17 +102,7 @@ public class CommandQueue {
         }
 
         private boolean hasForegroundTasks() {
-            if (savedForegroundTasks) {
-                return true;
-            }
-            boolean has = false;
-            for (CommandData commandData : queue) {
-                if (commandData.isInForeground()) {
-                    has = true;
-                    break;
-                }
-            }
-            return has;
+            return savedForegroundTasks || queue.hasForegroundTasks();
         }
 
         public int size() {
@@ -127,6 +126,10 @@ public class CommandQueue {
     }
 
     public Queue<CommandData> get(QueueType queueType) {
+        return getIndexed(queueType);
+    }
+
+    private IndexedCommandQueue getIndexed(QueueType queueType) {
         switch (queueType) {
             case PRE:
                 return preQueue;
@@ -141,6 +144,7 @@ public class CommandQueue {
         if (loaded) {
             MyLog.v(this, "Already loaded");
         } else {
+            persisted.clear();
             int count = load(QueueType.CURRENT) + load(QueueType.RETRY);
             int countError = load(QueueType.ERROR);
             MyLog.d(this, "State restored, " + (count > 0 ? Integer.toString(count) : "no ")
@@ -156,33 +160,29 @@ public class CommandQueue {
     private int load(@NonNull QueueType queueType) {
         final String method = "loadQueue-" + queueType.save();
         OneQueue oneQueue = queues.get(queueType);
-        Queue<CommandData> queue = oneQueue.queue;
+        IndexedCommandQueue queue = oneQueue.queue;
         int count = 0;
         SQLiteDatabase db = myContext.getDatabase();
         if (db == null) {
             MyLog.d(context, method + "; Database is unavailable");
             return 0;
         }
-        String sql = "SELECT * FROM " + CommandTable.TABLE_NAME + " WHERE " + CommandTable.QUEUE_TYPE + "='"
-                + queueType.save() + "'";
         Cursor c = null;
         try {
-            c = db.rawQuery(sql, null);
+            c = db.query(CommandTable.TABLE_NAME, CommandTable.COMMAND_COLUMNS, CommandTable.QUEUE_TYPE + "=?",
+                    new String[]{queueType.save()}, null, null, null);
             while (c.moveToNext()) {
                 CommandData cd = CommandData.fromCursor(myContext, c);
                 if (CommandEnum.EMPTY.equals(cd.getCommand())) {
                     MyLog.e(context, method + "; empty skipped " + cd);
-                } else if (queue.contains(cd)) {
-                    MyLog.e(context, method + "; duplicate skipped " + cd);
-                } else {
-                    if (queue.offer(cd)) {
-                        count++;
-                        if (MyLog.isVerboseEnabled() && (count < 6 || cd.getCommand() == CommandEnum.UPDATE_NOTE)) {
-                            MyLog.v(context, method + "; " + count + ": " + cd.toString());
-                        }
-                    } else {
-                        MyLog.e(context, method + "; " + cd);
+                } else if (queue.offer(cd)) {
+                    persisted.put(cd.getCommandId(), toContentValues(cd, queueType));
+                    count++;
+                    if (MyLog.isVerboseEnabled() && (count < 6 || cd.getCommand() == CommandEnum.UPDATE_NOTE)) {
+                        MyLog.v(context, method + "; " + count + ": " + cd.toString());
                     }
+                } else {
+                    MyLog.e(context, method + "; duplicate skipped " + cd);
                 }
             }
         } finally {
@@ -194,16 +194,37 @@ public class CommandQueue {
         return count;
     }
 
+    /** Saves all queues in one transaction, writing new and changed commands only.
+     * Saved commands are removed from the queues after the transaction is committed only,
+     * so nothing is lost, if it fails */
     synchronized void save() {
         SQLiteDatabase db = myContext.getDatabase();
         if (db == null) {
             MyLog.d(context, "save; Database is unavailable");
             return;
         }
-        if (loaded) clearQueuesInDatabase(db);
         moveCommandsFromPreToMainQueue();
-        int countCurrentRetry = save(db, QueueType.CURRENT) + save(db, QueueType.RETRY);
-        int countError = save(db, QueueType.ERROR);
+        Set<Long> savedIds = new HashSet<>();
+        Map<QueueType, List<CommandData>> savedCommands = new HashMap<>();
+        int countCurrentRetry;
+        int countError;
+        try {
+            db.beginTransaction();
+            try (SQLiteStatement statement = db.compileStatement(SQL_INSERT_OR_REPLACE)) {
+                countCurrentRetry = save(statement, QueueType.CURRENT, savedIds, savedCommands)
+                        + save(statement, QueueType.RETRY, savedIds, savedCommands);
+                countError = save(statement, QueueType.ERROR, savedIds, savedCommands);
+                if (loaded) deleteNotSavedFromDatabase(db, savedIds);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            // The transaction is rolled back, so we don't know what is in the database
+            persisted.clear();
+            throw e;
+        }
+        savedCommands.forEach(this::onSaved);
         MyLog.d(this, (loaded ? "Queues saved" : "Saved new queued commands only") + ", "
                 + (countCurrentRetry > 0 ? Integer.toString(countCurrentRetry) : "no") + " commands"
                 + (countError > 0 ? ", plus " + Integer.toString(countError) + " in Error queue" : "")
@@ -212,38 +233,41 @@ public class CommandQueue {
         loaded = false;
     }
 
-    /** @return Number of items persisted */
-    private int save(@NonNull SQLiteDatabase db, @NonNull QueueType queueType) {
+    /**
+     * @param savedIds Ids of the saved commands are added here, including unchanged ones, which were not written
+     * @param savedCommands The saved commands are added here. They are still in the queue
+     * @return Number of items persisted */
+    private int save(@NonNull SQLiteStatement statement, @NonNull QueueType queueType, Set<Long> savedIds,
+                     Map<QueueType, List<CommandData>> savedCommands) {
         final String method = "saveQueue-" + queueType.save();
-        OneQueue oneQueue = queues.get(queueType);
-        Queue<CommandData> queue = oneQueue.queue;
+        IndexedCommandQueue queue = queues.get(queueType).queue;
+        List<CommandData> saved = new ArrayList<>();
+        savedCommands.put(queueType, saved);
         int count = 0;
+        int countWritten = 0;
         try {
-            if (loaded) {
-                oneQueue.savedCount = 0;
-                oneQueue.savedForegroundTasks = false;
-            }
             if (!queue.isEmpty()) {
-                while (!queue.isEmpty() && count < 300) {
-                    CommandData cd = queue.poll();
-                    oneQueue.savedForegroundTasks |= cd.isInForeground();
-                    ContentValues values = new ContentValues();
-                    cd.toContentValues(values);
-                    values.put(CommandTable.QUEUE_TYPE, queueType.save());
-                    db.insert(CommandTable.TABLE_NAME, null, values);
+                for (CommandData cd : queue) {
+                    if (count >= 300) break;
+                    saved.add(cd);
+                    ContentValues values = toContentValues(cd, queueType);
+                    if (!values.equals(persisted.get(cd.getCommandId()))) {
+                        bindAndExecute(statement, values);
+                        persisted.put(cd.getCommandId(), values);
+                        countWritten++;
+                    }
+                    savedIds.add(cd.getCommandId());
                     count++;
                     if (MyLog.isVerboseEnabled() && (count < 6 || cd.getCommand() == CommandEnum.UPDATE_NOTE)) {
                         MyLog.v(context, method + "; " + count + ": " + cd.toString());
                     }
-                    if (myContext.isTestRun() && queue.contains(cd)) {
-                        MyLog.e(context, method + "; Duplicated command in a queue:" + count + " " + cd.toString());
-                    }
                 }
-                if (queue.isEmpty()) {
-                    MyLog.d(context, method + "; " + count + " saved");
+                int left = queue.size() - count;
+                if (left <= 0) {
+                    MyLog.d(context, method + "; " + count + " saved, " + countWritten + " written");
                 } else {
-                    MyLog.e(context, method + "; " + count + " saved" +
-                            (queue.isEmpty() ? "" : ", " + queue.size() + " left"));
+                    MyLog.e(context, method + "; " + count + " saved, " + countWritten + " written, "
+                            + left + " left");
                 }
             }
         } catch (Exception e) {
@@ -255,15 +279,60 @@ public class CommandQueue {
                 throw new IllegalStateException(msgLog, e);
             }
         }
-        oneQueue.savedCount += count;
         return count;
     }
 
-    private synchronized void clearQueuesInDatabase(@NonNull SQLiteDatabase db) {
-        final String method = "clearQueuesInDatabase";
+    /** Removes the commands, saved in the committed transaction, from the queue */
+    private void onSaved(@NonNull QueueType queueType, @NonNull List<CommandData> saved) {
+        OneQueue oneQueue = queues.get(queueType);
+        if (loaded) {
+            oneQueue.savedCount = 0;
+            oneQueue.savedForegroundTasks = false;
+        }
+        for (CommandData cd : saved) {
+            oneQueue.queue.remove(cd);
+            oneQueue.savedForegroundTasks |= cd.isInForeground();
+        }
+        oneQueue.savedCount += saved.size();
+    }
+
+    @NonNull
+    private static ContentValues toContentValues(@NonNull CommandData commandData, @NonNull QueueType queueType) {
+        ContentValues values = new ContentValues();
+        commandData.toContentValues(values);
+        values.put(CommandTable.QUEUE_TYPE, queueType.save());
+        return values;
+    }
+
+    private static void bindAndExecute(@NonNull SQLiteStatement statement, @NonNull ContentValues values) {
+        statement.clearBindings();
+        statement.bindString(1, values.getAsString(CommandTable.QUEUE_TYPE));
+        for (int ind = 0; ind < CommandTable.COMMAND_COLUMNS.length; ind++) {
+            Object value = values.get(CommandTable.COMMAND_COLUMNS[ind]);
+            int index = ind + 2;
+            if (value == null) {
+                statement.bindNull(index);
+            } else if (value instanceof Boolean) {
+                statement.bindLong(index, (Boolean) value ? 1 : 0);
+            } else if (value instanceof Number) {
+                statement.bindLong(index, ((Number) value).longValue());
+            } else {
+                statement.bindString(index, value.toString());
+            }
+        }
+        statement.executeInsert();
+    }
+
+    /** Deletes commands, which are not in the queues any more */
+    private void deleteNotSavedFromDatabase(@NonNull SQLiteDatabase db, @NonNull Set<Long> savedIds) {
+        final String method = "deleteNotSavedFromDatabase";
         try {
-            String sql = "DELETE FROM " + CommandTable.TABLE_NAME;
+            String sql = "DELETE FROM " + CommandTable.TABLE_NAME + (savedIds.isEmpty()
+                    ? ""
+                    : " WHERE " + CommandTable._ID + " NOT IN ("
+                        + savedIds.stream().map(Object::toString).collect(Collectors.joining(",")) + ")");
             DbUtils.execSQL(db, sql);
+            persisted.keySet().retainAll(savedIds);
         } catch (Exception e) {
             MyLog.e(context, method, e);
             if (SQLiteDiskIOException.class.isAssignableFrom(e.getClass())) {
@@ -285,7 +354,7 @@ public class CommandQueue {
         MyLog.v(this, "Queues cleared");
     }
 
-    void deleteCommand(CommandData commandData) {
+    synchronized void deleteCommand(CommandData commandData) {
         moveCommandsFromPreToMainQueue();
         for (OneQueue oneQueue : queues.values()) {
             commandData.deleteCommandFromQueue(oneQueue.queue);
@@ -307,10 +376,8 @@ public class CommandQueue {
         return size + preQueue.size();
     }
 
-    void addToQueue(QueueType queueType, CommandData commandData) {
-        if (get(queueType).contains(commandData)) {
-            get(queueType).remove(commandData);
-        }
+    synchronized void addToQueue(QueueType queueType, CommandData commandData) {
+        get(queueType).remove(commandData);
         if (!get(queueType).offer(commandData)) {
             MyLog.e(this, queueType.name() + " is full?");
         }
@@ -339,14 +406,17 @@ public class CommandQueue {
         return true;
     }
 
-    CommandData pollQueue() {
+    /** Polls next command, skipping commands of shards (Origins), which are being executed now.
+     * The polled command should be released via {@link #onExecuted(CommandData)} */
+    synchronized CommandData pollQueue() {
         moveCommandsFromPreToMainQueue();
+        List<CommandData> ofBusyShards = new ArrayList<>();
         CommandData commandData;
         do {
-            commandData = get(QueueType.CURRENT).poll();
+            commandData = pollMainQueue(ofBusyShards);
             if (commandData == null && isAnythingToRetryNow()) {
                 moveCommandsFromRetryToMainQueue();
-                commandData = get(QueueType.CURRENT).poll();
+                commandData = pollMainQueue(ofBusyShards);
             }
             if (commandData == null) {
                 break;
@@ -361,6 +431,7 @@ public class CommandQueue {
                 commandData = null;
             }
         } while (commandData == null);
+        returnToMainQueue(ofBusyShards);
         MyLog.v(this, "Polled in "
                 + (myContext.isInForeground() ? "foreground "
                     + (MyPreferences.isSyncWhileUsingApplicationEnabled() ? "enabled" : "disabled")
@@ -368,10 +439,46 @@ public class CommandQueue {
                 + (commandData == null ? "" : " " + commandData));
         if (commandData != null) {
             commandData.setManuallyLaunched(false);
+            inExecution.put(commandData.getShardId(), commandData);
         }
         return commandData;
     }
 
+    private CommandData pollMainQueue(List<CommandData> ofBusyShards) {
+        CommandData commandData;
+        while ((commandData = get(QueueType.CURRENT).poll()) != null) {
+            if (!inExecution.containsKey(commandData.getShardId())) break;
+
+            ofBusyShards.add(commandData);
+        }
+        return commandData;
+    }
+
+    /** Commands of busy shards are returned as they were polled, without preparing them for launch again */
+    private void returnToMainQueue(List<CommandData> commands) {
+        for (CommandData cd : commands) {
+            if (!get(QueueType.CURRENT).offer(cd)) {
+                MyLog.e(this, "Couldn't return to the main queue " + cd);
+            }
+        }
+    }
+
+    /** Allows execution of next commands of the same shard */
+    synchronized void onExecuted(CommandData commandData) {
+        inExecution.remove(commandData.getShardId(), commandData);
+    }
+
+    /** @return Number of distinct shards (Origins) having commands, which may be executed now
+     * in parallel with the commands being executed */
+    synchronized int countIdleShardsToExecute() {
+        Set<Long> shards = new HashSet<>();
+        Stream.concat(preQueue.stream(), get(QueueType.CURRENT).stream())
+                .map(CommandData::getShardId)
+                .filter(shardId -> !inExecution.containsKey(shardId))
+                .forEach(shards::add);
+        return shards.size();
+    }
+
     private void moveCommandsFromPreToMainQueue() {
         for (CommandData cd : preQueue) {
             if (addToMainQueue(cd)) preQueue.remove(cd);
@@ -404,20 +511,16 @@ public class CommandQueue {
 
     private CommandData findInRetryQueue(CommandData cdIn) {
         CommandData cdOut = cdIn;
-        if (get(QueueType.RETRY).contains(cdIn)) {
-            for (CommandData cd : get(QueueType.RETRY)) {
-                if (cd.equals(cdIn)) {
-                    cd.resetRetries();
-                    if (cdIn.isManuallyLaunched() || cd.executedMoreSecondsAgoThan(MIN_RETRY_PERIOD_SECONDS)) {
-                        cdOut = cd;
-                        get(QueueType.RETRY).remove(cd);
-                        MyLog.v(this, () -> "Returned from Retry queue: " + cd);
-                    } else {
-                        cdOut = null;
-                        MyLog.v(this, () -> "Found in Retry queue: " + cd);
-                    }
-                    break;
-                }
+        CommandData cd = getIndexed(QueueType.RETRY).get(cdIn);
+        if (cd != null) {
+            cd.resetRetries();
+            if (cdIn.isManuallyLaunched() || cd.executedMoreSecondsAgoThan(MIN_RETRY_PERIOD_SECONDS)) {
+                cdOut = cd;
+                get(QueueType.RETRY).remove(cd);
+                MyLog.v(this, () -> "Returned from Retry queue: " + cd);
+            } else {
+                cdOut = null;
+                MyLog.v(this, () -> "Found in Retry queue: " + cd);
             }
         }
         return cdOut;
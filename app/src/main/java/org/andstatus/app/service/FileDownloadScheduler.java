@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.service;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.andstatus.app.context.MyContext;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.data.DownloadData;
+import org.andstatus.app.os.AsyncTaskLauncher;
+import org.andstatus.app.os.MyAsyncTask;
+import org.andstatus.app.util.MyLog;
+import org.andstatus.app.util.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Downloads attachments and avatars, requested by views, which show them, in parallel,
+ * without waiting in the queue of {@link MyService} behind other commands.
+ * Downloads run in {@link MyAsyncTask.PoolEnum#FILE_DOWNLOAD} tasks, and their number is limited for each host also.
+ * Files for views go first, the latest requested first: views, which were bound last, are on the screen now.
+ * A queued download is cancelled,
+ * when all views, which requested it, are reused to show other items (i.e. the items were scrolled away).
+ * If a download fails with an error, which may be retried, the command is passed to {@link MyService}
+ * @author yvolk@yurivolkov.com
+ */
+@ThreadSafe
+public class FileDownloadScheduler {
+    static final int MAX_DOWNLOADS_PER_HOST = 2;
+    private static final Object lock = new Object();
+    /** Not finished downloads by key */
+    @GuardedBy("lock")
+    private static final Map<String, Job> jobs = new HashMap<>();
+    /** A job, which was requested by a view, by id of the view */
+    @GuardedBy("lock")
+    private static final Map<Long, Job> jobsOfViews = new HashMap<>();
+    /** Jobs, waiting for a {@link DownloadTask} */
+    @GuardedBy("lock")
+    private static final Queue<Job> queue = new PriorityQueue<>();
+    @GuardedBy("lock")
+    private static final Map<String, Integer> runningByHost = new HashMap<>();
+    /** Jobs, waiting for a free slot of their host */
+    @GuardedBy("lock")
+    private static final Map<String, Deque<Job>> waitingByHost = new HashMap<>();
+    private static final AtomicLong sequence = new AtomicLong();
+    private static final AtomicLong requested = new AtomicLong();
+    private static final AtomicLong shared = new AtomicLong();
+    private static final AtomicLong cancelled = new AtomicLong();
+    private static final AtomicLong downloaded = new AtomicLong();
+    private static final AtomicLong passedToService = new AtomicLong();
+    /** Creates a downloader for a command. Replaced in tests */
+    static volatile Function<CommandData, FileDownloader> downloaderFactory = FileDownloadScheduler::newDownloader;
+
+    private FileDownloadScheduler() {
+        // Empty
+    }
+
+    private static class Job implements Comparable<Job> {
+        final String key;
+        final CommandData commandData;
+        @GuardedBy("lock")
+        final Set<Long> viewIds = new HashSet<>();
+        /** Requested by a view. The fields, used in {@link #compareTo(Job)}, are changed only out of the queue */
+        @GuardedBy("lock")
+        boolean forView;
+        @GuardedBy("lock")
+        long order = sequence.incrementAndGet();
+        /** Requested not by a view, so it is not cancelled, when views don't need it */
+        @GuardedBy("lock")
+        boolean background = false;
+        @GuardedBy("lock")
+        boolean started = false;
+        @GuardedBy("lock")
+        boolean cancelled = false;
+        volatile FileDownloader downloader = null;
+        volatile String host = "";
+
+        Job(String key, CommandData commandData, boolean forView) {
+            this.key = key;
+            this.commandData = commandData;
+            this.forView = forView;
+        }
+
+        void run() {
+            try {
+                if (downloader == null) {
+                    downloader = downloaderFactory.apply(commandData);
+                    host = StringUtils.notNull(downloader.data.getUri().getHost());
+                }
+            } catch (Exception e) {
+                MyLog.w(FileDownloadScheduler.class, "Failed to prepare download of " + commandData, e);
+                commandData.getResult().incrementNumIoExceptions();
+                synchronized (lock) {
+                    forget(this);
+                }
+                onDownloaded(commandData);
+                return;
+            }
+            if (!tryToStart(this)) return;
+
+            try {
+                downloader.load(commandData);
+            } catch (Exception e) {
+                MyLog.w(FileDownloadScheduler.class, "Failed to download " + commandData, e);
+                commandData.getResult().incrementNumIoExceptions();
+            } finally {
+                onFinished(this);
+            }
+            onDownloaded(commandData);
+        }
+
+        /** Requested by views first, the latest first. Then other requests in the order of requests */
+        @Override
+        public int compareTo(@NonNull Job other) {
+            if (forView != other.forView) return forView ? -1 : 1;
+            return forView ? Long.compare(other.order, order) : Long.compare(order, other.order);
+        }
+
+        @Override
+        public String toString() {
+            return key + (host.isEmpty() ? "" : "@" + host);
+        }
+    }
+
+    /** Each launched task downloads queued files, the most urgent first, until the queue is empty.
+     * A task is launched for each queued job, so a job is not left in the queue,
+     * if the task, launched for it, took another job */
+    private static class DownloadTask extends MyAsyncTask<Void, Void, Void> {
+        DownloadTask() {
+            super(DownloadTask.class, PoolEnum.FILE_DOWNLOAD);
+            setSingleInstance(false);
+        }
+
+        @Override
+        protected Void doInBackground2(Void... voids) {
+            Job job;
+            while (!isCancelled() && (job = pollQueue()) != null) {
+                currentlyExecutingSince = System.currentTimeMillis();
+                job.run();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Downloads the file of the {@link CommandEnum#GET_ATTACHMENT} or {@link CommandEnum#GET_AVATAR} command
+     * @param viewId Id of the view, which will show the file, 0 if the file is not requested by a view
+     */
+    public static void download(@NonNull CommandData commandData, long viewId) {
+        requested.incrementAndGet();
+        MyContext myContext = MyContextHolder.get();
+        if (!myContext.isReady() || !commandData.getCommand().getConnectionRequired()
+                .isConnectionStateOk(myContext.getConnectionState())) {
+            passToService(commandData);
+            return;
+        }
+        String key = getKey(commandData);
+        Job job;
+        synchronized (lock) {
+            Job existing = jobs.get(key);
+            if (existing != null) {
+                shared.incrementAndGet();
+                if (viewId != 0 && queue.remove(existing)) {
+                    // Move it ahead of other queued files
+                    existing.forView = true;
+                    existing.order = sequence.incrementAndGet();
+                    queue.add(existing);
+                }
+                addView(existing, viewId);
+                return;
+            }
+            job = new Job(key, commandData, viewId != 0);
+            jobs.put(key, job);
+            addView(job, viewId);
+            queue.add(job);
+        }
+        launchTaskFor(job);
+    }
+
+    /** The view doesn't need a file to be downloaded any more */
+    public static void releaseView(long viewId) {
+        if (viewId == 0) return;
+        synchronized (lock) {
+            Job job = jobsOfViews.remove(viewId);
+            if (job != null) {
+                removeView(job, viewId);
+            }
+        }
+    }
+
+    private static String getKey(CommandData commandData) {
+        return commandData.getCommand().save() + ":" + (commandData.getCommand() == CommandEnum.GET_AVATAR
+                ? commandData.getTimeline().actor.actorId
+                : commandData.itemId);
+    }
+
+    static FileDownloader newDownloader(CommandData commandData) {
+        return commandData.getCommand() == CommandEnum.GET_AVATAR
+                ? new AvatarDownloader(commandData.getTimeline().actor)
+                : FileDownloader.newForDownloadData(DownloadData.fromId(commandData.itemId));
+    }
+
+    private static void launchTaskFor(Job job) {
+        if (AsyncTaskLauncher.execute(FileDownloadScheduler.class, false, new DownloadTask())) return;
+
+        synchronized (lock) {
+            if (!queue.remove(job)) return;
+            forget(job);
+        }
+        passToService(job.commandData);
+    }
+
+    private static Job pollQueue() {
+        synchronized (lock) {
+            return queue.poll();
+        }
+    }
+
+    @GuardedBy("lock")
+    private static void addView(Job job, long viewId) {
+        if (viewId == 0) {
+            job.background = true;
+            return;
+        }
+        job.viewIds.add(viewId);
+        Job previous = jobsOfViews.put(viewId, job);
+        if (previous != null && previous != job) {
+            removeView(previous, viewId);
+        }
+    }
+
+    @GuardedBy("lock")
+    private static void removeView(Job job, long viewId) {
+        job.viewIds.remove(viewId);
+        if (job.viewIds.isEmpty() && !job.background) {
+            cancel(job);
+        }
+    }
+
+    @GuardedBy("lock")
+    private static void cancel(Job job) {
+        if (job.started || job.cancelled) return;
+        job.cancelled = true;
+        queue.remove(job);
+        Deque<Job> waiting = waitingByHost.get(job.host);
+        if (waiting != null) {
+            waiting.remove(job);
+        }
+        forget(job);
+        cancelled.incrementAndGet();
+        MyLog.v(FileDownloadScheduler.class, () -> "Cancelled " + job);
+    }
+
+    @GuardedBy("lock")
+    private static void forget(Job job) {
+        jobs.remove(job.key, job);
+        job.viewIds.forEach(viewId -> jobsOfViews.remove(viewId, job));
+    }
+
+    /** @return false, if the job was cancelled or it has to wait for other downloads from the same host */
+    private static boolean tryToStart(Job job) {
+        synchronized (lock) {
+            if (job.cancelled) return false;
+            int running = runningByHost.getOrDefault(job.host, 0);
+            if (running >= MAX_DOWNLOADS_PER_HOST) {
+                Deque<Job> waiting = waitingByHost.get(job.host);
+                if (waiting == null) {
+                    waiting = new ArrayDeque<>();
+                    waitingByHost.put(job.host, waiting);
+                }
+                waiting.add(job);
+                return false;
+            }
+            runningByHost.put(job.host, running + 1);
+            job.started = true;
+            return true;
+        }
+    }
+
+    private static void onFinished(Job job) {
+        Job next = null;
+        synchronized (lock) {
+            forget(job);
+            int running = runningByHost.getOrDefault(job.host, 1) - 1;
+            if (running > 0) {
+                runningByHost.put(job.host, running);
+            } else {
+                runningByHost.remove(job.host);
+            }
+            Deque<Job> waiting = waitingByHost.get(job.host);
+            if (waiting != null) {
+                next = waiting.poll();
+                if (waiting.isEmpty()) {
+                    waitingByHost.remove(job.host);
+                }
+            }
+            if (next != null) {
+                queue.add(next);
+            }
+        }
+        if (next != null) {
+            launchTaskFor(next);
+        }
+    }
+
+    private static void onDownloaded(CommandData commandData) {
+        if (commandData.getResult().shouldWeRetry()) {
+            passToService(commandData);
+            return;
+        }
+        downloaded.incrementAndGet();
+        MyServiceEventsBroadcaster.newInstance(MyContextHolder.get(), MyServiceManager.getServiceState())
+                .setCommandData(commandData)
+                .setEvent(MyServiceEvent.AFTER_EXECUTING_COMMAND).broadcast();
+    }
+
+    private static void passToService(CommandData commandData) {
+        passedToService.incrementAndGet();
+        MyServiceManager.sendCommand(commandData);
+    }
+
+    public static String getInfo() {
+        synchronized (lock) {
+            return "File downloads: requested:" + requested.get() + ", shared:" + shared.get()
+                    + ", downloaded:" + downloaded.get() + ", cancelled:" + cancelled.get()
+                    + ", passed to service:" + passedToService.get()
+                    + ", queued:" + queue.size()
+                    + ", waiting for host:" + waitingByHost.values().stream().mapToInt(Deque::size).sum()
+                    + ", running:" + runningByHost.values().stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.andstatus.app.data.DownloadData;
 import org.andstatus.app.data.DownloadFile;
 import org.andstatus.app.data.DownloadStatus;
 import org.andstatus.app.net.http.ConnectionException;
+import org.andstatus.app.net.http.HttpReadResult;
 import org.andstatus.app.net.social.Connection;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.StringUtils;
@@ -49,6 +50,9 @@ public abstract class FileDownloader {
     void load(CommandData commandData) {
         switch (data.getStatus()) {
             case LOADED:
+                if (data.isTimeToRevalidate()) {
+                    loadUrl();
+                }
                 break;
             default:
                 loadUrl();
@@ -78,14 +82,30 @@ public abstract class FileDownloader {
 
     private void downloadFile() {
         final String method = "downloadFile";
-        DownloadFile fileTemp = new DownloadFile("temp_" + data.getFilenameNew());
+        DownloadFile fileTemp = DownloadFile.newTempFile(data.getFilenameNew());
         try {
             String uriString = data.getUri().toString();
             File file = fileTemp.getFile();
             MyAccount ma = findBestAccountForDownload();
             MyLog.v(this, () -> "About to download " + data.toString() + "; account:" + ma.getAccountName());
             if (ma.isValidAndSucceeded()) {
-                ((connectionMock != null) ? connectionMock : getConnection(ma, data.getUri())).downloadFile(uriString, file);
+                Connection connection = (connectionMock != null) ? connectionMock : getConnection(ma, data.getUri());
+                if (UriUtils.isDownloadable(data.getUri())) {
+                    HttpReadResult result = new HttpReadResult(uriString, file);
+                    if (data.mayBeRevalidated()) {
+                        result.setValidators(data.getETag(), data.getLastModified());
+                    }
+                    connection.downloadFile(result);
+                    if (result.isNotModified()) {
+                        MyLog.v(this, () -> "Not modified " + data.toString());
+                        fileTemp.delete();
+                        data.onNotModified();
+                        return;
+                    }
+                    data.setValidators(result.getETag(), result.getLastModified());
+                } else {
+                    connection.downloadFile(uriString, file);
+                }
             } else {
                 data.hardErrorLogged(method + ", No account to download the file", null);
             }
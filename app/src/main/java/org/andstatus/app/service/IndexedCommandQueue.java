@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.service;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Priority queue of commands, which doesn't allow duplicates ("equal" commands, see {@link CommandData#equals(Object)}).
+ * Keeps a hash index alongside the priority heap, so {@link #contains(Object)}, {@link #remove(Object)}
+ * and {@link #hasForegroundTasks()} don't need to scan the whole queue.
+ * Removed commands are marked in the heap and skipped ("lazy deletion") on polling.
+ * Iterators work on a snapshot of the queue, so the queue may be modified while iterating
+ * @author yvolk@yurivolkov.com
+ */
+@ThreadSafe
+class IndexedCommandQueue extends AbstractQueue<CommandData> {
+    @GuardedBy("this")
+    private final PriorityQueue<Entry> heap;
+    @GuardedBy("this")
+    private final Map<CommandData, Entry> index = new HashMap<>();
+    @GuardedBy("this")
+    private int foregroundCount = 0;
+    @GuardedBy("this")
+    private long sequence = 0;
+
+    private static class Entry implements Comparable<Entry> {
+        final CommandData commandData;
+        /** Insertion order for commands of the same priority */
+        final long sequence;
+        final boolean inForeground;
+        boolean removed = false;
+
+        Entry(CommandData commandData, long sequence) {
+            this.commandData = commandData;
+            this.sequence = sequence;
+            this.inForeground = commandData.isInForeground();
+        }
+
+        @Override
+        public int compareTo(@NonNull Entry another) {
+            int result = commandData.compareTo(another.commandData);
+            return result == 0 ? Long.compare(sequence, another.sequence) : result;
+        }
+    }
+
+    IndexedCommandQueue(int initialCapacity) {
+        heap = new PriorityQueue<>(initialCapacity);
+    }
+
+    /** @return false if the same command is in the queue already */
+    @Override
+    public synchronized boolean offer(CommandData commandData) {
+        if (commandData == null) throw new NullPointerException();
+        if (index.containsKey(commandData)) return false;
+
+        Entry entry = new Entry(commandData, sequence++);
+        index.put(commandData, entry);
+        heap.offer(entry);
+        if (entry.inForeground) foregroundCount++;
+        return true;
+    }
+
+    @Override
+    public synchronized CommandData poll() {
+        Entry entry;
+        while ((entry = heap.poll()) != null) {
+            if (!entry.removed) {
+                onRemoved(entry);
+                return entry.commandData;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized CommandData peek() {
+        Entry entry;
+        while ((entry = heap.peek()) != null) {
+            if (!entry.removed) return entry.commandData;
+            heap.poll();
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized boolean contains(Object o) {
+        return o != null && index.containsKey(o);
+    }
+
+    /** @return The queued command, which is equal to the provided one, or null */
+    synchronized CommandData get(CommandData commandData) {
+        Entry entry = index.get(commandData);
+        return entry == null ? null : entry.commandData;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        Entry entry = o == null ? null : index.get(o);
+        if (entry == null) return false;
+
+        entry.removed = true;
+        onRemoved(entry);
+        compactIfNeeded();
+        return true;
+    }
+
+    private void onRemoved(Entry entry) {
+        index.remove(entry.commandData);
+        if (entry.inForeground) foregroundCount--;
+    }
+
+    /** Get rid of "removed" entries when there are too many of them */
+    private void compactIfNeeded() {
+        if (heap.size() < 32 || heap.size() < index.size() * 2) return;
+
+        List<Entry> entries = new ArrayList<>(index.values());
+        heap.clear();
+        heap.addAll(entries);
+    }
+
+    synchronized boolean hasForegroundTasks() {
+        return foregroundCount > 0;
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        heap.clear();
+        index.clear();
+        foregroundCount = 0;
+    }
+
+    @Override
+    public synchronized Object[] toArray() {
+        Entry[] entries = heap.toArray(new Entry[0]);
+        Arrays.sort(entries);
+        List<CommandData> list = new ArrayList<>(index.size());
+        for (Entry entry : entries) {
+            if (!entry.removed) list.add(entry.commandData);
+        }
+        return list.toArray();
+    }
+
+    /** Iterates over a snapshot of the queue in the order of priority */
+    @NonNull
+    @Override
+    public Iterator<CommandData> iterator() {
+        return new Iterator<CommandData>() {
+            final Object[] snapshot = toArray();
+            int cursor = 0;
+            CommandData lastReturned = null;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < snapshot.length;
+            }
+
+            @Override
+            public CommandData next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                lastReturned = (CommandData) snapshot[cursor++];
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) throw new IllegalStateException();
+                IndexedCommandQueue.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+}
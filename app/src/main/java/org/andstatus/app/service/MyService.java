@@ -44,7 +44,10 @@ import org.andstatus.app.util.RelativeTime;
 import org.andstatus.app.util.SharedPreferencesUtil;
 import org.andstatus.app.util.TriState;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.andstatus.app.service.CommandEnum.DELETE_COMMAND;
 
@@ -73,8 +76,13 @@ public class MyService extends Service {
     private int mLatestProcessedStartId = 0;
     
     private final Object executorLock = new Object();
+    /** Several executors work in parallel for different Origins, see {@link MyPreferences#getSyncParallelOrigins()} */
     @GuardedBy("executorLock")
-    private QueueExecutor mExecutor = null;
+    private final List<QueueExecutor> executors = new ArrayList<>();
+    @GuardedBy("executorLock")
+    private int executorsCreated = 0;
+    /** The last executor, which ended its background work, saves the queues */
+    private final AtomicInteger executorsInBackground = new AtomicInteger();
 
     private final Object heartBeatLock = new Object();
     @GuardedBy("heartBeatLock")
@@ -237,7 +245,7 @@ public class MyService extends Service {
                 startExecution();
                 break;
             default:
-                MyLog.v(this, () -> "Didn't change execution " + mExecutor);
+                MyLog.v(this, () -> "Didn't change execution " + executorsToString());
                 break;
         }
     }
@@ -331,25 +339,31 @@ public class MyService extends Service {
         final String method = "ensureExecutorStarted";
         StringBuilder logMessageBuilder = new StringBuilder();
         synchronized(executorLock) {
-            if ( mExecutor != null && mExecutor.completedBackgroundWork()) {
-                logMessageBuilder.append(" Removing completed Executor " + mExecutor);
-                removeExecutor(logMessageBuilder);
+            for (QueueExecutor executor : new ArrayList<>(executors)) {
+                if (executor.completedBackgroundWork()) {
+                    logMessageBuilder.append(" Removing completed Executor " + executor);
+                    removeExecutor(executor, logMessageBuilder);
+                } else if (!executor.isReallyWorking()) {
+                    logMessageBuilder.append(" Cancelling stalled Executor " + executor);
+                    removeExecutor(executor, logMessageBuilder);
+                }
             }
-            if ( mExecutor != null && !isExecutorReallyWorkingNow()) {
-                logMessageBuilder.append(" Cancelling stalled Executor " + mExecutor);
-                removeExecutor(logMessageBuilder);
+            // The first executor loads the queues, next ones are added for other Origins only
+            int toAdd = executors.isEmpty()
+                    ? 1
+                    : Math.min(MyPreferences.getSyncParallelOrigins() - executors.size(),
+                        commandQueue.countIdleShardsToExecute());
+            if (toAdd < 1) {
+                logMessageBuilder.append(" There are Executors already: " + executors.size());
             }
-            if (mExecutor != null) {
-                logMessageBuilder.append(" There is an Executor already " + mExecutor);
-            } else {
-                // For now let's have only ONE working thread 
-                // (it seems there is some problem in parallel execution...)
-                QueueExecutor newExecutor = new QueueExecutor();
+            for (int ind = 0; ind < toAdd; ind++) {
+                QueueExecutor newExecutor = new QueueExecutor(++executorsCreated);
                 logMessageBuilder.append(" Adding and starting new Executor " + newExecutor);
                 if (AsyncTaskLauncher.execute(this, false, newExecutor)) {
-                    mExecutor = newExecutor;
+                    executors.add(newExecutor);
                 } else {
                     logMessageBuilder.append(" New executor was not added");
+                    break;
                 }
             }
         }
@@ -358,17 +372,26 @@ public class MyService extends Service {
         }
     }
     
-    private void removeExecutor(StringBuilder logMessageBuilder) {
+    private void removeExecutor(QueueExecutor executor, StringBuilder logMessageBuilder) {
         synchronized(executorLock) {
-            if (mExecutor == null) {
-                return;
-            }
-            if (mExecutor.needsBackgroundWork()) {
+            if (executor.needsBackgroundWork()) {
                 logMessageBuilder.append(" Cancelling and");
-                mExecutor.cancelLogged(true);
+                executor.cancelLogged(true);
             }
-            logMessageBuilder.append(" Removing Executor " + mExecutor);
-            mExecutor = null;
+            logMessageBuilder.append(" Removing Executor " + executor);
+            executors.remove(executor);
+        }
+    }
+
+    private boolean isCurrentExecutor(QueueExecutor executor) {
+        synchronized(executorLock) {
+            return executors.contains(executor);
+        }
+    }
+
+    private String executorsToString() {
+        synchronized(executorLock) {
+            return executors.toString();
         }
     }
 
@@ -389,8 +412,11 @@ public class MyService extends Service {
     
     private boolean isExecutorReallyWorkingNow() {
         synchronized(executorLock) {
-          return mExecutor != null && mExecutor.isReallyWorking();
-        }        
+            for (QueueExecutor executor : executors) {
+                if (executor.isReallyWorking()) return true;
+            }
+            return false;
+        }
     }
     
     @Override
@@ -459,16 +485,20 @@ public class MyService extends Service {
         StringBuilder logMessageBuilder = new StringBuilder();
         boolean could = true;
         synchronized(executorLock) {
-            if (mExecutor != null && mExecutor.needsBackgroundWork() && mExecutor.isReallyWorking() ) {
-                if (forceNow) {
-                    logMessageBuilder.append(" Cancelling working Executor;");
-                } else {
-                    logMessageBuilder.append(" Cannot stop now Executor " + mExecutor);
-                    could = false;
+            for (QueueExecutor executor : executors) {
+                if (executor.needsBackgroundWork() && executor.isReallyWorking()) {
+                    if (forceNow) {
+                        logMessageBuilder.append(" Cancelling working Executor;");
+                    } else {
+                        logMessageBuilder.append(" Cannot stop now Executor " + executor);
+                        could = false;
+                    }
                 }
             }
             if (could) {
-                removeExecutor(logMessageBuilder);
+                for (QueueExecutor executor : new ArrayList<>(executors)) {
+                    removeExecutor(executor, logMessageBuilder);
+                }
             }
         }
         if (logMessageBuilder.length() > 0) {
@@ -487,18 +517,36 @@ public class MyService extends Service {
         }
     }
     
+    /** Each executor tracks its own command and the time when it was started ({@link #currentlyExecutingSince}),
+     * so a stalled executor is found independently of other executors */
     private class QueueExecutor extends MyAsyncTask<Void, Void, Boolean> implements CommandExecutorParent {
         private volatile CommandData currentlyExecuting = null;
         private static final long MAX_EXECUTION_TIME_SECONDS = 60;
 
-        QueueExecutor() {
-            super(PoolEnum.SYNC);
+        QueueExecutor(int executorNumber) {
+            super(QueueExecutor.class.getSimpleName() + executorNumber, PoolEnum.SYNC);
         }
 
         @Override
         protected Boolean doInBackground2(Void... arg0) {
+            executorsInBackground.incrementAndGet();
+            try {
+                executeQueue();
+            } finally {
+                if (executorsInBackground.decrementAndGet() == 0) {
+                    commandQueue.save();
+                }
+            }
+            return true;
+        }
+
+        private void executeQueue() {
             commandQueue.load();
             MyLog.d(this, "Started, " + commandQueue.totalSizeToExecute() + " commands to process");
+            if (MyPreferences.getSyncParallelOrigins() > 1) {
+                // Let other executors start for other Origins
+                publishProgress();
+            }
             String breakReason = "";
             do {
                 if (isStopping()) {
@@ -513,46 +561,60 @@ public class MyService extends Service {
                     breakReason = "Executed too long";
                     break;
                 }
-                synchronized (executorLock) {
-                    if (mExecutor != this) {
-                        breakReason = "Other executor";
-                        break;
-                    }
+                if (!isCurrentExecutor(this)) {
+                    breakReason = "Other executor";
+                    break;
                 }
                 CommandData commandData = commandQueue.pollQueue();
-                currentlyExecuting = commandData;
-                currentlyExecutingSince = System.currentTimeMillis();
                 if (commandData == null) {
                     breakReason = "No more commands";
                     break;
                 }
-                ConnectionState connectionState = myContext.getConnectionState();
-                if (commandData.getCommand().getConnectionRequired().isConnectionStateOk(connectionState)) {
-                    MyServiceEventsBroadcaster.newInstance(myContext, getServiceState())
-                            .setCommandData(commandData)
-                            .setEvent(MyServiceEvent.BEFORE_EXECUTING_COMMAND).broadcast();
-                    if (commandData.getCommand() == DELETE_COMMAND) {
-                        commandQueue.deleteCommand(commandData);
-                    } else {
-                        CommandExecutorStrategy.executeCommand(commandData, this);
-                    }
-                } else {
-                    commandData.getResult().incrementNumIoExceptions();
-                    commandData.getResult().setMessage("Expected '"
-                            + commandData.getCommand().getConnectionRequired()
-                            + "', but was '" + connectionState + "' connection");
-                }
-                if (commandData.getResult().shouldWeRetry()) {
-                    commandQueue.addToQueue(QueueType.RETRY, commandData);
-                } else if (commandData.getResult().hasError()) {
-                    commandQueue.addToQueue(QueueType.ERROR, commandData);
+                setCurrentlyExecuting(commandData);
+                try {
+                    execute(commandData);
+                } finally {
+                    setCurrentlyExecuting(null);
+                    commandQueue.onExecuted(commandData);
                 }
                 broadcastAfterExecutingCommand(commandData);
                 addSyncOfThisToQueue(commandData);
             } while (true);
             MyLog.d(this, "Ended, " + breakReason + ", " + commandQueue.totalSizeToExecute() + " commands left");
-            commandQueue.save();
-            return true;
+        }
+
+        private void setCurrentlyExecuting(CommandData commandData) {
+            currentlyExecutingSince = commandData == null ? 0 : System.currentTimeMillis();
+            currentlyExecuting = commandData;
+        }
+
+        private void execute(CommandData commandData) {
+            ConnectionState connectionState = myContext.getConnectionState();
+            if (commandData.getCommand().getConnectionRequired().isConnectionStateOk(connectionState)) {
+                MyServiceEventsBroadcaster.newInstance(myContext, getServiceState())
+                        .setCommandData(commandData)
+                        .setEvent(MyServiceEvent.BEFORE_EXECUTING_COMMAND).broadcast();
+                if (commandData.getCommand() == DELETE_COMMAND) {
+                    commandQueue.deleteCommand(commandData);
+                } else {
+                    CommandExecutorStrategy.executeCommand(commandData, this);
+                }
+            } else {
+                commandData.getResult().incrementNumIoExceptions();
+                commandData.getResult().setMessage("Expected '"
+                        + commandData.getCommand().getConnectionRequired()
+                        + "', but was '" + connectionState + "' connection");
+            }
+            if (commandData.getResult().shouldWeRetry()) {
+                commandQueue.addToQueue(QueueType.RETRY, commandData);
+            } else if (commandData.getResult().hasError()) {
+                commandQueue.addToQueue(QueueType.ERROR, commandData);
+            }
+        }
+
+        @Override
+        protected void onProgressUpdate(Void... values) {
+            startStopExecution();
         }
 
         private void addSyncOfThisToQueue(CommandData commandDataExecuted) {
@@ -579,8 +641,7 @@ public class MyService extends Service {
 
         private void onEndedExecution(String method) {
             MyLog.v(this, method);
-            currentlyExecuting = null;
-            currentlyExecutingSince = 0;
+            setCurrentlyExecuting(null);
             reviveHeartBeat();
             startStopExecution();
         }
@@ -26,19 +26,26 @@ import org.andstatus.app.net.http.ConnectionException;
 import org.andstatus.app.net.http.ConnectionException.StatusCode;
 import org.andstatus.app.net.social.AActivity;
 import org.andstatus.app.net.social.TimelinePosition;
+import org.andstatus.app.os.AsyncTaskLauncher;
+import org.andstatus.app.os.MyAsyncTask;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.RelativeTime;
 import org.andstatus.app.util.StringUtils;
 import org.andstatus.app.util.TriState;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 class TimelineDownloaderOther extends TimelineDownloader {
     private static final int YOUNGER_NOTES_TO_DOWNLOAD_MAX = 200;
     private static final int OLDER_NOTES_TO_DOWNLOAD_MAX = 40;
     private static final int LATEST_NOTES_TO_DOWNLOAD_MAX = 20;
+    /** Downloaded pages, waiting to be stored. The next page is being downloaded meanwhile */
+    private static final int PAGES_BUFFERED_MAX = 1;
 
     TimelineDownloaderOther(CommandExecutionContext execContext) {
         super(execContext);
@@ -71,35 +78,18 @@ class TimelineDownloaderOther extends TimelineDownloader {
             }
             MyLog.d(this, strLog);
         }
-        String actorOid = getActorOid();
         int toDownload = downloadingLatest ? LATEST_NOTES_TO_DOWNLOAD_MAX :
                 (isSyncYounger() ? YOUNGER_NOTES_TO_DOWNLOAD_MAX : OLDER_NOTES_TO_DOWNLOAD_MAX);
-        TimelinePosition previousPosition = syncTracker.getPreviousPosition();
+        PageFetcher fetcher = new PageFetcher(syncTracker.new Lookahead(), toDownload, getActorOid());
         syncTracker.onTimelineDownloaded();
 
+        if (!AsyncTaskLauncher.execute(this, false, fetcher)) {
+            throw new ConnectionException("Failed to launch " + fetcher);
+        }
         DataUpdater di = new DataUpdater(execContext);
-        for (int loopCounter=0; loopCounter < 100; loopCounter++ ) {
-            try {
-                int limit = getConnection().fixedDownloadLimit(
-                        toDownload, getTimeline().getTimelineType().getConnectionApiRoutine());
-                List<AActivity> activities;
-                switch (getTimeline().getTimelineType()) {
-                    case SEARCH:
-                        activities = getConnection().searchNotes(
-                                isSyncYounger() ? previousPosition : TimelinePosition.EMPTY,
-                                isSyncYounger() ? TimelinePosition.EMPTY : previousPosition,
-                                limit, getTimeline().getSearchQuery());
-                        break;
-                    default:
-                        activities = getConnection().getTimeline(
-                                getTimeline().getTimelineType().getConnectionApiRoutine(),
-                                isSyncYounger() ? previousPosition : TimelinePosition.EMPTY,
-                                isSyncYounger() ? TimelinePosition.EMPTY : previousPosition,
-                                limit, actorOid);
-                        break;
-                }
-                for (AActivity activity : activities) {
-                    toDownload--;
+        try {
+            for (Page page = fetcher.take(); page != Page.END; page = fetcher.take()) {
+                for (AActivity activity : page.activities) {
                     syncTracker.onNewMsg(activity.getTimelinePosition(), activity.getUpdatedDate());
                     if (!activity.isSubscribedByMe().equals(TriState.FALSE)
                         && activity.getUpdatedDate() > 0
@@ -108,24 +98,152 @@ class TimelineDownloaderOther extends TimelineDownloader {
                             ) {
                         activity.setSubscribedByMe(TriState.TRUE);
                     }
-                    di.onActivity(activity, false);
                 }
-                if (toDownload <= 0 || activities.isEmpty() || previousPosition.equals(syncTracker.getPreviousPosition())) {
-                    break;
+                di.onActivities(page.activities);
+                page.throwIfFailed();
+            }
+        } finally {
+            fetcher.stop();
+        }
+        di.saveLum();
+    }
+
+    private static class Page {
+        static final Page END = new Page(Collections.emptyList(), null);
+
+        final List<AActivity> activities;
+        final Throwable exception;
+
+        Page(@NonNull List<AActivity> activities, Throwable exception) {
+            this.activities = activities;
+            this.exception = exception;
+        }
+
+        void throwIfFailed() throws ConnectionException {
+            if (exception == null) return;
+            if (exception instanceof ConnectionException) throw (ConnectionException) exception;
+            if (exception instanceof RuntimeException) throw (RuntimeException) exception;
+            throw ConnectionException.hardConnectionException("Page fetcher failed", exception);
+        }
+    }
+
+    /**
+     * Downloads pages of the timeline in a separate task, so the next page is being downloaded
+     * while the previous one is being stored. Positions of the timeline are not changed here:
+     * they are changed only for stored timeline items
+     */
+    private class PageFetcher extends MyAsyncTask<Void, Void, Void> {
+        private final BlockingQueue<Page> pages = new ArrayBlockingQueue<>(PAGES_BUFFERED_MAX);
+        private final TimelineSyncTracker.Lookahead lookahead;
+        private final String actorOid;
+        private int toDownload;
+        private volatile boolean stopped = false;
+
+        PageFetcher(TimelineSyncTracker.Lookahead lookahead, int toDownload, String actorOid) {
+            super(PageFetcher.class.getSimpleName() + getTimeline().getId(), PoolEnum.SYNC);
+            setSingleInstance(false);
+            this.lookahead = lookahead;
+            this.toDownload = toDownload;
+            this.actorOid = actorOid;
+        }
+
+        @Override
+        protected Void doInBackground2(Void... voids) {
+            try {
+                fetchPages();
+            } catch (Throwable e) {
+                // Pages, which were fetched before the failure, will be stored anyway
+                put(new Page(Collections.emptyList(), e));
+            } finally {
+                put(Page.END);
+            }
+            return null;
+        }
+
+        private void fetchPages() throws ConnectionException {
+            TimelinePosition previousPosition = lookahead.getPreviousPosition();
+            for (int loopCounter=0; loopCounter < 100 && !stopped; loopCounter++ ) {
+                currentlyExecutingSince = System.currentTimeMillis();
+                try {
+                    List<AActivity> activities = fetchPage(previousPosition);
+                    for (AActivity activity : activities) {
+                        toDownload--;
+                        lookahead.onNewMsg(activity.getTimelinePosition(), activity.getUpdatedDate());
+                    }
+                    if (!activities.isEmpty()) {
+                        put(new Page(activities, null));
+                    }
+                    if (toDownload <= 0 || activities.isEmpty()
+                            || previousPosition.equals(lookahead.getPreviousPosition())) {
+                        break;
+                    }
+                    previousPosition = lookahead.getPreviousPosition();
+                } catch (ConnectionException e) {
+                    if (e.getStatusCode() != StatusCode.NOT_FOUND) {
+                        throw e;
+                    }
+                    if (previousPosition.isEmpty()) {
+                        throw ConnectionException.hardConnectionException("No last position", e);
+                    }
+                    MyLog.d(TimelineDownloaderOther.this,
+                            "The timeline was not found, last position='" + previousPosition +"'", e);
+                    previousPosition = TimelinePosition.EMPTY;
                 }
-                previousPosition = syncTracker.getPreviousPosition();
-            } catch (ConnectionException e) {
-                if (e.getStatusCode() != StatusCode.NOT_FOUND) {
-                    throw e;
+            }
+        }
+
+        private List<AActivity> fetchPage(TimelinePosition previousPosition) throws ConnectionException {
+            int limit = getConnection().fixedDownloadLimit(
+                    toDownload, getTimeline().getTimelineType().getConnectionApiRoutine());
+            switch (getTimeline().getTimelineType()) {
+                case SEARCH:
+                    return getConnection().searchNotes(
+                            isSyncYounger() ? previousPosition : TimelinePosition.EMPTY,
+                            isSyncYounger() ? TimelinePosition.EMPTY : previousPosition,
+                            limit, getTimeline().getSearchQuery());
+                default:
+                    return getConnection().getTimeline(
+                            getTimeline().getTimelineType().getConnectionApiRoutine(),
+                            isSyncYounger() ? previousPosition : TimelinePosition.EMPTY,
+                            isSyncYounger() ? TimelinePosition.EMPTY : previousPosition,
+                            limit, actorOid);
+            }
+        }
+
+        /** Waits while the buffer is full, unless the consumer has stopped */
+        private void put(Page page) {
+            try {
+                while (!stopped && !pages.offer(page, 1, TimeUnit.SECONDS)) {
+                    MyLog.v(TimelineDownloaderOther.this, "Waiting to hand off a page");
                 }
-                if (previousPosition.isEmpty()) {
-                    throw ConnectionException.hardConnectionException("No last position", e);
+            } catch (InterruptedException e) {
+                stopped = true;
+            }
+        }
+
+        /** Waits for the next page, until the fetcher ends. The page may be {@link Page#END} */
+        Page take() throws ConnectionException {
+            try {
+                while (true) {
+                    Page page = pages.poll(1, TimeUnit.SECONDS);
+                    if (page != null) return page;
+                    if (isCancelled() || !isReallyWorking()) {
+                        page = pages.poll();
+                        if (page != null) return page;
+                        throw new ConnectionException("Page fetcher stopped: " + this);
+                    }
                 }
-                MyLog.d(this, "The timeline was not found, last position='" + previousPosition +"'", e);
-                previousPosition = TimelinePosition.EMPTY;
+            } catch (InterruptedException e) {
+                stop();
+                Thread.currentThread().interrupt();
+                throw new ConnectionException("Interrupted while waiting for a page", e);
             }
         }
-        di.saveLum();
+
+        void stop() {
+            stopped = true;
+            pages.clear();
+        }
     }
 
     @NonNull
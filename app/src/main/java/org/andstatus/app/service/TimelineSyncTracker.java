@@ -18,6 +18,7 @@ package org.andstatus.app.service;
 
 import org.andstatus.app.net.social.TimelinePosition;
 import org.andstatus.app.timeline.meta.Timeline;
+import org.andstatus.app.util.StringUtils;
 
 /**
  * Retrieves and saves information about times and positions in a Timeline of the youngest/oldest downloaded timeline items.
@@ -79,4 +80,29 @@ public class TimelineSyncTracker {
     public void clearPosition() {
         timeline.forgetPositionsAndDates();
     }
+
+    /**
+     * Follows changes of the previous position the same way as {@link #onNewMsg(TimelinePosition, long)} does,
+     * but without changing the timeline. Allows to know the position of the next page before
+     * downloaded timeline items are stored
+     */
+    class Lookahead {
+        private String position = getPreviousPosition().getPosition();
+        private long itemDate = getPreviousItemDate();
+
+        TimelinePosition getPreviousPosition() {
+            return new TimelinePosition(position);
+        }
+
+        void onNewMsg(TimelinePosition timelineItemPosition, long timelineItemDate) {
+            if (timelineItemPosition == null || timelineItemPosition.isEmpty() || timelineItemDate <= 0) return;
+
+            String newPosition = timelineItemPosition.getPosition();
+            if ((isSyncYounger ? itemDate < timelineItemDate : itemDate == 0 || itemDate > timelineItemDate)
+                    || (itemDate == timelineItemDate && StringUtils.isNewFilledValue(position, newPosition))) {
+                itemDate = timelineItemDate;
+                position = newPosition;
+            }
+        }
+    }
 }
@@ -24,8 +24,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -47,19 +50,65 @@ public class DuplicatesCollapser<T extends ViewItem<T>> {
         @NonNull
         ItemWithPage<T> parent;
         Set<ItemWithPage<T>> children = new HashSet<>();
+        private final Set<Long> itemIds = new HashSet<>();
 
         GroupToCollapse(@NonNull ItemWithPage<T> parent) {
             this.parent = parent;
+            itemIds.add(parent.item.getId());
+        }
+
+        void addChild(ItemWithPage<T> child) {
+            children.add(child);
+            itemIds.add(child.item.getId());
+        }
+
+        void replaceParent(ItemWithPage<T> newParent) {
+            addChild(parent);
+            parent = newParent;
+            itemIds.add(newParent.item.getId());
         }
 
         boolean contains(long itemId) {
-            return itemId != 0 && (
-                    parent.item.getId() == itemId ||
-                    children.stream().anyMatch(child -> child.item.getId() == itemId));
+            return itemId != 0 && itemIds.contains(itemId);
         }
 
     }
 
+    /** Groups, to which next items may be added, in the order of their creation.
+     * Groups of parents with the same {@link ViewItem#getDuplicationKey()} are found without comparing items */
+    private static class OpenGroups<T extends ViewItem<T>> {
+        final List<GroupToCollapse<T>> list = new ArrayList<>();
+        private final Map<Long, GroupToCollapse<T>> byKey = new HashMap<>();
+
+        void add(GroupToCollapse<T> group) {
+            list.add(group);
+            putKey(group);
+        }
+
+        GroupToCollapse<T> removeOldest() {
+            GroupToCollapse<T> group = list.remove(0);
+            removeKey(group);
+            return group;
+        }
+
+        /** @return position of a group, which parent surely duplicates the item, or size of the list if not found */
+        int indexOfKeyOf(T item) {
+            long key = item.getDuplicationKey();
+            GroupToCollapse<T> group = key == 0 ? null : byKey.get(key);
+            return group == null ? list.size() : list.indexOf(group);
+        }
+
+        void removeKey(GroupToCollapse<T> group) {
+            long key = group.parent.item.getDuplicationKey();
+            if (key != 0) byKey.remove(key, group);
+        }
+
+        void putKey(GroupToCollapse<T> group) {
+            long key = group.parent.item.getDuplicationKey();
+            if (key != 0) byKey.put(key, group);
+        }
+    }
+
     private static class ItemWithPage<T extends ViewItem<T>> {
         TimelinePage<T> page;
         T item;
@@ -116,27 +165,44 @@ public class DuplicatesCollapser<T extends ViewItem<T>> {
         if (maxDistanceBetweenDuplicates < 1) return;
         Set<ItemWithPage<T>> toCollapse = new HashSet<>();
         innerCollapseDuplicates(itemId, toCollapse);
+        removeCollapsed(toCollapse);
+    }
+
+    /** Removes collapsed items from their pages in one pass over each page */
+    private void removeCollapsed(Set<ItemWithPage<T>> toCollapse) {
+        if (toCollapse.isEmpty()) return;
+        Map<TimelinePage<T>, Set<T>> itemsOfPages = new IdentityHashMap<>();
         for (ItemWithPage<T> itemWithPage : toCollapse) {
-            itemWithPage.page.items.remove(itemWithPage.item);
+            Set<T> items = itemsOfPages.get(itemWithPage.page);
+            if (items == null) {
+                items = Collections.newSetFromMap(new IdentityHashMap<>());
+                itemsOfPages.put(itemWithPage.page, items);
+            }
+            items.add(itemWithPage.item);
         }
+        itemsOfPages.forEach((page, items) -> page.items.removeIf(items::contains));
     }
 
     private void innerCollapseDuplicates(long itemId, Set<ItemWithPage<T>> toCollapse) {
-        List<GroupToCollapse<T>> groups = new ArrayList<>();
+        OpenGroups<T> groups = new OpenGroups<>();
         for (TimelinePage<T> page : data.pages) {
             for (T item : page.items) {
                 ItemWithPage<T> itemPair = new ItemWithPage<>(page, item);
                 boolean found = false;
-                for (GroupToCollapse<T> group : groups) {
+                // Earlier groups take precedence, so we compare the item with them only
+                int indexOfKey = groups.indexOfKeyOf(item);
+                for (int ind = 0; ind < groups.list.size() && ind <= indexOfKey; ind++) {
+                    GroupToCollapse<T> group = groups.list.get(ind);
                     switch (item.duplicates(data.params.timeline, group.parent.item)) {
                         case DUPLICATES:
                             found = true;
-                            group.children.add(itemPair);
+                            group.addChild(itemPair);
                             break;
                         case IS_DUPLICATED:
                             found = true;
-                            group.children.add(group.parent);
-                            group.parent = itemPair;
+                            groups.removeKey(group);
+                            group.replaceParent(itemPair);
+                            groups.putKey(group);
                             break;
                         default:
                             break;
@@ -146,14 +212,14 @@ public class DuplicatesCollapser<T extends ViewItem<T>> {
                 if (!found) {
                     if (itemId != 0) {
                         Optional<GroupToCollapse<T>> selectedGroupOpt =
-                                groups.stream().filter(group -> group.contains(itemId)).findAny();
+                                groups.list.stream().filter(group -> group.contains(itemId)).findAny();
                         if (selectedGroupOpt.isPresent()) {
                             collapseThisGroup(itemId, selectedGroupOpt.get(), toCollapse);
                             return;
                         }
                     }
-                    if (groups.size() > maxDistanceBetweenDuplicates) {
-                        GroupToCollapse<T> group = groups.remove(0);
+                    if (groups.list.size() > maxDistanceBetweenDuplicates) {
+                        GroupToCollapse<T> group = groups.removeOldest();
                         if (itemId == 0 || group.contains(itemId)) {
                             collapseThisGroup(itemId, group, toCollapse);
                             if (itemId != 0) return;
@@ -164,7 +230,7 @@ public class DuplicatesCollapser<T extends ViewItem<T>> {
 
             }
         }
-        for (GroupToCollapse<T> group : groups) {
+        for (GroupToCollapse<T> group : groups.list) {
             if (itemId == 0 || group.contains(itemId)) {
                 collapseThisGroup(itemId, group, toCollapse);
             }
@@ -100,7 +100,9 @@ public class TimelineData<T extends ViewItem<T>> {
                     for (int ind = 0; ind < pages.size(); ind++) {
                         TimelinePage p = pages.get(ind);
                         if (p.params.maxDate == page.params.maxDate
-                                && p.params.minDate == page.params.minDate) {
+                                && p.params.maxActivityId == page.params.maxActivityId
+                                && p.params.minDate == page.params.minDate
+                                && p.params.minActivityId == page.params.minActivityId) {
                             found = ind;
                             break;
                         }
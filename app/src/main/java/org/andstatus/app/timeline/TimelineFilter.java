@@ -16,12 +16,22 @@
 
 package org.andstatus.app.timeline;
 
+import org.andstatus.app.context.MyContext;
 import org.andstatus.app.context.MyPreferences;
+import org.andstatus.app.data.SqlActorIds;
+import org.andstatus.app.database.table.NoteTable;
 import org.andstatus.app.note.KeywordsFilter;
 import org.andstatus.app.timeline.meta.Timeline;
 import org.andstatus.app.timeline.meta.TimelineType;
+import org.andstatus.app.user.CachedUsersAndActors;
+import org.andstatus.app.util.SelectionAndArgs;
 import org.andstatus.app.util.SharedPreferencesUtil;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.andstatus.app.data.ProjectionMap.NOTE_TABLE_ALIAS;
+
 public class TimelineFilter {
     public final KeywordsFilter keywordsFilter;
     public final boolean hideRepliesNotToMeOrFriends;
@@ -34,4 +44,30 @@ public class TimelineFilter {
                 && SharedPreferencesUtil.getBoolean(MyPreferences.KEY_FILTER_HIDE_REPLIES_NOT_TO_ME_OR_FRIENDS, false);
         searchQuery = new KeywordsFilter(timeline.getSearchQuery());
     }
+
+    /**
+     * Adds the same conditions, as {@link ViewItem#matches(TimelineFilter)} checks, to the timeline query,
+     * so rows, which would be filtered out, are not even read.
+     * The {@link #searchQuery} is already a part of a search timeline query, see {@link Timeline#getUri()}.
+     * Activities without a note are not filtered here, as they are not filtered by the {@link ViewItem}s
+     */
+    void addSqlSelection(MyContext myContext, SelectionAndArgs sa) {
+        if (keywordsFilter.nonEmpty()) {
+            sa.addSelection(keywordsFilter.getSqlSelectionNotMatchedAny(
+                    NOTE_TABLE_ALIAS + "." + NoteTable.CONTENT_TO_SEARCH), keywordsFilter.getSqlSelectionArgs());
+        }
+        if (hideRepliesNotToMeOrFriends) {
+            final String inReplyToActorId = NOTE_TABLE_ALIAS + "." + NoteTable.IN_REPLY_TO_ACTOR_ID;
+            final SqlActorIds meOrMyFriends = SqlActorIds.fromIds(getMeOrMyFriendsIds(myContext.users()));
+            sa.addSelection(inReplyToActorId + " IS NULL OR " + inReplyToActorId + "=0"
+                    + (meOrMyFriends.size() == 0 ? "" : " OR " + inReplyToActorId + meOrMyFriends.getSql()));
+        }
+    }
+
+    private static Set<Long> getMeOrMyFriendsIds(CachedUsersAndActors users) {
+        Set<Long> ids = new HashSet<>(users.myActors.keySet());
+        users.myUsers.values().forEach(user -> ids.addAll(user.actorIds));
+        ids.addAll(users.friendsOfMyActors.keySet());
+        return ids;
+    }
 }
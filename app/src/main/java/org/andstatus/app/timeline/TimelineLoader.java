@@ -22,6 +22,7 @@ import android.support.annotation.NonNull;
 import org.andstatus.app.actor.ActorListLoader;
 import org.andstatus.app.actor.ActorListType;
 import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.database.table.ActivityTable;
 import org.andstatus.app.list.SyncLoader;
 import org.andstatus.app.util.I18n;
 import org.andstatus.app.util.MyLog;
@@ -105,7 +106,8 @@ public class TimelineLoader<T extends ViewItem<T>> extends SyncLoader<T> {
                     do {
                         rowsCount++;
                         T item = (T) page.getEmptyItem().fromCursor(params.getMyContext(), cursor);
-                        getParams().rememberItemDateLoaded(item.getDate());
+                        getParams().rememberItemLoaded(item.getDate(),
+                                DbUtils.getLong(cursor, ActivityTable.ACTIVITY_ID));
                         items.add(item);
                     } while (cursor.moveToNext());
                 }
@@ -20,12 +20,14 @@ import android.app.LoaderManager;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 
 import org.andstatus.app.IntentExtra;
 import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContext;
 import org.andstatus.app.data.ParsedUri;
+import org.andstatus.app.data.ProjectionMap;
 import org.andstatus.app.data.TimelineSql;
 import org.andstatus.app.database.table.ActivityTable;
 import org.andstatus.app.timeline.meta.Timeline;
@@ -38,6 +40,7 @@ import org.andstatus.app.util.StringUtils;
 import java.util.Set;
 
 public class TimelineParameters {
+    private static final String ACTIVITY_ID_FIELD = ProjectionMap.ACTIVITY_TABLE_ALIAS + "." + BaseColumns._ID;
     private final MyContext myContext;
 
     LoaderManager.LoaderCallbacks<Cursor> mLoaderCallbacks = null;
@@ -53,9 +56,14 @@ public class TimelineParameters {
     private Set<String> mProjection;
 
     long maxDate = 0;
+    /** Together with {@link #maxDate} forms a key of the youngest row to load (exclusive), if not 0.
+     * Activities with the same date are ordered by their ids */
+    long maxActivityId = 0;
 
     // These params are updated just before page loading
     volatile long minDate = 0;
+    /** Together with {@link #minDate} forms a key of the oldest row to load (exclusive), if not 0 */
+    volatile long minActivityId = 0;
     volatile SelectionAndArgs selectionAndArgs = new SelectionAndArgs();
     volatile String sortOrderAndLimit = "";
 
@@ -63,7 +71,9 @@ public class TimelineParameters {
     volatile boolean isLoaded = false;
     volatile int rowsLoaded = 0;
     volatile long minDateLoaded = 0;
+    volatile long minActivityIdLoaded = 0;
     volatile long maxDateLoaded = 0;
+    volatile long maxActivityIdLoaded = 0;
 
     public static TimelineParameters clone(@NonNull TimelineParameters prev, WhichPage whichPage) {
         TimelineParameters params = new TimelineParameters(prev.myContext);
@@ -82,15 +92,19 @@ public class TimelineParameters {
             case OLDER:
                 if (prev.mayHaveOlderPage()) {
                     params.maxDate = prev.minDateLoaded;
+                    params.maxActivityId = prev.minActivityIdLoaded;
                 } else {
                     params.maxDate = prev.maxDate;
+                    params.maxActivityId = prev.maxActivityId;
                 }
                 break;
             case YOUNGER:
                 if (prev.mayHaveYoungerPage()) {
                     params.minDate = prev.maxDateLoaded;
+                    params.minActivityId = prev.maxActivityIdLoaded;
                 } else {
                     params.minDate = prev.minDate;
+                    params.minActivityId = prev.minActivityId;
                 }
                 break;
             default:
@@ -110,13 +124,19 @@ public class TimelineParameters {
 
     public boolean mayHaveYoungerPage() {
         return maxDate > 0
-                || (minDate > 0 && rowsLoaded > 0 && minDate < maxDateLoaded);
+                || (minDate > 0 && rowsLoaded > 0 && (minActivityId > 0 ? isPageFull() : minDate < maxDateLoaded));
     }
 
     public boolean mayHaveOlderPage() {
         return whichPage.equals(WhichPage.CURRENT)
                 || minDate > 0
-                || (maxDate > 0 && rowsLoaded > 0 && maxDate > minDateLoaded);
+                || (maxDate > 0 && rowsLoaded > 0 && (maxActivityId > 0 ? isPageFull() : maxDate > minDateLoaded));
+    }
+
+    /** A page, which starts after a key, is limited to {@link #PAGE_SIZE} rows,
+     * so a page with less rows is the last one in its direction */
+    private boolean isPageFull() {
+        return rowsLoaded >= PAGE_SIZE;
     }
 
     public boolean isSortOrderAscending() {
@@ -143,7 +163,9 @@ public class TimelineParameters {
                 + (timeline.getActorId() == 0 ? "" : ", selectedActorId=" + timeline.getActorId())
             //    + ", projection=" + Arrays.toString(mProjection)
                 + (minDate > 0 ? ", minDate=" + MyLog.formatDateTime(minDate) : "")
+                + (minActivityId > 0 ? ", minActivityId=" + minActivityId : "")
                 + (maxDate > 0 ? ", maxDate=" + MyLog.formatDateTime(maxDate) : "")
+                + (maxActivityId > 0 ? ", maxActivityId=" + maxActivityId : "")
                 + (selectionAndArgs.isEmpty() ? "" : ", sa=" + selectionAndArgs)
                 + (StringUtils.isEmpty(sortOrderAndLimit) ? "" : ", sortOrder=" + sortOrderAndLimit)
                 + (isLoaded  ? ", loaded" : "")
@@ -185,9 +207,9 @@ public class TimelineParameters {
 
         if (!timeline.equals(that.timeline)) return false;
         if (!whichPage.equals(WhichPage.CURRENT) && !that.whichPage.equals(WhichPage.CURRENT)) {
-            if (minDate != that.minDate) return false;
+            if (minDate != that.minDate || minActivityId != that.minActivityId) return false;
         }
-        return maxDate == that.maxDate;
+        return maxDate == that.maxDate && maxActivityId == that.maxActivityId;
     }
 
     @Override
@@ -205,7 +227,9 @@ public class TimelineParameters {
     boolean restoreState(@NonNull Bundle savedState) {
         whichPage = WhichPage.CURRENT;
         minDate = 0;
+        minActivityId = 0;
         maxDate = 0;
+        maxActivityId = 0;
         return parseUri(Uri.parse(savedState.getString(IntentExtra.MATCHED_URI.key,"")), "");
     }
     
@@ -226,12 +250,17 @@ public class TimelineParameters {
         return timeline.myAccountToSync;
     }
 
-    public void rememberItemDateLoaded(long date) {
-        if (minDateLoaded == 0 || minDateLoaded > date) {
+    /** Remembers the range of keys of loaded rows */
+    public void rememberItemLoaded(long date, long activityId) {
+        if (minDateLoaded == 0 || minDateLoaded > date
+                || (minDateLoaded == date && minActivityIdLoaded > activityId)) {
             minDateLoaded = date;
+            minActivityIdLoaded = activityId;
         }
-        if (maxDateLoaded == 0 || maxDateLoaded < date) {
+        if (maxDateLoaded == 0 || maxDateLoaded < date
+                || (maxDateLoaded == date && maxActivityIdLoaded < activityId)) {
             maxDateLoaded = date;
+            maxActivityIdLoaded = activityId;
         }
     }
 
@@ -239,6 +268,7 @@ public class TimelineParameters {
         switch (whichPage) {
             case CURRENT:
                 minDate = TimelineViewPositionStorage.loadListPosition(this).minSentDate;
+                minActivityId = 0;
                 break;
             default:
                 break;
@@ -247,20 +277,34 @@ public class TimelineParameters {
         selectionAndArgs = buildSelectionAndArgs();
     }
 
+    /** Rows with the same date are ordered by activity id, so (date, activity id) is a unique key of a row */
     private String buildSortOrderAndLimit() {
-        return  ActivityTable.getTimeSortOrder(getTimelineType(), isSortOrderAscending())
+        final boolean ascending = isSortOrderAscending();
+        return  ActivityTable.getTimeSortOrder(getTimelineType(), ascending)
+                + ", " + ACTIVITY_ID_FIELD + (ascending ? " ASC" : " DESC")
                 + (minDate > 0 && maxDate > 0 ? "" : " LIMIT " + PAGE_SIZE);
     }
 
+    /** Keyset ("seek") pagination: a page starts right after the key of the last row of the previous page,
+     * so the rows are read by an index range scan, independent of how many pages were loaded before */
     private SelectionAndArgs buildSelectionAndArgs() {
         SelectionAndArgs sa = new SelectionAndArgs();
+        final String dateField = ActivityTable.getTimeSortField(getTimelineType());
         final long minDateActual = minDate > 0 ? minDate : 1;
-        sa.addSelection(ActivityTable.getTimeSortField(getTimelineType()) + " >= ?",
-                String.valueOf(minDateActual));
+        sa.addSelection(dateField + " >= ?", String.valueOf(minDateActual));
+        if (minDate > 0 && minActivityId > 0) {
+            sa.addSelection("(" + dateField + " > ? OR " + ACTIVITY_ID_FIELD + " > ?)",
+                    new String[]{String.valueOf(minDate), String.valueOf(minActivityId)});
+        }
         if (maxDate > 0) {
-            sa.addSelection(ActivityTable.getTimeSortField(getTimelineType()) + " <= ?",
-                    String.valueOf(maxDate >= minDateActual ? maxDate : minDateActual));
+            final long maxDateActual = maxDate >= minDateActual ? maxDate : minDateActual;
+            sa.addSelection(dateField + " <= ?", String.valueOf(maxDateActual));
+            if (maxActivityId > 0 && maxDateActual == maxDate) {
+                sa.addSelection("(" + dateField + " < ? OR " + ACTIVITY_ID_FIELD + " < ?)",
+                        new String[]{String.valueOf(maxDate), String.valueOf(maxActivityId)});
+            }
         }
+        new TimelineFilter(timeline).addSqlSelection(myContext, sa);
         return sa;
     }
 
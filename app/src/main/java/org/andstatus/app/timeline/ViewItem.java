@@ -61,6 +61,12 @@ public class ViewItem<T extends ViewItem<T>> implements IsEmpty {
         return DuplicationLink.NONE;
     }
 
+    /** Items with the same non-zero key always duplicate each other:
+     * {@link #duplicates(Timeline, ViewItem)} doesn't return {@link DuplicationLink#NONE} for them */
+    public long getDuplicationKey() {
+        return 0;
+    }
+
     public boolean isCollapsed() {
         return getChildrenCount() > 0;
     }
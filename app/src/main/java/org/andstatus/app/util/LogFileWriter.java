@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.util;
+
+import android.util.Log;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Appends lines of {@link MyLog} to the current log file in a background thread, so logging threads don't wait for
+ * file operations. Lines are kept in a bounded buffer; if it overflows, new lines are dropped and counted.
+ * The file is flushed periodically and closed, when there is nothing to write.
+ * Urgent lines (errors) are written and flushed by the logging thread together with the buffered lines,
+ * so they are in the file, even if the process crashes right after logging.
+ * When the file grows larger than {@link #MAX_FILE_SIZE}, next lines are written to a new file
+ * @author yvolk@yurivolkov.com
+ */
+@ThreadSafe
+class LogFileWriter {
+    private static final String TAG = LogFileWriter.class.getSimpleName();
+    private static final int BUFFER_LINES = 4096;
+    private static final long FLUSH_PERIOD_MS = 1000;
+    static final long MAX_FILE_SIZE = 5L * 1024 * 1024;
+
+    private final BlockingQueue<String> buffer = new ArrayBlockingQueue<>(BUFFER_LINES);
+    private final AtomicLong dropped = new AtomicLong();
+    /** Appending doesn't interfere with disabling: lines are either added before disabling and written,
+     * or they are not added */
+    private final ReadWriteLock appendLock = new ReentrantReadWriteLock();
+    private volatile Thread thread = null;
+
+    @GuardedBy("this")
+    private File file = null;
+    @GuardedBy("this")
+    private Writer out = null;
+    @GuardedBy("this")
+    private long fileSize = 0;
+    @GuardedBy("this")
+    private long flushedAt = 0;
+    @GuardedBy("this")
+    private final List<String> batch = new ArrayList<>();
+
+    /** Doesn't wait for file operations, unless the line is urgent:
+     * the line is dropped, if logging to file is disabled or the buffer is full
+     * @param urgent The line is written after the buffered lines and the file is flushed before return,
+     *               e.g. for errors */
+    void append(String line, boolean urgent) {
+        appendLock.readLock().lock();
+        try {
+            if (!MyLog.isLogToFileEnabled()) return;
+
+            if (urgent) {
+                write(null, line, true, false);
+            } else if (!buffer.offer(line)) {
+                dropped.incrementAndGet();
+            }
+        } finally {
+            appendLock.readLock().unlock();
+        }
+        if (thread == null) startThread();
+    }
+
+    private synchronized void startThread() {
+        if (thread != null) return;
+        Thread newThread = new Thread(this::run, TAG);
+        newThread.setDaemon(true);
+        newThread.setPriority(Thread.MIN_PRIORITY);
+        newThread.start();
+        thread = newThread;
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                String line = buffer.poll(FLUSH_PERIOD_MS, TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    close();
+                    line = buffer.take();
+                }
+                write(line, null, false, false);
+            } catch (InterruptedException e) {
+                close();
+                return;
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to write log", e);
+            }
+        }
+    }
+
+    /** Creates the log file, if it doesn't exist yet */
+    synchronized void open() {
+        try {
+            getWriter(false);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open " + file, e);
+            close();
+        }
+    }
+
+    /**
+     * Disables logging to file, using the supplied action, writes lines, appended before that, and closes the file
+     */
+    void disable(Runnable disableAction) {
+        appendLock.writeLock().lock();
+        try {
+            disableAction.run();
+        } finally {
+            appendLock.writeLock().unlock();
+        }
+        synchronized (this) {
+            write(null, null, true, true);
+            close();
+        }
+    }
+
+    /**
+     * @param firstLine taken from the buffer, so it is written before the rest of the buffered lines
+     * @param lastLine is written after the buffered lines
+     */
+    private synchronized void write(String firstLine, String lastLine, boolean flush, boolean evenIfDisabled) {
+        batch.clear();
+        if (firstLine != null) batch.add(firstLine);
+        buffer.drainTo(batch);
+        long droppedCount = dropped.getAndSet(0);
+        if (droppedCount > 0) {
+            batch.add(MyLog.currentDateTimeForLogLine() + " W/" + TAG + ": " + droppedCount
+                    + " lines were dropped, because the buffer of " + BUFFER_LINES + " lines was full\n");
+        }
+        if (lastLine != null) batch.add(lastLine);
+        if (batch.isEmpty() && out == null) return;
+
+        try {
+            if (!batch.isEmpty()) {
+                Writer writer = getWriter(evenIfDisabled);
+                if (writer == null) {
+                    batch.clear();
+                    return;
+                }
+                for (String line : batch) {
+                    writer.write(line);
+                    fileSize += line.length();
+                }
+                batch.clear();
+            }
+            long now = System.currentTimeMillis();
+            if (out != null && (flush || now - flushedAt >= FLUSH_PERIOD_MS)) {
+                out.flush();
+                flushedAt = now;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write to " + file, e);
+            close();
+        }
+    }
+
+    /** Opens the current log file, another one, if the file was deleted, renamed or it is too large
+     * @param evenIfDisabled open the file, though logging to file is turned off, in order to write the rest of lines
+     * @return null, if logging to file is turned off */
+    @GuardedBy("this")
+    private Writer getWriter(boolean evenIfDisabled) throws IOException {
+        if (out != null) {
+            if (fileSize > MAX_FILE_SIZE) {
+                MyLog.setNextLogFileName();
+            }
+            if (!file.getName().equals(MyLog.getLogFilename()) || !file.exists()) {
+                close();
+            }
+        }
+        if (out == null) {
+            if (!MyLog.isLogToFileEnabled() && !evenIfDisabled) return null;
+
+            String filename = MyLog.getMostRecentLogFileName();
+            file = StringUtils.isEmpty(filename) ? null : MyLog.getFileInLogDir(filename, false);
+            if (file == null) return null;
+
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+            fileSize = file.length();
+            flushedAt = System.currentTimeMillis();
+        }
+        return out;
+    }
+
+    synchronized void close() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close " + file, e);
+        }
+        out = null;
+    }
+}
@@ -98,6 +98,7 @@ public class MyLog {
     private final static AtomicBoolean logToFileEnabled = new AtomicBoolean(false);
     @GuardedBy("logToFileEnabled")
     private static String logFileName = null;
+    private static final LogFileWriter logFileWriter = new LogFileWriter();
 
     public static final String COMMA = ",";
 
@@ -494,10 +495,12 @@ public class MyLog {
     }
     
     public static void setLogToFile(boolean logEnabled) {
-        logToFileEnabled.set(logEnabled);
-        if (logToFileEnabled.get()) {
+        if (logEnabled) {
+            logToFileEnabled.set(true);
             setNextLogFileName(false);
-        } else { 
+            logFileWriter.open();
+        } else {
+            logFileWriter.disable(() -> logToFileEnabled.set(false));
             synchronized (logToFileEnabled) {
                 logFileName = null;
             }
@@ -505,7 +508,8 @@ public class MyLog {
     }
 
     private static void setNextLogFileName(boolean changeExisting) {
-        String filename = currentDateTimeFormatted() + "_log.txt";
+        // Milliseconds and uniqueness, so files, rotated within one second, don't share a name
+        String filename = uniqueDateTimeFormatted() + "_log.txt";
         synchronized (logToFileEnabled) {
             if (logFileName == null || changeExisting) {
                 logFileName = filename; 
@@ -538,18 +542,11 @@ public class MyLog {
             builder.append(getStackTrace(tr));
         }
         builder.append("\n");
-        writeRawStringToLogFile(builder);
+        // Don't lose errors, if the application crashes
+        logFileWriter.append(builder.toString(), logLevel >= ERROR);
     }
 
-    private static final Object logFileWriterLock = new Object();
-
-    private static void writeRawStringToLogFile(StringBuilder builder) {
-        synchronized (logFileWriterLock) {
-            writeStringToFile(builder.toString(), getMostRecentLogFileName(), true, false);
-        }
-    }
-    
-    private static String getMostRecentLogFileName() {
+    static String getMostRecentLogFileName() {
         String filename = getLogFilename();
         if (!FileUtils.exists(getFileInLogDir(filename, false))) {
             setNextLogFileName(true);